@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import com.google.common.eventbus.EventBus;
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+import org.jason.heasarcutils.catalogparser.util.io.DataManager;
+import org.jason.heasarcutils.catalogparser.util.io.DatRecord;
+import org.jason.heasarcutils.catalogparser.util.io.RecordPlan;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * catalogparser's per-row work on synthetic bsc, hd, Tycho-2 and gc rows, using the catalogs out of its own
+ * config.xml. "filter" is what DataManager.filterResults() used to do, now the RecordPlan: keep the wanted
+ * fields, rename, copy and prefix them. "jsonLine" is what getJsonLine() used to do on top of that, now the
+ * import strategy's processLine() and writeRecord(), minus the disk. The "rows" counter in the output is
+ * rows/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar CatalogParserRowBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CatalogParserRowBenchmark {
+
+    @Param({"bsc", "hd", "tycho2", "gc"})
+    public String catalogName;
+
+    @Param({"100000"})
+    public int lines;
+
+    private String[] data;
+    private Catalog catalog;
+    private RecordPlan plan;
+    private DataManager dataManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = SyntheticCatalogs.getLines(catalogName, lines);
+        catalog = SyntheticCatalogs.getCatalogParserCatalog(catalogName, SyntheticCatalogs.getFile(catalogName, 0));
+        catalog.awaitFields();
+        plan = RecordPlan.compile(catalog);
+        dataManager = new DataManager(new EventBus());
+    }
+
+    /**
+     * Counts rows so JMH can report rows/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void filter(RowCounter counter, Blackhole bh) {
+        if (catalog.getType().equalsIgnoreCase("tdat")) {
+            TdatRowScanner scanner = new TdatRowScanner();
+            String[] slots = plan.newSlots();
+            for (String line : data) {
+                if (!scanner.scan(line)) {
+                    continue;
+                }
+                Arrays.fill(slots, null);
+                int count = Math.min(scanner.getFieldCount(), plan.getColumnCount());
+                for (int i = 0; i < count; i++) {
+                    if (plan.isAdmitted(i)) {
+                        slots[i] = scanner.getString(i);
+                    }
+                }
+                for (RecordPlan.Step step : plan.getSteps(slots)) {
+                    bh.consume(step.getKey());
+                    bh.consume(step.getValue(slots));
+                }
+                counter.rows++;
+            }
+        } else {
+            DatRecord record = plan.newDatRecord();
+            StringBuilder value = new StringBuilder(64);
+            for (String line : data) {
+                record.cut(line);
+                for (RecordPlan.Step step : plan.getSteps(record)) {
+                    bh.consume(step.getKey());
+                    bh.consume(step.getValue(record, value));
+                }
+                counter.rows++;
+            }
+        }
+    }
+
+    @Benchmark
+    public void jsonLine(RowCounter counter, Blackhole bh) throws IOException {
+        DataManager.ImportContext context;
+        if (catalog.getType().equalsIgnoreCase("tdat")) {
+            context = dataManager.new ImportContext(dataManager.new TdatImportStrategy(plan));
+        } else {
+            context = dataManager.new ImportContext(dataManager.new DatImportStrategy(plan));
+        }
+        DiscardChannel channel = new DiscardChannel();
+        JsonRecordWriter writer = new JsonRecordWriter(channel, JsonRecordWriter.DEFAULT_BUFFER_SIZE);
+        for (String line : data) {
+            if (context.processLine(line)) {
+                context.writeRecord(writer);
+                counter.rows++;
+            }
+        }
+        writer.close();
+        bh.consume(channel.getBytes());
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.column.ColumnarCache;
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.DoubleColumn;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a synthetic Tycho-2 as columns: parsing the .tdat (what every run paid before the columnar cache)
+ * versus mapping the cached file back in, and mapping it plus a filter over two of the columns, which is
+ * what it takes to actually page the values in. Times are per load.
+ *
+ * Run with: java -jar target/benchmarks.jar ColumnarCacheBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ColumnarCacheBenchmark {
+
+    @Param({"500000"})
+    public int rows;
+
+    private File source;
+    private TdatHeader header;
+    private ColumnarCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = SyntheticCatalogs.getFile("tycho2", rows);
+        header = TdatHeader.read(source, MappedLineReader.CHARSET);
+        cache = new ColumnarCache(new File(source.getParentFile(), "columns"));
+        if (cache.get("tycho2-" + rows, source) == null) {
+            cache.put(ColumnarCatalog.read("tycho2-" + rows, header), source);
+        }
+    }
+
+    @Benchmark
+    public ColumnarCatalog parse() throws IOException {
+        return ColumnarCatalog.read("tycho2-" + rows, header);
+    }
+
+    @Benchmark
+    public ColumnarCatalog map() {
+        return cache.get("tycho2-" + rows, source);
+    }
+
+    @Benchmark
+    public int mapAndFilter() {
+        ColumnarCatalog catalog = cache.get("tycho2-" + rows, source);
+        DoubleColumn vtMag = catalog.getDoubleColumn("vt_mag");
+        DoubleColumn dec = catalog.getDoubleColumn("dec");
+        int matches = 0;
+        for (int row = 0; row < catalog.getRowCount(); row++) {
+            if (vtMag.getDouble(row) < 9 && dec.getDouble(row) > 0) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.ColumnarCatalogBuilder;
+import org.jason.heasarcutils.common.column.DoubleColumn;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The columnar catalog on synthetic Tycho-2 rows: how fast it builds from scanned rows (what an import pays on
+ * top of the JSON), and a filter (vt_mag < 9 and dec > 0) over the rows as Map<String, String>, which is what
+ * reading the JSON back gets you, versus over the DoubleColumns. The "rows" counter in the output is rows/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar ColumnarCatalogBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ColumnarCatalogBenchmark {
+
+    @Param({"100000"})
+    public int lines;
+
+    private TdatHeader header;
+    private String[] data;
+    private List<Map<String, String>> rows;
+    private ColumnarCatalog catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        header = TdatHeader.read(SyntheticCatalogs.getFile("tycho2", 0), MappedLineReader.CHARSET);
+        data = SyntheticCatalogs.getLines("tycho2", lines);
+        String[] fieldNames = header.getFieldNames();
+
+        rows = new ArrayList<Map<String, String>>(data.length);
+        TdatRowScanner scanner = new TdatRowScanner();
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("tycho2", header);
+        for (int i = 0; i < data.length; i++) {
+            scanner.scan(data[i]);
+            Map<String, String> row = new LinkedHashMap<String, String>();
+            rows.add(row);
+            for (int j = 0; j < scanner.getFieldCount(); j++) {
+                row.put(fieldNames[j], scanner.getString(j));
+            }
+            builder.addRow(scanner);
+        }
+        catalog = builder.build();
+    }
+
+    /**
+     * Counts rows so JMH can report rows/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void build(RowCounter counter, Blackhole bh) {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("tycho2", header);
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (String line : data) {
+            if (scanner.scan(line)) {
+                builder.addRow(scanner);
+                counter.rows++;
+            }
+        }
+        bh.consume(builder.build());
+    }
+
+    @Benchmark
+    public int filterMaps(RowCounter counter) {
+        int matches = 0;
+        for (Map<String, String> row : rows) {
+            String vtMag = row.get("vt_mag");
+            String dec = row.get("dec");
+            if (vtMag != null && vtMag.length() > 0 && dec != null && dec.length() > 0
+                    && Double.parseDouble(vtMag) < 9 && Double.parseDouble(dec) > 0) {
+                matches++;
+            }
+            counter.rows++;
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int filterColumns(RowCounter counter) {
+        DoubleColumn vtMag = catalog.getDoubleColumn("vt_mag");
+        DoubleColumn dec = catalog.getDoubleColumn("dec");
+        int matches = 0;
+        int rowCount = catalog.getRowCount();
+        for (int row = 0; row < rowCount; row++) {
+            // nulls are NaN, which never matches
+            if (vtMag.getDouble(row) < 9 && dec.getDouble(row) > 0) {
+                matches++;
+            }
+        }
+        counter.rows += rowCount;
+        return matches;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import com.google.common.eventbus.EventBus;
+import org.jason.heasarcutils.catalogparser.util.io.DataManager;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.tdat2json.ChunkedTdatConverter;
+import org.jason.heasarcutils.vizier2json.Catalog;
+import org.jason.heasarcutils.vizier2json.Vizier2Json;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole files, start to finish: a synthetic bsc, hd, Tycho-2 or gc file converted to (catalog).json, both by
+ * catalogparser (DataManager.importCatalog(), with the catalog out of config.xml) and by the stand-alone
+ * converter for the format: tdat2json's ChunkedTdatConverter for the TDAT catalogs, vizier2json for gc. The
+ * synthetic files are local, so nothing gets downloaded. The "rows" counter in the output is rows/sec.
+ * <p/>
+ * The JSON goes where the converters always put it, the working directory, and gets deleted afterwards. Both
+ * converters print their stage timings after every file, which is handy for seeing where a regression went.
+ *
+ * Run with: java -jar target/benchmarks.jar ConversionBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"bsc", "hd", "tycho2", "gc"})
+    public String catalogName;
+
+    // 0 for as many as the real catalog has
+    @Param({"0"})
+    public int rows;
+
+    // tdat2json only
+    @Param({"4"})
+    public int threads;
+
+    private File file;
+    private int rowCount;
+    private org.jason.heasarcutils.catalogparser.util.Catalog catalogParserCatalog;
+    private Map<String, Object> tdat2JsonConfig;
+    private Catalog vizierCatalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticCatalogs.getFile(catalogName, rows);
+        rowCount = (rows > 0) ? rows : SyntheticCatalogs.getRows(catalogName);
+        catalogParserCatalog = SyntheticCatalogs.getCatalogParserCatalog(catalogName, file);
+        catalogParserCatalog.awaitFields();
+        if (SyntheticCatalogs.isTdat(catalogName)) {
+            tdat2JsonConfig = SyntheticCatalogs.getTdat2JsonConfig(catalogName);
+        } else {
+            vizierCatalog = SyntheticCatalogs.getVizierCatalog(catalogName);
+            vizierCatalog.setUrl(file.getPath());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        JsonRecordWriter.getFile(catalogName, false).delete();
+    }
+
+    /**
+     * Counts rows so JMH can report rows/sec instead of files/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void catalogParser(RowCounter counter) throws IOException {
+        new DataManager(new EventBus()).importCatalog(catalogParserCatalog, null);
+        counter.rows += rowCount;
+    }
+
+    @Benchmark
+    public void standalone(RowCounter counter) throws IOException {
+        if (tdat2JsonConfig != null) {
+            new ChunkedTdatConverter(tdat2JsonConfig, threads).convert(file, catalogName);
+        } else {
+            new Vizier2Json().parseCatalog(vizierCatalog, false, new ImportStats(catalogName));
+        }
+        counter.rows += rowCount;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.CrossMatcher;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-matching a synthetic Tycho-2 against a smaller one within an arcsecond, on 1 and several threads.
+ * The synthetic catalogs share their first rows, so the smaller one all matches and the rest of the bigger
+ * one is searched for nothing. Times are per whole match.
+ *
+ * Run with: java -jar target/benchmarks.jar CrossMatcherBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrossMatcherBenchmark {
+
+    @Param({"500000"})
+    public int rows;
+
+    @Param({"100000"})
+    public int otherRows;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ColumnarCatalog catalog;
+    private ColumnarCatalog other;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = ColumnarCatalog.read("tycho2",
+                TdatHeader.read(SyntheticCatalogs.getFile("tycho2", rows), MappedLineReader.CHARSET));
+        other = ColumnarCatalog.read("other",
+                TdatHeader.read(SyntheticCatalogs.getFile("tycho2", otherRows), MappedLineReader.CHARSET));
+    }
+
+    @Benchmark
+    public CrossMatcher.Matches match() {
+        return new CrossMatcher(threads).match(catalog, other, 1 / 3600.0);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel that counts what gets written to it and throws it away, so the per-row benchmarks measure the
+ * formatting and not the disk
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class DiscardChannel implements WritableByteChannel {
+
+    private long bytes;
+
+    public int write(ByteBuffer src) {
+        int length = src.remaining();
+        src.position(src.limit());
+        bytes += length;
+        return length;
+    }
+
+    public boolean isOpen() {
+        return true;
+    }
+
+    public void close() {
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
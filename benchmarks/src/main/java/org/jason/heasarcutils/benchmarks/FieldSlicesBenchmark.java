@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.vizier2json.Catalog;
+import org.jason.heasarcutils.vizier2json.FieldData;
+import org.jason.heasarcutils.vizier2json.FieldSlices;
+import org.jason.heasarcutils.vizier2json.Vizier2Json;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cutting Vizier fixed-width lines up the old way (HashMap lookup, substring() and trim() per field, a
+ * replaceFirst() regex for prefixed fields) versus FieldSlices. Uses the gc and crossindex layouts out of
+ * vizier2json's own vizier.xml, with generated lines that fit them (see SyntheticDat). The "rows" counter in
+ * the output is lines/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar FieldSlicesBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class FieldSlicesBenchmark {
+
+    @Param({"gc", "crossindex"})
+    public String catalogName;
+
+    @Param({"200000"})
+    public int lines;
+
+    private Catalog catalog;
+    private String[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InputStream in = Vizier2Json.class.getResourceAsStream("/vizier.xml");
+        try {
+            catalog = Vizier2Json.parseConfig(in).get(catalogName);
+        } finally {
+            in.close();
+        }
+
+        data = SyntheticDat.lines(catalog, lines);
+    }
+
+    /**
+     * Counts lines so JMH can report lines/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void mapAndSubstring(RowCounter counter, Blackhole bh) {
+        Map<String, FieldData> fieldMap = catalog.getFieldData();
+        for (String line : data) {
+            Map<String, String> resultMap = new LinkedHashMap<String, String>();
+            int lineLength = line.length();
+            for (String fieldKey : fieldMap.keySet()) {
+                FieldData fieldData = fieldMap.get(fieldKey);
+                int start = fieldData.getStart() - 1;
+                int end = fieldData.getEnd();
+                if (lineLength >= start) {
+                    if (lineLength <= end) {
+                        resultMap.put(fieldKey, line.substring(start).trim());
+                    } else {
+                        resultMap.put(fieldKey, line.substring(start, end).trim());
+                    }
+                }
+            }
+            Map<String, String> prefixMap = catalog.getPrefixes();
+            for (String key : prefixMap.keySet()) {
+                String value = resultMap.get(key);
+                if (value != null) {
+                    value = value.replaceFirst("^0+", "");
+                    value = prefixMap.get(key) + value.trim();
+                    resultMap.put(key, value);
+                }
+            }
+            for (Map.Entry<String, String> entry : resultMap.entrySet()) {
+                bh.consume(entry.getKey());
+                bh.consume(entry.getValue());
+            }
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public void fieldSlices(RowCounter counter, Blackhole bh) {
+        FieldSlices slices = new FieldSlices(catalog);
+        StringBuilder value = new StringBuilder(64);
+        for (String line : data) {
+            slices.cut(line);
+            for (int i = 0; i < slices.getFieldCount(); i++) {
+                if (slices.isPresent(i)) {
+                    value.setLength(0);
+                    bh.consume(slices.getName(i));
+                    bh.consume(slices.appendTo(line, i, value));
+                }
+            }
+            counter.rows++;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.io.ReadAheadInputStream;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reading a gzipped Tycho-2 sized TDAT the old way (URL stream straight into a GZIPInputStream, fetch, inflate
+ * and parse all on one thread) versus ReadAheadInputStream.gunzip(), where the fetching and inflating run on
+ * threads of their own. Both read the same file: URL and scan every row, so the difference is the overlap.
+ * The "rows" counter in the output is rows/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar GzipReadBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class GzipReadBenchmark {
+
+    @Param({"2539913"})
+    public int rows;
+
+    // fetch and inflate block size for the pipelined reader
+    @Param({"1048576"})
+    public int bufferSize;
+
+    @Param({"4"})
+    public int queueDepth;
+
+    private URL url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File tdat = SyntheticTdat.getFile("tycho2", SyntheticTdat.TYCHO2, rows);
+        File gzip = new File(tdat.getPath() + ".gz");
+        if (!gzip.isFile()) {
+            File temp = new File(gzip.getPath() + ".tmp");
+            InputStream in = new FileInputStream(tdat);
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), 1 << 16);
+            try {
+                byte[] buffer = new byte[1 << 16];
+                int len;
+                while ((len = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, len);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            if (!temp.renameTo(gzip)) {
+                throw new IOException("Unable to rename " + temp + " to " + gzip);
+            }
+        }
+        url = gzip.toURI().toURL();
+    }
+
+    /**
+     * Counts data rows so JMH can report rows/sec instead of files/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void gzipInputStream(RowCounter counter, Blackhole bh) throws IOException {
+        scan(new GZIPInputStream(url.openStream()), counter, bh);
+    }
+
+    @Benchmark
+    public void pipelined(RowCounter counter, Blackhole bh) throws IOException {
+        scan(ReadAheadInputStream.gunzip(url.openStream(), bufferSize, bufferSize, queueDepth), counter, bh);
+    }
+
+    private static void scan(InputStream in, RowCounter counter, Blackhole bh) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"), 1 << 16);
+        TdatRowScanner scanner = new TdatRowScanner();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (scanner.scan(line)) {
+                    for (int i = 0; i < scanner.getFieldCount(); i++) {
+                        bh.consume(scanner.getEnd(i));
+                    }
+                    counter.rows++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
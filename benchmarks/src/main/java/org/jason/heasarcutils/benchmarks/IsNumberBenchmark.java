@@ -0,0 +1,118 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.tdat2mysql.TdatProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TdatProcessor.isNumber() over every value of synthetic bsc, hd and Tycho-2 rows, which is what tdat2mysql
+ * asks of each value it writes: on Strings cut out of the line, versus in place on the line itself, the way
+ * TdatProcessor uses it now. The "values" counter in the output is values/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar IsNumberBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class IsNumberBenchmark {
+
+    @Param({"bsc", "hd", "tycho2"})
+    public String catalogName;
+
+    @Param({"50000"})
+    public int lines;
+
+    private String[] values;
+
+    // the same values, as regions of the lines they came from
+    private String[] valueLines;
+    private int[] starts;
+    private int[] ends;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> valueList = new ArrayList<String>();
+        List<String> lineList = new ArrayList<String>();
+        List<Integer> startList = new ArrayList<Integer>();
+        List<Integer> endList = new ArrayList<Integer>();
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (String line : SyntheticCatalogs.getLines(catalogName, lines)) {
+            if (!scanner.scan(line)) {
+                continue;
+            }
+            for (int i = 0; i < scanner.getFieldCount(); i++) {
+                valueList.add(scanner.getString(i));
+                lineList.add(line);
+                startList.add(scanner.getStart(i));
+                endList.add(scanner.getEnd(i));
+            }
+        }
+
+        values = valueList.toArray(new String[valueList.size()]);
+        valueLines = lineList.toArray(new String[lineList.size()]);
+        starts = new int[values.length];
+        ends = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            starts[i] = startList.get(i);
+            ends[i] = endList.get(i);
+        }
+    }
+
+    /**
+     * Counts values so JMH can report values/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ValueCounter {
+
+        public long values;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            values = 0;
+        }
+    }
+
+    @Benchmark
+    public void isNumberString(ValueCounter counter, Blackhole bh) {
+        for (String value : values) {
+            bh.consume(TdatProcessor.isNumber(value));
+        }
+        counter.values += values.length;
+    }
+
+    @Benchmark
+    public void isNumberInPlace(ValueCounter counter, Blackhole bh) {
+        for (int i = 0; i < starts.length; i++) {
+            bh.consume(TdatProcessor.isNumber(valueLines[i], starts[i], ends[i]));
+        }
+        counter.values += starts.length;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output speed of the old StringBuffer + substring() + BufferedWriter way of writing JSON lines versus
+ * JsonRecordWriter, for Tycho-2 shaped records that are already split into values. The "bytes" counter in the
+ * output is bytes/sec, divide by 1048576 for MB/s.
+ *
+ * Run with: java -jar target/benchmarks.jar JsonRecordWriterBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class JsonRecordWriterBenchmark {
+
+    @Param({"200000"})
+    public int records;
+
+    private String[] names;
+    private String[][] values;
+    private boolean[][] numeric;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticTdat.Column[] columns = SyntheticTdat.TYCHO2;
+        names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getName();
+        }
+
+        Random random = new Random(SyntheticTdat.SEED);
+        values = new String[records][columns.length];
+        numeric = new boolean[records][columns.length];
+        StringBuilder sb = new StringBuilder(32);
+        for (int row = 0; row < records; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                sb.setLength(0);
+                columns[i].appendValue(sb, random, row);
+                values[row][i] = sb.toString();
+                numeric[row][i] = !columns[i].getFormat().startsWith("char") && sb.length() > 0;
+            }
+        }
+
+        file = File.createTempFile("heasarcutils-json", ".json");
+        file.deleteOnExit();
+    }
+
+    /**
+     * Counts bytes so JMH can report bytes/sec instead of files/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void stringBufferAndWriter(ByteCounter counter) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        long length = 0;
+        try {
+            for (int row = 0; row < records; row++) {
+                StringBuffer sb = new StringBuffer();
+                sb.append("{");
+                for (int i = 0; i < names.length; i++) {
+                    if (numeric[row][i]) {
+                        sb.append("\"").append(names[i]).append("\":").append(values[row][i]).append(",");
+                    } else {
+                        sb.append("\"").append(names[i]).append("\":\"").append(values[row][i]).append("\",");
+                    }
+                }
+                sb = new StringBuffer(sb.substring(0, sb.length() - 1));
+                sb.append("}\r\n");
+                String line = sb.toString();
+                writer.write(line);
+                length += line.length();
+            }
+        } finally {
+            writer.close();
+        }
+        counter.bytes += length;
+    }
+
+    @Benchmark
+    public void jsonRecordWriter(ByteCounter counter) throws IOException {
+        JsonRecordWriter writer = new JsonRecordWriter(file);
+        try {
+            for (int row = 0; row < records; row++) {
+                writer.beginRecord();
+                for (int i = 0; i < names.length; i++) {
+                    writer.name(names[i]);
+                    if (numeric[row][i]) {
+                        writer.number(values[row][i]);
+                    } else {
+                        writer.string(values[row][i]);
+                    }
+                }
+                writer.endRecord();
+            }
+        } finally {
+            writer.close();
+        }
+        counter.bytes += writer.getBytesWritten();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.text.NumberScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Values/sec for the old regex + BigDecimal number handling in tdat2json versus NumberScanner. The values are
+ * a mix of what shows up in the star catalogs: RA/Dec in degrees, magnitudes, integer ids, blanks and the
+ * odd bit of text.
+ *
+ * Run with: java -jar target/benchmarks.jar NumberScannerBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@OperationsPerInvocation(NumberScannerBenchmark.VALUES)
+public class NumberScannerBenchmark {
+
+    public static final int VALUES = 10000;
+
+    // what Tdat2Json used to run every value through
+    private final Pattern numericPattern = Pattern.compile("^[+-]?([0-9]*\\.?[0-9]+|[0-9]+\\.?[0-9]*)([eE][+-]?[0-9]+)?$");
+
+    private String[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(2011);
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            switch (i % 6) {
+                case 0:
+                    values[i] = String.format(Locale.US, "%.8f", random.nextDouble() * 360);
+                    break;
+                case 1:
+                    values[i] = String.format(Locale.US, "%.8f", random.nextDouble() * 180 - 90);
+                    break;
+                case 2:
+                    values[i] = String.format(Locale.US, "%.3f", random.nextDouble() * 16 - 1.5);
+                    break;
+                case 3:
+                    values[i] = String.valueOf(random.nextInt(10000000));
+                    break;
+                case 4:
+                    values[i] = (random.nextInt(4) == 0) ? "" : String.format(Locale.US, "%.2f", random.nextDouble() * 3);
+                    break;
+                default:
+                    values[i] = "TYC " + random.nextInt(9000) + "-" + random.nextInt(2000) + "-1";
+            }
+        }
+    }
+
+    @Benchmark
+    public void regexAndBigDecimal(Blackhole bh) {
+        StringBuilder sb = new StringBuilder(64);
+        for (String value : values) {
+            sb.setLength(0);
+            if (numericPattern.matcher(value).find()) {
+                if (value.indexOf(".") != -1) {
+                    sb.append(new BigDecimal(value).setScale(4, RoundingMode.HALF_UP).doubleValue());
+                } else {
+                    sb.append(value);
+                }
+            } else {
+                sb.append('"').append(value).append('"');
+            }
+            bh.consume(sb.length());
+        }
+    }
+
+    @Benchmark
+    public void numberScanner(Blackhole bh) {
+        StringBuilder sb = new StringBuilder(64);
+        NumberScanner scanner = new NumberScanner();
+        for (String value : values) {
+            sb.setLength(0);
+            if (scanner.scan(value) && scanner.isSimpleNumber()) {
+                if (scanner.getDotCount() != 0) {
+                    if (!scanner.appendScaledDouble(sb, 4, RoundingMode.HALF_UP)) {
+                        sb.append(new BigDecimal(value).setScale(4, RoundingMode.HALF_UP).doubleValue());
+                    }
+                } else {
+                    sb.append(value);
+                }
+            } else {
+                sb.append('"').append(value).append('"');
+            }
+            bh.consume(sb.length());
+        }
+    }
+}
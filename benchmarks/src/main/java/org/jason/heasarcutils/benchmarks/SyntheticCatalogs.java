@@ -0,0 +1,220 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.catalogparser.util.ConfigParser;
+import org.jason.heasarcutils.catalogparser.util.TdatFieldCache;
+import org.jason.heasarcutils.tdat2json.Tdat2JsonBenchmarkAccess;
+import org.jason.heasarcutils.vizier2json.Vizier2Json;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The synthetic catalogs the benchmarks run on: bsc, hd and tycho2 (TDAT, shaped after their real HEASARC
+ * headers) and gc (DAT, shaped after its vizier.xml layout), each at its real row count unless asked for
+ * fewer. Also hands out each converter's own configuration for them, pointed at the synthetic file where the
+ * converter would otherwise go and download the real one, so nothing here ever touches the network.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class SyntheticCatalogs {
+
+    private SyntheticCatalogs() {}
+
+    /**
+     * @param catalogName bsc, hd, tycho2 or gc
+     * @return true for the TDAT ones
+     */
+    public static boolean isTdat(String catalogName) {
+        return !catalogName.equals("gc");
+    }
+
+    /**
+     * @param catalogName bsc, hd, tycho2 or gc
+     * @return number of rows in the real catalog
+     */
+    public static int getRows(String catalogName) {
+        if (catalogName.equals("bsc")) {
+            return 9110;
+        } else if (catalogName.equals("hd")) {
+            return 272150;
+        } else if (catalogName.equals("tycho2")) {
+            return SyntheticTdat.TYCHO2_ROWS;
+        } else if (catalogName.equals("gc")) {
+            return 33342;
+        }
+        throw new IllegalArgumentException("No synthetic catalog called " + catalogName);
+    }
+
+    /**
+     * @param catalogName bsc, hd or tycho2
+     * @return the column layout
+     * @throws IOException if the real header can't be read
+     */
+    public static SyntheticTdat.Column[] getColumns(String catalogName) throws IOException {
+        if (catalogName.equals("tycho2")) {
+            return SyntheticTdat.TYCHO2;
+        }
+        return SyntheticTdat.fromHeader(getTableName(catalogName));
+    }
+
+    /**
+     * @param catalogName bsc, hd or tycho2
+     * @return the field names, in line[1] order
+     * @throws IOException if the real header can't be read
+     */
+    public static String[] getFieldNames(String catalogName) throws IOException {
+        return getNames(getColumns(catalogName));
+    }
+
+    /**
+     * Get (creating if necessary) a synthetic catalog file: a .tdat for the TDAT catalogs, a gzipped .dat
+     * for gc
+     *
+     * @param catalogName bsc, hd, tycho2 or gc
+     * @param rows        number of rows, 0 or less for as many as the real catalog has
+     * @return the File
+     * @throws IOException if the file can't be written
+     */
+    public static File getFile(String catalogName, int rows) throws IOException {
+        if (rows <= 0) {
+            rows = getRows(catalogName);
+        }
+        if (isTdat(catalogName)) {
+            return SyntheticTdat.getFile(getTableName(catalogName), getColumns(catalogName), rows);
+        }
+        return SyntheticDat.getFile(getVizierCatalog(catalogName), rows);
+    }
+
+    /**
+     * The first data lines of a catalog, for the benchmarks that work on one line at a time
+     *
+     * @param catalogName bsc, hd, tycho2 or gc
+     * @param count       number of lines. Fewer come back if the catalog doesn't have that many.
+     * @return the lines, without line terminators
+     * @throws IOException if the file can't be written or read
+     */
+    public static String[] getLines(String catalogName, int count) throws IOException {
+        if (!isTdat(catalogName)) {
+            return SyntheticDat.lines(getVizierCatalog(catalogName), Math.min(count, getRows(catalogName)));
+        }
+
+        List<String> lines = new ArrayList<String>(count);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(getFile(catalogName, 0)), "US-ASCII"), 1 << 16);
+        try {
+            boolean data = false;
+            String line;
+            while (lines.size() < count && (line = reader.readLine()) != null) {
+                if (line.equals("<END>")) {
+                    break;
+                } else if (data) {
+                    lines.add(line);
+                } else if (line.equals("<DATA>")) {
+                    data = true;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * @param catalogName bsc, hd or tycho2
+     * @return tdat2json's configuration for the catalog
+     */
+    public static Map<String, Object> getTdat2JsonConfig(String catalogName) {
+        return Tdat2JsonBenchmarkAccess.parseCatalogXml(catalogName);
+    }
+
+    /**
+     * @param catalogName gc
+     * @return vizier2json's layout for the catalog, still pointing at the real file
+     * @throws IOException if vizier.xml can't be read
+     */
+    public static org.jason.heasarcutils.vizier2json.Catalog getVizierCatalog(String catalogName) throws IOException {
+        InputStream in = Vizier2Json.class.getResourceAsStream("/vizier.xml");
+        try {
+            return Vizier2Json.parseConfig(in).get(catalogName);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to read vizier.xml: " + e.getMessage());
+        } catch (SAXException e) {
+            throw new IOException("Unable to read vizier.xml: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * catalogparser's configuration for a catalog, pointing at a synthetic file. The TDAT field names come out
+     * of the headers catalogparser ships with instead of the remote ones.
+     *
+     * @param catalogName bsc, hd, tycho2 or gc
+     * @param file        the synthetic file, see getFile()
+     * @return the Catalog
+     * @throws IOException if config.xml can't be read
+     */
+    public static org.jason.heasarcutils.catalogparser.util.Catalog getCatalogParserCatalog(String catalogName,
+                                                                                          File file)
+            throws IOException {
+        TdatFieldCache fields = new TdatFieldCache(new File(file.getParentFile(), "bench-" + TdatFieldCache.FILE_NAME)) {
+            @Override
+            public synchronized String[] getFieldNames(String headerUrl) {
+                // .../heasarc_bsc5p.hdr.gz -> bsc5p
+                int start = headerUrl.lastIndexOf("heasarc_");
+                if (start != -1 && headerUrl.endsWith(".hdr.gz")) {
+                    try {
+                        return getNames(SyntheticTdat.fromHeader(
+                                headerUrl.substring(start + "heasarc_".length(), headerUrl.length() - 7)));
+                    } catch (IOException e) {
+                        // not shipped with catalogparser
+                    }
+                }
+                // not one of ours, and not worth a download
+                return new String[0];
+            }
+        };
+
+        InputStream in = ConfigParser.class.getResourceAsStream("/config.xml");
+        org.jason.heasarcutils.catalogparser.util.Catalog catalog;
+        try {
+            catalog = new ConfigParser("config.xml", fields).getCatalogs(in).get(catalogName);
+        } finally {
+            in.close();
+        }
+        catalog.setUrl(file.getPath());
+        return catalog;
+    }
+
+    private static String[] getNames(SyntheticTdat.Column[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getName();
+        }
+        return names;
+    }
+
+    private static String getTableName(String catalogName) {
+        return catalogName.equals("bsc") ? "bsc5p" : catalogName;
+    }
+}
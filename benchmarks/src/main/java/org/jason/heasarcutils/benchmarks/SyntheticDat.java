@@ -0,0 +1,118 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.vizier2json.Catalog;
+import org.jason.heasarcutils.vizier2json.FieldData;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates deterministic fixed-width (DAT) lines that fit a catalog layout out of vizier.xml, the DAT
+ * counterpart of SyntheticTdat. Prefixed fields get zero-padded catalog numbers, everything else gets a
+ * right-aligned number (with a decimal point, if there's room), and about one field in ten is left blank.
+ * Gzipped files are cached in java.io.tmpdir next to the synthetic TDATs.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class SyntheticDat {
+
+    private SyntheticDat() {}
+
+    /**
+     * Generate lines in memory
+     *
+     * @param catalog the catalog layout
+     * @param count   number of lines
+     * @return the lines, all blank-padded out to the end of the last field like the CDS files are
+     */
+    public static String[] lines(Catalog catalog, int count) {
+        int width = 0;
+        for (FieldData field : catalog.getFieldData().values()) {
+            width = Math.max(width, field.getEnd());
+        }
+
+        Random random = new Random(SyntheticTdat.SEED);
+        String[] lines = new String[count];
+        char[] line = new char[width];
+        for (int i = 0; i < count; i++) {
+            Arrays.fill(line, ' ');
+            for (Map.Entry<String, FieldData> entry : catalog.getFieldData().entrySet()) {
+                int start = entry.getValue().getStart() - 1;
+                int end = entry.getValue().getEnd();
+                if (random.nextInt(10) == 0) {
+                    // blank
+                    continue;
+                }
+                if (catalog.getPrefixes().containsKey(entry.getKey())) {
+                    // zero-padded catalog number
+                    for (int j = start; j < end; j++) {
+                        line[j] = (char) ('0' + random.nextInt(j - start < 2 ? 2 : 10));
+                    }
+                } else {
+                    // right-aligned number with a decimal point in it, if there's room for one
+                    int length = 1 + random.nextInt(end - start);
+                    for (int j = end - length; j < end; j++) {
+                        line[j] = (char) ('0' + random.nextInt(10));
+                    }
+                    if (length > 3) {
+                        line[end - 2] = '.';
+                    }
+                }
+            }
+            lines[i] = new String(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Get (creating if necessary) a gzipped synthetic DAT file, like the ones Vizier serves
+     *
+     * @param catalog the catalog layout
+     * @param rows    number of lines
+     * @return the File
+     * @throws IOException if the file can't be written
+     */
+    public static File getFile(Catalog catalog, int rows) throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "heasarcutils-bench");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File file = new File(dir, "vizier_" + catalog.getName() + "-" + rows + ".dat.gz");
+        if (!file.isFile()) {
+            File temp = new File(dir, file.getName() + ".tmp");
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(temp), 1 << 16), "US-ASCII"), 1 << 16);
+            try {
+                for (String line : lines(catalog, rows)) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Generates deterministic TDAT files shaped like the real HEASARC dumps, so the benchmarks don't need
+ * network access or a 100+ MB download. Same shape + same row count + same seed = same file, and files are
+ * cached in java.io.tmpdir since writing 2.5 million rows isn't free either.
+ * <p/>
+ * Tycho-2's layout is spelled out below. Any other table's layout can come straight out of its real header
+ * with fromHeader(), using the headers catalogparser ships with.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class SyntheticTdat {
+
+    public static final long SEED = 20111106L;
+
+    /**
+     * Column layout for heasarc_tycho2, taken from the real header (field[...] and line[1])
+     */
+    public static final Column[] TYCHO2 = {
+            new Column("name", "char16", 0, 0, 0.0),
+            new Column("position_flag", "char1", 0, 0, 0.9),
+            new Column("mean_ra", "float8:.8f", 0, 360, 0.1),
+            new Column("mean_dec", "float8:.8f", -90, 90, 0.1),
+            new Column("pm_ra", "float4:.1f", -500, 500, 0.1),
+            new Column("pm_dec", "float4:.1f", -500, 500, 0.1),
+            new Column("mean_ra_error", "int2", 0, 200, 0.1),
+            new Column("mean_dec_error", "int2", 0, 200, 0.1),
+            new Column("pm_ra_error", "float4:.1f", 0, 10, 0.1),
+            new Column("pm_dec_error", "float4:.1f", 0, 10, 0.1),
+            new Column("mean_ra_epoch", "float4:.2f", 1990, 1992, 0.1),
+            new Column("mean_dec_epoch", "float4:.2f", 1990, 1992, 0.1),
+            new Column("num_positions", "int2", 2, 40, 0.0),
+            new Column("gof_mean_ra", "float4:.1f", 0, 5, 0.1),
+            new Column("gof_mean_dec", "float4:.1f", 0, 5, 0.1),
+            new Column("gof_pm_ra", "float4:.1f", 0, 5, 0.1),
+            new Column("gof_pm_dec", "float4:.1f", 0, 5, 0.1),
+            new Column("bt_mag", "float8:.3f", 2, 16, 0.02),
+            new Column("bt_mag_error", "float8:.3f", 0, 1, 0.02),
+            new Column("vt_mag", "float8:.3f", 2, 16, 0.01),
+            new Column("vt_mag_error", "float8:.3f", 0, 1, 0.01),
+            new Column("proximity", "int2", 3, 999, 0.0),
+            new Column("tycho1_star", "char1", 0, 0, 0.6),
+            new Column("hip_number", "int4", 1, 120404, 0.96),
+            new Column("ccdm_components", "char3", 0, 0, 0.99),
+            new Column("ra", "float8:.8f", 0, 360, 0.0),
+            new Column("dec", "float8:.8f", -90, 90, 0.0),
+            new Column("lii", "float8:.8f", 0, 360, 0.0),
+            new Column("bii", "float8:.8f", -90, 90, 0.0),
+            new Column("observed_ra", "float8:.8f", 0, 360, 0.0),
+            new Column("observed_dec", "float8:.8f", -90, 90, 0.0),
+            new Column("observed_ra_epoch", "float4:.2f", 1990, 1992, 0.0),
+            new Column("observed_dec_epoch", "float4:.2f", 1990, 1992, 0.0),
+            new Column("observed_ra_error", "float4:.1f", 0, 200, 0.0),
+            new Column("observed_dec_error", "float4:.1f", 0, 200, 0.0),
+            new Column("solution_type", "char1", 0, 0, 0.9),
+            new Column("ra_dec_corr", "float4:.1f", -1, 1, 0.0)
+    };
+
+    public static final int TYCHO2_ROWS = 2539913;
+
+    // field[ra] = float8:.5f_degree [pos.eq.ra;meta.main] (key) // Right Ascension
+    private static final Pattern FIELD_PATTERN = Pattern.compile(
+            "field\\[(.+?)\\] = (char|int|float)(\\d*)(?::\\d*\\.(\\d+)f)?\\S*\\s*(?:\\[(.*?)\\])?\\s*(\\(key\\))?");
+    private static final Pattern LINE_PATTERN = Pattern.compile("line\\[1\\] = (.*)");
+
+    private SyntheticTdat() {}
+
+    /**
+     * Work out a column layout from a real TDAT header on the classpath. Names, order, types, widths and
+     * decimals come from the header. The value ranges are guessed from the UCD (or the name, for the older
+     * headers that don't have one): positions get degrees, magnitudes and colors get star-like numbers, and
+     * everything but the key fields is blank now and then.
+     *
+     * @param tableName name of the table, without the heasarc_ prefix (bsc5p, hd, ...)
+     * @return the columns, in line[1] order
+     * @throws IOException if there's no such header, or it has no line[1]
+     */
+    public static Column[] fromHeader(String tableName) throws IOException {
+        String resource = "/heasarc_" + tableName + ".hdr.gz";
+        InputStream in = SyntheticTdat.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new FileNotFoundException(resource);
+        }
+
+        Map<String, Column> fields = new HashMap<String, Column>();
+        String[] order = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), "US-ASCII"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = FIELD_PATTERN.matcher(line);
+                if (matcher.lookingAt()) {
+                    fields.put(matcher.group(1), newColumn(matcher));
+                    continue;
+                }
+                matcher = LINE_PATTERN.matcher(line);
+                if (matcher.matches()) {
+                    order = matcher.group(1).trim().split("\\s+");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (order == null) {
+            throw new IOException("No line[1] in " + resource);
+        }
+
+        List<Column> columns = new ArrayList<Column>();
+        for (String name : order) {
+            Column column = fields.get(name);
+            columns.add(column != null ? column : new Column(name, "char8", 0, 0, 0.1));
+        }
+        return columns.toArray(new Column[columns.size()]);
+    }
+
+    private static Column newColumn(Matcher matcher) {
+        String name = matcher.group(1);
+        String type = matcher.group(2);
+        String width = matcher.group(3);
+        String decimals = matcher.group(4);
+        String ucd = (matcher.group(5) == null) ? "" : matcher.group(5);
+        double empty = (matcher.group(6) != null) ? 0.0 : 0.1;
+
+        if (type.equals("char")) {
+            return new Column(name, "char" + width, 0, 0, empty);
+        }
+        if (type.equals("int")) {
+            double max = "2".equals(width) ? 999 : 999999;
+            return new Column(name, "int" + width, 0, max, empty);
+        }
+
+        if (decimals == null) {
+            // no format in the header, so print about as much as a float4/float8 holds
+            decimals = "8".equals(width) ? "6" : "3";
+        }
+        String format = "float" + width + ":." + decimals + "f";
+        if (ucd.contains("pos.eq.ra") || ucd.contains("pos.galactic.lon") || name.equals("ra")
+                || name.equals("lii")) {
+            return new Column(name, format, 0, 360, empty);
+        } else if (ucd.contains("pos.eq.dec") || ucd.contains("pos.galactic.lat") || name.equals("dec")
+                || name.equals("bii")) {
+            return new Column(name, format, -90, 90, empty);
+        } else if (ucd.contains("phot.color")) {
+            return new Column(name, format, -0.5, 2, empty);
+        } else if (ucd.contains("phot.mag") || name.contains("mag")) {
+            return new Column(name, format, -1.5, 15, empty);
+        } else if (ucd.contains("pos.pm")) {
+            return new Column(name, format, -1, 1, empty);
+        } else if (ucd.contains("pos.parallax")) {
+            return new Column(name, format, 0, 0.8, empty);
+        }
+        return new Column(name, format, -1, 1, empty);
+    }
+
+    /**
+     * Get (creating if necessary) a synthetic TDAT file
+     *
+     * @param tableName name of the table, without the heasarc_ prefix
+     * @param columns   column layout
+     * @param rows      number of data rows
+     * @return the File
+     * @throws IOException if the file can't be written
+     */
+    public static File getFile(String tableName, Column[] columns, int rows) throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "heasarcutils-bench");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File file = new File(dir, "heasarc_" + tableName + "-" + rows + ".tdat");
+        if (!file.isFile()) {
+            File temp = new File(dir, file.getName() + ".tmp");
+            write(temp, tableName, columns, rows);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+        }
+        return file;
+    }
+
+    private static void write(File file, String tableName, Column[] columns, int rows) throws IOException {
+        Random random = new Random(SEED);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"), 1 << 16);
+        try {
+            writer.write("<HEADER>\n");
+            writer.write("table_name = heasarc_" + tableName + "\n");
+            writer.write("#\n");
+            StringBuilder line1 = new StringBuilder("line[1] =");
+            for (Column column : columns) {
+                writer.write("field[" + column.name + "] = " + column.format + "  // synthetic\n");
+                line1.append(' ').append(column.name);
+            }
+            writer.write("#\n");
+            writer.write(line1.append('\n').toString());
+            writer.write("#\n<DATA>\n");
+
+            StringBuilder row = new StringBuilder(512);
+            for (int i = 0; i < rows; i++) {
+                row.setLength(0);
+                for (Column column : columns) {
+                    column.appendValue(row, random, i);
+                    row.append('|');
+                }
+                row.append('\n');
+                writer.append(row);
+            }
+            writer.write("<END>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * One column of a synthetic table. Format uses the TDAT field[] syntax (char16, int4, float8:.3f, ...)
+     */
+    public static class Column {
+
+        private final String name;
+        private final String format;
+        private final char type;
+        private final int width;
+        private final int decimals;
+        private final double min;
+        private final double max;
+        private final double emptyFraction;
+
+        public Column(String name, String format, double min, double max, double emptyFraction) {
+            this.name = name;
+            this.format = format;
+            this.type = format.charAt(0);
+            int colon = format.indexOf(':');
+            String digits = format.substring(type == 'c' ? 4 : (type == 'i' ? 3 : 5), colon == -1 ? format.length() : colon);
+            this.width = digits.length() > 0 ? Integer.parseInt(digits) : 8;
+            this.decimals = colon == -1 ? 0 : Integer.parseInt(format.substring(colon + 2, format.length() - 1));
+            this.min = min;
+            this.max = max;
+            this.emptyFraction = emptyFraction;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        void appendValue(StringBuilder sb, Random random, int row) {
+            if (random.nextDouble() < emptyFraction) {
+                return;
+            }
+            switch (type) {
+                case 'i':
+                    sb.append((long) (min + random.nextDouble() * (max - min)));
+                    break;
+                case 'f':
+                    double value = min + random.nextDouble() * (max - min);
+                    if (value < 0) {
+                        sb.append('-');
+                        value = -value;
+                    }
+                    long scale = 1;
+                    for (int i = 0; i < decimals; i++) {
+                        scale *= 10;
+                    }
+                    long scaled = Math.round(value * scale);
+                    sb.append(scaled / scale);
+                    if (decimals > 0) {
+                        sb.append('.');
+                        String fraction = Long.toString(scaled % scale);
+                        for (int i = fraction.length(); i < decimals; i++) {
+                            sb.append('0');
+                        }
+                        sb.append(fraction);
+                    }
+                    break;
+                default:
+                    if (width > 3) {
+                        // looks like an identifier, e.g. "TYC 1234-567-1"
+                        sb.append(Character.toUpperCase(name.charAt(0))).append(' ').append(row + 1);
+                        sb.append('-').append(random.nextInt(1000));
+                    } else {
+                        for (int i = 0; i < width; i++) {
+                            sb.append((char) ('A' + random.nextInt(26)));
+                        }
+                    }
+            }
+        }
+    }
+}
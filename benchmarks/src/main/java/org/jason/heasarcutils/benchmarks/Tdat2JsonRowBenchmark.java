@@ -0,0 +1,141 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
+import org.jason.heasarcutils.tdat2json.ExclusionPlan;
+import org.jason.heasarcutils.tdat2json.Tdat2JsonBenchmarkAccess;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tdat2json's per-row work on synthetic bsc, hd and Tycho-2 rows, using each catalog's own (catalog).xml:
+ * processPerCatalogExclusions() on rows that are already cut into maps, versus the compiled ExclusionPlan
+ * (which gets the raw line, so it's also scanning it and making the Strings), and convertRow(), which is the
+ * whole line-to-JSON trip (scan, exclusions, format) minus the disk. The "rows" counter in the output is
+ * rows/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar Tdat2JsonRowBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class Tdat2JsonRowBenchmark {
+
+    @Param({"bsc", "hd", "tycho2"})
+    public String catalogName;
+
+    @Param({"100000"})
+    public int lines;
+
+    private String[] data;
+    private String[] fieldNames;
+    private Map<String, Object> config;
+    private List<Map<String, String>> rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = SyntheticCatalogs.getLines(catalogName, lines);
+        fieldNames = SyntheticCatalogs.getFieldNames(catalogName);
+        config = SyntheticCatalogs.getTdat2JsonConfig(catalogName);
+
+        // same maps convertRow() builds
+        rows = new ArrayList<Map<String, String>>(data.length);
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (int i = 0; i < data.length; i++) {
+            scanner.scan(data[i]);
+            Map<String, String> row = new LinkedHashMap<String, String>();
+            rows.add(row);
+            for (int j = 0; j < scanner.getFieldCount(); j++) {
+                row.put(fieldNames[j], scanner.getString(j));
+            }
+        }
+    }
+
+    /**
+     * Counts rows so JMH can report rows/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void processPerCatalogExclusions(RowCounter counter, Blackhole bh) {
+        for (Map<String, String> row : rows) {
+            bh.consume(Tdat2JsonBenchmarkAccess.processPerCatalogExclusions(row, config));
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public void exclusionPlan(RowCounter counter, Blackhole bh) {
+        ExclusionPlan plan = ExclusionPlan.compile(fieldNames, config);
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (String line : data) {
+            if (!scanner.scan(line)) {
+                continue;
+            }
+            for (ExclusionPlan.Step step : plan.getSteps(scanner)) {
+                if (!step.isPresent(scanner)) {
+                    continue;
+                }
+                bh.consume(step.getKey());
+                bh.consume(step.getValue(scanner));
+            }
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public void convertRow(RowCounter counter, Blackhole bh) throws IOException {
+        DiscardChannel channel = new DiscardChannel();
+        JsonRecordWriter writer = new JsonRecordWriter(channel, JsonRecordWriter.DEFAULT_BUFFER_SIZE);
+        ExclusionPlan plan = ExclusionPlan.compile(fieldNames, config);
+        TdatRowScanner rowScanner = new TdatRowScanner();
+        NumberScanner numberScanner = new NumberScanner();
+        StringBuilder numberText = new StringBuilder(32);
+        for (String line : data) {
+            if (Tdat2JsonBenchmarkAccess.convertRow(line, plan, rowScanner, numberScanner, numberText, writer, null, null)) {
+                counter.rows++;
+            }
+        }
+        writer.close();
+        bh.consume(channel.getBytes());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Rows/sec for the old regex + split() row handling versus TdatRowScanner, over synthetic bsc, hd and Tycho-2
+ * shaped files (as many rows as the real catalogs by default). The "rows" counter in the output is the number
+ * to look at.
+ *
+ * Run with: java -jar target/benchmarks.jar TdatRowScannerBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TdatRowScannerBenchmark {
+
+    @Param({"bsc", "hd", "tycho2"})
+    public String catalogName;
+
+    // 0 for as many as the real catalog has
+    @Param({"0"})
+    public int rows;
+
+    private File file;
+
+    // what every converter used to compile (or worse, have String.matches() compile) for each row
+    private final Pattern dataPattern = Pattern.compile("^(.*?\\|)*$");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticCatalogs.getFile(catalogName, rows);
+    }
+
+    /**
+     * Counts data rows so JMH can report rows/sec instead of files/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void regexAndSplit(RowCounter counter, Blackhole bh) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (dataPattern.matcher(line).lookingAt()) {
+                    String[] parts = line.split("\\|");
+                    bh.consume(parts);
+                    counter.rows++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public void rowScanner(RowCounter counter, Blackhole bh) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16);
+        TdatRowScanner scanner = new TdatRowScanner();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (scanner.scan(line)) {
+                    for (int i = 0; i < scanner.getFieldCount(); i++) {
+                        bh.consume(scanner.getEnd(i));
+                    }
+                    counter.rows++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Worst case for the scanner: every single field gets turned into a String, like split() does
+     */
+    @Benchmark
+    public void rowScannerAllStrings(RowCounter counter, Blackhole bh) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16);
+        TdatRowScanner scanner = new TdatRowScanner();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (scanner.scan(line)) {
+                    for (int i = 0; i < scanner.getFieldCount(); i++) {
+                        bh.consume(scanner.getString(i));
+                    }
+                    counter.rows++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.vizier2json.Catalog;
+import org.jason.heasarcutils.vizier2json.FieldSlices;
+import org.jason.heasarcutils.vizier2json.Vizier2Json;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * vizier2json's JSON formatting on synthetic gc lines: convertToJson() on records that are already cut into
+ * maps (one String per line, the way it's always been called), versus writeRecord() straight off the
+ * FieldSlices, which is what parseCatalog() does. Cutting the lines up on its own is in FieldSlicesBenchmark.
+ * The "rows" counter in the output is rows/sec.
+ *
+ * Run with: java -jar target/benchmarks.jar Vizier2JsonRowBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class Vizier2JsonRowBenchmark {
+
+    @Param({"gc"})
+    public String catalogName;
+
+    @Param({"200000"})
+    public int lines;
+
+    private String[] data;
+    private Catalog catalog;
+    private List<Map<String, String>> records;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = SyntheticCatalogs.getVizierCatalog(catalogName);
+        data = SyntheticDat.lines(catalog, lines);
+
+        records = new ArrayList<Map<String, String>>(data.length);
+        FieldSlices slices = new FieldSlices(catalog);
+        StringBuilder value = new StringBuilder(64);
+        for (int i = 0; i < data.length; i++) {
+            slices.cut(data[i]);
+            Map<String, String> record = new LinkedHashMap<String, String>();
+            records.add(record);
+            for (int j = 0; j < slices.getFieldCount(); j++) {
+                if (slices.isPresent(j)) {
+                    value.setLength(0);
+                    record.put(slices.getName(j), slices.appendTo(data[i], j, value).toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts rows so JMH can report rows/sec instead of passes/sec
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void convertToJson(RowCounter counter, Blackhole bh) {
+        Vizier2Json v2j = new Vizier2Json();
+        for (Map<String, String> record : records) {
+            bh.consume(v2j.convertToJson(record));
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public void writeRecord(RowCounter counter, Blackhole bh) throws IOException {
+        Vizier2Json v2j = new Vizier2Json();
+        FieldSlices slices = new FieldSlices(catalog);
+        DiscardChannel channel = new DiscardChannel();
+        JsonRecordWriter writer = new JsonRecordWriter(channel, JsonRecordWriter.DEFAULT_BUFFER_SIZE);
+        for (String line : data) {
+            v2j.writeRecord(slices, line, writer);
+            counter.rows++;
+        }
+        writer.close();
+        bh.consume(channel.getBytes());
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.benchmarks;
+
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.DoubleColumn;
+import org.jason.heasarcutils.common.column.ZoneIndex;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cone searches over a synthetic Tycho-2 with the zone index, against scanning the ra and dec columns for the
+ * same cone, plus what building the index costs. The cones are spread evenly over the sky. Times are per
+ * search (or per build).
+ *
+ * Run with: java -jar target/benchmarks.jar ZoneIndexBenchmark
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ZoneIndexBenchmark {
+
+    @Param({"500000"})
+    public int rows;
+
+    // 1 arcminute, 0.1 and 1 degree
+    @Param({"0.0166667", "0.1", "1"})
+    public double radius;
+
+    private ColumnarCatalog catalog;
+    private ZoneIndex index;
+    private double[] ras;
+    private double[] decs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = ColumnarCatalog.read("tycho2",
+                TdatHeader.read(SyntheticCatalogs.getFile("tycho2", rows), MappedLineReader.CHARSET));
+        index = catalog.getZoneIndex();
+
+        Random random = new Random(42);
+        ras = new double[1024];
+        decs = new double[ras.length];
+        for (int i = 0; i < ras.length; i++) {
+            ras[i] = random.nextDouble() * 360;
+            decs[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+        }
+    }
+
+    @Benchmark
+    public int[] coneSearch() {
+        int i = next++ & (ras.length - 1);
+        return index.coneSearch(ras[i], decs[i], radius);
+    }
+
+    @Benchmark
+    public int scan() {
+        int i = next++ & (ras.length - 1);
+        DoubleColumn ra = catalog.getDoubleColumn("ra");
+        DoubleColumn dec = catalog.getDoubleColumn("dec");
+        int found = 0;
+        for (int row = 0; row < catalog.getRowCount(); row++) {
+            if (ZoneIndex.distance(ras[i], decs[i], ra.getDouble(row), dec.getDouble(row)) <= radius) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ZoneIndex build() {
+        return ZoneIndex.build(catalog);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2json;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.stats.StageClock;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lets the benchmarks call Tdat2Json's package-private row methods. It lives in the benchmarks module, so
+ * none of this is part of tdat2json's own API.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public final class Tdat2JsonBenchmarkAccess {
+
+    private Tdat2JsonBenchmarkAccess() {}
+
+    /**
+     * @see Tdat2Json#parseCatalogXml(String)
+     */
+    public static Map<String, Object> parseCatalogXml(String catalogName) {
+        return Tdat2Json.parseCatalogXml(catalogName);
+    }
+
+    /**
+     * @see Tdat2Json#processPerCatalogExclusions(Map, Map)
+     */
+    public static Map<String, String> processPerCatalogExclusions(Map<String, String> map,
+                                                                  Map<String, Object> configuration) {
+        return Tdat2Json.processPerCatalogExclusions(map, configuration);
+    }
+
+    /**
+     * @see Tdat2Json#convertRow(CharSequence, ExclusionPlan, TdatRowScanner, NumberScanner, StringBuilder,
+     *      JsonRecordWriter, StageClock.Lap, StageClock.Lap)
+     */
+    public static boolean convertRow(CharSequence line, ExclusionPlan plan, TdatRowScanner rowScanner,
+                                     NumberScanner numberScanner, StringBuilder numberText, JsonRecordWriter writer,
+                                     StageClock.Lap parse, StageClock.Lap filter) throws IOException {
+        return Tdat2Json.convertRow(line, plan, rowScanner, numberScanner, numberText, writer, parse, filter);
+    }
+}
@@ -21,6 +21,7 @@ import com.google.inject.Provides;
 import org.jason.heasarcutils.catalogparser.misc.ConfigMap;
 import org.jason.heasarcutils.catalogparser.util.ConfigParser;
 import org.jason.heasarcutils.catalogparser.util.io.DataManager;
+import org.jason.heasarcutils.catalogparser.util.io.ImportJobManager;
 
 import javax.inject.Singleton;
 
@@ -39,9 +40,12 @@ public class CatalogModule extends AbstractModule {
         bind(EventBus.class).in(Singleton.class);
 
         bind(DataManager.class).asEagerSingleton();
+        bind(ImportJobManager.class).asEagerSingleton();
     }
 
+    // one ConfigMap for the whole app, so config.xml (and any TDAT headers) only get read once
     @Provides
+    @Singleton
     ConfigMap provideConfig() {
         ConfigMap config = new ConfigMap();
         config.putAll(new ConfigParser("config.xml").getCatalogs());
@@ -82,6 +82,13 @@ public class EditorPanel extends JPanel {
             sb.append(line);
             sb.append("\n");
         }
-        textArea.setText(sb.toString());
+
+        // this shows up on an import thread once the import is done, so update the text area on the EDT
+        final String text = sb.toString();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                textArea.setText(text);
+            }
+        });
     }
 }
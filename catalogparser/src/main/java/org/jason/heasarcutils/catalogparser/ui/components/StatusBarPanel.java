@@ -20,11 +20,16 @@ import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.jason.heasarcutils.catalogparser.misc.JStatusBar;
+import org.jason.heasarcutils.catalogparser.ui.event.ProcessCatalogEvent;
 import org.jason.heasarcutils.catalogparser.ui.event.statusBar.SetStatusBarTextEvent;
 import org.jason.heasarcutils.catalogparser.ui.event.statusBar.UpdateStatusBarEvent;
+import org.jason.heasarcutils.catalogparser.util.io.ImportJob;
+import org.jason.heasarcutils.catalogparser.util.io.ImportJobManager;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 /**
  * Represents the status bar at the bottom of the UI
@@ -36,17 +41,23 @@ import java.awt.*;
 @Singleton
 public class StatusBarPanel extends JPanel{
 
+    // how often the import progress gets sampled, in ms (10 times a second)
+    private static final int PROGRESS_INTERVAL = 100;
+
     private EventBus eventBus;
+    private ImportJobManager importJobManager;
 
     private JStatusBar statusBar;
+    private Timer progressTimer;
 
     public StatusBarPanel() {
         init();
     }
 
     @Inject
-    public StatusBarPanel(EventBus eventBus) {
+    public StatusBarPanel(EventBus eventBus, ImportJobManager importJobManager) {
         this.eventBus = eventBus;
+        this.importJobManager = importJobManager;
 
         init();
     }
@@ -58,15 +69,102 @@ public class StatusBarPanel extends JPanel{
         statusBar = new JStatusBar();
         statusBar.setPreferredSize(new Dimension(600,25));
         add(statusBar);
+
+        progressTimer = new Timer(PROGRESS_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showImportProgress();
+            }
+        });
     }
 
+    /**
+     * Start sampling the import progress when an import gets queued. The timer stops itself once
+     * there's nothing left to import.
+     *
+     * @param e ProcessCatalogEvent
+     */
+    @Subscribe
+    public void startProgressTimer(ProcessCatalogEvent e) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (!progressTimer.isRunning()) {
+                    progressTimer.start();
+                }
+            }
+        });
+    }
+
+    /**
+     * Show the progress of the running imports. Runs on the EDT from the timer, so the import threads never
+     * have to wait on Swing.
+     */
+    private void showImportProgress() {
+
+        if (importJobManager == null) {
+            progressTimer.stop();
+            return;
+        }
+
+        ImportJob shown = null;
+        int running = 0;
+        int queued = 0;
+        for (ImportJob job : importJobManager.getJobs()) {
+            if (!job.isStarted()) {
+                queued++;
+            } else {
+                running++;
+                if (shown == null) {
+                    shown = job;
+                }
+            }
+        }
+
+        if (running == 0 && queued == 0) {
+            progressTimer.stop();
+            statusBar.setStatusBarProgressFinished();
+            return;
+        }
+        if (shown == null) {
+            // everything is still downloading or waiting for a thread, the status text says what's going on
+            return;
+        }
+
+        StringBuilder msg = new StringBuilder();
+        long records = shown.getRecords();
+        int total = shown.getCatalog().getTotalRecords();
+        msg.append(shown.getCatalog().getName()).append(": ").append(records);
+        if (total > 0) {
+            msg.append(" of ").append(total);
+        }
+        msg.append(" records, ").append(shown.getRowsPerSecond()).append("/sec");
+        long eta = shown.getSecondsRemaining();
+        if (eta >= 0) {
+            msg.append(", ").append(eta / 60).append(":").append(eta % 60 < 10 ? "0" : "").append(eta % 60).append(" left");
+        }
+        if (running + queued > 1) {
+            msg.append(" (").append(running + queued - 1).append(" more)");
+        }
+
+        statusBar.setStatusBarProgress(msg.toString(), 0, Math.max(total, 1), (int) Math.min(records, total));
+    }
+
+    // imports post these from background threads, so the actual updates get handed to the EDT
+
     @Subscribe
-    public void updateStatusBarText(SetStatusBarTextEvent e) {
-        statusBar.setText(e.getText());
+    public void updateStatusBarText(final SetStatusBarTextEvent e) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                statusBar.setText(e.getText());
+            }
+        });
     }
 
     @Subscribe
-    public void updateStatusBarProgress(UpdateStatusBarEvent e) {
-        statusBar.setStatusBarProgress(e.getMessage(), e.getMin(), e.getMax(), e.getValue());
+    public void updateStatusBarProgress(final UpdateStatusBarEvent e) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                statusBar.setStatusBarProgress(e.getMessage(), e.getMin(), e.getMax(), e.getValue());
+            }
+        });
     }
 }
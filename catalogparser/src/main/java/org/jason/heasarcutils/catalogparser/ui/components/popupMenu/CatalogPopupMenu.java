@@ -19,10 +19,11 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import org.jason.heasarcutils.catalogparser.misc.ConfigMap;
+import org.jason.heasarcutils.catalogparser.ui.event.CancelImportEvent;
 import org.jason.heasarcutils.catalogparser.ui.event.ProcessCatalogEvent;
-import org.jason.heasarcutils.catalogparser.ui.event.RequestCatalogLinesEvent;
 import org.jason.heasarcutils.catalogparser.ui.event.ShowContextPopupEvent;
 import org.jason.heasarcutils.catalogparser.util.Catalog;
+import org.jason.heasarcutils.catalogparser.util.io.ImportJobManager;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -39,6 +40,7 @@ public class CatalogPopupMenu extends JPopupMenu {
 
     private EventBus eventBus;
     private ConfigMap config;
+    private ImportJobManager importJobManager;
 
     /**
      * Empty constructor, do NOT directly instantiate this. Guice will be mad.
@@ -48,13 +50,15 @@ public class CatalogPopupMenu extends JPopupMenu {
     /**
      * Guice'd constructor, w/ injected fields
      *
-     * @param config     ConfigMap holding the catalog configurations
-     * @param eventBus   Guava EventBus singleton
+     * @param config           ConfigMap holding the catalog configurations
+     * @param eventBus         Guava EventBus singleton
+     * @param importJobManager ImportJobManager singleton, to find out what's being imported
      */
     @Inject
-    public CatalogPopupMenu(ConfigMap config, EventBus eventBus) {
+    public CatalogPopupMenu(ConfigMap config, EventBus eventBus, ImportJobManager importJobManager) {
         this.config = config;
         this.eventBus = eventBus;
+        this.importJobManager = importJobManager;
 
         init();
 
@@ -89,21 +93,36 @@ public class CatalogPopupMenu extends JPopupMenu {
         // get the text of the object
         final String text = (String) node.getUserObject();
 
-        // Create menu item and set its listener
-        JMenuItem importItem = new JMenuItem("Import");
-        importItem.addActionListener(new AbstractAction() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                // get the catalog
-                Catalog catalog = config.get(text);
-                // fire the event to process the catalog
-                eventBus.post(new ProcessCatalogEvent(catalog));
-                eventBus.post(new RequestCatalogLinesEvent(catalog));
-            }
-        });
+        // get the catalog. The "Catalogs" node at the top isn't one.
+        final Catalog catalog = config.get(text);
+        if (catalog == null) {
+            return;
+        }
+
+        // Create menu item and set its listener. Imports run in the background, so while one is going
+        // the menu offers to cancel it instead.
+        JMenuItem item;
+        if (importJobManager.isImporting(catalog)) {
+            item = new JMenuItem("Cancel Import");
+            item.addActionListener(new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    eventBus.post(new CancelImportEvent(catalog));
+                }
+            });
+        } else {
+            item = new JMenuItem("Import");
+            item.addActionListener(new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    // fire the event to process the catalog. The editor gets the lines once it's done.
+                    eventBus.post(new ProcessCatalogEvent(catalog));
+                }
+            });
+        }
 
         // add the item to the popup menu
-        add(importItem);
+        add(item);
 
         // show the popup menu at the designated location
         this.show(e.getComponent(), e.getX(), e.getY());
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.ui.event;
+
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+
+/**
+ * Fired to stop an import that's running in the background
+ *
+ * @since 0.2.1
+ * @author Jason Ferguson
+ */
+public class CancelImportEvent implements ApplicationEvent {
+
+    private Catalog catalog;
+
+    public CancelImportEvent(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+}
@@ -15,8 +15,12 @@
  */
 package org.jason.heasarcutils.catalogparser.util;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Represents configuration data for a single astronomical catalog
@@ -38,6 +42,9 @@ public class Catalog implements Serializable {
     private Map<String, FieldData> fieldData = new LinkedHashMap<String, FieldData>();
     private Set<FieldData> fieldDataSet = new TreeSet<FieldData>(new FieldDataStartFieldComparator());
 
+    // TDAT header still being read in the background, if there is one
+    private transient volatile Future<?> pendingFields;
+
     public String getName() {
         return name;
     }
@@ -119,4 +126,35 @@ public class Catalog implements Serializable {
         this.fieldDataSet = fieldDataSet;
     }
 
+    public void setPendingFields(Future<?> pendingFields) {
+        this.pendingFields = pendingFields;
+    }
+
+    /**
+     * Wait for the field names from the TDAT header, if they're still being read in the background. Has to be
+     * called before anything looks at getFieldData() on a TDAT catalog.
+     *
+     * @throws IOException if the header couldn't be read (the cause is whatever went wrong in the background), or
+     *                     the wait was interrupted. The catalog only has the configured fields then, so don't
+     *                     import it.
+     */
+    public void awaitFields() throws IOException {
+        Future<?> pending = pendingFields;
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+            pendingFields = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioe = new InterruptedIOException("Interrupted waiting for the fields of " + name);
+            ioe.initCause(e);
+            throw ioe;
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Unable to read the fields of " + name + ": " + e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
 }
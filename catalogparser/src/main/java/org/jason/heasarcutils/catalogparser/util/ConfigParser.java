@@ -16,23 +16,25 @@
 package org.jason.heasarcutils.catalogparser.util;
 
 import org.jason.heasarcutils.catalogparser.misc.ConfigurationParseException;
+import org.jason.heasarcutils.common.io.DownloadCache;
+import org.jason.heasarcutils.common.io.ReadAheadInputStream;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
@@ -47,10 +49,20 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
  */
 public class ConfigParser {
 
+    // headers that aren't in the field cache get read on a few background threads
+    private static final int HEADER_THREADS = 4;
+
     private String configFile;
+    private TdatFieldCache fieldCache;
+    private ExecutorService headerExecutor;
 
     public ConfigParser(String configFile) {
+        this(configFile, TdatFieldCache.getDefault());
+    }
+
+    public ConfigParser(String configFile, TdatFieldCache fieldCache) {
         this.configFile = "classes" + System.getProperty("file.separator") + configFile;
+        this.fieldCache = fieldCache;
     }
 
     /**
@@ -59,11 +71,26 @@ public class ConfigParser {
      * @return  a Map containing catalog names mapped to the corresponding Catalog objects
      */
     public Map<String, Catalog> getCatalogs() {
+        return getCatalogs(new InputSource(new File(configFile).toURI().toString()));
+    }
+
+    /**
+     * Same as getCatalogs(), but reads the configuration from a stream instead of the config file. The stream
+     * is left open.
+     *
+     * @param in the configuration XML
+     * @return a Map containing catalog names mapped to the corresponding Catalog objects
+     */
+    public Map<String, Catalog> getCatalogs(InputStream in) {
+        return getCatalogs(new InputSource(in));
+    }
+
+    private Map<String, Catalog> getCatalogs(InputSource source) {
         Map<String, Catalog> catalogMap = new HashMap<String, Catalog>();
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
             DocumentBuilder db = dbf.newDocumentBuilder();
-            Document document = db.parse(new File(configFile)); // TODO: This should probably use getResourceAsStream
+            Document document = db.parse(source);
             NodeList catalogNodes = document.getElementsByTagName("catalog");
             for (int i = 0; i < catalogNodes.getLength(); i++) {
                 Element catalogNode = (Element) catalogNodes.item(i);
@@ -76,10 +103,29 @@ public class ConfigParser {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            // the header tasks already submitted still run, this just lets the threads go away afterwards
+            if (headerExecutor != null) {
+                headerExecutor.shutdown();
+                headerExecutor = null;
+            }
         }
         return catalogMap;
     }
 
+    private ExecutorService getHeaderExecutor() {
+        if (headerExecutor == null) {
+            headerExecutor = Executors.newFixedThreadPool(HEADER_THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "tdat-header");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return headerExecutor;
+    }
+
     /**
      * Create a single Catalog object from an Element representing a <catalog> tag
      *
@@ -116,8 +162,8 @@ public class ConfigParser {
     }
 
     /**
-     * Create a Buffered Reader based on a GZipInputStream, since there isn't any sort of
-     * GZipReader class)
+     * Create a Buffered Reader based on a pipelined gunzip (ReadAheadInputStream), since there isn't any sort
+     * of GZipReader class)
      *
      * @param fileUrl String representing the URL of the remote file
      * @return a BufferedReader from the URL
@@ -125,22 +171,21 @@ public class ConfigParser {
      */
     private BufferedReader createGzipReader(String fileUrl) throws IOException {
 
-        GZIPInputStream gzis = new GZIPInputStream(createInputStream(fileUrl));
-        InputStreamReader isr = new InputStreamReader(gzis, "UTF-8");
+        InputStreamReader isr = new InputStreamReader(ReadAheadInputStream.gunzip(createInputStream(fileUrl)), "UTF-8");
 
         return new BufferedReader(isr);
     }
 
     /**
-     * Create an InputStream from a String representing a remote URL
+     * Create an InputStream from a String representing a remote URL. The file comes out of the download
+     * cache, so it's only fetched again when the server has a newer one.
      *
      * @param urlLocation String representing the URL of the remote file
-     * @return an InputStream from the remote file
+     * @return an InputStream from the cached copy of the remote file
      * @throws IOException thrown when something goes wrong creating a reader
      */
     private InputStream createInputStream(String urlLocation) throws IOException {
-        URL url = new URL(urlLocation);
-        return url.openStream();
+        return new BufferedInputStream(new FileInputStream(DownloadCache.getDefault().get(urlLocation)));
     }
 
 
@@ -286,26 +331,50 @@ public class ConfigParser {
         }
 
         /**
-         * TDAT specific  implementation of processFields
+         * TDAT specific  implementation of processFields. The field names come from the field cache if
+         * they've been read before, otherwise the header gets read in the background and the catalog is
+         * finished off when it's done (see Catalog.awaitFields()).
          */
         @Override
         public void processFields() {
 
-            thisCatalog.setHeaderUrl(getTextValue(catalogNode, "headerUrl"));
+            final String headerUrl = getTextValue(catalogNode, "headerUrl");
+            thisCatalog.setHeaderUrl(headerUrl);
             Set<FieldData> fieldDataSet = getFieldData2(catalogNode);
             for (FieldData fd : fieldDataSet) {
                 thisCatalog.getFieldData().put(fd.getName(), fd);
             }
-            String[] fields = getFieldNamesFromTdatHeader(thisCatalog.getHeaderUrl());
+            final List<FieldData> included = new ArrayList<FieldData>(thisCatalog.getFieldDataSet());
+
+            String[] fields = fieldCache.getFieldNames(headerUrl);
+            if (fields != null) {
+                addHeaderFields(fields, included);
+                return;
+            }
+
+            thisCatalog.setPendingFields(getHeaderExecutor().submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    // anything thrown here comes back out of Catalog.awaitFields()
+                    String[] fields = getFieldNamesFromTdatHeader(headerUrl);
+                    if (fields == null) {
+                        throw new IOException("No field names found in " + headerUrl);
+                    }
+                    fieldCache.putFieldNames(headerUrl, fields);
+                    addHeaderFields(fields, included);
+                    return null;
+                }
+            }));
+        }
+
+        private void addHeaderFields(String[] fields, List<FieldData> included) {
 
             for (String field : fields) {
                 thisCatalog.getFieldData().put(field, new FieldData(false));
             }
 
-            for (FieldData fd : thisCatalog.getFieldDataSet()) {
+            for (FieldData fd : included) {
                 thisCatalog.getFieldData().put(fd.getName(), fd);
             }
-
         }
 
         /**
@@ -313,9 +382,10 @@ public class ConfigParser {
          * within that file
          *
          * @param headerFile String representing location of the header file
-         * @return String array containing the fields defined by the tdat header
+         * @return String array containing the fields defined by the tdat header, or null if there's no line[1]
+         * @throws IOException if the header can't be downloaded or read
          */
-        private String[] getFieldNamesFromTdatHeader(String headerFile) {
+        private String[] getFieldNamesFromTdatHeader(String headerFile) throws IOException {
 
             BufferedReader reader = null;
             String linePattern = "line\\[1\\] = (.*)";
@@ -334,8 +404,6 @@ public class ConfigParser {
                     }
 
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             } finally {
                 closeQuietly(reader);
             }
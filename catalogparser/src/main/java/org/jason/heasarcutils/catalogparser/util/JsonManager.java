@@ -15,12 +15,19 @@
  */
 package org.jason.heasarcutils.catalogparser.util;
 
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.ReadAheadInputStream;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageClock;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
+
 import java.io.*;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Class to handle the export to JSON
@@ -34,6 +41,8 @@ import java.util.zip.GZIPInputStream;
 public class JsonManager {
 
     private Catalog catalog;
+    private final NumberScanner numberScanner = new NumberScanner();
+    private final StringBuilder numberText = new StringBuilder(32);
 
     public JsonManager getJsonManager() {
         return this;
@@ -46,19 +55,32 @@ public class JsonManager {
 
     /**
      * Method to determine what type of catalog is being imported and call the appropriate import method.
+     * Prints where the time went once it's done. Nothing is exported if the TDAT header couldn't be read.
      */
     public void exportToJSON() {
 
+        try {
+            catalog.awaitFields();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
         System.out.println("Exporting " + catalog.getName());
+        ImportStats stats = new ImportStats(catalog.getName()).register();
         if (catalog.getType().equals("tdat")) {
             // import tdat file
             String filename = catalog.getUrl();
-            importTdatFile(filename);
+            importTdatFile(filename, stats);
         } else {
             // import dat file
             String filename = catalog.getUrl();
-            importDatFile(filename);
+            importDatFile(filename, stats);
         }
+        stats.addBytesIn(stats.stage(ImportStats.FETCH).getBytes());
+        stats.addBytesOut(JsonRecordWriter.getFile(catalog.getName(), JsonRecordWriter.isGzipByDefault()).length());
+        stats.finish();
+        stats.printSummary(System.out);
 
     }
 
@@ -66,8 +88,9 @@ public class JsonManager {
      * Import a TDAT file
      *
      * @param fileURL String representing the URL of the file to import
+     * @param stats   where the timings go
      */
-    private void importTdatFile(String fileURL) {
+    private void importTdatFile(String fileURL, ImportStats stats) {
 
         String filename = getFilename(fileURL) + ".gz";
 
@@ -75,36 +98,58 @@ public class JsonManager {
             URL url = new URL(fileURL);
 
             // set up input
-            BufferedReader reader = getReader(fileURL);
+            BufferedReader reader = getReader(fileURL, stats);
 
             // set up output
-            BufferedWriter writer = new BufferedWriter(new FileWriter(catalog.getName() + ".json"));
+            JsonRecordWriter writer = JsonRecordWriter.open(catalog.getName(), JsonRecordWriter.isGzipByDefault());
+            writer.setWriteStage(stats.stage(ImportStats.WRITE));
+
+            StageClock clock = stats.newClock();
+            StageClock.Lap read = clock.lap(ImportStats.READ, ImportStats.INPUT_WAIT);
+            StageClock.Lap parse = clock.lap(ImportStats.PARSE);
+            StageClock.Lap filter = clock.lap(ImportStats.FILTER);
+            StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+            clock.start();
 
             // start processing
+            TdatRowScanner scanner = new TdatRowScanner();
+            String[] fieldNames = catalog.getFieldData().keySet().toArray(new String[]{});
+            long rows = 0;
+            long dropped = 0;
             while (reader.ready()) {
                 String line = reader.readLine();
-                if (!line.matches("^(.*?\\|)*$")) {
+                read.end();
+                if (!scanner.scan(line)) {
+                    parse.end();
+                    dropped++;
                     continue;
                 }
                 Map<String, String> result = new HashMap<String, String>();
-                String[] fieldNames = catalog.getFieldData().keySet().toArray(new String[]{});
-                String[] fieldValues = line.split("\\|");
 
-                for (int i = 0; i < fieldValues.length; i++) {
+                for (int i = 0; i < scanner.getFieldCount(); i++) {
                     FieldData fd = catalog.getFieldData().get(fieldNames[i]);
                     if (catalog.getFieldDataSet().contains(fd)) {
-                        result.put(fieldNames[i], fieldValues[i]);
+                        result.put(fieldNames[i], scanner.getString(i));
                     }
                 }
+                parse.end();
 
                 result = removeNulls(result);
                 result = removeUnwantedFields(result, catalog);
                 result = fixFieldPrefixes(result, catalog);
                 result = fixFieldNames(result, catalog);
+                filter.end();
 
-                writer.write(getJsonLine(result));
+                writeRecord(result, writer);
+                format.end();
 
+                rows++;
+                if (rows % 10000 == 0) {
+                    stats.setRows(rows, dropped);
+                }
             }
+            clock.stop();
+            stats.setRows(rows, dropped);
 
             writer.close();
             reader.close();
@@ -116,15 +161,23 @@ public class JsonManager {
         }
     }
 
-    private void importDatFile(String filename) {
+    private void importDatFile(String filename, ImportStats stats) {
 
         try {
             URL url = new URL(filename);
             // set up the data input
-            BufferedReader reader = getReader(filename);
+            BufferedReader reader = getReader(filename, stats);
 
             // set up the data output
-            BufferedWriter writer = new BufferedWriter(new FileWriter(catalog.getName() + ".json"));
+            JsonRecordWriter writer = JsonRecordWriter.open(catalog.getName(), JsonRecordWriter.isGzipByDefault());
+            writer.setWriteStage(stats.stage(ImportStats.WRITE));
+
+            StageClock clock = stats.newClock();
+            StageClock.Lap read = clock.lap(ImportStats.READ, ImportStats.INPUT_WAIT);
+            StageClock.Lap parse = clock.lap(ImportStats.PARSE);
+            StageClock.Lap filter = clock.lap(ImportStats.FILTER);
+            StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+            clock.start();
 
             // create a template so I only have to create a map once
             Map<String, String> template = new LinkedHashMap<String, String>(catalog.getFieldData().size());
@@ -132,8 +185,10 @@ public class JsonManager {
                 template.put(fieldName, null);
             }
 
+            long rows = 0;
             while (reader.ready()) {
                 String line = reader.readLine();
+                read.end();
                 Map<String, String> fieldMap = template;
                 for (String key : catalog.getFieldData().keySet()) {
                     FieldData fd = catalog.getFieldData().get(key);
@@ -143,13 +198,23 @@ public class JsonManager {
                         fieldMap.put(key, line.substring(fd.getStart() - 1, fd.getEnd()).trim());
                     }
                 }
+                parse.end();
 
                 fieldMap = removeNulls(fieldMap);
                 fieldMap = fixFieldNames(fieldMap, catalog);
                 fieldMap = fixFieldPrefixes(fieldMap, catalog);
-                writer.write(getJsonLine(fieldMap));
+                filter.end();
+                writeRecord(fieldMap, writer);
+                format.end();
                 //line = reader.readLine();
+
+                rows++;
+                if (rows % 10000 == 0) {
+                    stats.setRows(rows, 0);
+                }
             }
+            clock.stop();
+            stats.setRows(rows, 0);
 
             writer.close();
 
@@ -162,7 +227,7 @@ public class JsonManager {
         }
     }
 
-    private BufferedReader getReader(final String fileUrl) throws IOException {
+    private BufferedReader getReader(final String fileUrl, ImportStats stats) throws IOException {
         final String filename = getFilename(fileUrl) + ".gz";
         final URL url = new URL(fileUrl);
         final InputStream stream;
@@ -172,7 +237,7 @@ public class JsonManager {
         } else {
             stream = url.openStream();
         }
-        final GZIPInputStream gzipStream = new GZIPInputStream(stream);
+        final InputStream gzipStream = ReadAheadInputStream.gunzip(stream, stats);
         final InputStreamReader gzipStreamReader =
             new InputStreamReader(gzipStream, "UTF-8");
         final BufferedReader reader = new BufferedReader(gzipStreamReader);
@@ -269,54 +334,46 @@ public class JsonManager {
         return result;
     }
 
-    private String getJsonLine(Map<String, String> data) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("{");
+    private void writeRecord(Map<String, String> data, JsonRecordWriter writer) throws IOException {
+        writer.beginRecord();
         for (String key : data.keySet()) {
-            sb.append(key);
-            sb.append(":");
-            if (isNumber(data.get(key))) {
-                if (isInteger(data.get(key))) {
-                    sb.append(new Integer(data.get(key).trim()));
-                } else {
-                    BigDecimal number = new BigDecimal(data.get(key).trim());
+            writer.bareName(key);
+            String value = data.get(key);
+            if (value != null && numberScanner.scan(value) && isNumber(numberScanner)) {
+                numberText.setLength(0);
+                if (isInteger(numberScanner)) {
+                    if (!numberScanner.appendInt(numberText)) {
+                        numberText.append(new Integer(value.trim()));
+                    }
+                } else if (!numberScanner.appendScaled(numberText, 4, RoundingMode.HALF_EVEN)) {
+                    BigDecimal number = new BigDecimal(value.trim());
                     number = number.setScale(4, BigDecimal.ROUND_HALF_EVEN);
-                    sb.append(number);
+                    numberText.append(number);
                 }
+                writer.number(numberText);
             } else {
-                sb.append("\"");
-                sb.append(data.get(key));
-                sb.append("\"");
+                writer.string(String.valueOf(value));
             }
-            sb.append(",");
         }
-        sb = new StringBuffer(sb.substring(0, sb.length() - 1)); // stupid trailing comma
-        sb.append("}\r\n");
-
-        return sb.toString();
+        writer.endRecord();
     }
 
     protected String getFilename(String url) {
         return url.substring(url.lastIndexOf('/') + 1, url.lastIndexOf('.'));
     }
 
-    private boolean isInteger(String value) {
-        if (value == null) {
-            return false;
-        }
-        String pattern = "^\\s*[\\+,-]?[0-9]+$";
-        return value.matches(pattern);
+    // same as ^\s*[\+,-]?[0-9]+$
+    private boolean isInteger(NumberScanner scanned) {
+        return scanned.getSignCount() <= 1 && scanned.getIntegerDigits() > 0 && scanned.getDotCount() == 0
+                && scanned.getFractionDigits() == 0 && !scanned.hasExponent();
     }
 
-    private boolean isDouble(String value) {
-        if (value == null) {
-            return false;
-        }
-        String pattern = "^\\s*[\\+,-]?[0-9]*\\.[0-9]*$";
-        return value.matches(pattern);
+    // same as ^\s*[\+,-]?[0-9]*\.[0-9]*$
+    private boolean isDouble(NumberScanner scanned) {
+        return scanned.getSignCount() <= 1 && scanned.getDotCount() == 1 && !scanned.hasExponent();
     }
 
-    private boolean isNumber(String value) {
-        return (isInteger(value) || isDouble(value));
+    private boolean isNumber(NumberScanner scanned) {
+        return (isInteger(scanned) || isDouble(scanned));
     }
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util;
+
+import org.jason.heasarcutils.common.io.DownloadCache;
+
+import java.io.*;
+import java.util.Properties;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Remembers the field names from the line[1] of each TDAT header, so the headers don't have to be downloaded
+ * and unzipped every time the app starts. Stored as a properties file (header URL = space separated field
+ * names) in the download cache directory.
+ * <p/>
+ * Only remote headers are remembered. Local ones are cheap to read and might get edited, so they're always
+ * read fresh. Delete the file to make it read the remote headers again.
+ *
+ * @author Jason Ferguson
+ * @since 0.2.1
+ */
+public class TdatFieldCache {
+
+    public static final String FILE_NAME = "tdat-fields.properties";
+
+    private final File file;
+    private final Properties fields = new Properties();
+
+    public TdatFieldCache(File file) {
+        this.file = file;
+        if (file.isFile()) {
+            InputStream is = null;
+            try {
+                is = new FileInputStream(file);
+                fields.load(is);
+            } catch (IOException e) {
+                // unreadable cache is the same as no cache, the headers just get read again
+                fields.clear();
+            } finally {
+                closeQuietly(is);
+            }
+        }
+    }
+
+    /**
+     * @return the cache in the default download cache directory
+     */
+    public static TdatFieldCache getDefault() {
+        return new TdatFieldCache(new File(DownloadCache.getDefault().getDirectory(), FILE_NAME));
+    }
+
+    /**
+     * Get the remembered field names for a header
+     *
+     * @param headerUrl location of the header file
+     * @return the field names, or null if they haven't been read yet (or the header is a local file)
+     */
+    public synchronized String[] getFieldNames(String headerUrl) {
+        if (headerUrl == null || isLocal(headerUrl)) {
+            return null;
+        }
+        String value = fields.getProperty(headerUrl);
+        return (value == null) ? null : value.split("\\s");
+    }
+
+    /**
+     * Remember the field names for a header and write the cache file
+     *
+     * @param headerUrl  location of the header file
+     * @param fieldNames field names from line[1]
+     */
+    public synchronized void putFieldNames(String headerUrl, String[] fieldNames) {
+        if (headerUrl == null || fieldNames == null || isLocal(headerUrl)) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String fieldName : fieldNames) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(fieldName);
+        }
+        fields.setProperty(headerUrl, sb.toString());
+
+        OutputStream os = null;
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory()) {
+                dir.mkdirs();
+            }
+            os = new FileOutputStream(file);
+            fields.store(os, "TDAT header field names");
+        } catch (IOException e) {
+            // not the end of the world, they'll get read from the header again next time
+            System.out.println("Unable to write " + file + ": " + e.getMessage());
+        } finally {
+            closeQuietly(os);
+        }
+    }
+
+    private static boolean isLocal(String location) {
+        return location.startsWith("file:") || location.indexOf("://") == -1;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util.io;
+
+/**
+ * One line of a DAT (fixed width) file, cut up into its configured fields. The record keeps its own copy of
+ * the line's characters plus the start and end of each (trimmed) value in two int arrays, so no Strings get
+ * made until somebody asks for a value.
+ * <p/>
+ * A record is meant to be reused: cut() the next line into the same one, on the same thread. Since it has its
+ * own copy of the characters it doesn't care what happens to the line afterwards (a MappedLineReader line
+ * is only good until the next readLine()). To hand a record over to another thread or stage, copy() it and
+ * hand over the copy, which has nothing in common with the original except the (read-only) column layout.
+ * <p/>
+ * Get one from RecordPlan.newDatRecord(). Fields are in the same order as the plan's DAT fields.
+ *
+ * @author Jason Ferguson
+ * @since 0.2.1
+ */
+public class DatRecord {
+
+    // column layout, 0-based start and exclusive end like substring(). Shared with copies, never changed.
+    private final int[] columnStarts;
+    private final int[] columnEnds;
+    private final int width;
+
+    private char[] chars;
+
+    // where each trimmed value is in chars
+    private final int[] starts;
+    private final int[] ends;
+
+    DatRecord(int[] columnStarts, int[] columnEnds) {
+        this.columnStarts = columnStarts;
+        this.columnEnds = columnEnds;
+        int width = 0;
+        for (int end : columnEnds) {
+            width = Math.max(width, end);
+        }
+        this.width = width;
+        this.chars = new char[width];
+        this.starts = new int[columnStarts.length];
+        this.ends = new int[columnStarts.length];
+    }
+
+    private DatRecord(DatRecord record) {
+        this.columnStarts = record.columnStarts;
+        this.columnEnds = record.columnEnds;
+        this.width = record.width;
+        this.chars = record.chars.clone();
+        this.starts = record.starts.clone();
+        this.ends = record.ends.clone();
+    }
+
+    /**
+     * Cut a line into this record, replacing whatever was in it
+     *
+     * @param line the line. Only looked at during the call.
+     * @throws IndexOutOfBoundsException if the line ends before one of the fields does, same as substring()
+     *                                   used to. The record is left as it was.
+     */
+    public void cut(CharSequence line) {
+        int length = line.length();
+        for (int i = 0; i < columnStarts.length; i++) {
+            if (columnStarts[i] < 0 || columnEnds[i] > length || columnStarts[i] > columnEnds[i]) {
+                throw new IndexOutOfBoundsException("start: " + columnStarts[i] + ", end: " + columnEnds[i]
+                        + ", length: " + length);
+            }
+        }
+
+        // nothing past the last field is needed
+        int copy = Math.min(length, width);
+        if (line instanceof String) {
+            ((String) line).getChars(0, copy, chars, 0);
+        } else {
+            for (int i = 0; i < copy; i++) {
+                chars[i] = line.charAt(i);
+            }
+        }
+
+        for (int i = 0; i < columnStarts.length; i++) {
+            // same as trim()
+            int start = columnStarts[i];
+            int end = columnEnds[i];
+            while (start < end && chars[start] <= ' ') {
+                start++;
+            }
+            while (end > start && chars[end - 1] <= ' ') {
+                end--;
+            }
+            starts[i] = start;
+            ends[i] = end;
+        }
+    }
+
+    /**
+     * @return a record with the same values that can be handed to another thread. Cutting another line into
+     *         this one afterwards doesn't change the copy.
+     */
+    public DatRecord copy() {
+        return new DatRecord(this);
+    }
+
+    public int getFieldCount() {
+        return starts.length;
+    }
+
+    public boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    public int getLength(int field) {
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * @param field the field
+     * @return the trimmed value, a new String every time
+     */
+    public String getString(int field) {
+        return new String(chars, starts[field], ends[field] - starts[field]);
+    }
+
+    /**
+     * Append a trimmed value to a StringBuilder
+     *
+     * @param field the field
+     * @param sb    where the value goes
+     * @return sb
+     */
+    public StringBuilder appendTo(int field, StringBuilder sb) {
+        return sb.append(chars, starts[field], ends[field] - starts[field]);
+    }
+
+    /**
+     * Same as getString(field).contains(s), without making the String
+     *
+     * @param field the field
+     * @param s     what to look for
+     * @return true if the value contains s
+     */
+    public boolean contains(int field, String s) {
+        int length = s.length();
+        int last = ends[field] - length;
+        for (int i = starts[field]; i <= last; i++) {
+            int j = 0;
+            while (j < length && chars[i + j] == s.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
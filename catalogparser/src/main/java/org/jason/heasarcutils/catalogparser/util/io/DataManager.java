@@ -20,19 +20,23 @@ import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.jason.heasarcutils.catalogparser.ui.event.RequestCatalogLinesEvent;
-import org.jason.heasarcutils.catalogparser.ui.event.ProcessCatalogEvent;
 import org.jason.heasarcutils.catalogparser.ui.event.SendCatalogLinesEvent;
-import org.jason.heasarcutils.catalogparser.ui.event.statusBar.SetStatusBarTextEvent;
-import org.jason.heasarcutils.catalogparser.ui.event.statusBar.UpdateStatusBarEvent;
 import org.jason.heasarcutils.catalogparser.util.Catalog;
-import org.jason.heasarcutils.catalogparser.util.FieldData;
+import org.jason.heasarcutils.common.io.DownloadCache;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.io.LineReaders;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageClock;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
 
 import java.io.*;
 import java.math.BigDecimal;
-import java.net.URL;
+import java.math.RoundingMode;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CancellationException;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
@@ -40,13 +44,15 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
  * Utility class to manage the application data
  *
  * The only way this class should be accessed is via its eventhandler methods, which are annotated
- * with the Guava @Subscribe annotation. This class is also configured to be an eager singleton in
- * the Application Module so that it is initialized once at startup.
+ * with the Guava @Subscribe annotation, and by ImportJobManager, which runs importCatalog() off the EDT.
+ * This class is also configured to be an eager singleton in the Application Module so that it is
+ * initialized once at startup.
  *
  * This class is also my first attempt at implementing a ImportStrategy pattern. The processing for
  * TDAT and DAT files is slightly different, so I created the following:
  *
- * - ImportStrategy - interface for different implementations of processLine(String)
+ * - ImportStrategy - interface for different implementations of processLine(CharSequence) and
+ *   writeRecord(JsonRecordWriter)
  * - ImportContext - holder class for the strategy
  * - DatImportStrategy - implementation of ImportStrategy to process lines read from a DAT file
  * - TdatImportStrategy - implementation of ImportStrategy to process lines read from a TDAT file
@@ -60,6 +66,9 @@ public class DataManager {
 
     private EventBus eventBus;
 
+    // -Dheasarcutils.output.gzip=true writes (catalog).json.gz instead of (catalog).json
+    private final boolean gzip = JsonRecordWriter.isGzipByDefault();
+
     @Inject
     public DataManager(EventBus eventBus) {
         this.eventBus = eventBus;
@@ -68,66 +77,102 @@ public class DataManager {
     }
 
     /**
-     * Event handler method, which starts the ball rolling when another class fires/posts a
-     * ProcessCatalogEvent
+     * Import a catalog into JSON. ImportJobManager calls this on one of its threads when another class
+     * fires/posts a ProcessCatalogEvent. The catalog configuration is compiled into a RecordPlan here, once,
+     * rather than being re-interpreted for every record.
      *
-     * @param e     ProcessCatalogEvent class
+     * @param catalog Catalog to import
+     * @param job     ImportJob to check for cancellation, or null if it can't be cancelled
+     * @throws IOException something went wrong reading the catalog or writing the JSON
+     * @throws CancellationException if the job was cancelled. The partial JSON file is deleted.
      */
-    @Subscribe
-    public void processCatalog(ProcessCatalogEvent e) {
-
-        Catalog catalog = e.getCatalog();
-        try {
-            eventBus.post(new SetStatusBarTextEvent("Importing " + catalog.getName()));
-            processFile(catalog);
-            eventBus.post(new SetStatusBarTextEvent("Completed import"));
-        } catch (IOException e1) {
-            e1.printStackTrace();
-        }
+    public void importCatalog(Catalog catalog, ImportJob job) throws IOException {
+        catalog.awaitFields();
+        processFile(catalog, RecordPlan.compile(catalog), job);
     }
 
     /**
-     * "Top-level" method which configures the readers
+     * "Top-level" method which configures the readers. Where the time goes (download, reading, parsing,
+     * formatting, writing) is timed into the job's ImportStats, which gets registered over JMX while the import
+     * runs and printed to stdout once it's done.
      *
      * @param catalog Catalog object representing to astronomical catalog to process into JSON
+     * @param plan    RecordPlan compiled from the catalog
+     * @param job     ImportJob to check for cancellation, or null
      * @throws IOException  something went wrong when setting up the reader, writer, or URL
      */
-    private void processFile(Catalog catalog) throws IOException {
+    private void processFile(Catalog catalog, RecordPlan plan, ImportJob job) throws IOException {
 
         String fileUrl = catalog.getUrl();
-        BufferedReader reader = null;
-        BufferedWriter writer = null;
+        LineReader reader = null;
+        JsonRecordWriter writer = null;
 
         // set up a context to determine if we are processing a TDAT or DAT. Yay strategy pattern!
         ImportContext context;
         if (catalog.getType().equalsIgnoreCase("tdat")) {
-            context = new ImportContext(new TdatImportStrategy(catalog));
+            context = new ImportContext(new TdatImportStrategy(plan));
         } else {
-            context = new ImportContext(new DatImportStrategy(catalog));
+            context = new ImportContext(new DatImportStrategy(plan));
         }
+        ImportStats stats = (job != null) ? job.getStats() : new ImportStats(catalog.getName());
+        stats.register();
         try {
-            // technically we could check for GZ, ZIP, or uncompressed files here.
-            if (isGzipFile(fileUrl)) {
-                reader = createGzipReader(fileUrl);
-            }
+            // remote files come out of the download cache, then uncompressed files get memory-mapped and
+            // gzipped ones get a plain reader. TDAT and DAT files are Latin-1, like tdat2json reads them.
+            long start = System.nanoTime();
+            File file = DownloadCache.getDefault().get(fileUrl);
+            stats.stage(ImportStats.DOWNLOAD).add(System.nanoTime() - start, file.length());
+            reader = LineReaders.open(file, MappedLineReader.CHARSET, stats);
             writer = getWriter(catalog.getName());
+            writer.setWriteStage(stats.stage(ImportStats.WRITE));
+
+            // progress goes into the job, the status bar picks it up on its own timer
+            if (job != null) {
+                job.start();
+            }
+
+            StageClock clock = stats.newClock();
+            StageClock.Lap read = clock.lap(ImportStats.READ, ImportStats.INPUT_WAIT);
+            StageClock.Lap parse = clock.lap(ImportStats.PARSE);
+            StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+            clock.start();
 
             int counter = 0;
-            while (reader.ready()) {
-                String line = reader.readLine();
-                Map<String, String> data = context.processLine(line);
-                if (data == null) {
+            int dropped = 0;
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
+                read.end();
+                if (!context.processLine(line)) {
+                    parse.end();
+                    dropped++;
                     continue;
                 }
-                data = filterResults(data, catalog);
-                String jsonLine = getJsonLine(data);
-                writer.write(jsonLine);
+                parse.end();
+                context.writeRecord(writer);
+                format.end();
                 counter++;
-                if (counter % 500 == 0) {
-                    eventBus.post(new UpdateStatusBarEvent("Importing",0,catalog.getTotalRecords(), counter));
+                if (job != null) {
+                    job.setRecords(counter);
+                    if (counter % 500 == 0 && job.isCancelled()) {
+                        throw new CancellationException("Import of " + catalog.getName() + " cancelled");
+                    }
+                }
+                if (counter % 10000 == 0) {
+                    stats.setRows(counter, dropped);
                 }
             }
-            eventBus.post(new UpdateStatusBarEvent("Import complete", 0, catalog.getTotalRecords(), counter));
+            clock.stop();
+            stats.setRows(counter, dropped);
+
+            writer.close();
+            stats.addBytesOut(JsonRecordWriter.getFile(catalog.getName(), gzip).length());
+            stats.finish();
+            stats.printSummary(System.out);
+        } catch (CancellationException e) {
+            // don't leave half a catalog lying around for the editor to show
+            closeQuietly(writer);
+            JsonRecordWriter.getFile(catalog.getName(), gzip).delete();
+            throw e;
         } finally {
             closeQuietly(reader);
             closeQuietly(writer);
@@ -135,252 +180,77 @@ public class DataManager {
 
     }
 
-    /**
-     * Method to process the Map of data (unwanted fields/nulls/prefixes/etc)
-     *
-     * @param results   Map<String, String> to process
-     * @param catalog   Catalog telling how to process the data
-     * @return  processed Map<String, String>
-     */
-    private Map<String, String> filterResults(Map<String, String> results, Catalog catalog) {
-
-        results = removeNulls(results);
-        results = removeUnwantedFields(results, catalog);
-        results = fixFieldPrefixes(results, catalog);
-        results = fixFieldNames(results, catalog);
-
-        return results;
-    }
-
-    /**
-     * Quick and dirty utility method to determine if the file is a gzip file
-     *
-     * @param filename  filename to check
-     * @return  true if the extension is gz, false otherwise
-     */
-    private boolean isGzipFile(String filename) {
-        int dot = filename.lastIndexOf(".");
-        String extension = filename.substring(dot + 1);
-
-        return extension.equalsIgnoreCase("gz");
-    }
-
-    /**
-     * Create a Buffered Reader based on a GZipInputStream, since there isn't any sort of
-     * GZipReader class)
-     *
-     * @param fileUrl   String representing the URL of the remote file
-     * @return  a BufferedReader from the URL
-     * @throws IOException  thrown when something goes wrong creating a reader
-     */
-    private BufferedReader createGzipReader(String fileUrl) throws IOException {
-
-        GZIPInputStream gzis = new GZIPInputStream(createInputStream(fileUrl));
-        InputStreamReader isr = new InputStreamReader(gzis, "UTF-8");
-
-        return new BufferedReader(isr);
-    }
-
-    /**
-     * Create an InputStream from a String representing a remote URL
-     *
-     * @param urlLocation   String representing the URL of the remote file
-     * @return  an InputStream from the remote file
-     * @throws IOException thrown when something goes wrong creating a reader
-     */
-    private InputStream createInputStream(String urlLocation) throws IOException {
-        URL url = new URL(urlLocation);
-        return url.openStream();
-    }
-
     /**
      *
      * @param catalogName   name of catalog, used to determine output file name
-     * @return  BufferedWriter to send output to
+     * @return  JsonRecordWriter to send output to
      * @throws IOException thrown when something goes wrong creating a writer
      */
-    private BufferedWriter getWriter(String catalogName) throws IOException {
-
-        FileWriter writer = new FileWriter(catalogName + ".json");
-        return new BufferedWriter(writer);
+    private JsonRecordWriter getWriter(String catalogName) throws IOException {
+        return JsonRecordWriter.open(catalogName, gzip);
     }
 
     /**
-     * Remove null values from a map.
-     * @param map   Map to remove null values from
-     * @return  Map with null values removed
-     */
-    private Map<String, String> removeNulls(Map<String, String> map) {
-
-        Map<String, String> result = new LinkedHashMap<String, String>();
-
-        for (String key : map.keySet()) {
-            if (map.get(key) != null && map.get(key).length() > 0) {
-                result.put(key, map.get(key));
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Remove unwanted fields from the map based on data from the catalog
+     * Write a value of a record. Determines if a value is a number and if so, doesn't put quotes and rounds
+     * it to 4 decimal places.
      *
-     * @param data  Map to remove unwanted key-value pairs from
-     * @param catalog   Catalog telling how to process the data
-     * @return  Map with the unwanted fields removed
+     * @param value         the value
+     * @param numberScanner NumberScanner owned by the calling thread
+     * @param numberText    StringBuilder to format numbers in
+     * @param writer        JsonRecordWriter to write the value to
+     * @throws IOException if the writer couldn't write
      */
-    private Map<String, String> removeUnwantedFields(Map<String, String> data, Catalog catalog) {
-        Map<String, String> result = new HashMap<String, String>();
-        for (String key : catalog.getFieldData().keySet()) {
-            FieldData fd = catalog.getFieldData().get(key);
-            if (fd.isIncluded()) {
-                if (data.get(key) != null) {
-                    result.put(key, data.get(key));
+    private void writeValue(CharSequence value, NumberScanner numberScanner, StringBuilder numberText,
+                            JsonRecordWriter writer) throws IOException {
+        if (value != null && numberScanner.scan(value) && isNumber(numberScanner)) {
+            numberText.setLength(0);
+            // the scanner does the usual values itself, anything odd still goes through Integer/BigDecimal
+            if (isInteger(numberScanner)) {
+                if (!numberScanner.appendInt(numberText)) {
+                    numberText.append(new Integer(value.toString().trim()));
                 }
+            } else if (!numberScanner.appendScaled(numberText, 4, RoundingMode.HALF_EVEN)) {
+                BigDecimal number = new BigDecimal(value.toString().trim());
+                number = number.setScale(4, BigDecimal.ROUND_HALF_EVEN);
+                numberText.append(number);
             }
-
-        }
-        return result;
-    }
-
-    /**
-     * Determine if the field name needs to be prefixed and do so if necessary
-     *
-     * @param data      Map<String, String> to fix the field names for
-     * @param catalog   Catalog telling how to process the data
-     * @return      Map with prefixes added to field values, as determined by the Catalog object
-     */
-    private Map<String, String> fixFieldPrefixes(Map<String, String> data, Catalog catalog) {
-        Map<String, String> result = new HashMap<String, String>();
-        for (String key : catalog.getFieldData().keySet()) {
-            FieldData fd = catalog.getFieldData().get(key);
-            if (fd.isIncluded()) {
-                if (data.get(key) != null) {
-                    if (fd.getPrefix() != null && data.get(key).contains(fd.getPrefix())) {
-                        result.put(key, fd.getPrefix() + data.get(key));
-                    } else {
-                        result.put(key, data.get(key));
-                    }
-                }
-            }
-
-        }
-
-        return result;
-    }
-
-    /**
-     * Determine if the field needs to be renamed and fix it if necessary
-     *
-     * @param data    Map<String, String> to process the field names for
-     * @param catalog Catalog object stating how to process the names
-     * @return Map<String,String> with renamed fields
-     */
-    private Map<String, String> fixFieldNames(Map<String, String> data, Catalog catalog) {
-        // Set result to be the input value, we'll remove values rather than add
-        Map<String, String> result = data;
-        // loop through the map of field data for the catalog configuration
-        for (String key : catalog.getFieldData().keySet()) {
-            // get the field data for the field identified by the key
-            FieldData fd = catalog.getFieldData().get(key);
-
-            // get the value to rename to
-            String renameValue = fd.getRenameTo();
-
-            // if there is a value to rename to, copy it to a new key representing the renamed value
-            if (renameValue != null && renameValue.length() > 0) {
-                // this is kind of a big-hammer approach, but I don't want to write null values to the
-                // map containing the data, which may be returned from the following statement
-                if (result.get(key) == null) {
-                    continue;
-                }
-
-                result.put(renameValue, data.get(key));
-                // if we don't keep it after the rename, drop the key
-                if (!fd.isKeepAfterCopy()) {
-                    result.remove(key);
-                }
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Convert a Map<String, String> to a line of JSON. Determines if a value is a number and if so,
-     * doesn't put quotes and rounds it to 4 decimal places.
-     *
-     * @param data  Map to convert to a JSON string
-     * @return  String representing the Map in JSON form
-     */
-    private String getJsonLine(Map<String, String> data) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("{");
-        for (String key : data.keySet()) {
-            sb.append(key);
-            sb.append(":");
-            if (isNumber(data.get(key))) {
-                if (isInteger(data.get(key))) {
-                    sb.append(new Integer(data.get(key).trim()));
-                } else {
-                    BigDecimal number = new BigDecimal(data.get(key).trim());
-                    number = number.setScale(4, BigDecimal.ROUND_HALF_EVEN);
-                    sb.append(number);
-                }
-            } else {
-                sb.append("\"");
-                sb.append(data.get(key));
-                sb.append("\"");
-            }
-            sb.append(",");
+            writer.number(numberText);
+        } else {
+            writer.string(value == null ? "null" : value);
         }
-        sb = new StringBuffer(sb.substring(0, sb.length() - 1)); // stupid trailing comma
-        sb.append("}\r\n");
-
-        return sb.toString();
     }
 
     /**
      * Quick and dirty method to determine if a String represents an integer. It's not too robust, but works
-     * for what I need it for.
+     * for what I need it for. Same as ^\s*[\+,-]?[0-9]+$ on the scanned value.
      *
-     * @param value     String to check if is an integer
+     * @param scanned   NumberScanner that just scanned the value
      * @return  true is value represents an integer, false otherwise
      */
-    @SuppressWarnings({"SimplifiableIfStatement"})
-    private boolean isInteger(String value) {
-        if (value == null) {
-            return false;
-        }
-
-        return Pattern.matches("^\\s*[\\+,-]?[0-9]+$", value);
+    private boolean isInteger(NumberScanner scanned) {
+        return scanned.getSignCount() <= 1 && scanned.getIntegerDigits() > 0 && scanned.getDotCount() == 0
+                && scanned.getFractionDigits() == 0 && !scanned.hasExponent();
     }
 
     /**
      * Quick and dirty method to determine if a String represents a double. Not too robust, but works for
-     * what I need
+     * what I need. Same as ^\s*[\+,-]?[0-9]*\.[0-9]*$ on the scanned value.
      *
-     * @param value String to check
+     * @param scanned NumberScanner that just scanned the value
      * @return  true if value represents a double, false otherwise
      */
-    @SuppressWarnings({"SimplifiableIfStatement"})
-    private boolean isDouble(String value) {
-        if (value == null) {
-            return false;
-        }
-
-        return Pattern.matches("^\\s*[\\+,-]?[0-9]*\\.[0-9]*$", value);
+    private boolean isDouble(NumberScanner scanned) {
+        return scanned.getSignCount() <= 1 && scanned.getDotCount() == 1 && !scanned.hasExponent();
     }
 
     /**
      * Quick and dirty method to determine if a string is any type of number, integer or double
      *
-     * @param value String to check
+     * @param scanned NumberScanner that just scanned the value
      * @return  true if String represents a number, false otherwise
      */
-    private boolean isNumber(String value) {
-        return (isInteger(value) || isDouble(value));
+    private boolean isNumber(NumberScanner scanned) {
+        return (isInteger(scanned) || isDouble(scanned));
     }
 
     /**
@@ -397,10 +267,11 @@ public class DataManager {
         int numLines = e.getNumLines();
 
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(catalog.getName() + ".json"));
+            // LineReaders takes care of the .json.gz
+            LineReader reader = LineReaders.open(JsonRecordWriter.getFile(catalog.getName(), gzip), "UTF-8");
             for (int i=0; i<numLines; i++) {
-                String line = reader.readLine();
-                stringList.add(line);
+                CharSequence line = reader.readLine();
+                stringList.add(line == null ? null : line.toString());
             }
 
             reader.close();
@@ -420,12 +291,20 @@ public class DataManager {
     public interface ImportStrategy {
 
         /**
-         * Process a line returned from a file
+         * Process a line returned from a file into the strategy's record, replacing the last one
+         *
+         * @param line  a single line of data. Only valid until the next line is read, so don't hold on to it
+         * @return true if the line held a record, false if it should be skipped
+         */
+        public boolean processLine(CharSequence line);
+
+        /**
+         * Write the record from the last processLine() as a line of JSON
          *
-         * @param line String representing a single line of data
-         * @return a Map<String, String> containing data read from the file matched to it's key
+         * @param writer JsonRecordWriter to write the line to
+         * @throws IOException if the writer couldn't write
          */
-        public Map<String, String> processLine(String line);
+        public void writeRecord(JsonRecordWriter writer) throws IOException;
     }
 
     /**
@@ -439,76 +318,103 @@ public class DataManager {
             this.strategy = strategy;
         }
 
-        public Map<String, String> processLine(String line) {
+        public boolean processLine(CharSequence line) {
             return strategy.processLine(line);
         }
+
+        public void writeRecord(JsonRecordWriter writer) throws IOException {
+            strategy.writeRecord(writer);
+        }
     }
 
     /**
-     * Implementation of ImportStrategy to deal with TDAT files
+     * Implementation of ImportStrategy to deal with TDAT files. The record is a slot array from the RecordPlan,
+     * reused for every line.
      */
     public class TdatImportStrategy implements ImportStrategy {
 
-        private Catalog catalog;
+        private RecordPlan plan;
+        private TdatRowScanner scanner = new TdatRowScanner();
+        private String[] slots;
+        private NumberScanner numberScanner = new NumberScanner();
+        private StringBuilder numberText = new StringBuilder(32);
 
-        public TdatImportStrategy(Catalog catalog) {
-            this.catalog = catalog;
+        public TdatImportStrategy(RecordPlan plan) {
+            this.plan = plan;
+            this.slots = plan.newSlots();
         }
 
         @Override
-        public Map<String, String> processLine(String line) {
+        public boolean processLine(CharSequence line) {
             // make sure the line is a pipe-deliniated set of data
-            if (!line.matches("^(.*?\\|)*$")) {
-                return null;
+            if (!scanner.scan(line)) {
+                return false;
             }
 
-            Map<String, String> result = new HashMap<String, String>();
-            String[] fieldNames = catalog.getFieldData().keySet().toArray(new String[]{});
-            String[] fieldValues = line.split("\\|");
+            Arrays.fill(slots, null);
 
-            for (int i = 0; i < fieldValues.length; i++) {
-                FieldData fd = catalog.getFieldData().get(fieldNames[i]);
-                if (catalog.getFieldDataSet().contains(fd)) {
-                    result.put(fieldNames[i], fieldValues[i]);
+            // only the columns the plan keeps get turned into Strings
+            int count = Math.min(scanner.getFieldCount(), plan.getColumnCount());
+            for (int i = 0; i < count; i++) {
+                if (plan.isAdmitted(i)) {
+                    slots[i] = scanner.getString(i);
                 }
             }
 
-            return result;
+            return true;
+        }
+
+        @Override
+        public void writeRecord(JsonRecordWriter writer) throws IOException {
+            writer.beginRecord();
+            for (RecordPlan.Step step : plan.getSteps(slots)) {
+                // the keys have never been quoted, and mongoimport doesn't mind
+                writer.bareName(step.getKey());
+                writeValue(step.getValue(slots), numberScanner, numberText, writer);
+            }
+            writer.endRecord();
         }
     }
 
     /**
-     * Implementation of ImportStrategy to deal with DAT files
+     * Implementation of ImportStrategy to deal with DAT files. Each line is cut into one DatRecord that gets
+     * reused for the whole file, so nothing is allocated per field until the values are written. The record
+     * belongs to this strategy's thread; to pass a line on to another thread, hand over getRecord().copy().
      */
     public class DatImportStrategy implements ImportStrategy {
 
-        private Catalog catalog;
-        private Map<String, String> template;
+        private RecordPlan plan;
+        private DatRecord record;
+        private StringBuilder value = new StringBuilder(64);
+        private NumberScanner numberScanner = new NumberScanner();
+        private StringBuilder numberText = new StringBuilder(32);
 
-        public DatImportStrategy(Catalog catalog) {
-            this.catalog = catalog;
+        public DatImportStrategy(RecordPlan plan) {
+            this.plan = plan;
+            this.record = plan.newDatRecord();
+        }
 
-            // set up the template
-            this.template = new LinkedHashMap<String, String>(catalog.getFieldData().size());
-            for (String fieldName : catalog.getFieldData().keySet()) {
-                template.put(fieldName, null);
-            }
+        @Override
+        public boolean processLine(CharSequence line) {
+            record.cut(line);
+            return true;
         }
 
         @Override
-        public Map<String, String> processLine(String line) {
-
-            Map<String, String> result = template;
-            for (String key : catalog.getFieldData().keySet()) {
-                FieldData fd = catalog.getFieldData().get(key);
-                if (fd.getPrefix() != null) {
-                    result.put(fd.getRenameTo(), line.substring(fd.getStart() - 1, fd.getEnd()).trim());
-                } else {
-                    result.put(key, line.substring(fd.getStart() - 1, fd.getEnd()).trim());
-                }
+        public void writeRecord(JsonRecordWriter writer) throws IOException {
+            writer.beginRecord();
+            for (RecordPlan.Step step : plan.getSteps(record)) {
+                writer.bareName(step.getKey());
+                writeValue(step.getValue(record, value), numberScanner, numberText, writer);
             }
+            writer.endRecord();
+        }
 
-            return result;
+        /**
+         * @return the record from the last processLine(), only good until the next one
+         */
+        public DatRecord getRecord() {
+            return record;
         }
     }
 }
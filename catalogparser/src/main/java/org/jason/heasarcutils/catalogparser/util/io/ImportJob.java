@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util.io;
+
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+import org.jason.heasarcutils.common.stats.ImportStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single catalog import queued on the ImportJobManager's pool. Cancelling just sets a flag that DataManager
+ * checks as it goes, since neither the download nor reading the file would notice an interrupt anyway.
+ * <p/>
+ * Also holds the import's progress. DataManager bumps the record count as it goes without ever touching
+ * Swing, and the status bar reads it on its own timer. That way the parser never waits on the EDT and the
+ * status bar gets updated ten times a second instead of every 500 records.
+ * <p/>
+ * The per-stage timings and counters go into the job's ImportStats, which DataManager registers over JMX
+ * when the import starts.
+ *
+ * @since 0.2.1
+ * @author Jason Ferguson
+ */
+public class ImportJob {
+
+    private final Catalog catalog;
+    private volatile boolean cancelled;
+
+    private final AtomicLong records = new AtomicLong();
+    // 0 until the records start coming (so the download doesn't count against rows/sec)
+    private volatile long startTime;
+
+    private final ImportStats stats;
+
+    public ImportJob(Catalog catalog) {
+        this.catalog = catalog;
+        this.stats = new ImportStats(catalog.getName());
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Stop the import. If it hasn't started yet it never will, otherwise it stops at the next batch of records.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public ImportStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Called when the first record is about to be read
+     */
+    void start() {
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @param count number of records imported so far
+     */
+    void setRecords(long count) {
+        // nobody needs to see this right away, so skip the memory barrier
+        records.lazySet(count);
+    }
+
+    public boolean isStarted() {
+        return startTime != 0;
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * @return records per second since the import started, 0 if it hasn't
+     */
+    public long getRowsPerSecond() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return getRecords() * 1000 / elapsed;
+    }
+
+    /**
+     * Estimate how long the rest of the import will take, from the rate so far and the catalog's totalRecords
+     *
+     * @return seconds left, or -1 if there's no telling
+     */
+    public long getSecondsRemaining() {
+        long rate = getRowsPerSecond();
+        long remaining = catalog.getTotalRecords() - getRecords();
+        if (rate <= 0 || remaining < 0) {
+            return -1;
+        }
+        return remaining / rate;
+    }
+}
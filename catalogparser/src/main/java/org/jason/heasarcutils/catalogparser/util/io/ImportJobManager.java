@@ -0,0 +1,161 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util.io;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.jason.heasarcutils.catalogparser.ui.event.CancelImportEvent;
+import org.jason.heasarcutils.catalogparser.ui.event.ProcessCatalogEvent;
+import org.jason.heasarcutils.catalogparser.ui.event.RequestCatalogLinesEvent;
+import org.jason.heasarcutils.catalogparser.ui.event.statusBar.SetStatusBarTextEvent;
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs catalog imports on a background pool so neither the Swing EDT nor whoever posted the
+ * ProcessCatalogEvent gets stuck waiting for Tycho-2 to download and convert. A few imports can run at once
+ * (different catalogs, the same catalog twice would fight over the output file), and each one can be
+ * cancelled with a CancelImportEvent.
+ * <p/>
+ * Once an import finishes, a RequestCatalogLinesEvent gets posted so the editor shows the new JSON. Everything
+ * this posts comes from a pool thread, so the Swing components that listen have to hop over to the EDT
+ * themselves.
+ *
+ * @since 0.2.1
+ * @author Jason Ferguson
+ */
+@Singleton
+public class ImportJobManager {
+
+    private static final int IMPORT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private EventBus eventBus;
+    private DataManager dataManager;
+
+    private final ConcurrentMap<String, ImportJob> jobs = new ConcurrentHashMap<String, ImportJob>();
+    private final ExecutorService executor;
+
+    @Inject
+    public ImportJobManager(EventBus eventBus, DataManager dataManager) {
+        this.eventBus = eventBus;
+        this.dataManager = dataManager;
+
+        executor = Executors.newFixedThreadPool(IMPORT_THREADS, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "catalog-import-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        eventBus.register(this);
+    }
+
+    /**
+     * Event handler for ProcessCatalogEvent. Queues the import and returns right away.
+     *
+     * @param e ProcessCatalogEvent
+     */
+    @Subscribe
+    public void processCatalog(ProcessCatalogEvent e) {
+        submit(e.getCatalog());
+    }
+
+    /**
+     * Event handler for CancelImportEvent
+     *
+     * @param e CancelImportEvent
+     */
+    @Subscribe
+    public void cancelImport(CancelImportEvent e) {
+        ImportJob job = jobs.get(e.getCatalog().getName());
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Queue a catalog import
+     *
+     * @param catalog the catalog to import
+     * @return the job, or null if that catalog is already being imported
+     */
+    public ImportJob submit(final Catalog catalog) {
+
+        final ImportJob job = new ImportJob(catalog);
+        if (jobs.putIfAbsent(catalog.getName(), job) != null) {
+            eventBus.post(new SetStatusBarTextEvent(catalog.getName() + " is already being imported"));
+            return null;
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    runJob(job);
+                } finally {
+                    jobs.remove(catalog.getName(), job);
+                }
+            }
+        });
+
+        return job;
+    }
+
+    private void runJob(ImportJob job) {
+
+        Catalog catalog = job.getCatalog();
+        try {
+            if (job.isCancelled()) {
+                throw new CancellationException();
+            }
+            eventBus.post(new SetStatusBarTextEvent("Importing " + catalog.getName()));
+            dataManager.importCatalog(catalog, job);
+            eventBus.post(new SetStatusBarTextEvent("Completed import of " + catalog.getName()));
+            eventBus.post(new RequestCatalogLinesEvent(catalog));
+        } catch (CancellationException e) {
+            eventBus.post(new SetStatusBarTextEvent("Cancelled import of " + catalog.getName()));
+        } catch (IOException e) {
+            eventBus.post(new SetStatusBarTextEvent("Import of " + catalog.getName() + " failed: " + e.getMessage()));
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            eventBus.post(new SetStatusBarTextEvent("Import of " + catalog.getName() + " failed: " + e));
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param catalog a catalog
+     * @return true if the catalog is queued or being imported
+     */
+    public boolean isImporting(Catalog catalog) {
+        return jobs.containsKey(catalog.getName());
+    }
+
+    /**
+     * @return the jobs that are queued or running right now
+     */
+    public List<ImportJob> getJobs() {
+        return new ArrayList<ImportJob>(jobs.values());
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util.io;
+
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+import org.jason.heasarcutils.catalogparser.util.FieldData;
+
+import java.util.*;
+
+/**
+ * Compiled version of a Catalog's field configuration. Instead of pushing every record through
+ * removeNulls/removeUnwantedFields/fixFieldPrefixes/fixFieldNames (four new maps per record), the
+ * configuration is resolved once into a fixed slot layout:
+ *
+ * - every key the ImportStrategy would have put into its map gets a slot index
+ * - included/prefix/renameTo/keepAfterCopy are resolved against those indices
+ * - the TDAT strategy writes raw values into a reusable String[] of slots, the DAT strategy cuts each line
+ *   into a reusable DatRecord and the slots are mapped onto its fields
+ *
+ * The one thing that can't be resolved up front is the order of the output fields. The old code ended
+ * up with a HashMap, so the order depends on which fields were actually populated. To keep the output
+ * byte-for-byte the same, the plan replays the HashMap inserts once per distinct "which fields are
+ * populated" pattern and caches the resulting list of Steps. Catalogs only have a handful of patterns,
+ * so after the first few records every lookup is a cache hit.
+ *
+ * A plan is NOT thread-safe. Compile one per import.
+ *
+ * @author Jason Ferguson
+ * @since 0.2.1
+ */
+public class RecordPlan {
+
+    private final boolean tdat;
+
+    // names of the slots, in the order the ImportStrategy would have inserted them into its map
+    private final String[] slotNames;
+
+    // TDAT only: whether column i gets past the getFieldDataSet() check in the strategy
+    private final boolean[] admitted;
+
+    // DAT only: per configured field, which slot gets the value and where to cut the line
+    private final int[] datSlots;
+    private final int[] datStarts;
+    private final int[] datEnds;
+
+    // DAT only: per slot, the field whose value ends up in it (the last one written, like the old map), or -1
+    private final int[] slotFields;
+
+    // per slot: can the value make it into the output (included field), and which prefix to apply
+    private final boolean[] candidate;
+    private final String[] prefixes;
+
+    // rename rules, in catalog key order: slot index -> new name, and whether the original is kept
+    private final int[] renameSlots;
+    private final String[] renameTo;
+    private final boolean[] keepAfterCopy;
+
+    private final Map<ShapeKey, Step[]> stepCache = new HashMap<ShapeKey, Step[]>();
+    private final ShapeKey probe;
+
+    private RecordPlan(Catalog catalog) {
+
+        this.tdat = catalog.getType().equalsIgnoreCase("tdat");
+
+        Map<String, FieldData> fieldData = catalog.getFieldData();
+
+        // lay out the slots. For TDAT it's one slot per column. For DAT it's the template keys followed by
+        // any renameTo targets of prefixed fields that aren't already template keys (yes, including null)
+        List<String> names = new ArrayList<String>(fieldData.keySet());
+        if (tdat) {
+            admitted = new boolean[names.size()];
+            for (int i = 0; i < admitted.length; i++) {
+                admitted[i] = catalog.getFieldDataSet().contains(fieldData.get(names.get(i)));
+            }
+            datSlots = datStarts = datEnds = null;
+        } else {
+            admitted = null;
+            int fieldCount = names.size();
+            datSlots = new int[fieldCount];
+            datStarts = new int[fieldCount];
+            datEnds = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                FieldData fd = fieldData.get(names.get(i));
+                String target = (fd.getPrefix() != null) ? fd.getRenameTo() : names.get(i);
+                int slot = names.indexOf(target);
+                if (slot == -1) {
+                    names.add(target);
+                    slot = names.size() - 1;
+                }
+                datSlots[i] = slot;
+                datStarts[i] = fd.getStart() - 1;
+                datEnds[i] = fd.getEnd();
+            }
+        }
+        slotNames = names.toArray(new String[names.size()]);
+
+        if (tdat) {
+            slotFields = null;
+        } else {
+            slotFields = new int[slotNames.length];
+            Arrays.fill(slotFields, -1);
+            for (int i = 0; i < datSlots.length; i++) {
+                slotFields[datSlots[i]] = i;
+            }
+        }
+
+        // work out which slots can survive removeUnwantedFields and what fixFieldPrefixes would do to them
+        candidate = new boolean[slotNames.length];
+        prefixes = new String[slotNames.length];
+        List<Integer> rSlots = new ArrayList<Integer>();
+        List<String> rNames = new ArrayList<String>();
+        List<Boolean> rKeep = new ArrayList<Boolean>();
+        int slot = 0;
+        for (String key : fieldData.keySet()) {
+            FieldData fd = fieldData.get(key);
+            boolean reachable = !tdat || admitted[slot];
+            if (fd.isIncluded() && reachable) {
+                candidate[slot] = true;
+                prefixes[slot] = fd.getPrefix();
+            }
+            String rename = fd.getRenameTo();
+            if (rename != null && rename.length() > 0) {
+                rSlots.add(slot);
+                rNames.add(rename);
+                rKeep.add(fd.isKeepAfterCopy());
+            }
+            slot++;
+        }
+
+        renameSlots = new int[rSlots.size()];
+        renameTo = new String[rSlots.size()];
+        keepAfterCopy = new boolean[rSlots.size()];
+        for (int i = 0; i < renameSlots.length; i++) {
+            renameSlots[i] = rSlots.get(i);
+            renameTo[i] = rNames.get(i);
+            keepAfterCopy[i] = rKeep.get(i);
+        }
+
+        probe = new ShapeKey(slotNames.length);
+    }
+
+    /**
+     * Compile the configuration of a catalog into a plan. Should be called once per import, after the
+     * Catalog has been fully configured.
+     *
+     * @param catalog Catalog to compile
+     * @return a RecordPlan for the catalog
+     */
+    public static RecordPlan compile(Catalog catalog) {
+        return new RecordPlan(catalog);
+    }
+
+    /**
+     * Create an empty slot array sized for this plan. The array is meant to be reused for every record.
+     *
+     * @return String array with one entry per slot
+     */
+    public String[] newSlots() {
+        return new String[slotNames.length];
+    }
+
+    public int getColumnCount() {
+        return tdat ? slotNames.length : 0;
+    }
+
+    /**
+     * TDAT only: determine if the value in the given column is kept by the strategy
+     *
+     * @param column zero-based column index
+     * @return true if the value should be put into its slot
+     */
+    public boolean isAdmitted(int column) {
+        return admitted[column];
+    }
+
+    /**
+     * DAT only: create an empty record cut to this plan's field layout. Like the slot array, it's meant to be
+     * reused for every line (copy() it to hand it to another thread).
+     *
+     * @return a DatRecord
+     */
+    public DatRecord newDatRecord() {
+        return new DatRecord(datStarts, datEnds);
+    }
+
+    /**
+     * TDAT: get the output steps for the record currently held in the slots
+     *
+     * @param slots slot array populated by an ImportStrategy
+     * @return Steps to write, in output order
+     */
+    public Step[] getSteps(String[] slots) {
+
+        probe.clear();
+        for (int i = 0; i < slots.length; i++) {
+            if (candidate[i] && slots[i] != null && slots[i].length() > 0) {
+                probe.set(i);
+            }
+        }
+
+        return lookupSteps();
+    }
+
+    /**
+     * DAT: get the output steps for a record
+     *
+     * @param record record cut by this plan's layout
+     * @return Steps to write, in output order. Use Step.getValue(DatRecord, StringBuilder) for the values.
+     */
+    public Step[] getSteps(DatRecord record) {
+
+        probe.clear();
+        for (int i = 0; i < slotFields.length; i++) {
+            if (candidate[i] && slotFields[i] != -1 && !record.isEmpty(slotFields[i])) {
+                probe.set(i);
+            }
+        }
+
+        return lookupSteps();
+    }
+
+    private Step[] lookupSteps() {
+        Step[] steps = stepCache.get(probe);
+        if (steps == null) {
+            ShapeKey key = probe.copy();
+            steps = replay(key);
+            stepCache.put(key, steps);
+        }
+
+        return steps;
+    }
+
+    /**
+     * Replay the inserts and removes that fixFieldPrefixes and fixFieldNames used to do, using slot
+     * indices instead of values. The resulting HashMap has the same keys in the same order the old
+     * code produced.
+     *
+     * @param shape which slots hold a value
+     * @return Steps in output order
+     */
+    private Step[] replay(ShapeKey shape) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (int i = 0; i < slotNames.length; i++) {
+            if (shape.get(i)) {
+                result.put(slotNames[i], i);
+            }
+        }
+        for (int i = 0; i < renameSlots.length; i++) {
+            String key = slotNames[renameSlots[i]];
+            Integer source = result.get(key);
+            if (source == null) {
+                continue;
+            }
+            result.put(renameTo[i], source);
+            if (!keepAfterCopy[i]) {
+                result.remove(key);
+            }
+        }
+
+        Step[] steps = new Step[result.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : result.entrySet()) {
+            int source = entry.getValue();
+            steps[i++] = new Step(entry.getKey(), source, tdat ? -1 : slotFields[source], prefixes[source]);
+        }
+
+        return steps;
+    }
+
+    /**
+     * A single key/value to write for a record
+     */
+    public static class Step {
+
+        private final String key;
+        private final int slot;
+        private final int datField;
+        private final String prefix;
+
+        private Step(String key, int slot, int datField, String prefix) {
+            this.key = key;
+            this.slot = slot;
+            this.datField = datField;
+            this.prefix = prefix;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Get the value for this step, with the prefix applied the same way fixFieldPrefixes did it
+         *
+         * @param slots slot array for the current record
+         * @return the value to write
+         */
+        public String getValue(String[] slots) {
+            String value = slots[slot];
+            if (prefix != null && value.contains(prefix)) {
+                return prefix + value;
+            }
+            return value;
+        }
+
+        /**
+         * DAT: get the value for this step out of a record, with the prefix applied the same way
+         *
+         * @param record the record
+         * @param sb     StringBuilder to put the value together in, cleared first
+         * @return sb, holding the value to write
+         */
+        public StringBuilder getValue(DatRecord record, StringBuilder sb) {
+            sb.setLength(0);
+            if (prefix != null && record.contains(datField, prefix)) {
+                sb.append(prefix);
+            }
+            return record.appendTo(datField, sb);
+        }
+    }
+
+    /**
+     * Bitmask of populated slots, used as the key of the step cache
+     */
+    private static class ShapeKey {
+
+        private final long[] words;
+
+        private ShapeKey(int size) {
+            words = new long[(size + 63) / 64];
+        }
+
+        private ShapeKey(long[] words) {
+            this.words = words;
+        }
+
+        void clear() {
+            Arrays.fill(words, 0L);
+        }
+
+        void set(int i) {
+            words[i >> 6] |= 1L << i;
+        }
+
+        boolean get(int i) {
+            return (words[i >> 6] & (1L << i)) != 0;
+        }
+
+        ShapeKey copy() {
+            return new ShapeKey(words.clone());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ShapeKey && Arrays.equals(words, ((ShapeKey) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks a failed background header read comes back out of awaitFields() instead of being printed and
+ * forgotten.
+ *
+ * @author Jason Ferguson
+ * @since 0.2.1
+ */
+public class CatalogTest {
+
+    @Test
+    public void failedHeaderReadIsThrown() {
+        Catalog catalog = new Catalog();
+        catalog.setName("bsc");
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() throws Exception {
+                throw new FileNotFoundException("heasarc_bsc5p.hdr.gz");
+            }
+        });
+        task.run();
+        catalog.setPendingFields(task);
+
+        try {
+            catalog.awaitFields();
+            fail("awaitFields() should have thrown");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+            assertTrue(e.getMessage(), e.getMessage().contains("bsc"));
+        }
+
+        // and again, the catalog doesn't become usable just because somebody asked once
+        try {
+            catalog.awaitFields();
+            fail("awaitFields() should have thrown");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void interruptedWaitKeepsTheInterrupt() throws Exception {
+        Catalog catalog = new Catalog();
+        catalog.setName("bsc");
+        final CountDownLatch never = new CountDownLatch(1);
+        catalog.setPendingFields(new FutureTask<Void>(new Callable<Void>() {
+            public Void call() throws Exception {
+                never.await();
+                return null;
+            }
+        }));
+
+        Thread.currentThread().interrupt();
+        try {
+            catalog.awaitFields();
+            fail("awaitFields() should have thrown");
+        } catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void finishedHeaderReadDoesNothing() throws IOException {
+        Catalog catalog = new Catalog();
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() {
+                return null;
+            }
+        });
+        task.run();
+        catalog.setPendingFields(task);
+
+        catalog.awaitFields();
+        catalog.awaitFields();
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.catalogparser.util.io;
+
+import com.google.common.eventbus.EventBus;
+import org.jason.heasarcutils.catalogparser.util.Catalog;
+import org.jason.heasarcutils.catalogparser.util.FieldData;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the same lines through the old map-based filter chain (removeNulls, removeUnwantedFields,
+ * fixFieldPrefixes, fixFieldNames and getJsonLine, copied below from before the RecordPlan went in) and
+ * through DataManager's RecordPlan strategies, and checks the JSON comes out the same, byte for byte.
+ *
+ * @author Jason Ferguson
+ * @since 0.2.1
+ */
+public class RecordPlanTest {
+
+    private static final String[] TDAT_LINES = {
+            "1|HR 15|HD 358|a note|2.0965|29.0904|2.06|73765|",
+            "2|15|358||0.5|-1.5||73765|",
+            "3|||x|12|+7|  3.1|SAO 1|",
+            "4|||||||||",
+            "5|A|B|C|1.23456789|-0.00005|17|99|",
+            "6|short|",
+            "this is not a record",
+            "7|HR 7|HD 7|n|.5|5.|-0|SAO 7|"
+    };
+
+    private static final String[] DAT_LINES = {
+            "Alpha     HD 1234   12.5     3.25  keep me  ",
+            "Beta      5678      -0.125   12    x        ",
+            "          HD        7                       ",
+            "Gamma                        +4.5  y        ",
+            "          HD 99     1.0      .5             "
+    };
+
+    @Test
+    public void tdatOutputMatchesOldFilterChain() throws IOException {
+        Catalog catalog = new Catalog();
+        catalog.setName("bsc");
+        catalog.setType("tdat");
+
+        // header order, the way TdatStrategy lays them out
+        exclude(catalog, "ads");
+        include(catalog, "name", 1, "bscname", true, "HR ");
+        include(catalog, "hd", 2, "hdname", false, "HD ");
+        exclude(catalog, "note");
+        include(catalog, "ra", 3, "radeg", false, null);
+        include(catalog, "dec", 4, null, false, null);
+        include(catalog, "vmag", 5, null, false, null);
+        include(catalog, "sao", 6, "saoname", false, "SAO ");
+
+        assertEquals(oldTdatOutput(catalog, TDAT_LINES), newOutput(catalog, TDAT_LINES));
+    }
+
+    @Test
+    public void datOutputMatchesOldFilterChain() throws IOException {
+        Catalog catalog = new Catalog();
+        catalog.setName("ngc");
+        catalog.setType("dat");
+
+        include(catalog, "name", 1, 10, "datname", true, null);
+        include(catalog, "hd", 11, 20, "hdname", false, "HD ");
+        include(catalog, "ra", 21, 29, "radeg", false, null);
+        include(catalog, "mag", 30, 35, null, false, null);
+        FieldData note = include(catalog, "note", 36, 44, null, false, null);
+        note.setIncluded(false);
+
+        assertEquals(oldDatOutput(catalog, DAT_LINES), newOutput(catalog, DAT_LINES));
+    }
+
+    private static void exclude(Catalog catalog, String name) {
+        catalog.getFieldData().put(name, new FieldData(false));
+    }
+
+    private static FieldData include(Catalog catalog, String name, int start, String renameTo, boolean keepAfterCopy,
+                                     String prefix) {
+        FieldData fd = include(catalog, name, start, start, renameTo, keepAfterCopy, prefix);
+        catalog.getFieldDataSet().add(fd);
+        return fd;
+    }
+
+    private static FieldData include(Catalog catalog, String name, int start, int end, String renameTo,
+                                     boolean keepAfterCopy, String prefix) {
+        FieldData fd = new FieldData();
+        fd.setName(name);
+        fd.setStart(start);
+        fd.setEnd(end);
+        fd.setRenameTo(renameTo);
+        fd.setKeepAfterCopy(keepAfterCopy);
+        fd.setPrefix(prefix);
+        fd.setIncluded(true);
+        catalog.getFieldData().put(name, fd);
+        return fd;
+    }
+
+    private static String newOutput(Catalog catalog, String[] lines) throws IOException {
+        RecordPlan plan = RecordPlan.compile(catalog);
+        DataManager manager = new DataManager(new EventBus());
+        DataManager.ImportStrategy strategy;
+        if (catalog.getType().equalsIgnoreCase("tdat")) {
+            strategy = manager.new TdatImportStrategy(plan);
+        } else {
+            strategy = manager.new DatImportStrategy(plan);
+        }
+
+        JsonRecordWriter writer = JsonRecordWriter.inMemory(1024);
+        for (String line : lines) {
+            if (strategy.processLine(line)) {
+                strategy.writeRecord(writer);
+            }
+        }
+        ByteBuffer bytes = writer.toByteBuffer();
+        return Charset.forName("UTF-8").decode(bytes).toString();
+    }
+
+    // everything below is the old code path, kept as it was
+
+    private static String oldTdatOutput(Catalog catalog, String[] lines) {
+        StringBuilder out = new StringBuilder();
+        for (String line : lines) {
+            if (!line.matches("^(.*?\\|)*$")) {
+                continue;
+            }
+
+            Map<String, String> result = new HashMap<String, String>();
+            String[] fieldNames = catalog.getFieldData().keySet().toArray(new String[]{});
+            String[] fieldValues = line.split("\\|");
+
+            for (int i = 0; i < fieldValues.length; i++) {
+                FieldData fd = catalog.getFieldData().get(fieldNames[i]);
+                if (catalog.getFieldDataSet().contains(fd)) {
+                    result.put(fieldNames[i], fieldValues[i]);
+                }
+            }
+
+            out.append(getJsonLine(filterResults(result, catalog)));
+        }
+        return out.toString();
+    }
+
+    private static String oldDatOutput(Catalog catalog, String[] lines) {
+        Map<String, String> template = new LinkedHashMap<String, String>(catalog.getFieldData().size());
+        for (String fieldName : catalog.getFieldData().keySet()) {
+            template.put(fieldName, null);
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (String line : lines) {
+            Map<String, String> result = template;
+            for (String key : catalog.getFieldData().keySet()) {
+                FieldData fd = catalog.getFieldData().get(key);
+                if (fd.getPrefix() != null) {
+                    result.put(fd.getRenameTo(), line.substring(fd.getStart() - 1, fd.getEnd()).trim());
+                } else {
+                    result.put(key, line.substring(fd.getStart() - 1, fd.getEnd()).trim());
+                }
+            }
+
+            out.append(getJsonLine(filterResults(result, catalog)));
+        }
+        return out.toString();
+    }
+
+    private static Map<String, String> filterResults(Map<String, String> results, Catalog catalog) {
+        results = removeNulls(results);
+        results = removeUnwantedFields(results, catalog);
+        results = fixFieldPrefixes(results, catalog);
+        results = fixFieldNames(results, catalog);
+        return results;
+    }
+
+    private static Map<String, String> removeNulls(Map<String, String> map) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (String key : map.keySet()) {
+            if (map.get(key) != null && map.get(key).length() > 0) {
+                result.put(key, map.get(key));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> removeUnwantedFields(Map<String, String> data, Catalog catalog) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String key : catalog.getFieldData().keySet()) {
+            FieldData fd = catalog.getFieldData().get(key);
+            if (fd.isIncluded()) {
+                if (data.get(key) != null) {
+                    result.put(key, data.get(key));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> fixFieldPrefixes(Map<String, String> data, Catalog catalog) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String key : catalog.getFieldData().keySet()) {
+            FieldData fd = catalog.getFieldData().get(key);
+            if (fd.isIncluded()) {
+                if (data.get(key) != null) {
+                    if (fd.getPrefix() != null && data.get(key).contains(fd.getPrefix())) {
+                        result.put(key, fd.getPrefix() + data.get(key));
+                    } else {
+                        result.put(key, data.get(key));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> fixFieldNames(Map<String, String> data, Catalog catalog) {
+        Map<String, String> result = data;
+        for (String key : catalog.getFieldData().keySet()) {
+            FieldData fd = catalog.getFieldData().get(key);
+            String renameValue = fd.getRenameTo();
+            if (renameValue != null && renameValue.length() > 0) {
+                if (result.get(key) == null) {
+                    continue;
+                }
+                result.put(renameValue, data.get(key));
+                if (!fd.isKeepAfterCopy()) {
+                    result.remove(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String getJsonLine(Map<String, String> data) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("{");
+        for (String key : data.keySet()) {
+            sb.append(key);
+            sb.append(":");
+            if (isNumber(data.get(key))) {
+                if (isInteger(data.get(key))) {
+                    sb.append(new Integer(data.get(key).trim()));
+                } else {
+                    BigDecimal number = new BigDecimal(data.get(key).trim());
+                    number = number.setScale(4, BigDecimal.ROUND_HALF_EVEN);
+                    sb.append(number);
+                }
+            } else {
+                sb.append("\"");
+                sb.append(data.get(key));
+                sb.append("\"");
+            }
+            sb.append(",");
+        }
+        sb = new StringBuffer(sb.substring(0, sb.length() - 1));
+        sb.append("}\r\n");
+        return sb.toString();
+    }
+
+    private static boolean isNumber(String value) {
+        return (isInteger(value) || isDouble(value));
+    }
+
+    private static boolean isInteger(String value) {
+        if (value == null) {
+            return false;
+        }
+        return Pattern.matches("^\\s*[\\+,-]?[0-9]+$", value);
+    }
+
+    private static boolean isDouble(String value) {
+        if (value == null) {
+            return false;
+        }
+        return Pattern.matches("^\\s*[\\+,-]?[0-9]*\\.[0-9]*$", value);
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * One column of a ColumnarCatalog: a name, a type and a value for every row, held in a primitive array instead
+ * of as a String in a Map per row. Empty values are nulls, kept in a bitmap next to the values (which is only
+ * there once the column has a null in it).
+ * <p/>
+ * The values sit in NIO buffers: heap buffers over plain arrays while a catalog is being built, or read-only
+ * views of a file when the catalog comes out of a ColumnarCatalogFile. Either way reading a value is an
+ * index into a typed buffer, and the code reading it doesn't have to care which.
+ * <p/>
+ * Columns get filled in by a ColumnarCatalogBuilder and don't change once the catalog is built, so a built
+ * catalog can be read from any number of threads.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public abstract class Column {
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    private final String name;
+    int size;
+
+    // one bit per row, set for nulls. Null if nothing is.
+    private LongBuffer nulls;
+
+    Column(String name) {
+        this.name = name;
+    }
+
+    /**
+     * For a column that's already filled in (mapped from a file)
+     *
+     * @param name  name of the column
+     * @param size  number of rows
+     * @param nulls the null bitmap, or null if there aren't any nulls
+     */
+    Column(String name, int size, LongBuffer nulls) {
+        this.name = name;
+        this.size = size;
+        this.nulls = nulls;
+    }
+
+    static Column newColumn(String name, ColumnType type, int capacity) {
+        switch (type) {
+            case INT:
+                return new IntColumn(name, capacity);
+            case LONG:
+                return new LongColumn(name, capacity);
+            case DOUBLE:
+                return new DoubleColumn(name, capacity);
+            default:
+                return new StringColumn(name, capacity);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public abstract ColumnType getType();
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        int word = row >>> 6;
+        return nulls != null && word < nulls.limit() && (nulls.get(word) & (1L << row)) != 0;
+    }
+
+    /**
+     * Append a value as text. Numbers come out the way Long.toString() and Double.toString() write them, not
+     * necessarily the way the catalog did.
+     *
+     * @param row the row
+     * @param sb  where the value goes
+     * @return sb, with nothing appended if the value is null
+     */
+    public abstract StringBuilder appendTo(int row, StringBuilder sb);
+
+    /**
+     * @param row the row
+     * @return the value as text (see appendTo()), or null
+     */
+    public String getString(int row) {
+        return isNull(row) ? null : appendTo(row, new StringBuilder(16)).toString();
+    }
+
+    /**
+     * @return roughly how many bytes the values and the null bitmap take up, on the heap or mapped
+     */
+    public long getByteCount() {
+        return (nulls == null) ? 0 : nulls.capacity() * 8L;
+    }
+
+    /**
+     * @return the null bitmap, or null if there aren't any nulls
+     */
+    LongBuffer getNulls() {
+        return nulls;
+    }
+
+    /**
+     * Add a value straight out of a row's chars. Blank values are handled by the builder (addNull()).
+     *
+     * @param chars the chars
+     * @param start index of the value's first char
+     * @param end   index after the value's last char
+     * @return false if the value doesn't fit the column's type, in which case nothing was added
+     */
+    abstract boolean add(char[] chars, int start, int end);
+
+    /**
+     * Add every row of another column of the same type to the end of this one
+     *
+     * @param part the other column
+     */
+    abstract void addAll(Column part);
+
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Shrink the arrays down to size, once nothing else is going to be added
+     */
+    void trim() {
+        if (nulls != null) {
+            nulls = LongBuffer.wrap(Arrays.copyOf(nulls.array(), (size + 63) >>> 6));
+        }
+    }
+
+    void addNull() {
+        ensureCapacity(size + 1);
+        setNull(size);
+        size++;
+    }
+
+    void setNull(int row) {
+        int word = row >>> 6;
+        if (nulls == null) {
+            nulls = LongBuffer.wrap(new long[Math.max(word + 1, INITIAL_CAPACITY >>> 6)]);
+        } else if (word >= nulls.capacity()) {
+            nulls = LongBuffer.wrap(Arrays.copyOf(nulls.array(), Math.max(word + 1, nulls.capacity() * 2)));
+        }
+        nulls.put(word, nulls.get(word) | (1L << row));
+    }
+
+    /**
+     * Copy another column's nulls onto the end of this one. The values of those rows are up to the caller.
+     *
+     * @param part   the other column
+     * @param offset row in this column that the other one's first row is
+     */
+    void addNulls(Column part, int offset) {
+        if (part.nulls == null) {
+            return;
+        }
+        for (int word = 0; word < part.nulls.capacity(); word++) {
+            long bits = part.nulls.get(word);
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (row < part.size) {
+                    setNull(offset + row);
+                }
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * @return the same values as text, for when a value turns up that doesn't fit this column's type
+     */
+    StringColumn toStringColumn() {
+        StringColumn column = new StringColumn(name, Math.max(size, INITIAL_CAPACITY));
+        for (int row = 0; row < size; row++) {
+            if (isNull(row)) {
+                column.addNull();
+            } else {
+                column.add(getString(row));
+            }
+        }
+        return column;
+    }
+
+    static int grow(int length, int capacity) {
+        return Math.max(capacity, length + (length >> 1));
+    }
+}
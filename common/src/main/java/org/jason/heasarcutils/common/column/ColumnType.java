@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.jason.heasarcutils.common.tdat.TdatColumn;
+
+/**
+ * How a Column holds its values: int[], long[], double[] or dictionary-encoded Strings.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public enum ColumnType {
+
+    INT, LONG, DOUBLE, STRING;
+
+    /**
+     * Work out the type from a field[...] definition in a TDAT header
+     *
+     * @param column the definition, or null if line[1] has a field the header doesn't define
+     * @return the type. Anything that isn't int or float is a STRING.
+     */
+    public static ColumnType forTdat(TdatColumn column) {
+        if (column == null) {
+            return STRING;
+        }
+        if ("int".equals(column.getType())) {
+            // same split TdatProcessor.createColumnMap() makes between INTEGER and BIGINT: the number is the
+            // size in bytes, and no number at all counts as 8
+            return (column.getWidth() != null && column.getWidth() <= 4) ? INT : LONG;
+        }
+        if ("float".equals(column.getType())) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+}
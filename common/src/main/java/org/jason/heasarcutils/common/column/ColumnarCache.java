@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps a ColumnarCatalogFile of each imported catalog, so the next run can map the columns in instead of
+ * downloading, unzipping and parsing the catalog all over again.
+ * <p/>
+ * An entry is (name).columns, and remembers the length and modification time of the file the catalog was
+ * imported from (the .tdat, or the download for Vizier catalogs). get() only hands an entry back while that
+ * file is still the same, so a catalog that gets downloaded again is imported again. Entries are written to a
+ * temp file and renamed into place, so a killed write never looks like a cached catalog.
+ * <p/>
+ * The cache lives in ~/.heasarcutils/columns unless the heasarcutils.columns.dir system property says
+ * otherwise.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCache {
+
+    public static final String CACHE_DIR_PROPERTY = "heasarcutils.columns.dir";
+
+    private static ColumnarCache defaultCache;
+
+    private final File directory;
+
+    public ColumnarCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache in heasarcutils.columns.dir, or ~/.heasarcutils/columns
+     */
+    public static synchronized ColumnarCache getDefault() {
+        if (defaultCache == null) {
+            String dir = System.getProperty(CACHE_DIR_PROPERTY);
+            if (dir == null || dir.trim().length() == 0) {
+                dir = System.getProperty("user.home") + File.separator + ".heasarcutils" + File.separator + "columns";
+            }
+            defaultCache = new ColumnarCache(new File(dir.trim()));
+        }
+        return defaultCache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param name name of the catalog
+     * @return the file the catalog is (or would be) cached in
+     */
+    public File getFile(String name) {
+        return new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".columns");
+    }
+
+    /**
+     * Map a cached catalog in
+     *
+     * @param name   name of the catalog
+     * @param source the file the catalog gets imported from
+     * @return the catalog, or null if it isn't cached, the source has changed since, or the entry is unreadable
+     */
+    public ColumnarCatalog get(String name, File source) {
+        File file = getFile(name);
+        if (!file.isFile() || !source.isFile()) {
+            return null;
+        }
+        try {
+            ColumnarCatalogFile entry = ColumnarCatalogFile.open(file);
+            if (!entry.getName().equals(name) || entry.getSourceLength() != source.length()
+                    || entry.getSourceModified() != source.lastModified()) {
+                return null;
+            }
+            return entry.map();
+        } catch (IOException e) {
+            System.out.println("Ignoring cached columns for " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cache a catalog, replacing whatever was cached for it before
+     *
+     * @param catalog the catalog
+     * @param source  the file it was imported from
+     * @return the cache file
+     * @throws IOException if the entry can't be written
+     */
+    public File put(ColumnarCatalog catalog, File source) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        File file = getFile(catalog.getName());
+        File temp = File.createTempFile(file.getName(), ".part", directory);
+        try {
+            ColumnarCatalogFile.write(catalog, temp, source.length(), source.lastModified());
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to replace " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to move " + temp + " to " + file);
+            }
+        } finally {
+            temp.delete();
+        }
+        return file;
+    }
+}
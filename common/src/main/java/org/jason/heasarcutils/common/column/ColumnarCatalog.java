@@ -0,0 +1,235 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A whole catalog in memory, a column at a time. Each field from line[1] of the TDAT header is a Column typed
+ * by its field[...] definition: ints, longs and doubles in primitive arrays, everything else dictionary-encoded.
+ * A Map<String, String> per row costs a couple of hundred bytes per value once the Strings and entries are
+ * counted, a column costs 4 or 8 bytes per value, and scanning one is a walk down an array.
+ * <p/>
+ * Built during an import (see ColumnarCatalogBuilder), straight from a file with read(), or mapped back in
+ * from a ColumnarCatalogFile (see ColumnarCache). Doesn't change once it's built. A catalog with ra and dec
+ * columns gets a ZoneIndex over them as it's built, for coneSearch().
+ *
+ * <pre>
+ * DoubleColumn vmag = catalog.getDoubleColumn("vt_mag");
+ * for (int row = 0; row < catalog.getRowCount(); row++) {
+ *     if (vmag.getDouble(row) < 6.5) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCatalog {
+
+    private final String name;
+    private final int rowCount;
+    private final Map<String, Column> columns;
+    private ZoneIndex zoneIndex;
+
+    ColumnarCatalog(String name, int rowCount, Map<String, Column> columns) {
+        this.name = name;
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    /**
+     * Read every row of a TDAT file into columns
+     *
+     * @param name   name of the catalog
+     * @param header the file's header
+     * @return the catalog
+     * @throws IOException if the file can't be read
+     */
+    public static ColumnarCatalog read(String name, TdatHeader header) throws IOException {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder(name, header);
+        TdatRowScanner scanner = new TdatRowScanner();
+        LineReader reader = header.openData();
+        try {
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
+                if (scanner.scan(line)) {
+                    builder.addRow(scanner);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the spatial index over the ra and dec columns, or null if the catalog doesn't have them
+     */
+    public ZoneIndex getZoneIndex() {
+        return zoneIndex;
+    }
+
+    void setZoneIndex(ZoneIndex zoneIndex) {
+        this.zoneIndex = zoneIndex;
+    }
+
+    /**
+     * Find the rows within radius degrees of a position, using the zone index
+     *
+     * @param ra     right ascension of the centre, in degrees
+     * @param dec    declination of the centre, in degrees
+     * @param radius radius of the cone, in degrees
+     * @return the rows, in ascending order
+     * @throws IllegalStateException if the catalog has no positions to search
+     */
+    public int[] coneSearch(double ra, double dec, double radius) {
+        if (zoneIndex == null) {
+            throw new IllegalStateException(name + " has no ra and dec columns to search");
+        }
+        return zoneIndex.coneSearch(ra, dec, radius);
+    }
+
+    /**
+     * @return the columns, in line[1] order
+     */
+    public Collection<Column> getColumns() {
+        return Collections.unmodifiableCollection(columns.values());
+    }
+
+    /**
+     * @param columnName name of the column
+     * @return the column, or null if there isn't one by that name
+     */
+    public Column getColumn(String columnName) {
+        return columns.get(columnName);
+    }
+
+    public IntColumn getIntColumn(String columnName) {
+        return (IntColumn) getColumn(columnName, ColumnType.INT);
+    }
+
+    public LongColumn getLongColumn(String columnName) {
+        return (LongColumn) getColumn(columnName, ColumnType.LONG);
+    }
+
+    public DoubleColumn getDoubleColumn(String columnName) {
+        return (DoubleColumn) getColumn(columnName, ColumnType.DOUBLE);
+    }
+
+    public StringColumn getStringColumn(String columnName) {
+        return (StringColumn) getColumn(columnName, ColumnType.STRING);
+    }
+
+    private Column getColumn(String columnName, ColumnType type) {
+        Column column = columns.get(columnName);
+        if (column == null) {
+            throw new IllegalArgumentException("No column " + columnName + " in " + name);
+        }
+        if (column.getType() != type) {
+            throw new IllegalArgumentException("Column " + columnName + " in " + name + " is " + column.getType()
+                    + ", not " + type);
+        }
+        return column;
+    }
+
+    /**
+     * Write rows as JSON, one record per row. Nulls are left out, ints, longs and doubles are numbers and
+     * Strings are strings. The numbers are the typed values, so they don't always look the way they did in the
+     * catalog (no trailing zeros, for one).
+     *
+     * @param writer where the records go
+     * @param from   first row
+     * @param to     row after the last one
+     * @throws IOException if the writer couldn't write
+     */
+    public void writeJson(JsonRecordWriter writer, int from, int to) throws IOException {
+        StringBuilder value = new StringBuilder(64);
+        for (int row = from; row < to; row++) {
+            writer.beginRecord();
+            for (Column column : columns.values()) {
+                if (column.isNull(row)) {
+                    continue;
+                }
+                writer.name(column.getName());
+                value.setLength(0);
+                column.appendTo(row, value);
+                if (column.getType() == ColumnType.STRING || (column instanceof DoubleColumn
+                        && Double.isInfinite(((DoubleColumn) column).getDouble(row)))) {
+                    // JSON has no Infinity
+                    writer.string(value);
+                } else {
+                    writer.number(value);
+                }
+            }
+            writer.endRecord();
+        }
+    }
+
+    /**
+     * @return roughly how much memory the whole catalog takes up, on the heap or mapped
+     */
+    public long getByteCount() {
+        long bytes = 0;
+        for (Column column : columns.values()) {
+            bytes += column.getByteCount();
+        }
+        if (zoneIndex != null) {
+            bytes += zoneIndex.getByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * Print the columns, their types and sizes
+     *
+     * @param out where to print them
+     */
+    public void printSummary(PrintStream out) {
+        out.println(name + ": " + rowCount + " rows, " + columns.size() + " columns, "
+                + (getByteCount() >> 20) + " MB");
+        for (Column column : columns.values()) {
+            String line = "  " + column.getName() + " " + column.getType();
+            if (column instanceof StringColumn) {
+                line += " (" + ((StringColumn) column).getDictionarySize() + " distinct)";
+            }
+            out.println(line + ", " + (column.getByteCount() >> 10) + " KB");
+        }
+        if (zoneIndex != null) {
+            out.println("  zone index on " + zoneIndex.getRaColumn() + "/" + zoneIndex.getDecColumn() + ": "
+                    + zoneIndex.size() + " rows in " + zoneIndex.getZoneCount() + " zones of "
+                    + zoneIndex.getZoneHeight() + " degrees, " + (zoneIndex.getByteCount() >> 10) + " KB");
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fills in a ColumnarCatalog a row at a time, from rows a TdatRowScanner has already cut up, so an import
+ * that's scanning the rows anyway can build one as it goes.
+ * <p/>
+ * The type of each column comes from the header (see ColumnType.forTdat()), or is worked out from the values
+ * for catalogs that don't have one. If a value turns up that doesn't
+ * fit, the column is widened rather than losing the value: an int column goes to long, and anything that
+ * doesn't parse as a number turns the column into Strings. A field that's in line[1] twice ends up with the
+ * last one's values, same as putting the row into a Map would.
+ * <p/>
+ * Not thread safe. To build on several threads, give each one a newPart() and addAll() the parts back in
+ * row order.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCatalogBuilder {
+
+    private final String name;
+
+    // for each column, the field in the row it comes from
+    private final int[] fields;
+    private final Column[] columns;
+    // columns whose type gets worked out in build()
+    private final boolean[] inferred;
+    private int rowCount;
+
+    // each value gets copied in here once, instead of going back to the line for every char
+    private char[] chars = new char[256];
+
+    /**
+     * @param name   name of the catalog
+     * @param header TDAT header, for line[1] and the column types
+     * @throws IllegalArgumentException if the header doesn't have a line[1]
+     */
+    public ColumnarCatalogBuilder(String name, TdatHeader header) {
+        this(name, header.getFieldNames(), header);
+    }
+
+    /**
+     * @param name       name of the catalog
+     * @param fieldNames the row layout, from line[1]
+     * @param header     TDAT header, for the column types
+     * @throws IllegalArgumentException if fieldNames is null
+     */
+    public ColumnarCatalogBuilder(String name, String[] fieldNames, TdatHeader header) {
+        this(name, fieldNames, getTypes(name, fieldNames, header));
+    }
+
+    /**
+     * For catalogs that don't say what type their fields are (Vizier's fixed-width ones, say). Rows go in with
+     * addRow(String[]).
+     *
+     * @param name       name of the catalog
+     * @param fieldNames the row layout
+     * @param types      the type of each field. A null type (or a null array) means work it out: the column is
+     *                   built as Strings, and build() turns it into numbers if every value is one.
+     */
+    public ColumnarCatalogBuilder(String name, String[] fieldNames, ColumnType[] types) {
+        this.name = name;
+
+        Map<String, Integer> lastField = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            lastField.put(fieldNames[i], i);
+        }
+        fields = new int[lastField.size()];
+        columns = new Column[lastField.size()];
+        inferred = new boolean[lastField.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : lastField.entrySet()) {
+            fields[i] = entry.getValue();
+            ColumnType type = (types == null) ? null : types[entry.getValue()];
+            inferred[i] = type == null;
+            columns[i] = Column.newColumn(entry.getKey(), inferred[i] ? ColumnType.STRING : type,
+                    Column.INITIAL_CAPACITY);
+            i++;
+        }
+    }
+
+    private ColumnarCatalogBuilder(ColumnarCatalogBuilder layout) {
+        name = layout.name;
+        fields = layout.fields;
+        inferred = layout.inferred;
+        columns = new Column[layout.columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.newColumn(layout.columns[i].getName(), layout.columns[i].getType(),
+                    Column.INITIAL_CAPACITY);
+        }
+    }
+
+    private static ColumnType[] getTypes(String name, String[] fieldNames, TdatHeader header) {
+        if (fieldNames == null) {
+            throw new IllegalArgumentException("No line[1] in the header of " + name);
+        }
+        ColumnType[] types = new ColumnType[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            types[i] = ColumnType.forTdat(header.getColumn(fieldNames[i]));
+        }
+        return types;
+    }
+
+    /**
+     * @return an empty builder with the same columns, to build part of the catalog on another thread
+     */
+    public ColumnarCatalogBuilder newPart() {
+        return new ColumnarCatalogBuilder(this);
+    }
+
+    /**
+     * Add the row the scanner just scanned. Fields the row is missing, and blank ones, are nulls.
+     *
+     * @param scanner scanner holding the row
+     */
+    public void addRow(TdatRowScanner scanner) {
+        int count = scanner.getFieldCount();
+        for (int i = 0; i < columns.length; i++) {
+            int field = fields[i];
+            if (field >= count) {
+                columns[i].addNull();
+                continue;
+            }
+            if (scanner.getLength(field) > chars.length) {
+                chars = new char[Math.max(scanner.getLength(field), chars.length * 2)];
+            }
+            add(i, scanner.getChars(field, chars, 0));
+        }
+        rowCount++;
+    }
+
+    /**
+     * Add a row that's already been cut up into Strings. Nulls, blanks and values past the end of the array
+     * are nulls.
+     *
+     * @param values the row, in the field order the builder was made with
+     */
+    public void addRow(String[] values) {
+        for (int i = 0; i < columns.length; i++) {
+            int field = fields[i];
+            String value = (field < values.length) ? values[field] : null;
+            if (value == null) {
+                columns[i].addNull();
+                continue;
+            }
+            if (value.length() > chars.length) {
+                chars = new char[Math.max(value.length(), chars.length * 2)];
+            }
+            value.getChars(0, value.length(), chars, 0);
+            add(i, value.length());
+        }
+        rowCount++;
+    }
+
+    /**
+     * Add the value sitting in chars to column i, widening the column if it doesn't fit
+     */
+    private void add(int i, int length) {
+        Column column = columns[i];
+        if (TdatValues.isBlank(chars, 0, length)) {
+            column.addNull();
+        } else if (!column.add(chars, 0, length)) {
+            column = widen(column);
+            if (!column.add(chars, 0, length)) {
+                column = widen(column);
+                column.add(chars, 0, length);
+            }
+            columns[i] = column;
+        }
+    }
+
+    /**
+     * Add the rows of a part to the end of this builder. The part can't be used afterwards.
+     *
+     * @param part a builder from newPart()
+     */
+    public void addAll(ColumnarCatalogBuilder part) {
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            Column other = part.columns[i];
+            while (column.getType() != other.getType()) {
+                // one of them got widened, so widen the other to match
+                if (isWider(column.getType(), other.getType())) {
+                    other = widen(other);
+                } else {
+                    column = widen(column);
+                }
+            }
+            column.addAll(other);
+            columns[i] = column;
+        }
+        rowCount += part.rowCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the catalog, with a ZoneIndex if it has ra and dec columns. The builder can't be used afterwards.
+     */
+    public ColumnarCatalog build() {
+        Map<String, Column> columnMap = new LinkedHashMap<String, Column>();
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            if (inferred[i]) {
+                column = ((StringColumn) column).narrow();
+            }
+            column.trim();
+            columnMap.put(column.getName(), column);
+        }
+        ColumnarCatalog catalog = new ColumnarCatalog(name, rowCount, columnMap);
+        catalog.setZoneIndex(ZoneIndex.build(catalog));
+        return catalog;
+    }
+
+    private static Column widen(Column column) {
+        if (column instanceof IntColumn) {
+            return ((IntColumn) column).toLongColumn();
+        }
+        return column.toStringColumn();
+    }
+
+    private static boolean isWider(ColumnType type, ColumnType than) {
+        return type == ColumnType.STRING || (type == ColumnType.LONG && than == ColumnType.INT);
+    }
+}
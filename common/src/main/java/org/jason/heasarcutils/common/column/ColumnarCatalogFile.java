@@ -0,0 +1,624 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ColumnarCatalog as a file, laid out so it can be mapped straight back in instead of being read: every
+ * column's values, null bitmap and (for Strings) dictionary sit in the file exactly the way the buffers of a
+ * Column hold them. map() hands back a catalog whose columns are read-only views of the mapped file, so
+ * opening one costs a header read and a few map() calls no matter how many rows there are, and the values
+ * stay off the heap (the OS pages them in as they're read and can drop them again when memory is short).
+ * <p/>
+ * Layout, everything little-endian:
+ * <pre>
+ * "HEACOLS1" version rowCount columnCount headerLength sourceLength sourceModified name
+ * for each column: name type sectionCount (offset length)* [dictionarySize]
+ * hasZoneIndex [raColumn decColumn zoneHeight sectionCount (offset length)*]
+ * the sections, each starting on an 8 byte boundary
+ * </pre>
+ * Strings in the header are an int byte count and UTF-8. The sections of a numeric column are its null bitmap
+ * and its values, a String column has its null bitmap, codes, dictionary offsets, dictionary bytes, hashes and
+ * lookup table. A column without nulls has an empty null section. The ZoneIndex, if the catalog has one, is
+ * four more sections: the zone starts, and the rows, right ascensions and declinations in zone order. The length and modification time of the file
+ * the catalog came from go in the header so ColumnarCache can tell when it's out of date.
+ * <p/>
+ * Each section has to fit in a single mapping (2GB), which is 250 million doubles.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCatalogFile {
+
+    private static final byte[] MAGIC = {'H', 'E', 'A', 'C', 'O', 'L', 'S', '1'};
+    private static final int VERSION = 2;
+
+    private static final int NUMERIC_SECTIONS = 2;
+    private static final int STRING_SECTIONS = 6;
+    private static final int INDEX_SECTIONS = 4;
+
+    private final File file;
+    private final String name;
+    private final int rowCount;
+    private final long sourceLength;
+    private final long sourceModified;
+    private final List<ColumnEntry> columns;
+    private final IndexEntry index;
+
+    private ColumnarCatalogFile(File file, String name, int rowCount, long sourceLength, long sourceModified,
+                                List<ColumnEntry> columns, IndexEntry index) {
+        this.file = file;
+        this.name = name;
+        this.rowCount = rowCount;
+        this.sourceLength = sourceLength;
+        this.sourceModified = sourceModified;
+        this.columns = columns;
+        this.index = index;
+    }
+
+    /**
+     * Read the header of a file, without mapping anything yet
+     *
+     * @param file the file
+     * @return the header
+     * @throws IOException if the file can't be read, or isn't a columnar catalog this version can map
+     */
+    public static ColumnarCatalogFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long fileLength = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " isn't a columnar catalog");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is version " + version + ", not " + VERSION);
+            }
+            int rowCount = header.getInt();
+            int columnCount = header.getInt();
+            int headerLength = header.getInt();
+            if (rowCount < 0 || columnCount < 0 || headerLength < 24 || headerLength > fileLength) {
+                throw new IOException(file + " has a bad header");
+            }
+
+            header = ByteBuffer.allocate(headerLength - 24).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 24);
+            long sourceLength = header.getLong();
+            long sourceModified = header.getLong();
+            String name = getString(header);
+
+            List<ColumnEntry> columns = new ArrayList<ColumnEntry>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                ColumnEntry column = new ColumnEntry(getString(header), ColumnType.values()[header.get()]);
+                readSections(header, column, column.getSectionCount(), headerLength, fileLength);
+                if (column.type == ColumnType.STRING) {
+                    column.dictionarySize = header.getInt();
+                }
+                columns.add(column);
+            }
+
+            IndexEntry index = null;
+            if (header.getInt() != 0) {
+                index = new IndexEntry(getString(header), getString(header), header.getDouble());
+                readSections(header, index, INDEX_SECTIONS, headerLength, fileLength);
+            }
+            return new ColumnarCatalogFile(file, name, rowCount, sourceLength, sourceModified, columns, index);
+        } catch (RuntimeException e) {
+            // a header that runs off the end, a type that doesn't exist...
+            throw new IOException(file + " has a bad header: " + e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void readSections(ByteBuffer header, Sections entry, int expected, long headerLength,
+                                     long fileLength) throws IOException {
+        int sections = header.getInt();
+        if (sections != expected) {
+            throw new IOException("Expected " + expected + " sections for " + entry + ", not " + sections);
+        }
+        entry.offsets = new long[sections];
+        entry.lengths = new long[sections];
+        for (int j = 0; j < sections; j++) {
+            entry.offsets[j] = header.getLong();
+            entry.lengths[j] = header.getLong();
+            if (entry.offsets[j] < headerLength || entry.lengths[j] < 0 || entry.lengths[j] > Integer.MAX_VALUE
+                    || entry.offsets[j] + entry.lengths[j] > fileLength) {
+                throw new IOException("Cut short, or a bad section in " + entry);
+            }
+        }
+    }
+
+    /**
+     * Write a catalog out
+     *
+     * @param catalog        the catalog
+     * @param file           where it goes. Anything already there is overwritten.
+     * @param sourceLength   length of the file the catalog came from, for ColumnarCache to check against later
+     * @param sourceModified modification time of the file the catalog came from
+     * @throws IOException if the file can't be written
+     */
+    public static void write(ColumnarCatalog catalog, File file, long sourceLength, long sourceModified)
+            throws IOException {
+
+        List<ColumnEntry> entries = new ArrayList<ColumnEntry>();
+        for (Column column : catalog.getColumns()) {
+            ColumnEntry entry = new ColumnEntry(column.getName(), column.getType());
+            entry.column = column;
+            entry.offsets = new long[entry.getSectionCount()];
+            entry.lengths = new long[entry.getSectionCount()];
+            if (column instanceof StringColumn) {
+                entry.dictionarySize = ((StringColumn) column).getDictionarySize();
+            }
+            entries.add(entry);
+        }
+
+        IndexEntry index = null;
+        ZoneIndex zoneIndex = catalog.getZoneIndex();
+        if (zoneIndex != null) {
+            index = new IndexEntry(zoneIndex.getRaColumn(), zoneIndex.getDecColumn(), zoneIndex.getZoneHeight());
+            index.zoneIndex = zoneIndex;
+            index.offsets = new long[INDEX_SECTIONS];
+            index.lengths = new long[INDEX_SECTIONS];
+        }
+
+        ColumnarCatalogFile layout = new ColumnarCatalogFile(file, catalog.getName(), catalog.getRowCount(),
+                sourceLength, sourceModified, entries, index);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+
+            // the header is the same length whatever the offsets are, so it's written once to find out where the
+            // sections start and again at the end with the real offsets
+            ByteBuffer header = layout.getHeader();
+            SectionWriter out = new SectionWriter(channel, header.limit());
+            for (ColumnEntry entry : entries) {
+                writeSections(entry, out);
+            }
+            if (index != null) {
+                writeSections(index, out);
+            }
+            out.flush();
+
+            header = layout.getHeader();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Map the columns
+     *
+     * @return the catalog, with every column a read-only view of the file. The mappings stay valid until they're
+     *         garbage collected, there's nothing to close.
+     * @throws IOException if the file can't be mapped
+     */
+    public ColumnarCatalog map() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            Map<String, Column> columnMap = new LinkedHashMap<String, Column>();
+            for (ColumnEntry entry : columns) {
+                columnMap.put(entry.name, entry.map(channel, rowCount));
+            }
+            ColumnarCatalog catalog = new ColumnarCatalog(name, rowCount, columnMap);
+            if (index != null) {
+                catalog.setZoneIndex(index.map(channel));
+            }
+            return catalog;
+        } finally {
+            // closing the channel doesn't unmap anything
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return length of the file the catalog came from, when it was written
+     */
+    public long getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * @return modification time of the file the catalog came from, when it was written
+     */
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    private ByteBuffer getHeader() {
+        List<byte[]> names = new ArrayList<byte[]>();
+        int length = 24 + 8 + 8 + 4 + name.getBytes(StringColumn.UTF_8).length;
+        for (ColumnEntry entry : columns) {
+            byte[] columnName = entry.name.getBytes(StringColumn.UTF_8);
+            names.add(columnName);
+            length += 4 + columnName.length + 1 + 4 + entry.offsets.length * 16
+                    + (entry.type == ColumnType.STRING ? 4 : 0);
+        }
+        length += 4;
+        if (index != null) {
+            length += 4 + index.raColumn.getBytes(StringColumn.UTF_8).length + 4
+                    + index.decColumn.getBytes(StringColumn.UTF_8).length + 8 + 4 + INDEX_SECTIONS * 16;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(rowCount).putInt(columns.size()).putInt(length);
+        header.putLong(sourceLength).putLong(sourceModified);
+        putString(header, name.getBytes(StringColumn.UTF_8));
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnEntry entry = columns.get(i);
+            putString(header, names.get(i));
+            header.put((byte) entry.type.ordinal());
+            putSections(header, entry);
+            if (entry.type == ColumnType.STRING) {
+                header.putInt(entry.dictionarySize);
+            }
+        }
+        header.putInt(index == null ? 0 : 1);
+        if (index != null) {
+            putString(header, index.raColumn.getBytes(StringColumn.UTF_8));
+            putString(header, index.decColumn.getBytes(StringColumn.UTF_8));
+            header.putDouble(index.zoneHeight);
+            putSections(header, index);
+        }
+        header.flip();
+        return header;
+    }
+
+    private static void putSections(ByteBuffer header, Sections entry) {
+        header.putInt(entry.offsets.length);
+        for (int j = 0; j < entry.offsets.length; j++) {
+            header.putLong(entry.offsets[j]).putLong(entry.lengths[j]);
+        }
+    }
+
+    private static void writeSections(IndexEntry entry, SectionWriter out) throws IOException {
+        ZoneIndex index = entry.zoneIndex;
+
+        out.begin(entry, 0);
+        IntBuffer zoneStarts = index.getZoneStarts();
+        for (int i = 0; i < zoneStarts.capacity(); i++) {
+            out.putInt(zoneStarts.get(i));
+        }
+        out.end();
+
+        out.begin(entry, 1);
+        IntBuffer rows = index.getRows();
+        for (int i = 0; i < rows.capacity(); i++) {
+            out.putInt(rows.get(i));
+        }
+        out.end();
+
+        out.begin(entry, 2);
+        DoubleBuffer ras = index.getRas();
+        for (int i = 0; i < ras.capacity(); i++) {
+            out.putDouble(ras.get(i));
+        }
+        out.end();
+
+        out.begin(entry, 3);
+        DoubleBuffer decs = index.getDecs();
+        for (int i = 0; i < decs.capacity(); i++) {
+            out.putDouble(decs.get(i));
+        }
+        out.end();
+    }
+
+    private static void writeSections(ColumnEntry entry, SectionWriter out) throws IOException {
+        Column column = entry.column;
+        int section = 0;
+
+        // nulls
+        out.begin(entry, section++);
+        LongBuffer nulls = column.getNulls();
+        if (nulls != null) {
+            for (int i = 0; i < nulls.capacity(); i++) {
+                out.putLong(nulls.get(i));
+            }
+        }
+        out.end();
+
+        if (column instanceof IntColumn) {
+            out.begin(entry, section);
+            IntBuffer values = ((IntColumn) column).getValues();
+            for (int row = 0; row < column.size(); row++) {
+                out.putInt(values.get(row));
+            }
+            out.end();
+        } else if (column instanceof LongColumn) {
+            out.begin(entry, section);
+            LongBuffer values = ((LongColumn) column).getValues();
+            for (int row = 0; row < column.size(); row++) {
+                out.putLong(values.get(row));
+            }
+            out.end();
+        } else if (column instanceof DoubleColumn) {
+            out.begin(entry, section);
+            DoubleBuffer values = ((DoubleColumn) column).getValues();
+            for (int row = 0; row < column.size(); row++) {
+                out.putDouble(values.get(row));
+            }
+            out.end();
+        } else {
+            StringColumn strings = (StringColumn) column;
+
+            out.begin(entry, section++);
+            IntBuffer codes = strings.getCodes();
+            for (int row = 0; row < column.size(); row++) {
+                out.putInt(codes.get(row));
+            }
+            out.end();
+
+            // the bytes go first, since the offsets aren't known until they've been encoded
+            int dictionarySize = strings.getDictionarySize();
+            int[] offsets = new int[dictionarySize + 1];
+            int offsetSection = section++;
+            out.begin(entry, section++);
+            for (int code = 0; code < dictionarySize; code++) {
+                byte[] bytes = strings.getValue(code).getBytes(StringColumn.UTF_8);
+                out.put(bytes);
+                offsets[code + 1] = offsets[code] + bytes.length;
+            }
+            out.end();
+            out.begin(entry, offsetSection);
+            for (int offset : offsets) {
+                out.putInt(offset);
+            }
+            out.end();
+
+            out.begin(entry, section++);
+            IntBuffer hashes = strings.getHashes();
+            for (int code = 0; code < dictionarySize; code++) {
+                out.putInt(hashes.get(code));
+            }
+            out.end();
+
+            out.begin(entry, section);
+            IntBuffer table = strings.getTable();
+            for (int i = 0; i < table.capacity(); i++) {
+                out.putInt(table.get(i));
+            }
+            out.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StringColumn.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Where a run of sections are
+     */
+    private abstract static class Sections {
+
+        long[] offsets;
+        long[] lengths;
+
+        ByteBuffer mapSection(FileChannel channel, int section) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offsets[section], lengths[section])
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Where one column's sections are
+     */
+    private static class ColumnEntry extends Sections {
+
+        private final String name;
+        private final ColumnType type;
+        private int dictionarySize;
+
+        // only while writing
+        private Column column;
+
+        private ColumnEntry(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        private int getSectionCount() {
+            return (type == ColumnType.STRING) ? STRING_SECTIONS : NUMERIC_SECTIONS;
+        }
+
+        @Override
+        public String toString() {
+            return "column " + name;
+        }
+
+        private Column map(FileChannel channel, int rowCount) throws IOException {
+            LongBuffer nulls = (lengths[0] == 0) ? null : mapSection(channel, 0).asLongBuffer();
+            switch (type) {
+                case INT:
+                    return new IntColumn(name, rowCount, mapSection(channel, 1).asIntBuffer(), nulls);
+                case LONG:
+                    return new LongColumn(name, rowCount, mapSection(channel, 1).asLongBuffer(), nulls);
+                case DOUBLE:
+                    return new DoubleColumn(name, rowCount, mapSection(channel, 1).asDoubleBuffer(), nulls);
+                default:
+                    return new StringColumn(name, rowCount, mapSection(channel, 1).asIntBuffer(), nulls, dictionarySize,
+                            mapSection(channel, 2).asIntBuffer(), mapSection(channel, 3), mapSection(channel, 4).asIntBuffer(),
+                            mapSection(channel, 5).asIntBuffer());
+            }
+        }
+    }
+
+    /**
+     * Where the ZoneIndex's sections are
+     */
+    private static class IndexEntry extends Sections {
+
+        private final String raColumn;
+        private final String decColumn;
+        private final double zoneHeight;
+
+        // only while writing
+        private ZoneIndex zoneIndex;
+
+        private IndexEntry(String raColumn, String decColumn, double zoneHeight) {
+            this.raColumn = raColumn;
+            this.decColumn = decColumn;
+            this.zoneHeight = zoneHeight;
+        }
+
+        private ZoneIndex map(FileChannel channel) throws IOException {
+            return new ZoneIndex(raColumn, decColumn, zoneHeight, mapSection(channel, 0).asIntBuffer(),
+                    mapSection(channel, 1).asIntBuffer(), mapSection(channel, 2).asDoubleBuffer(),
+                    mapSection(channel, 3).asDoubleBuffer());
+        }
+
+        @Override
+        public String toString() {
+            return "the zone index";
+        }
+    }
+
+    /**
+     * Streams the sections out through a buffer, keeping track of where each one starts and how long it is
+     */
+    private static class SectionWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private Sections entry;
+        private int section;
+        private long start;
+
+        private SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        private void begin(Sections entry, int section) throws IOException {
+            while ((position & 7) != 0) {
+                put((byte) 0);
+            }
+            this.entry = entry;
+            this.section = section;
+            start = position;
+        }
+
+        private void end() {
+            entry.offsets[section] = start;
+            entry.lengths[section] = position - start;
+        }
+
+        private void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        private void putLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        private void putDouble(double value) throws IOException {
+            ensureRemaining(8);
+            buffer.putDouble(value);
+            position += 8;
+        }
+
+        private void put(byte value) throws IOException {
+            ensureRemaining(1);
+            buffer.put(value);
+            position++;
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensureRemaining(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+                position += length;
+            }
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            long at = position - buffer.remaining();
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Positional cross-match between two catalogs: for every row of one catalog with a position, the nearest row
+ * of the other within a radius. Both catalogs need a ZoneIndex.
+ * <p/>
+ * The rows being matched are taken in the order of their own zone index and cut into partitions, so each
+ * partition covers a band of sky and its searches keep hitting the same few zones of the other catalog.
+ * Partitions are matched on a fixed thread pool and put back together in order, so the result is the same
+ * whatever the number of threads. (A fork/join pool would do the same job, but the project still targets
+ * Java 6, same as ChunkedTdatConverter.)
+ *
+ * <pre>
+ * CrossMatcher.Matches matches = new CrossMatcher(4).match(hipparcos, tycho2, 1 / 3600.0);
+ * </pre>
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class CrossMatcher {
+
+    // small enough that the threads stay busy to the end, big enough that handing them out costs nothing
+    private static final int PARTITIONS_PER_THREAD = 8;
+    private static final int MIN_PARTITION_SIZE = 4096;
+
+    private final int threads;
+
+    /**
+     * @param threads number of threads to match on
+     */
+    public CrossMatcher(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least 1 thread, not " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Find the nearest row of to within radius of each row of from
+     *
+     * @param from   the catalog to find matches for
+     * @param to     the catalog to find them in
+     * @param radius how far apart a match can be, in degrees
+     * @return the matches, in the order of from's zone index
+     * @throws IllegalArgumentException if either catalog doesn't have a zone index
+     */
+    public Matches match(ColumnarCatalog from, ColumnarCatalog to, double radius) {
+        final ZoneIndex fromIndex = getIndex(from);
+        final ZoneIndex toIndex = getIndex(to);
+        final double matchRadius = radius;
+
+        int entries = fromIndex.size();
+        int partitionSize = Math.max(MIN_PARTITION_SIZE, entries / (threads * PARTITIONS_PER_THREAD) + 1);
+        List<Callable<Matches>> partitions = new ArrayList<Callable<Matches>>();
+        for (int start = 0; start < entries; start += partitionSize) {
+            final int first = start;
+            final int last = Math.min(entries, start + partitionSize);
+            partitions.add(new Callable<Matches>() {
+                public Matches call() {
+                    return match(fromIndex, first, last, toIndex, matchRadius);
+                }
+            });
+        }
+
+        Matches matches = new Matches(from, to, radius, 0);
+        if (threads == 1 || partitions.size() == 1) {
+            for (Callable<Matches> partition : partitions) {
+                try {
+                    matches.addAll(partition.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return matches;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Matches> future : executor.invokeAll(partitions)) {
+                matches.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while matching " + from.getName() + " to " + to.getName());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to match " + from.getName() + " to " + to.getName(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return matches;
+    }
+
+    /**
+     * Match entries [first, last) of an index
+     */
+    private static Matches match(ZoneIndex fromIndex, int first, int last, ZoneIndex toIndex, double radius) {
+        IntBuffer rows = fromIndex.getRows();
+        DoubleBuffer ras = fromIndex.getRas();
+        DoubleBuffer decs = fromIndex.getDecs();
+        Matches matches = new Matches(null, null, radius, 256);
+        Nearest nearest = new Nearest();
+        for (int entry = first; entry < last; entry++) {
+            nearest.row = -1;
+            toIndex.coneSearch(ras.get(entry), decs.get(entry), radius, nearest);
+            if (nearest.row != -1) {
+                matches.add(rows.get(entry), nearest.row, nearest.distance);
+            }
+        }
+        return matches;
+    }
+
+    private static ZoneIndex getIndex(ColumnarCatalog catalog) {
+        ZoneIndex index = catalog.getZoneIndex();
+        if (index == null) {
+            throw new IllegalArgumentException(catalog.getName() + " has no ra and dec columns to match on");
+        }
+        return index;
+    }
+
+    /**
+     * Keeps the closest row a cone search finds, the lowest row if there's a tie
+     */
+    private static class Nearest implements ZoneIndex.Visitor {
+
+        private int row;
+        private double distance;
+
+        public void visit(int row, double distance) {
+            if (this.row == -1 || distance < this.distance || (distance == this.distance && row < this.row)) {
+                this.row = row;
+                this.distance = distance;
+            }
+        }
+    }
+
+    /**
+     * The pairs a match found: a row of one catalog, the nearest row of the other and how far apart they are
+     */
+    public static class Matches {
+
+        private final ColumnarCatalog from;
+        private final ColumnarCatalog to;
+        private final double radius;
+
+        private int[] fromRows;
+        private int[] toRows;
+        private double[] distances;
+        private int size;
+
+        private Matches(ColumnarCatalog from, ColumnarCatalog to, double radius, int capacity) {
+            this.from = from;
+            this.to = to;
+            this.radius = radius;
+            fromRows = new int[capacity];
+            toRows = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        public ColumnarCatalog getFrom() {
+            return from;
+        }
+
+        public ColumnarCatalog getTo() {
+            return to;
+        }
+
+        /**
+         * @return the match radius, in degrees
+         */
+        public double getRadius() {
+            return radius;
+        }
+
+        /**
+         * @return number of pairs
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i the pair
+         * @return its row in the from catalog
+         */
+        public int getFromRow(int i) {
+            return fromRows[i];
+        }
+
+        /**
+         * @param i the pair
+         * @return its row in the to catalog
+         */
+        public int getToRow(int i) {
+            return toRows[i];
+        }
+
+        /**
+         * @param i the pair
+         * @return how far apart the two rows are, in degrees
+         */
+        public double getDistance(int i) {
+            return distances[i];
+        }
+
+        /**
+         * Write the pairs as JSON, one record per pair: each catalog's row number and its name column (if it
+         * has one) under the catalog's name, and the separation in arcseconds.
+         * <pre>
+         * {"hipparcos":"HIP 1","hipparcos_row":0,"tycho2":"TYC 8-1-1","tycho2_row":17,"separation":0.0312}
+         * </pre>
+         *
+         * @param writer where the records go
+         * @throws IOException if the writer couldn't write
+         */
+        public void writeJson(JsonRecordWriter writer) throws IOException {
+            String fromName = from.getName();
+            String toName = to.getName().equals(fromName) ? to.getName() + "_2" : to.getName();
+            Column fromKey = from.getColumn("name");
+            Column toKey = to.getColumn("name");
+            StringBuilder value = new StringBuilder(64);
+            for (int i = 0; i < size; i++) {
+                writer.beginRecord();
+                writeSide(writer, fromName, fromKey, fromRows[i], value);
+                writeSide(writer, toName, toKey, toRows[i], value);
+                writer.name("separation");
+                value.setLength(0);
+                // 0.1 milliarcseconds is well past what any of the catalogs can tell apart
+                writer.number(value.append(Math.round(distances[i] * 3600 * 1e4) / 1e4));
+                writer.endRecord();
+            }
+        }
+
+        private static void writeSide(JsonRecordWriter writer, String catalogName, Column key, int row,
+                                      StringBuilder value) throws IOException {
+            if (key != null && !key.isNull(row)) {
+                writer.name(catalogName);
+                value.setLength(0);
+                writer.string(key.appendTo(row, value));
+            }
+            writer.name(catalogName + "_row");
+            value.setLength(0);
+            writer.number(value.append(row));
+        }
+
+        private void add(int fromRow, int toRow, double distance) {
+            if (size == fromRows.length) {
+                int capacity = Math.max(16, size * 2);
+                fromRows = Arrays.copyOf(fromRows, capacity);
+                toRows = Arrays.copyOf(toRows, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+            }
+            fromRows[size] = fromRow;
+            toRows[size] = toRow;
+            distances[size] = distance;
+            size++;
+        }
+
+        private void addAll(Matches part) {
+            int capacity = size + part.size;
+            if (capacity > fromRows.length) {
+                fromRows = Arrays.copyOf(fromRows, capacity);
+                toRows = Arrays.copyOf(toRows, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+            }
+            System.arraycopy(part.fromRows, 0, fromRows, size, part.size);
+            System.arraycopy(part.toRows, 0, toRows, size, part.size);
+            System.arraycopy(part.distances, 0, distances, size, part.size);
+            size = capacity;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of double values, for TDAT float fields. Nulls are NaN as well as being in the bitmap, so a
+ * filter like value < 10 leaves them out without having to ask.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class DoubleColumn extends Column {
+
+    private DoubleBuffer values;
+
+    DoubleColumn(String name, int capacity) {
+        super(name);
+        values = DoubleBuffer.wrap(new double[capacity]);
+    }
+
+    DoubleColumn(String name, int size, DoubleBuffer values, LongBuffer nulls) {
+        super(name, size, nulls);
+        this.values = values;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.DOUBLE;
+    }
+
+    /**
+     * @param row the row
+     * @return the value, NaN if it's null
+     */
+    public double getDouble(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    public StringBuilder appendTo(int row, StringBuilder sb) {
+        return isNull(row) ? sb : sb.append(values.get(row));
+    }
+
+    @Override
+    public long getByteCount() {
+        return super.getByteCount() + values.capacity() * 8L;
+    }
+
+    DoubleBuffer getValues() {
+        return values;
+    }
+
+    @Override
+    boolean add(char[] chars, int start, int end) {
+        double value;
+        try {
+            value = TdatValues.parseDouble(chars, start, end);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        add(value);
+        return true;
+    }
+
+    void add(double value) {
+        ensureCapacity(size + 1);
+        values.put(size++, value);
+    }
+
+    @Override
+    void addNull() {
+        ensureCapacity(size + 1);
+        values.put(size, Double.NaN);
+        super.addNull();
+    }
+
+    @Override
+    void addAll(Column part) {
+        DoubleColumn other = (DoubleColumn) part;
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.values.array(), 0, values.array(), size, other.size);
+        addNulls(other, size);
+        size += other.size;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.capacity()) {
+            values = DoubleBuffer.wrap(Arrays.copyOf(values.array(), grow(values.capacity(), capacity)));
+        }
+    }
+
+    @Override
+    void trim() {
+        super.trim();
+        values = DoubleBuffer.wrap(Arrays.copyOf(values.array(), size));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of int values, for TDAT int fields of 4 bytes or less.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class IntColumn extends Column {
+
+    private IntBuffer values;
+
+    IntColumn(String name, int capacity) {
+        super(name);
+        values = IntBuffer.wrap(new int[capacity]);
+    }
+
+    IntColumn(String name, int size, IntBuffer values, LongBuffer nulls) {
+        super(name, size, nulls);
+        this.values = values;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.INT;
+    }
+
+    /**
+     * @param row the row
+     * @return the value, 0 if it's null
+     */
+    public int getInt(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    public StringBuilder appendTo(int row, StringBuilder sb) {
+        return isNull(row) ? sb : sb.append(values.get(row));
+    }
+
+    @Override
+    public long getByteCount() {
+        return super.getByteCount() + values.capacity() * 4L;
+    }
+
+    IntBuffer getValues() {
+        return values;
+    }
+
+    @Override
+    boolean add(char[] chars, int start, int end) {
+        long value;
+        try {
+            value = TdatValues.parseLong(chars, start, end);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        add((int) value);
+        return true;
+    }
+
+    void add(int value) {
+        ensureCapacity(size + 1);
+        values.put(size++, value);
+    }
+
+    @Override
+    void addAll(Column part) {
+        IntColumn other = (IntColumn) part;
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.values.array(), 0, values.array(), size, other.size);
+        addNulls(other, size);
+        size += other.size;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.capacity()) {
+            values = IntBuffer.wrap(Arrays.copyOf(values.array(), grow(values.capacity(), capacity)));
+        }
+    }
+
+    @Override
+    void trim() {
+        super.trim();
+        values = IntBuffer.wrap(Arrays.copyOf(values.array(), size));
+    }
+
+    /**
+     * @return the same values as longs, for when one turns up that doesn't fit an int
+     */
+    LongColumn toLongColumn() {
+        LongColumn column = new LongColumn(getName(), Math.max(size, INITIAL_CAPACITY));
+        for (int row = 0; row < size; row++) {
+            if (isNull(row)) {
+                column.addNull();
+            } else {
+                column.add(values.get(row));
+            }
+        }
+        return column;
+    }
+}
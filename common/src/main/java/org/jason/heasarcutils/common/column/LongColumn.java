@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of long values, for TDAT int fields wider than 4 bytes (or with no width at all).
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class LongColumn extends Column {
+
+    private LongBuffer values;
+
+    LongColumn(String name, int capacity) {
+        super(name);
+        values = LongBuffer.wrap(new long[capacity]);
+    }
+
+    LongColumn(String name, int size, LongBuffer values, LongBuffer nulls) {
+        super(name, size, nulls);
+        this.values = values;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.LONG;
+    }
+
+    /**
+     * @param row the row
+     * @return the value, 0 if it's null
+     */
+    public long getLong(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    public StringBuilder appendTo(int row, StringBuilder sb) {
+        return isNull(row) ? sb : sb.append(values.get(row));
+    }
+
+    @Override
+    public long getByteCount() {
+        return super.getByteCount() + values.capacity() * 8L;
+    }
+
+    LongBuffer getValues() {
+        return values;
+    }
+
+    @Override
+    boolean add(char[] chars, int start, int end) {
+        long value;
+        try {
+            value = TdatValues.parseLong(chars, start, end);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        add(value);
+        return true;
+    }
+
+    void add(long value) {
+        ensureCapacity(size + 1);
+        values.put(size++, value);
+    }
+
+    @Override
+    void addAll(Column part) {
+        LongColumn other = (LongColumn) part;
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.values.array(), 0, values.array(), size, other.size);
+        addNulls(other, size);
+        size += other.size;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.capacity()) {
+            values = LongBuffer.wrap(Arrays.copyOf(values.array(), grow(values.capacity(), capacity)));
+        }
+    }
+
+    @Override
+    void trim() {
+        super.trim();
+        values = LongBuffer.wrap(Arrays.copyOf(values.array(), size));
+    }
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A column of Strings, dictionary-encoded: every distinct value is kept once, and each row is an int code into
+ * the dictionary (-1 for null). Flags, spectral types, component letters and the like come down to a handful
+ * of Strings no matter how many rows there are, and comparing codes is a lot cheaper than comparing Strings.
+ * <p/>
+ * Values get looked up in the dictionary straight from the row's chars (an open-addressing table hashed the
+ * same way as String.hashCode()), so a String is only made the first time a value turns up.
+ * <p/>
+ * A column mapped from a ColumnarCatalogFile has its dictionary as UTF-8 bytes with an offset per value instead
+ * of as Strings, and makes a String each time getValue() is called. appendTo() copies plain ASCII values
+ * straight out of the bytes.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class StringColumn extends Column {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private IntBuffer codes;
+
+    // while building
+    private String[] dictionary;
+
+    // when mapped: value i is bytes [offsets[i], offsets[i + 1])
+    private ByteBuffer dictionaryBytes;
+    private IntBuffer dictionaryOffsets;
+
+    private IntBuffer hashes;
+    private int dictionarySize;
+
+    // code + 1 for each slot, 0 for empty. Always at most half full.
+    private IntBuffer table;
+
+    StringColumn(String name, int capacity) {
+        super(name);
+        codes = IntBuffer.wrap(new int[capacity]);
+        dictionary = new String[64];
+        hashes = IntBuffer.wrap(new int[64]);
+        table = IntBuffer.wrap(new int[128]);
+    }
+
+    /**
+     * For a column mapped from a file
+     *
+     * @param name              name of the column
+     * @param size              number of rows
+     * @param codes             the code for each row
+     * @param nulls             the null bitmap, or null
+     * @param dictionarySize    number of distinct values
+     * @param dictionaryOffsets where each value starts in dictionaryBytes, plus where the last one ends
+     * @param dictionaryBytes   the values, UTF-8
+     * @param hashes            String.hashCode() of each value
+     * @param table             the lookup table for getCode(String)
+     */
+    StringColumn(String name, int size, IntBuffer codes, LongBuffer nulls, int dictionarySize,
+                 IntBuffer dictionaryOffsets, ByteBuffer dictionaryBytes, IntBuffer hashes, IntBuffer table) {
+        super(name, size, nulls);
+        this.codes = codes;
+        this.dictionarySize = dictionarySize;
+        this.dictionaryOffsets = dictionaryOffsets;
+        this.dictionaryBytes = dictionaryBytes;
+        this.hashes = hashes;
+        this.table = table;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.STRING;
+    }
+
+    /**
+     * @param row the row
+     * @return the dictionary code for the row's value, -1 if it's null
+     */
+    public int getCode(int row) {
+        return codes.get(row);
+    }
+
+    /**
+     * Look up a value's code, to compare against getCode() instead of comparing Strings
+     *
+     * @param value the value
+     * @return its code, or -1 if no row has that value
+     */
+    public int getCode(String value) {
+        int hash = value.hashCode();
+        int mask = table.capacity() - 1;
+        for (int slot = spread(hash) & mask; table.get(slot) != 0; slot = (slot + 1) & mask) {
+            int code = table.get(slot) - 1;
+            if (hashes.get(code) == hash && getValue(code).equals(value)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of distinct values
+     */
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * @param code a dictionary code
+     * @return the value with that code
+     */
+    public String getValue(int code) {
+        if (dictionary != null) {
+            return dictionary[code];
+        }
+        int start = dictionaryOffsets.get(code);
+        byte[] bytes = new byte[dictionaryOffsets.get(code + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = dictionaryBytes.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    @Override
+    public String getString(int row) {
+        int code = codes.get(row);
+        return (code == -1) ? null : getValue(code);
+    }
+
+    @Override
+    public StringBuilder appendTo(int row, StringBuilder sb) {
+        int code = codes.get(row);
+        if (code == -1) {
+            return sb;
+        }
+        if (dictionary != null) {
+            return sb.append(dictionary[code]);
+        }
+        int start = dictionaryOffsets.get(code);
+        int end = dictionaryOffsets.get(code + 1);
+        for (int i = start; i < end; i++) {
+            if (dictionaryBytes.get(i) < 0) {
+                // not ASCII, let String sort the UTF-8 out
+                return sb.append(getValue(code));
+            }
+        }
+        for (int i = start; i < end; i++) {
+            sb.append((char) dictionaryBytes.get(i));
+        }
+        return sb;
+    }
+
+    @Override
+    public long getByteCount() {
+        long bytes = super.getByteCount() + codes.capacity() * 4L + hashes.capacity() * 4L + table.capacity() * 4L;
+        if (dictionary == null) {
+            return bytes + dictionaryOffsets.capacity() * 4L + dictionaryBytes.capacity();
+        }
+        bytes += dictionary.length * 8L;
+        for (int i = 0; i < dictionarySize; i++) {
+            // object header, fields and the char array
+            bytes += 40 + dictionary[i].length() * 2L;
+        }
+        return bytes;
+    }
+
+    IntBuffer getCodes() {
+        return codes;
+    }
+
+    IntBuffer getHashes() {
+        return hashes;
+    }
+
+    IntBuffer getTable() {
+        return table;
+    }
+
+    @Override
+    boolean add(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = table.capacity() - 1;
+        int slot = spread(hash) & mask;
+        for (; table.get(slot) != 0; slot = (slot + 1) & mask) {
+            int code = table.get(slot) - 1;
+            if (hashes.get(code) == hash && equals(dictionary[code], chars, start, end)) {
+                addCode(code);
+                return true;
+            }
+        }
+        addCode(addValue(new String(chars, start, end - start), hash, slot));
+        return true;
+    }
+
+    /**
+     * Add a value that's already a String
+     *
+     * @param value the value, not null
+     */
+    void add(String value) {
+        addCode(getOrAddCode(value, value.hashCode()));
+    }
+
+    @Override
+    void addNull() {
+        ensureCapacity(size + 1);
+        codes.put(size, -1);
+        super.addNull();
+    }
+
+    @Override
+    void addAll(Column part) {
+        StringColumn other = (StringColumn) part;
+
+        // the other column's codes mean something else in this one
+        int[] recode = new int[other.dictionarySize];
+        for (int i = 0; i < other.dictionarySize; i++) {
+            recode[i] = getOrAddCode(other.dictionary[i], other.hashes.get(i));
+        }
+
+        ensureCapacity(size + other.size);
+        for (int row = 0; row < other.size; row++) {
+            int code = other.codes.get(row);
+            codes.put(size + row, (code == -1) ? -1 : recode[code]);
+        }
+        addNulls(other, size);
+        size += other.size;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > codes.capacity()) {
+            codes = IntBuffer.wrap(Arrays.copyOf(codes.array(), grow(codes.capacity(), capacity)));
+        }
+    }
+
+    @Override
+    void trim() {
+        super.trim();
+        codes = IntBuffer.wrap(Arrays.copyOf(codes.array(), size));
+        dictionary = Arrays.copyOf(dictionary, dictionarySize);
+        hashes = IntBuffer.wrap(Arrays.copyOf(hashes.array(), dictionarySize));
+    }
+
+    /**
+     * Turn a column whose type wasn't known up front into numbers, if every value is a plain number: the same
+     * values vizier2json writes as JSON numbers (a sign, digits and maybe a dot, no exponents), leading zeros
+     * and all.
+     *
+     * @return an int, long or double column with the same values, or this one if they aren't all numbers
+     */
+    Column narrow() {
+        if (dictionarySize == 0) {
+            return this;
+        }
+        ColumnType type = ColumnType.INT;
+        long[] longs = new long[dictionarySize];
+        double[] doubles = new double[dictionarySize];
+        for (int code = 0; code < dictionarySize; code++) {
+            String value = dictionary[code];
+            if (isPlainInteger(value)) {
+                longs[code] = Long.parseLong(value);
+                doubles[code] = longs[code];
+                if (type == ColumnType.INT && (longs[code] < Integer.MIN_VALUE || longs[code] > Integer.MAX_VALUE)) {
+                    type = ColumnType.LONG;
+                }
+            } else if (isPlainDecimal(value)) {
+                doubles[code] = Double.parseDouble(value);
+                type = ColumnType.DOUBLE;
+            } else {
+                return this;
+            }
+        }
+
+        Column column = newColumn(getName(), type, Math.max(size, 1));
+        for (int row = 0; row < size; row++) {
+            int code = codes.get(row);
+            if (code == -1) {
+                column.addNull();
+            } else if (type == ColumnType.INT) {
+                ((IntColumn) column).add((int) longs[code]);
+            } else if (type == ColumnType.LONG) {
+                ((LongColumn) column).add(longs[code]);
+            } else {
+                ((DoubleColumn) column).add(doubles[code]);
+            }
+        }
+        return column;
+    }
+
+    private void addCode(int code) {
+        ensureCapacity(size + 1);
+        codes.put(size++, code);
+    }
+
+    private int getOrAddCode(String value, int hash) {
+        int mask = table.capacity() - 1;
+        int slot = spread(hash) & mask;
+        for (; table.get(slot) != 0; slot = (slot + 1) & mask) {
+            int code = table.get(slot) - 1;
+            if (hashes.get(code) == hash && dictionary[code].equals(value)) {
+                return code;
+            }
+        }
+        return addValue(value, hash, slot);
+    }
+
+    /**
+     * Put a new value in the dictionary
+     *
+     * @param value the value
+     * @param hash  its hash
+     * @param slot  the empty slot the lookup stopped at
+     * @return the value's code
+     */
+    private int addValue(String value, int hash, int slot) {
+        int code = dictionarySize++;
+        if (code == dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, code * 2);
+            hashes = IntBuffer.wrap(Arrays.copyOf(hashes.array(), code * 2));
+        }
+        dictionary[code] = value;
+        hashes.put(code, hash);
+        table.put(slot, code + 1);
+
+        if (dictionarySize * 2 > table.capacity()) {
+            rehash(table.capacity() * 2);
+        }
+        return code;
+    }
+
+    private void rehash(int length) {
+        table = IntBuffer.wrap(new int[length]);
+        int mask = length - 1;
+        for (int code = 0; code < dictionarySize; code++) {
+            int slot = spread(hashes.get(code)) & mask;
+            while (table.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.put(slot, code + 1);
+        }
+    }
+
+    private static boolean equals(String value, char[] chars, int start, int end) {
+        int length = value.length();
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true for an optional sign and up to 18 digits
+     */
+    private static boolean isPlainInteger(String value) {
+        int start = (value.startsWith("-") || value.startsWith("+")) ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 18) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true for an optional sign, digits, a dot and maybe more digits
+     */
+    private static boolean isPlainDecimal(String value) {
+        int start = (value.startsWith("-") || value.startsWith("+")) ? 1 : 0;
+        int dot = value.indexOf('.');
+        if (dot <= start) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (i != dot && (value.charAt(i) < '0' || value.charAt(i) > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
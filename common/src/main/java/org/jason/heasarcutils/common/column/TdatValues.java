@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+/**
+ * Parses numbers straight out of a row's chars, without making a String for every value. Plain values (a sign,
+ * up to 18 digits for a long, up to 15 significant digits and a dot for a double) are done here. Anything else
+ * goes to Long.parseLong()/Double.parseDouble() so the answer is always the same as theirs.
+ * <p/>
+ * The double fast path is exact: a mantissa under 2^53 and a power of ten up to 10^22 are both exact doubles,
+ * and a single division of two exact doubles is correctly rounded, which is what parseDouble() gives too.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+final class TdatValues {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private TdatValues() {}
+
+    /**
+     * @return true if the value is empty or nothing but whitespace
+     */
+    static boolean isBlank(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long parseLong(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return Long.parseLong(new String(chars, start, end - start));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return Long.parseLong(new String(chars, start, end - start));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    static double parseDouble(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (mantissa != 0) {
+                    significant++;
+                }
+                if (dot) {
+                    scale++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (i != end || digits == 0 || significant > 15 || scale >= POWERS_OF_TEN.length) {
+            // exponents, too many digits, junk
+            return Double.parseDouble(new String(chars, start, end - start));
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Spatial index over a catalog's positions, for cone searches that don't scan every row. The sky is cut into
+ * declination zones of zoneHeight degrees, and within each zone the rows are sorted by right ascension. A cone
+ * only touches the zones its declination range covers, and in each of those a binary search finds the run of
+ * rows inside the cone's right ascension range; only those get the exact distance test. This is the zones
+ * scheme from Gray et al., "There Goes the Neighborhood: Relational Algebra for Spatial Data Search"
+ * (MSR-TR-2004-32), which needs nothing but sorted arrays and so maps straight out of a ColumnarCatalogFile.
+ * <p/>
+ * The positions come from the catalog's ra and dec columns (radeg/decdeg if it calls them that), in degrees.
+ * Rows with either one null aren't indexed. The index keeps its own copy of the positions in zone order, so a
+ * search reads them sequentially instead of jumping around the columns.
+ * <p/>
+ * Doesn't change once it's built, so it can be searched from any number of threads.
+ *
+ * <pre>
+ * ZoneIndex index = catalog.getZoneIndex();
+ * int[] rows = index.coneSearch(83.82, -5.39, 0.5);
+ * </pre>
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ZoneIndex {
+
+    public static final double DEFAULT_ZONE_HEIGHT = 0.1;
+
+    private static final String[][] POSITION_COLUMNS = {{"ra", "dec"}, {"radeg", "decdeg"}};
+
+    private final String raColumn;
+    private final String decColumn;
+    private final double zoneHeight;
+    private final int zoneCount;
+
+    // zone z is entries [zoneStarts[z], zoneStarts[z + 1])
+    private final IntBuffer zoneStarts;
+    // per entry, in zone then ra order
+    private final IntBuffer rows;
+    private final DoubleBuffer ras;
+    private final DoubleBuffer decs;
+
+    ZoneIndex(String raColumn, String decColumn, double zoneHeight, IntBuffer zoneStarts, IntBuffer rows,
+              DoubleBuffer ras, DoubleBuffer decs) {
+        this.raColumn = raColumn;
+        this.decColumn = decColumn;
+        this.zoneHeight = zoneHeight;
+        this.zoneCount = zoneStarts.capacity() - 1;
+        this.zoneStarts = zoneStarts;
+        this.rows = rows;
+        this.ras = ras;
+        this.decs = decs;
+    }
+
+    /**
+     * Index a catalog with the default zone height
+     *
+     * @param catalog the catalog
+     * @return the index, or null if the catalog doesn't have double ra and dec columns
+     */
+    public static ZoneIndex build(ColumnarCatalog catalog) {
+        return build(catalog, DEFAULT_ZONE_HEIGHT);
+    }
+
+    /**
+     * Index a catalog. Smaller zones mean fewer rows tested per search, but more zones visited for big cones;
+     * anything from a few times the usual search radius down to about the spacing between rows works.
+     *
+     * @param catalog    the catalog
+     * @param zoneHeight height of each declination zone, in degrees
+     * @return the index, or null if the catalog doesn't have double ra and dec columns
+     */
+    public static ZoneIndex build(ColumnarCatalog catalog, double zoneHeight) {
+        if (!(zoneHeight > 0 && zoneHeight <= 180)) {
+            throw new IllegalArgumentException("Zone height must be more than 0 and at most 180, not "
+                    + zoneHeight);
+        }
+        String[] names = findPositionColumns(catalog);
+        if (names == null) {
+            return null;
+        }
+        DoubleColumn ra = (DoubleColumn) catalog.getColumn(names[0]);
+        DoubleColumn dec = (DoubleColumn) catalog.getColumn(names[1]);
+        int zoneCount = (int) Math.ceil(180 / zoneHeight);
+
+        // count the rows in each zone, then drop each row into its zone's slot
+        int rowCount = catalog.getRowCount();
+        int[] zones = new int[rowCount];
+        int[] zoneStarts = new int[zoneCount + 1];
+        for (int row = 0; row < rowCount; row++) {
+            double rowRa = ra.getDouble(row);
+            double rowDec = dec.getDouble(row);
+            if (ra.isNull(row) || dec.isNull(row) || Double.isNaN(rowRa) || Double.isNaN(rowDec)
+                    || Double.isInfinite(rowRa) || rowDec < -90 || rowDec > 90) {
+                zones[row] = -1;
+                continue;
+            }
+            zones[row] = getZone(rowDec, zoneHeight, zoneCount);
+            zoneStarts[zones[row] + 1]++;
+        }
+        for (int zone = 0; zone < zoneCount; zone++) {
+            zoneStarts[zone + 1] += zoneStarts[zone];
+        }
+
+        int entries = zoneStarts[zoneCount];
+        int[] indexRows = new int[entries];
+        double[] indexRas = new double[entries];
+        double[] indexDecs = new double[entries];
+        int[] next = Arrays.copyOf(zoneStarts, zoneCount);
+        for (int row = 0; row < rowCount; row++) {
+            if (zones[row] != -1) {
+                int entry = next[zones[row]]++;
+                indexRows[entry] = row;
+                indexRas[entry] = normalizeRa(ra.getDouble(row));
+                indexDecs[entry] = dec.getDouble(row);
+            }
+        }
+        for (int zone = 0; zone < zoneCount; zone++) {
+            sort(indexRas, indexRows, indexDecs, zoneStarts[zone], zoneStarts[zone + 1]);
+        }
+
+        return new ZoneIndex(names[0], names[1], zoneHeight, IntBuffer.wrap(zoneStarts), IntBuffer.wrap(indexRows),
+                DoubleBuffer.wrap(indexRas), DoubleBuffer.wrap(indexDecs));
+    }
+
+    /**
+     * @return the ra and dec column names, or null if the catalog doesn't have a pair of double columns for them
+     */
+    static String[] findPositionColumns(ColumnarCatalog catalog) {
+        for (String[] names : POSITION_COLUMNS) {
+            Column ra = catalog.getColumn(names[0]);
+            Column dec = catalog.getColumn(names[1]);
+            if (ra instanceof DoubleColumn && dec instanceof DoubleColumn) {
+                return names;
+            }
+        }
+        return null;
+    }
+
+    public String getRaColumn() {
+        return raColumn;
+    }
+
+    public String getDecColumn() {
+        return decColumn;
+    }
+
+    public double getZoneHeight() {
+        return zoneHeight;
+    }
+
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    /**
+     * @return number of rows in the index (the ones with a position)
+     */
+    public int size() {
+        return rows.capacity();
+    }
+
+    /**
+     * @return roughly how many bytes the index takes up, on the heap or mapped
+     */
+    public long getByteCount() {
+        return zoneStarts.capacity() * 4L + rows.capacity() * 4L + ras.capacity() * 8L + decs.capacity() * 8L;
+    }
+
+    /**
+     * Find every row within radius degrees of a position
+     *
+     * @param ra     right ascension of the centre, in degrees
+     * @param dec    declination of the centre, in degrees
+     * @param radius radius of the cone, in degrees
+     * @return the rows, in ascending order
+     */
+    public int[] coneSearch(double ra, double dec, double radius) {
+        RowCollector collector = new RowCollector();
+        coneSearch(ra, dec, radius, collector);
+        int[] result = Arrays.copyOf(collector.rows, collector.size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Find every row within radius degrees of a position, handing each one to a visitor as it's found. Rows come
+     * in zone order, not row order.
+     *
+     * @param ra      right ascension of the centre, in degrees
+     * @param dec     declination of the centre, in degrees
+     * @param radius  radius of the cone, in degrees
+     * @param visitor gets each row and its distance from the centre
+     * @return number of rows found
+     */
+    public int coneSearch(double ra, double dec, double radius, Visitor visitor) {
+        if (radius < 0 || Double.isNaN(radius) || Double.isNaN(ra) || Double.isNaN(dec)) {
+            return 0;
+        }
+        Cone cone = new Cone(normalizeRa(ra), dec, radius);
+        double alpha = getRaHalfWidth(dec, radius);
+
+        int found = 0;
+        int lastZone = getZone(cone.maxDec, zoneHeight, zoneCount);
+        for (int zone = getZone(cone.minDec, zoneHeight, zoneCount); zone <= lastZone; zone++) {
+            int start = zoneStarts.get(zone);
+            int end = zoneStarts.get(zone + 1);
+            if (start == end) {
+                continue;
+            }
+            double from = cone.ra - alpha;
+            double to = cone.ra + alpha;
+            if (alpha >= 180) {
+                found += scan(start, end, cone, visitor);
+            } else if (from < 0) {
+                // the window wraps around 0
+                found += scan(search(start, end, from + 360), end, cone, visitor);
+                found += scan(start, search(start, end, to), cone, visitor);
+            } else if (to >= 360) {
+                found += scan(search(start, end, from), end, cone, visitor);
+                found += scan(start, search(start, end, to - 360), cone, visitor);
+            } else {
+                found += scan(search(start, end, from), search(start, end, to), cone, visitor);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the rows a cone search finds
+     */
+    public interface Visitor {
+
+        /**
+         * @param row      the row
+         * @param distance how far it is from the centre of the cone, in degrees
+         */
+        void visit(int row, double distance);
+    }
+
+    /**
+     * Angular distance between two positions, in degrees. Haversine, so it holds up for tiny distances.
+     */
+    public static double distance(double ra1, double dec1, double ra2, double dec2) {
+        double sinHalfDec = Math.sin(Math.toRadians(dec2 - dec1) / 2);
+        double sinHalfRa = Math.sin(Math.toRadians(ra2 - ra1) / 2);
+        double a = sinHalfDec * sinHalfDec
+                + Math.cos(Math.toRadians(dec1)) * Math.cos(Math.toRadians(dec2)) * sinHalfRa * sinHalfRa;
+        return Math.toDegrees(2 * Math.asin(Math.min(1, Math.sqrt(a))));
+    }
+
+    IntBuffer getZoneStarts() {
+        return zoneStarts;
+    }
+
+    IntBuffer getRows() {
+        return rows;
+    }
+
+    DoubleBuffer getRas() {
+        return ras;
+    }
+
+    DoubleBuffer getDecs() {
+        return decs;
+    }
+
+    /**
+     * Test the entries [start, end) of one zone against the cone
+     */
+    private int scan(int start, int end, Cone cone, Visitor visitor) {
+        int found = 0;
+        for (int entry = start; entry < end; entry++) {
+            double entryDec = decs.get(entry);
+            if (entryDec < cone.minDec || entryDec > cone.maxDec) {
+                continue;
+            }
+            double entryRa = ras.get(entry);
+            double decRadians = Math.toRadians(entryDec);
+            // cheap cosine test first (with some slack, it isn't exact for tiny distances), the haversine only
+            // for the ones that are close
+            double cos = cone.sinDec * Math.sin(decRadians)
+                    + cone.cosDec * Math.cos(decRadians) * Math.cos(Math.toRadians(entryRa - cone.ra));
+            if (cos >= cone.minCos - 1e-9) {
+                double distance = distance(cone.ra, cone.dec, entryRa, entryDec);
+                if (distance <= cone.radius) {
+                    visitor.visit(rows.get(entry), distance);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the first entry in [start, end) whose ra is at least ra
+     */
+    private int search(int start, int end, double ra) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ras.get(mid) < ra) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * How far either side of the centre's ra a cone reaches, in degrees, 180 or more if it takes in a pole
+     */
+    static double getRaHalfWidth(double dec, double radius) {
+        if (Math.abs(dec) + radius >= 89.999) {
+            return 180;
+        }
+        double r = Math.toRadians(radius);
+        double d = Math.toRadians(dec);
+        double alpha = Math.toDegrees(Math.atan(Math.sin(r) / Math.sqrt(Math.abs(Math.cos(d - r) * Math.cos(d + r)))));
+        // a little slack for rounding, the distance test is exact anyway
+        return alpha + 1e-9;
+    }
+
+    static int getZone(double dec, double zoneHeight, int zoneCount) {
+        int zone = (int) Math.floor((dec + 90) / zoneHeight);
+        return Math.max(0, Math.min(zoneCount - 1, zone));
+    }
+
+    static double normalizeRa(double ra) {
+        ra %= 360;
+        return (ra < 0) ? ra + 360 : ra;
+    }
+
+    /**
+     * Sort entries [from, to) by ra, carrying the rows and decs along
+     */
+    private static void sort(double[] ras, int[] rows, double[] decs, int from, int to) {
+        while (to - from > 16) {
+            // median of three, then partition around it
+            int mid = (from + to) >>> 1;
+            if (ras[mid] < ras[from]) {
+                swap(ras, rows, decs, mid, from);
+            }
+            if (ras[to - 1] < ras[from]) {
+                swap(ras, rows, decs, to - 1, from);
+            }
+            if (ras[to - 1] < ras[mid]) {
+                swap(ras, rows, decs, to - 1, mid);
+            }
+            double pivot = ras[mid];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (ras[i] < pivot) {
+                    i++;
+                }
+                while (ras[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(ras, rows, decs, i++, j--);
+                }
+            }
+            // recurse into the smaller side, loop on the bigger one
+            if (j - from < to - i) {
+                sort(ras, rows, decs, from, j + 1);
+                from = i;
+            } else {
+                sort(ras, rows, decs, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && ras[j] < ras[j - 1]; j--) {
+                swap(ras, rows, decs, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] ras, int[] rows, double[] decs, int i, int j) {
+        double ra = ras[i];
+        ras[i] = ras[j];
+        ras[j] = ra;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+        double dec = decs[i];
+        decs[i] = decs[j];
+        decs[j] = dec;
+    }
+
+    /**
+     * The centre of a search, worked out once
+     */
+    private static final class Cone {
+
+        private final double ra;
+        private final double dec;
+        private final double radius;
+        private final double minDec;
+        private final double maxDec;
+        private final double sinDec;
+        private final double cosDec;
+        private final double minCos;
+
+        private Cone(double ra, double dec, double radius) {
+            this.ra = ra;
+            this.dec = dec;
+            this.radius = radius;
+            minDec = Math.max(-90, dec - radius);
+            maxDec = Math.min(90, dec + radius);
+            sinDec = Math.sin(Math.toRadians(dec));
+            cosDec = Math.cos(Math.toRadians(dec));
+            minCos = Math.cos(Math.toRadians(Math.min(radius, 180)));
+        }
+    }
+
+    private static class RowCollector implements Visitor {
+
+        private int[] rows = new int[16];
+        private int size;
+
+        public void visit(int row, double distance) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * On-disk cache for the catalog downloads, so the same 100+ MB gzip doesn't get pulled from HEASARC/Vizier
+ * every time something wants to look at it.
+ * <p/>
+ * Files are keyed by URL. Next to each one is a .properties file with the ETag, Last-Modified, size and SHA-1
+ * of what was downloaded. HTTP entries are revalidated with a conditional GET (If-None-Match/If-Modified-Since)
+ * every time they're asked for, so a 304 costs one round trip instead of a whole download. FTP can't do that,
+ * so FTP entries are used as-is until somebody deletes them. If the server can't be reached and there's a good
+ * copy in the cache, the cached copy gets used anyway.
+ * <p/>
+ * Downloads go to a temp file and get renamed into place once the size and checksum are recorded, so a
+ * killed download never looks like a cached one. Local files and file: URLs aren't cached at all, get() just
+ * hands back the file.
+ * <p/>
+ * The cache lives in ~/.heasarcutils/cache unless the heasarcutils.cache.dir system property says otherwise.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class DownloadCache {
+
+    public static final String CACHE_DIR_PROPERTY = "heasarcutils.cache.dir";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_SHA1 = "sha1";
+    private static final String KEY_FILE_TIME = "fileTime";
+    private static final String KEY_FETCHED = "fetched";
+
+    // shared between instances, in case two of them point at the same directory
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private static DownloadCache defaultCache;
+
+    private final File directory;
+
+    public DownloadCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache in heasarcutils.cache.dir, or ~/.heasarcutils/cache
+     */
+    public static synchronized DownloadCache getDefault() {
+        if (defaultCache == null) {
+            String dir = System.getProperty(CACHE_DIR_PROPERTY);
+            if (dir == null || dir.trim().length() == 0) {
+                dir = System.getProperty("user.home") + File.separator + ".heasarcutils" + File.separator + "cache";
+            }
+            defaultCache = new DownloadCache(new File(dir.trim()));
+        }
+        return defaultCache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get a local copy of a URL, downloading it if it isn't cached or the server has a newer one
+     *
+     * @param location http/ftp URL, file: URL or plain file name
+     * @return the cached file (or the file itself, for local locations)
+     * @throws IOException if the file couldn't be downloaded and there's no cached copy to fall back on
+     */
+    public File get(String location) throws IOException {
+
+        File local = LineReaders.toFile(location);
+        if (local != null) {
+            return local;
+        }
+
+        String name = getEntryName(location);
+        File data = new File(directory, name);
+        File meta = new File(directory, name + ".properties");
+
+        Object lock = locks.putIfAbsent(data.getAbsolutePath(), new Object());
+        if (lock == null) {
+            lock = locks.get(data.getAbsolutePath());
+        }
+
+        synchronized (lock) {
+            Properties entry = readEntry(meta, location);
+            boolean valid = entry != null && isValid(entry, data, meta);
+
+            URLConnection conn;
+            try {
+                conn = new URL(location).openConnection();
+                if (!(conn instanceof HttpURLConnection)) {
+                    // no way to ask an FTP server if the file changed, so a good copy is good enough
+                    if (valid) {
+                        return data;
+                    }
+                    return download(location, conn, data, meta);
+                }
+
+                HttpURLConnection http = (HttpURLConnection) conn;
+                if (valid) {
+                    String etag = entry.getProperty(KEY_ETAG);
+                    if (etag != null) {
+                        http.setRequestProperty("If-None-Match", etag);
+                    }
+                    long lastModified = Long.parseLong(entry.getProperty(KEY_LAST_MODIFIED, "0"));
+                    if (lastModified > 0) {
+                        http.setIfModifiedSince(lastModified);
+                    }
+                }
+
+                int code = http.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && valid) {
+                    http.disconnect();
+                    return data;
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    http.disconnect();
+                    throw new IOException("Server returned " + code + " for " + location);
+                }
+                return download(location, http, data, meta);
+            } catch (IOException e) {
+                if (valid && meta.isFile()) {
+                    System.out.println("Unable to check " + location + " (" + e.getMessage() + "), using cached copy");
+                    return data;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Throw out the cached copy of a URL, if there is one
+     *
+     * @param location the URL
+     */
+    public void remove(String location) {
+        String name = getEntryName(location);
+        new File(directory, name).delete();
+        new File(directory, name + ".properties").delete();
+    }
+
+    /**
+     * Name of the cache entry for a URL: a hash of the URL (so two catalogs with the same file name don't
+     * collide) followed by the file name from the URL (so the .gz extension survives and a person looking in
+     * the directory can tell what's what).
+     */
+    private static String getEntryName(String location) {
+
+        String path = location;
+        int query = path.indexOf('?');
+        if (query != -1) {
+            path = path.substring(0, query);
+        }
+        String baseName = path.substring(path.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        if (baseName.length() == 0) {
+            baseName = "index";
+        }
+
+        try {
+            String hash = toHex(MessageDigest.getInstance("SHA-1").digest(location.getBytes("UTF-8")));
+            return hash.substring(0, 16) + "-" + baseName;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Properties readEntry(File meta, String location) {
+
+        if (!meta.isFile()) {
+            return null;
+        }
+        Properties entry = new Properties();
+        try {
+            InputStream is = new FileInputStream(meta);
+            try {
+                entry.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        // hash collisions are pretty unlikely, but make sure this entry is for the right URL
+        if (!location.equals(entry.getProperty(KEY_URL)) || entry.getProperty(KEY_SIZE) == null
+                || entry.getProperty(KEY_SHA1) == null) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Check that the cached file is the one that was downloaded. A size mismatch means it's toast. If the
+     * modification time moved, somebody touched it, so the checksum gets recomputed before it's trusted again.
+     */
+    private static boolean isValid(Properties entry, File data, File meta) {
+
+        if (!data.isFile() || data.length() != Long.parseLong(entry.getProperty(KEY_SIZE))) {
+            return false;
+        }
+        if (String.valueOf(data.lastModified()).equals(entry.getProperty(KEY_FILE_TIME))) {
+            return true;
+        }
+
+        try {
+            if (!entry.getProperty(KEY_SHA1).equals(checksum(data))) {
+                return false;
+            }
+            entry.setProperty(KEY_FILE_TIME, String.valueOf(data.lastModified()));
+            writeEntry(entry, meta);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private File download(String location, URLConnection conn, File data, File meta) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        System.out.println("Downloading " + location);
+        long start = System.currentTimeMillis();
+
+        File temp = File.createTempFile(data.getName(), ".part", directory);
+        long size = 0;
+        try {
+            InputStream is = conn.getInputStream();
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[1 << 16];
+                int len;
+                while ((len = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, len);
+                    digest.update(buffer, 0, len);
+                    size += len;
+                }
+            } finally {
+                os.close();
+                is.close();
+            }
+
+            int expected = conn.getContentLength();
+            if (expected >= 0 && expected != size) {
+                throw new IOException("Download of " + location + " was cut short: expected " + expected
+                        + " bytes, got " + size);
+            }
+
+            // the old entry goes first, so a crash between here and writeEntry() leaves nothing that looks valid
+            meta.delete();
+            if (data.exists() && !data.delete()) {
+                throw new IOException("Unable to replace " + data);
+            }
+            if (!temp.renameTo(data)) {
+                throw new IOException("Unable to move " + temp + " to " + data);
+            }
+        } finally {
+            temp.delete();
+        }
+
+        Properties entry = new Properties();
+        entry.setProperty(KEY_URL, location);
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null) {
+            entry.setProperty(KEY_ETAG, etag);
+        }
+        entry.setProperty(KEY_LAST_MODIFIED, String.valueOf(conn.getLastModified()));
+        entry.setProperty(KEY_SIZE, String.valueOf(size));
+        entry.setProperty(KEY_SHA1, toHex(digest.digest()));
+        entry.setProperty(KEY_FILE_TIME, String.valueOf(data.lastModified()));
+        entry.setProperty(KEY_FETCHED, String.valueOf(System.currentTimeMillis()));
+        writeEntry(entry, meta);
+
+        System.out.println("Downloaded " + size + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+
+        return data;
+    }
+
+    private static void writeEntry(Properties entry, File meta) throws IOException {
+        File temp = new File(meta.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(temp);
+        try {
+            entry.store(os, null);
+        } finally {
+            os.close();
+        }
+        meta.delete();
+        if (!temp.renameTo(meta)) {
+            temp.delete();
+            throw new IOException("Unable to write " + meta);
+        }
+    }
+
+    private static String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            is.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
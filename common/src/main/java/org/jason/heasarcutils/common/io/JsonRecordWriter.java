@@ -0,0 +1,480 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.jason.heasarcutils.common.stats.StageStats;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes one-record-per-line JSON (the mongoimport format all the converters produce) straight to UTF-8 bytes.
+ * <p/>
+ * Instead of building each record in a StringBuffer, chopping the trailing comma off with substring() and
+ * pushing the String through a Writer, the names and values are encoded into one reusable byte array as
+ * they're written, and when it fills up it goes to the channel in one big block (through a direct ByteBuffer
+ * that belongs to the writer, for a FileChannel). Commas between fields are taken care of, so there's nothing to chop.
+ * <p/>
+ * The encoding is done in a plain byte[] rather than straight into the direct buffer because a put() per
+ * byte on a direct buffer turned out slower than the old Writer. Having our own direct buffer for the
+ * channel still saves the JDK from keeping a temporary one (as big as the biggest write) around for every
+ * thread that ever wrote to a file.
+ * <p/>
+ * Names and string values get proper JSON escaping (quotes, backslashes, control characters), which the
+ * old StringBuffer code never did. Numbers are written as-is, it's up to the caller to decide what's a number.
+ * <p/>
+ * Only whole records go to the channel (unless a single record is bigger than the buffer), and a record
+ * that was begun but never ended is left out when the writer is closed. So if a conversion blows up half way
+ * through a record, the file ends with the last good line instead of half of one, same as the old code.
+ * <p/>
+ * open() with gzip turned on puts a ParallelGzipChannel under the writer, so the blocks get compressed on
+ * several threads on their way to the file.
+ * <p/>
+ * A writer with no channel (see inMemory()) just grows its buffer, which is how the chunked converters build
+ * a block of records on a worker thread and then hand it to the real writer with write(ByteBuffer).
+ * <p/>
+ * setWriteStage() times every write to the channel (and the close, which waits for the gzip threads), so an
+ * import can tell how long it spent waiting on its output.
+ * <p/>
+ * Not thread safe.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class JsonRecordWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * System property that turns on gzipped output where there's no command line to ask for it (CatalogParser)
+     */
+    public static final String GZIP_PROPERTY = "heasarcutils.output.gzip";
+
+    // worst case for a single char is a six char unicode escape for a control character
+    private static final int MAX_BYTES_PER_CHAR = 6;
+    private static final int MIN_BUFFER_SIZE = MAX_BYTES_PER_CHAR * 4;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    // ASCII chars that can go out as they are
+    private static final boolean[] PLAIN = new boolean[128];
+
+    static {
+        for (int c = 0x20; c < 128; c++) {
+            PLAIN[c] = (c != '"' && c != '\\');
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer channelBuffer;
+    private byte[] bytes;
+    private int position;
+    private boolean firstField;
+    // where the record being written starts in the buffer, or -1 if there isn't one (or it can't be taken back)
+    private int recordStart = -1;
+    private long bytesWritten;
+    private StageStats writeStage;
+
+    /**
+     * Write to a file, with a buffer of DEFAULT_BUFFER_SIZE
+     *
+     * @param file the .json file, replaced if it's already there
+     * @throws IOException if the file can't be opened
+     */
+    public JsonRecordWriter(File file) throws IOException {
+        this(new FileOutputStream(file).getChannel(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Write to a channel
+     *
+     * @param channel    where the bytes go, or null to keep everything in memory
+     * @param bufferSize how many bytes to collect between writes (or to start with, without a channel)
+     */
+    public JsonRecordWriter(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE);
+        }
+        this.channel = channel;
+        // only a FileChannel would copy to a temporary direct buffer of its own
+        this.channelBuffer = (channel instanceof FileChannel) ? ByteBuffer.allocateDirect(bufferSize) : null;
+        this.bytes = new byte[bufferSize];
+    }
+
+    /**
+     * Open a writer for a converter's output file
+     *
+     * @param baseName file name without the extension
+     * @param gzip     true to gzip the output (on several threads)
+     * @return the writer, for baseName.json or baseName.json.gz
+     * @throws IOException if the file can't be opened
+     */
+    public static JsonRecordWriter open(String baseName, boolean gzip) throws IOException {
+        File file = getFile(baseName, gzip);
+        if (gzip) {
+            return new JsonRecordWriter(new ParallelGzipChannel(file), DEFAULT_BUFFER_SIZE);
+        }
+        return new JsonRecordWriter(file);
+    }
+
+    /**
+     * @param baseName file name without the extension
+     * @param gzip     true for gzipped output
+     * @return the file open() writes to
+     */
+    public static File getFile(String baseName, boolean gzip) {
+        return new File(baseName + (gzip ? ".json.gz" : ".json"));
+    }
+
+    /**
+     * @return true if the heasarcutils.output.gzip system property is set to true
+     */
+    public static boolean isGzipByDefault() {
+        return Boolean.getBoolean(GZIP_PROPERTY);
+    }
+
+    /**
+     * Create a writer that keeps everything in memory, growing as needed
+     *
+     * @param initialSize starting size of the buffer
+     * @return the writer. Get the bytes with toByteBuffer().
+     */
+    public static JsonRecordWriter inMemory(int initialSize) {
+        return new JsonRecordWriter(null, Math.max(initialSize, MIN_BUFFER_SIZE));
+    }
+
+    /**
+     * @param writeStage gets the time and size of each write to the channel, or null for no timing
+     */
+    public void setWriteStage(StageStats writeStage) {
+        this.writeStage = writeStage;
+    }
+
+    /**
+     * Start a record
+     */
+    public void beginRecord() throws IOException {
+        ensure(1);
+        recordStart = position;
+        bytes[position++] = '{';
+        firstField = true;
+    }
+
+    /**
+     * Write a quoted (and escaped) field name, along with the comma before it if it isn't the first one
+     *
+     * @param name the field name
+     */
+    public void name(CharSequence name) throws IOException {
+        separator();
+        ensure(1);
+        bytes[position++] = '"';
+        putEscaped(name);
+        ensure(2);
+        bytes[position++] = '"';
+        bytes[position++] = ':';
+    }
+
+    /**
+     * Write a field name without quotes, the way the catalogparser has always written them. mongoimport
+     * takes it, but it isn't strict JSON, so stick to name() for anything new.
+     *
+     * @param name the field name
+     */
+    public void bareName(CharSequence name) throws IOException {
+        separator();
+        putEscaped(name);
+        ensure(1);
+        bytes[position++] = ':';
+    }
+
+    /**
+     * Write a quoted (and escaped) string value
+     *
+     * @param value the value
+     */
+    public void string(CharSequence value) throws IOException {
+        ensure(1);
+        bytes[position++] = '"';
+        putEscaped(value);
+        ensure(1);
+        bytes[position++] = '"';
+    }
+
+    /**
+     * Write a value exactly as it is, no quotes and no escaping. Only meant for numbers (or true/false/null).
+     *
+     * @param value the value, which should be plain ASCII
+     */
+    @SuppressWarnings("deprecation")
+    public void number(CharSequence value) throws IOException {
+        int length = value.length();
+        if (value instanceof String && length <= bytes.length - position) {
+            // the old ASCII-only getBytes() is exactly what's wanted here, and it's a straight copy
+            ((String) value).getBytes(0, length, bytes, position);
+            position += length;
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            if (position == bytes.length) {
+                makeRoom(1);
+            }
+            bytes[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Finish a record, including the line terminator. A record with no fields comes out as a lone "}", which is
+     * what the old substring() for the trailing comma did to the "{".
+     */
+    public void endRecord() throws IOException {
+        if (firstField && recordStart != -1 && position == recordStart + 1) {
+            position--;
+        }
+        ensure(3);
+        bytes[position++] = '}';
+        bytes[position++] = '\r';
+        bytes[position++] = '\n';
+        recordStart = -1;
+    }
+
+    /**
+     * Write a block of bytes that's already JSON (from an inMemory() writer, say)
+     *
+     * @param block bytes from position to limit get written
+     */
+    public void write(ByteBuffer block) throws IOException {
+        int length = block.remaining();
+        if (length <= bytes.length - position) {
+            block.get(bytes, position, length);
+            position += length;
+            return;
+        }
+        if (channel == null) {
+            makeRoom(length);
+            block.get(bytes, position, length);
+            position += length;
+            return;
+        }
+        // big enough to be worth skipping the buffer for
+        flush();
+        writeFully(block);
+    }
+
+    /**
+     * Write whatever is in the buffer to the channel. Does nothing for an inMemory() writer.
+     */
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        writeBytes(0, position);
+        position = 0;
+        // whatever part of a record was in there is gone now
+        recordStart = -1;
+    }
+
+    /**
+     * Flush and close the channel. A record that hasn't been ended is dropped.
+     */
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (recordStart != -1) {
+            position = recordStart;
+            recordStart = -1;
+        }
+        try {
+            flush();
+        } finally {
+            long start = writeStage == null ? 0 : System.nanoTime();
+            channel.close();
+            if (writeStage != null) {
+                writeStage.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes written so far, including what's still in the buffer
+     */
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    /**
+     * Get what an inMemory() writer has collected. The writer shouldn't be used afterwards.
+     *
+     * @return the bytes, ready to read
+     */
+    public ByteBuffer toByteBuffer() {
+        if (channel != null) {
+            throw new IllegalStateException("Only an in-memory writer keeps its bytes");
+        }
+        return ByteBuffer.wrap(bytes, 0, position);
+    }
+
+    private void separator() throws IOException {
+        if (firstField) {
+            firstField = false;
+        } else {
+            ensure(1);
+            bytes[position++] = ',';
+        }
+    }
+
+    private void ensure(int count) throws IOException {
+        if (bytes.length - position < count) {
+            makeRoom(count);
+        }
+    }
+
+    private void makeRoom(int count) throws IOException {
+        if (channel == null) {
+            byte[] bigger = new byte[Math.max(bytes.length * 2, position + count)];
+            System.arraycopy(bytes, 0, bigger, 0, position);
+            bytes = bigger;
+            return;
+        }
+        if (recordStart > 0) {
+            // write the finished records, and move the one being written to the front of the buffer
+            writeBytes(0, recordStart);
+            System.arraycopy(bytes, recordStart, bytes, 0, position - recordStart);
+            position -= recordStart;
+            recordStart = 0;
+            if (bytes.length - position >= count) {
+                return;
+            }
+        }
+        // one record that won't fit in the whole buffer, so it has to go out in pieces
+        flush();
+    }
+
+    private void writeBytes(int offset, int length) throws IOException {
+        if (channelBuffer == null) {
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+            return;
+        }
+        channelBuffer.clear();
+        channelBuffer.put(bytes, offset, length);
+        channelBuffer.flip();
+        writeFully(channelBuffer);
+    }
+
+    private void writeFully(ByteBuffer block) throws IOException {
+        if (!block.hasRemaining()) {
+            return;
+        }
+        long start = writeStage == null ? 0 : System.nanoTime();
+        int length = block.remaining();
+        while (block.hasRemaining()) {
+            bytesWritten += channel.write(block);
+        }
+        if (writeStage != null) {
+            writeStage.add(System.nanoTime() - start, length);
+        }
+    }
+
+    /**
+     * Encode chars as UTF-8, escaping what JSON needs escaped. Unpaired surrogates come out as '?', same as
+     * the JDK encoder.
+     */
+    private void putEscaped(CharSequence s) throws IOException {
+
+        int length = s.length();
+        // usually the whole thing fits, and then there's no need to check for room every char
+        boolean fits = (bytes.length - position) / MAX_BYTES_PER_CHAR >= length;
+
+        byte[] b = bytes;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            if (!fits && b.length - p < MAX_BYTES_PER_CHAR) {
+                position = p;
+                makeRoom(MAX_BYTES_PER_CHAR);
+                b = bytes;
+                p = position;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (PLAIN[c]) {
+                    b[p++] = (byte) c;
+                } else {
+                    p = putEscape(b, p, c);
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xc0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c >= '\uD800' && c <= '\uDFFF') {
+                if (c <= '\uDBFF' && i + 1 < length && s.charAt(i + 1) >= '\uDC00' && s.charAt(i + 1) <= '\uDFFF') {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    b[p++] = (byte) (0xf0 | (codePoint >> 18));
+                    b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    b[p++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    b[p++] = '?';
+                }
+            } else {
+                b[p++] = (byte) (0xe0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        position = p;
+    }
+
+    private static int putEscape(byte[] b, int p, char c) {
+        b[p++] = '\\';
+        switch (c) {
+            case '"':
+                b[p++] = '"';
+                break;
+            case '\\':
+                b[p++] = '\\';
+                break;
+            case '\b':
+                b[p++] = 'b';
+                break;
+            case '\f':
+                b[p++] = 'f';
+                break;
+            case '\n':
+                b[p++] = 'n';
+                break;
+            case '\r':
+                b[p++] = 'r';
+                break;
+            case '\t':
+                b[p++] = 't';
+                break;
+            default:
+                b[p++] = 'u';
+                b[p++] = '0';
+                b[p++] = '0';
+                b[p++] = HEX_DIGITS[c >> 4];
+                b[p++] = HEX_DIGITS[c & 0xf];
+        }
+        return p;
+    }
+}
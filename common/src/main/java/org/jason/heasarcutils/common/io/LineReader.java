@@ -0,0 +1,40 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads a catalog file one line at a time. Works like BufferedReader.readLine(), except that what comes back is
+ * a CharSequence which may be reused by the next call. If a line needs to be kept around, call toString() on it.
+ * <p/>
+ * Use LineReaders.open() to get one; it picks a memory-mapped reader when it can and a plain Reader when it
+ * can't.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public interface LineReader extends Closeable {
+
+    /**
+     * Read the next line, without the line terminator
+     *
+     * @return the line, or null at the end of the input. Only valid until the next call to readLine()
+     * @throws IOException if the input can't be read
+     */
+    public CharSequence readLine() throws IOException;
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.jason.heasarcutils.common.stats.ImportStats;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Factory for LineReaders. Uncompressed local files read as ISO-8859-1 or US-ASCII get a MappedLineReader,
+ * everything else (other charsets, gzipped files, remote URLs) gets a plain ReaderLineReader. Gzipped input is fetched and inflated on two threads of its own
+ * (see ReadAheadInputStream.gunzip()), so the caller's thread only decodes and parses.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class LineReaders {
+
+    private LineReaders() {}
+
+    /**
+     * Open a local file
+     *
+     * @param file        the file to read
+     * @param charsetName charset to decode with
+     * @return a LineReader
+     * @throws IOException if the file can't be opened
+     */
+    public static LineReader open(File file, String charsetName) throws IOException {
+        return open(file, charsetName, null);
+    }
+
+    /**
+     * Open a local file, adding its size to an import's bytes in. A gzipped file's fetch, gunzip and waiting
+     * get timed into the import's stages.
+     *
+     * @param file        the file to read
+     * @param charsetName charset to decode with
+     * @param stats       the import's stats, or null
+     * @return a LineReader
+     * @throws IOException if the file can't be opened
+     */
+    public static LineReader open(File file, String charsetName, ImportStats stats) throws IOException {
+        if (isGzip(file.getName())) {
+            InputStream is = ReadAheadInputStream.gunzip(new FileInputStream(file), stats);
+            if (stats != null) {
+                stats.addBytesIn(file.length());
+            }
+            return new ReaderLineReader(new InputStreamReader(is, charsetName));
+        }
+        LineReader reader;
+        if (isMappable(charsetName)) {
+            reader = new MappedLineReader(file);
+        } else {
+            // a mapped file comes out as Latin-1, which is no good for UTF-8 and the like
+            reader = new ReaderLineReader(new InputStreamReader(new FileInputStream(file), charsetName));
+        }
+        if (stats != null) {
+            stats.addBytesIn(file.length());
+        }
+        return reader;
+    }
+
+    /**
+     * Open a file name, file: URL or remote URL
+     *
+     * @param location    where to read from
+     * @param charsetName charset to decode with
+     * @return a LineReader
+     * @throws IOException if the location can't be opened
+     */
+    public static LineReader open(String location, String charsetName) throws IOException {
+
+        File file = toFile(location);
+        if (file != null) {
+            return open(file, charsetName);
+        }
+
+        InputStream is = new URL(location).openStream();
+        if (isGzip(location)) {
+            is = ReadAheadInputStream.gunzip(is);
+        }
+        return new ReaderLineReader(new InputStreamReader(is, charsetName));
+    }
+
+    /**
+     * Open a location, decoding with the platform default charset. Same as what FileReader and Scanner do.
+     *
+     * @param location where to read from
+     * @return a LineReader
+     * @throws IOException if the location can't be opened
+     */
+    public static LineReader open(String location) throws IOException {
+        return open(location, Charset.defaultCharset().name());
+    }
+
+    /**
+     * Turn a location into a local File, if it is one
+     *
+     * @param location file name or URL
+     * @return the File, or null if the location isn't a local file
+     */
+    static File toFile(String location) {
+        if (location.startsWith("file:")) {
+            try {
+                return new File(new URI(location));
+            } catch (URISyntaxException e) {
+                return new File(location.substring("file:".length()));
+            } catch (IllegalArgumentException e) {
+                return new File(location.substring("file:".length()));
+            }
+        }
+        if (location.indexOf("://") != -1) {
+            return null;
+        }
+        return new File(location);
+    }
+
+    /**
+     * Whether a MappedLineReader decodes the same as the charset would. It turns each byte into the char with
+     * the same value, which is ISO-8859-1, and US-ASCII is the part of that any ASCII file stays in.
+     *
+     * @param charsetName the charset the caller asked for
+     * @return true if the file can be mapped
+     */
+    static boolean isMappable(String charsetName) {
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetName);
+        } catch (IllegalArgumentException e) {
+            // unknown or illegal name, the InputStreamReader reports it
+            return false;
+        }
+        return charset.name().equals(MappedLineReader.CHARSET) || charset.name().equals("US-ASCII");
+    }
+
+    private static boolean isGzip(String name) {
+        return name.toLowerCase().endsWith(".gz");
+    }
+}
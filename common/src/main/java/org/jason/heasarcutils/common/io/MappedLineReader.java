@@ -0,0 +1,188 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * LineReader for uncompressed local files. The file is mapped with FileChannel.map() and lines are handed back
+ * as a view over the mapped bytes, so nothing gets decoded or copied until somebody asks for a String (usually
+ * TdatRowScanner.getString() on the fields that are actually kept).
+ * <p/>
+ * TDAT and DAT files are ASCII, so each byte is treated as one char (ISO-8859-1, really). Don't use this for
+ * anything that might hold multi-byte UTF-8.
+ * <p/>
+ * Files are mapped a window at a time, so files bigger than 2GB work. A window is remapped whenever a line
+ * runs past its end. Lines end at '\n', and a '\r' in front of it is dropped.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class MappedLineReader implements LineReader {
+
+    public static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * What the bytes effectively get decoded as. Anything that reads the same files some other way should decode
+     * with this too, so it comes out the same.
+     */
+    public static final String CHARSET = "ISO-8859-1";
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // file offset of the start of the next line
+    private long position;
+
+    private final AsciiLine line = new AsciiLine();
+
+    public MappedLineReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineReader(File file, long windowSize) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    public CharSequence readLine() throws IOException {
+
+        if (position >= size) {
+            return null;
+        }
+
+        while (true) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position);
+            }
+
+            int from = (int) (position - windowStart);
+            int limit = window.limit();
+            int i = from;
+            while (i < limit && window.get(i) != '\n') {
+                i++;
+            }
+
+            if (i == limit && windowStart + limit < size) {
+                // the line carries on past the end of the window. Move the window up to the start of the line.
+                if (from == 0) {
+                    throw new IOException("Line at offset " + position + " is longer than the map window");
+                }
+                map(position);
+                continue;
+            }
+
+            position = windowStart + ((i < limit) ? i + 1 : i);
+
+            int end = i;
+            if (end > from && window.get(end - 1) == '\r') {
+                end--;
+            }
+            line.set(window, from, end - from);
+
+            return line;
+        }
+    }
+
+    /**
+     * @return byte offset in the file of the next line readLine() will return
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Move to a byte offset in the file. The offset should be the start of a line, like one returned from
+     * getPosition().
+     *
+     * @param position byte offset to read the next line from
+     */
+    public void seek(long position) {
+        this.position = position;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+        windowStart = start;
+    }
+
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    /**
+     * CharSequence view over a region of a ByteBuffer holding ASCII text
+     */
+    static class AsciiLine implements CharSequence {
+
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        void set(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+            }
+            return (char) (buffer.get(offset + index) & 0xff);
+        }
+
+        /**
+         * Unlike the line itself, the subsequence is a String and is safe to keep
+         */
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+            }
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (buffer.get(offset + start + i) & 0xff);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return (String) subSequence(0, length);
+        }
+    }
+}
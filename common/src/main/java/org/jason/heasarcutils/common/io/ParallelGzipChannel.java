@@ -0,0 +1,231 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Channel that gzips everything written to it, compressing on several threads at once. Same trick as pigz:
+ * every block gets compressed on its own into a complete gzip member (header, deflate data, CRC and size), and
+ * the members are written to the file one after the other in the order the blocks came in. The gzip format
+ * allows any number of members in a file, and gunzip/zcat/GZIPInputStream read them back as one stream, so
+ * "zcat tycho2.json.gz | mongoimport ..." works the same as with a file gzipped the usual way.
+ * <p/>
+ * Each member starts with an empty dictionary, so the file ends up a little bigger than a single-stream gzip
+ * (well under 1% with 1 MB blocks), but it no longer takes one core's worth of deflate to write a catalog.
+ * <p/>
+ * Only a limited number of blocks are compressed or waiting to be written at once (two per thread), so a slow
+ * disk makes write() wait rather than eat up the heap. Meant to sit under a JsonRecordWriter, which hands over
+ * one big block at a time. Not thread safe, the writing is expected to be done by one thread.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ParallelGzipChannel implements WritableByteChannel {
+
+    // fixed header: magic, deflate, no flags, no mtime, no extra flags, OS "FAT" (what GZIPOutputStream writes)
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int TRAILER_SIZE = 8;
+
+    private final WritableByteChannel out;
+    private final ExecutorService executor;
+    private final BlockingQueue<Deflater> deflaters;
+    private final int maxPending;
+    private final LinkedList<Future<ByteBuffer>> pending = new LinkedList<Future<ByteBuffer>>();
+    private boolean open = true;
+    private boolean written;
+
+    /**
+     * Gzip to a file, on one thread per processor
+     *
+     * @param file the .gz file, replaced if it's already there
+     * @throws IOException if the file can't be opened
+     */
+    public ParallelGzipChannel(File file) throws IOException {
+        this(new FileOutputStream(file).getChannel(), Runtime.getRuntime().availableProcessors(),
+                Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Gzip to a channel
+     *
+     * @param out     where the gzip members go. Closed when this channel is.
+     * @param threads number of blocks to compress at once
+     * @param level   deflate level, 1 (fast) to 9 (small), or Deflater.DEFAULT_COMPRESSION
+     */
+    public ParallelGzipChannel(WritableByteChannel out, int threads, int level) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+        this.out = out;
+        this.maxPending = threads * 2;
+        this.deflaters = new ArrayBlockingQueue<Deflater>(threads);
+        for (int i = 0; i < threads; i++) {
+            deflaters.add(new Deflater(level, true));
+        }
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "gzip-output");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue a block for compression. The bytes are copied, so the buffer can be reused right away.
+     *
+     * @param src the block
+     * @return number of bytes taken, which is all of them
+     * @throws IOException if an earlier block couldn't be compressed or written
+     */
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int length = src.remaining();
+        if (length == 0) {
+            return 0;
+        }
+        final byte[] block = new byte[length];
+        src.get(block);
+
+        while (pending.size() >= maxPending) {
+            writeMember(pending.removeFirst());
+        }
+        submit(block);
+        return length;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Wait for the blocks that are still being compressed, write them out and close the file. If nothing was
+     * written at all the file still gets one (empty) member, an empty file isn't valid gzip.
+     */
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            if (!written) {
+                submit(new byte[0]);
+            }
+            while (!pending.isEmpty()) {
+                writeMember(pending.removeFirst());
+            }
+        } finally {
+            // only anything left if a block failed. The deflaters can't be ended while a task still has one.
+            for (Future<ByteBuffer> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            executor.shutdownNow();
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    for (Deflater deflater : deflaters) {
+                        deflater.end();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.close();
+        }
+    }
+
+    private void submit(final byte[] block) {
+        pending.add(executor.submit(new Callable<ByteBuffer>() {
+            public ByteBuffer call() throws Exception {
+                return compress(block);
+            }
+        }));
+        written = true;
+    }
+
+    private void writeMember(Future<ByteBuffer> future) throws IOException {
+        ByteBuffer member;
+        try {
+            member = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block to be compressed");
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Unable to compress block: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+        while (member.hasRemaining()) {
+            out.write(member);
+        }
+    }
+
+    /**
+     * Compress one block into a complete gzip member. Runs on the pool.
+     */
+    private ByteBuffer compress(byte[] block) throws InterruptedException {
+
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length);
+
+        // deflate's worst case is a few bytes per 16K block on top of the input, so this is nearly always enough
+        byte[] member = new byte[HEADER.length + block.length + (block.length >> 10) + 64 + TRAILER_SIZE];
+        System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+        int length = HEADER.length;
+
+        Deflater deflater = deflaters.take();
+        try {
+            deflater.reset();
+            deflater.setInput(block);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == member.length - TRAILER_SIZE) {
+                    byte[] bigger = new byte[member.length * 2];
+                    System.arraycopy(member, 0, bigger, 0, length);
+                    member = bigger;
+                }
+                length += deflater.deflate(member, length, member.length - TRAILER_SIZE - length);
+            }
+        } finally {
+            deflaters.add(deflater);
+        }
+
+        length = putIntLE(member, length, (int) crc.getValue());
+        length = putIntLE(member, length, block.length);
+        return ByteBuffer.wrap(member, 0, length);
+    }
+
+    private static int putIntLE(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+        b[offset + 2] = (byte) (value >> 16);
+        b[offset + 3] = (byte) (value >> 24);
+        return offset + 4;
+    }
+}
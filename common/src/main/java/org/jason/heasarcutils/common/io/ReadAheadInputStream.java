@@ -0,0 +1,415 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageStats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * InputStream that reads another stream on a thread of its own, a big block at a time, and hands the blocks
+ * over through a bounded queue. While the caller is busy with one block the next few are already being read.
+ * <p/>
+ * Two of them stacked up make a pipelined gunzip (see gunzip()): one thread fetches the compressed bytes, one
+ * inflates them, and the thread reading from the stream only has to decode and parse. Reading a catalog used
+ * to do all three one after the other on the same thread, with GZIPInputStream's 512 byte buffer in between.
+ * <p/>
+ * Buffers go back to the reading thread once the caller is done with them, so a stream never has more than
+ * (queue depth + 2) blocks allocated. If the reading thread hits an exception it's thrown to the caller by the
+ * read() that reaches that point of the stream. close() stops the thread and the source gets closed by it.
+ * Like any InputStream this isn't meant to be read from two threads at once.
+ * <p/>
+ * The sizes can be set with the heasarcutils.input.fetchBufferSize, heasarcutils.input.inflateBufferSize and
+ * heasarcutils.input.queueDepth system properties.
+ * <p/>
+ * Given StageStats, the reading thread times each block it reads, and the caller's waits for a block get
+ * timed too. gunzip(source, stats) hooks both threads up to an import's fetch, gunzip and input-wait stages.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final String FETCH_BUFFER_PROPERTY = "heasarcutils.input.fetchBufferSize";
+    public static final String INFLATE_BUFFER_PROPERTY = "heasarcutils.input.inflateBufferSize";
+    public static final String QUEUE_DEPTH_PROPERTY = "heasarcutils.input.queueDepth";
+
+    public static final int DEFAULT_FETCH_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_INFLATE_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+
+    // what GZIPInputStream hands the Inflater at a time, it only copies out of the fetched blocks
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    private final BlockingQueue<Block> full;
+    private final BlockingQueue<byte[]> free;
+    private final Thread thread;
+    private final StageStats waitStage;
+
+    private Block current;
+    private int position;
+    private volatile boolean closed;
+
+    /**
+     * Start reading ahead
+     *
+     * @param source     stream to read, closed once it's been read to the end, fails, or this stream is closed
+     * @param bufferSize size of each block
+     * @param queueDepth number of blocks that can be waiting for the caller
+     * @param name       name for the reading thread
+     */
+    public ReadAheadInputStream(InputStream source, int bufferSize, int queueDepth, String name) {
+        this(source, bufferSize, queueDepth, name, null, null);
+    }
+
+    /**
+     * Start reading ahead, timing both ends
+     *
+     * @param source     stream to read, closed once it's been read to the end, fails, or this stream is closed
+     * @param bufferSize size of each block
+     * @param queueDepth number of blocks that can be waiting for the caller
+     * @param name       name for the reading thread
+     * @param readStage  gets the time the reading thread spends filling each block, and its size. May be null.
+     * @param waitStage  gets the time the caller spends waiting for each block. May be null.
+     */
+    public ReadAheadInputStream(InputStream source, int bufferSize, int queueDepth, String name,
+                                StageStats readStage, StageStats waitStage) {
+        if (bufferSize < 1 || queueDepth < 1) {
+            throw new IllegalArgumentException("Buffer size and queue depth must be at least 1");
+        }
+        // one more than the depth so the end of stream (or an error) always fits
+        this.full = new ArrayBlockingQueue<Block>(queueDepth + 1);
+        this.free = new ArrayBlockingQueue<byte[]>(queueDepth + 2);
+        this.waitStage = waitStage;
+        this.thread = new Thread(new Fetcher(source, bufferSize, queueDepth + 2, readStage), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Pipelined gunzip with the default (or system property) sizes
+     *
+     * @param source the gzipped stream
+     * @return a stream of the uncompressed bytes
+     */
+    public static InputStream gunzip(InputStream source) {
+        return gunzip(source,
+                Integer.getInteger(FETCH_BUFFER_PROPERTY, DEFAULT_FETCH_BUFFER_SIZE),
+                Integer.getInteger(INFLATE_BUFFER_PROPERTY, DEFAULT_INFLATE_BUFFER_SIZE),
+                Integer.getInteger(QUEUE_DEPTH_PROPERTY, DEFAULT_QUEUE_DEPTH));
+    }
+
+    /**
+     * Pipelined gunzip with the default (or system property) sizes, timed into an import's stats
+     *
+     * @param source the gzipped stream
+     * @param stats  where the fetch, gunzip and input-wait times go
+     * @return a stream of the uncompressed bytes
+     */
+    public static InputStream gunzip(InputStream source, ImportStats stats) {
+        return gunzip(source,
+                Integer.getInteger(FETCH_BUFFER_PROPERTY, DEFAULT_FETCH_BUFFER_SIZE),
+                Integer.getInteger(INFLATE_BUFFER_PROPERTY, DEFAULT_INFLATE_BUFFER_SIZE),
+                Integer.getInteger(QUEUE_DEPTH_PROPERTY, DEFAULT_QUEUE_DEPTH), stats);
+    }
+
+    /**
+     * Pipelined gunzip: one thread reads the source, another inflates, and the caller gets the uncompressed
+     * bytes in blocks of inflateBufferSize. Files with several gzip members (like the ones ParallelGzipChannel
+     * writes) read back as one stream, same as with GZIPInputStream.
+     *
+     * @param source            the gzipped stream
+     * @param fetchBufferSize   size of the blocks the compressed bytes are read in
+     * @param inflateBufferSize size of the blocks the uncompressed bytes are handed over in
+     * @param queueDepth        number of blocks each stage can get ahead by
+     * @return a stream of the uncompressed bytes
+     */
+    public static InputStream gunzip(InputStream source, int fetchBufferSize, int inflateBufferSize, int queueDepth) {
+        return gunzip(source, fetchBufferSize, inflateBufferSize, queueDepth, null);
+    }
+
+    /**
+     * Pipelined gunzip, timed into an import's stats if there are any. The inflating thread's time doesn't
+     * include waiting on the fetching thread.
+     *
+     * @param source            the gzipped stream
+     * @param fetchBufferSize   size of the blocks the compressed bytes are read in
+     * @param inflateBufferSize size of the blocks the uncompressed bytes are handed over in
+     * @param queueDepth        number of blocks each stage can get ahead by
+     * @param stats             where the fetch, gunzip and input-wait times go, or null
+     * @return a stream of the uncompressed bytes
+     */
+    public static InputStream gunzip(InputStream source, int fetchBufferSize, int inflateBufferSize, int queueDepth,
+                                     ImportStats stats) {
+        final StageStats inflateStage = stats == null ? null : stats.stage(ImportStats.GUNZIP);
+        // only there to be taken back off the inflating time
+        final StageStats inflateWait = stats == null ? null
+                : new StageStats("inflate-wait", StageStats.Kind.INPUT, true);
+        final InputStream fetched = new ReadAheadInputStream(source, fetchBufferSize, queueDepth, "gzip-fetch",
+                stats == null ? null : stats.stage(ImportStats.FETCH), inflateWait);
+        InputStream inflating = new InputStream() {
+
+            private GZIPInputStream gzip;
+
+            // the gzip header gets read by the constructor, which has to happen on the inflating thread too
+            private GZIPInputStream gzip() throws IOException {
+                if (gzip == null) {
+                    gzip = new GZIPInputStream(fetched, GZIP_BUFFER_SIZE);
+                }
+                return gzip;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return gzip().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (inflateStage == null) {
+                    return gzip().read(b, off, len);
+                }
+                long start = System.nanoTime();
+                long waited = inflateWait.getNanos();
+                int count = gzip().read(b, off, len);
+                inflateStage.add(System.nanoTime() - start - (inflateWait.getNanos() - waited), Math.max(count, 0));
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (gzip != null) {
+                    gzip.close();
+                } else {
+                    fetched.close();
+                }
+            }
+        };
+        return new ReadAheadInputStream(inflating, inflateBufferSize, queueDepth, "gzip-inflate", null,
+                stats == null ? null : stats.stage(ImportStats.INPUT_WAIT));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !nextBlock()) {
+            return 0;
+        }
+        int count = (int) Math.min(n, current.length - position);
+        position += count;
+        return count;
+    }
+
+    /**
+     * What's left in the current block. At the end of a block this waits for the next one rather than saying
+     * 0: GZIPInputStream only looks for another gzip member when available() says there's more to read, and
+     * a member that happens to start on a block boundary would get dropped otherwise.
+     */
+    @Override
+    public int available() throws IOException {
+        if (!nextBlock()) {
+            return 0;
+        }
+        return current.length - position;
+    }
+
+    /**
+     * Stop reading ahead. The reading thread closes the source on its way out.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        thread.interrupt();
+        // in case it's stuck in put() and somehow missed the interrupt
+        full.clear();
+    }
+
+    /**
+     * Make sure there's something left in the current block, waiting for the next one if there isn't
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (current != null && current.data != null) {
+            free.offer(current.data);
+        }
+        try {
+            if (waitStage == null) {
+                current = full.take();
+            } else {
+                long start = System.nanoTime();
+                current = full.take();
+                waitStage.add(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            current = null;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + thread.getName());
+        }
+        position = 0;
+        if (current.error != null) {
+            IOException ioe = new IOException(current.error.getMessage());
+            ioe.initCause(current.error);
+            // leave the error in place so the next read() throws it again
+            full.offer(current);
+            current = null;
+            throw ioe;
+        }
+        if (current.data == null) {
+            // end of stream, put it back so the next read() sees it too
+            full.offer(current);
+            current = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A filled buffer, the end of the stream (no data), or an exception
+     */
+    private static final class Block {
+
+        final byte[] data;
+        final int length;
+        final Throwable error;
+
+        Block(byte[] data, int length, Throwable error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads the source into blocks until the end, an exception, or an interrupt from close()
+     */
+    private final class Fetcher implements Runnable {
+
+        private final InputStream source;
+        private final int bufferSize;
+        private final int maxBuffers;
+        private final StageStats stage;
+        private int allocated;
+
+        Fetcher(InputStream source, int bufferSize, int maxBuffers, StageStats stage) {
+            this.source = source;
+            this.bufferSize = bufferSize;
+            this.maxBuffers = maxBuffers;
+            this.stage = stage;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    byte[] buffer = free.poll();
+                    if (buffer == null) {
+                        if (allocated < maxBuffers) {
+                            buffer = new byte[bufferSize];
+                            allocated++;
+                        } else {
+                            buffer = free.take();
+                        }
+                    }
+
+                    // fill it up, small blocks would just mean more handing over
+                    long start = stage == null ? 0 : System.nanoTime();
+                    int length = 0;
+                    int count = 0;
+                    Throwable error = null;
+                    try {
+                        while (length < buffer.length
+                                && (count = source.read(buffer, length, buffer.length - length)) != -1) {
+                            length += count;
+                        }
+                    } catch (Throwable t) {
+                        // what was read before it still goes to the caller first
+                        error = t;
+                    }
+                    if (stage != null) {
+                        stage.add(System.nanoTime() - start, length);
+                    }
+                    if (length > 0) {
+                        full.put(new Block(buffer, length, null));
+                    }
+                    if (error != null) {
+                        throw error;
+                    }
+                    if (count == -1) {
+                        full.put(new Block(null, 0, null));
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (Throwable t) {
+                // after close() this is just the source complaining about being interrupted
+                if (!closed) {
+                    try {
+                        full.put(new Block(null, 0, t));
+                    } catch (InterruptedException e) {
+                        // closed in the meantime
+                    }
+                }
+            } finally {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // nothing left to read anyway
+                }
+            }
+        }
+    }
+}
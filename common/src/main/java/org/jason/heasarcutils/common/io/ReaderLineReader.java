@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Plain BufferedReader-backed LineReader, for input that can't be mapped (gzipped files, URLs, charsets
+ * other than ISO-8859-1 and US-ASCII)
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ReaderLineReader implements LineReader {
+
+    private final BufferedReader reader;
+
+    public ReaderLineReader(Reader reader) {
+        this.reader = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+    }
+
+    public CharSequence readLine() throws IOException {
+        return reader.readLine();
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.stats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and per-stage timers for one import, so a slow import can be pinned on the network, the CPU or
+ * the disk instead of guessed at.
+ * <p/>
+ * The stages are created on first use by name. The usual ones have constants here and already know what kind
+ * of stage they are; anything else counts as CPU. Block-sized work (downloading, the gzip threads, waiting on
+ * input, writing) is timed by whoever does it. Per-row work gets timed through a StageClock, which only looks
+ * at the clock for one row in every few dozen: System.nanoTime() isn't free, and on some machines calling it
+ * a few times per row would cost more than the parsing does.
+ * <p/>
+ * register() makes the counters and each stage visible over JMX (under org.jason.heasarcutils:type=Import),
+ * and getSummary() is what the command line tools print at the end of a run.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ImportStats implements ImportStatsMBean {
+
+    public static final String DOMAIN = "org.jason.heasarcutils";
+
+    // -Dheasarcutils.stats.sampleEvery=1 times every row, rounded up to a power of 2
+    public static final String SAMPLE_PROPERTY = "heasarcutils.stats.sampleEvery";
+    public static final int DEFAULT_SAMPLE_EVERY = 64;
+
+    // getting the catalog out of the download cache, including the download if there is one
+    public static final String DOWNLOAD = "download";
+    // reading the compressed bytes, on the gzip fetch thread
+    public static final String FETCH = "fetch";
+    // inflating, on the gzip inflate thread
+    public static final String GUNZIP = "gunzip";
+    // unzipping a whole catalog to a local file before converting it
+    public static final String UNPACK = "unpack";
+    // the caller waiting for the gzip threads to hand over the next block
+    public static final String INPUT_WAIT = "input-wait";
+    // getting the next line out of the reader, not counting input-wait
+    public static final String READ = "read";
+    // cutting a line up into values
+    public static final String PARSE = "parse";
+    // dropping and renaming fields
+    public static final String FILTER = "filter";
+    // turning values into JSON, not counting write
+    public static final String FORMAT = "format";
+    // converting a whole chunk of lines, on a worker thread
+    public static final String CONVERT = "convert";
+    // the writing thread waiting for converted chunks
+    public static final String CONVERT_WAIT = "convert-wait";
+    // handing JSON to the file, or to the gzip threads
+    public static final String WRITE = "write";
+    // adding rows to the in-memory columnar catalog
+    public static final String COLUMNS = "columns";
+    // writing the columnar catalog to the columnar cache
+    public static final String CACHE_WRITE = "cache-write";
+    // mapping a cached columnar catalog back in, instead of importing it
+    public static final String CACHE_MAP = "cache-map";
+
+    private static final Map<String, StageStats.Kind> KINDS = new HashMap<String, StageStats.Kind>();
+    private static final Set<String> OVERLAPPING = new HashSet<String>();
+
+    static {
+        KINDS.put(DOWNLOAD, StageStats.Kind.INPUT);
+        KINDS.put(FETCH, StageStats.Kind.INPUT);
+        KINDS.put(UNPACK, StageStats.Kind.INPUT);
+        KINDS.put(INPUT_WAIT, StageStats.Kind.INPUT);
+        KINDS.put(READ, StageStats.Kind.INPUT);
+        KINDS.put(WRITE, StageStats.Kind.OUTPUT);
+        KINDS.put(CACHE_WRITE, StageStats.Kind.OUTPUT);
+        KINDS.put(CACHE_MAP, StageStats.Kind.INPUT);
+
+        OVERLAPPING.add(FETCH);
+        OVERLAPPING.add(GUNZIP);
+        OVERLAPPING.add(CONVERT);
+    }
+
+    private final String name;
+    private final Map<String, StageStats> stages = new LinkedHashMap<String, StageStats>();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsDropped = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final long startTime = System.nanoTime();
+    private volatile long endTime;
+
+    private ObjectName objectName;
+
+    /**
+     * @param name what's being imported, usually the catalog name
+     */
+    public ImportStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get a stage, creating it the first time
+     *
+     * @param stageName one of the constants, or anything else for a CPU stage
+     * @return the stage
+     */
+    public StageStats stage(String stageName) {
+        StageStats.Kind kind = KINDS.get(stageName);
+        return stage(stageName, kind == null ? StageStats.Kind.CPU : kind, OVERLAPPING.contains(stageName));
+    }
+
+    /**
+     * Get a stage, creating it the first time. If it already exists the kind and overlapping are ignored.
+     *
+     * @param stageName   the stage
+     * @param kind        what the stage spends its time on
+     * @param overlapping true if it runs on a thread of its own
+     * @return the stage
+     */
+    public synchronized StageStats stage(String stageName, StageStats.Kind kind, boolean overlapping) {
+        StageStats stage = stages.get(stageName);
+        if (stage == null) {
+            stage = new StageStats(stageName, kind, overlapping);
+            stages.put(stageName, stage);
+            if (objectName != null) {
+                register(stage);
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * @return the stages so far, in the order they were created
+     */
+    public synchronized List<StageStats> getStages() {
+        return new ArrayList<StageStats>(stages.values());
+    }
+
+    /**
+     * @return a clock to time per-row stages with, for the calling thread only
+     */
+    public StageClock newClock() {
+        return new StageClock(this, Integer.getInteger(SAMPLE_PROPERTY, DEFAULT_SAMPLE_EVERY));
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    /**
+     * @param parsed  data rows turned into records so far
+     * @param dropped lines so far that weren't
+     */
+    public void setRows(long parsed, long dropped) {
+        // only ever called from the thread doing the import, and nobody needs to see it right away
+        rowsParsed.lazySet(parsed);
+        rowsDropped.lazySet(dropped);
+    }
+
+    /**
+     * Stop the elapsed time. Anything after the first call is ignored.
+     */
+    public void finish() {
+        if (endTime == 0) {
+            endTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Register with the platform MBeanServer, replacing whatever an earlier import of the same name left
+     * there. JMX not working is no reason to fail an import, so that only gets printed.
+     *
+     * @return this
+     */
+    public synchronized ImportStats register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Import,name=" + ObjectName.quote(this.name));
+            for (ObjectName old : server.queryNames(new ObjectName(name + ",*"), null)) {
+                server.unregisterMBean(old);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+            for (StageStats stage : stages.values()) {
+                register(stage);
+            }
+        } catch (JMException e) {
+            System.out.println("Unable to register import stats for " + this.name + ": " + e.getMessage());
+        }
+        return this;
+    }
+
+    private void register(StageStats stage) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stage,
+                    new ObjectName(objectName + ",stage=" + ObjectName.quote(stage.getName())));
+        } catch (JMException e) {
+            System.out.println("Unable to register stage " + stage.getName() + ": " + e.getMessage());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsDropped() {
+        return rowsDropped.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public long getElapsedNanos() {
+        long end = endTime;
+        return (end == 0 ? System.nanoTime() : end) - startTime;
+    }
+
+    public long getElapsedMillis() {
+        return getElapsedNanos() / 1000000;
+    }
+
+    public long getRowsPerSecond() {
+        return (long) (getRowsParsed() * 1e9 / Math.max(1, getElapsedNanos()));
+    }
+
+    public boolean isFinished() {
+        return endTime != 0;
+    }
+
+    public String getBoundBy() {
+        long[] nanos = getNanosByKind();
+        int bound = 0;
+        for (int i = 1; i < nanos.length; i++) {
+            if (nanos[i] > nanos[bound]) {
+                bound = i;
+            }
+        }
+        return StageStats.Kind.values()[bound].name();
+    }
+
+    /**
+     * @return time spent on each kind of stage by the caller's thread, by Kind ordinal
+     */
+    private long[] getNanosByKind() {
+        long[] nanos = new long[StageStats.Kind.values().length];
+        for (StageStats stage : getStages()) {
+            if (!stage.isOverlapping()) {
+                nanos[stage.kind().ordinal()] += stage.getNanos();
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Something like:
+     * <pre>
+     * tycho2: 2,539,913 rows, 7 dropped in 21.4 s (118,687 rows/s)
+     *   161.2 MB in, 702.5 MB out
+     *   stage              time   share        calls         MB
+     *   download         0.01 s    0.0%            1      161.2
+     *   ...
+     *   cpu bound: input 9%, cpu 83%, output 8%
+     * </pre>
+     * Stages nothing ever went through are left out.
+     *
+     * @return the summary, several lines
+     */
+    public String getSummary() {
+        long elapsed = getElapsedNanos();
+        Formatter f = new Formatter(new StringBuilder());
+        f.format("%s: %,d rows, %,d dropped in %.1f s (%,d rows/s)%n", name, getRowsParsed(), getRowsDropped(),
+                elapsed / 1e9, getRowsPerSecond());
+        f.format("  %s in, %s out%n", megabytes(getBytesIn()), megabytes(getBytesOut()));
+        f.format("  %-14s %8s %7s %12s %10s%n", "stage", "time", "share", "calls", "MB");
+
+        boolean overlapping = false;
+        for (StageStats stage : getStages()) {
+            if (stage.getCalls() == 0) {
+                continue;
+            }
+            String share = "";
+            if (stage.isOverlapping()) {
+                overlapping = true;
+            } else {
+                share = String.format("%.1f%%", stage.getNanos() * 100.0 / Math.max(1, elapsed));
+            }
+            f.format("  %-14s %6.2f s %7s %,12d %10s%n", stage.getName() + (stage.isOverlapping() ? " *" : ""),
+                    stage.getNanos() / 1e9, share, stage.getCalls(),
+                    stage.getBytes() == 0 ? "" : String.format("%.1f", stage.getBytes() / 1048576.0));
+        }
+        if (overlapping) {
+            f.format("  * on a thread of its own, alongside the rest%n");
+        }
+
+        long[] nanos = getNanosByKind();
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        if (total > 0) {
+            f.format("  %s bound:", getBoundBy().toLowerCase());
+            for (StageStats.Kind kind : StageStats.Kind.values()) {
+                f.format("%s %s %d%%", kind.ordinal() == 0 ? "" : ",", kind.name().toLowerCase(),
+                        Math.round(nanos[kind.ordinal()] * 100.0 / total));
+            }
+            f.format("%n");
+        }
+        return f.toString();
+    }
+
+    public void printSummary(PrintStream out) {
+        out.print(getSummary());
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / 1048576.0);
+    }
+}
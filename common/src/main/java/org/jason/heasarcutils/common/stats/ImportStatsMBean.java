@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.stats;
+
+/**
+ * What jconsole and friends get to see of an ImportStats. The stages are registered as MBeans of their own.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public interface ImportStatsMBean {
+
+    public String getName();
+
+    /**
+     * @return size of the file the import read, compressed or not
+     */
+    public long getBytesIn();
+
+    /**
+     * @return data rows turned into JSON records
+     */
+    public long getRowsParsed();
+
+    /**
+     * @return lines read that didn't turn into a record (header lines, comments, the TDAT trailer...)
+     */
+    public long getRowsDropped();
+
+    /**
+     * @return size of the JSON file written, compressed or not. 0 until the import is finished.
+     */
+    public long getBytesOut();
+
+    public long getElapsedMillis();
+
+    public long getRowsPerSecond();
+
+    public boolean isFinished();
+
+    /**
+     * @return INPUT, CPU or OUTPUT, whichever the caller's thread has spent the most time on so far
+     */
+    public String getBoundBy();
+
+    public String getSummary();
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the per-row stages of an import loop. Each stage is a Lap, and end() on a lap means "that stage is
+ * done with this row". A lap's time is from the end of the lap before it (whichever one that was) to its own
+ * end, so a loop that skips the rest of the row with continue still times the next lap correctly.
+ * <p/>
+ * Timing every row would mean a System.nanoTime() per lap per row, which is more than some of these stages
+ * cost. So the clock only reads the time at the end of each window of a few thousand rows, which makes the
+ * total exact, and for one row in sampleEvery, which is only used to split that total between the laps (in
+ * proportion to sampled time per call, times calls). A GC pause or the JIT kicking in during a sampled row
+ * can skew the split of its window, but never the total.
+ * <p/>
+ * A lap can leave out a nested stage that's timed on its own (waiting for the gzip threads happens inside
+ * readLine(), flushing to disk happens inside endRecord()). Those are timed exactly, and are taken out of both
+ * the window and the sampled rows, so they're never counted twice.
+ * <p/>
+ * The first lap created is the one that starts a row. Belongs to one thread. stop() (or the end of each
+ * window) hands the numbers over to the stages.
+ *
+ * <pre>
+ * StageClock clock = stats.newClock();
+ * StageClock.Lap read = clock.lap(ImportStats.READ, ImportStats.INPUT_WAIT);
+ * StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+ * clock.start();
+ * while ((line = reader.readLine()) != null) {
+ *     read.end();
+ *     ...
+ *     format.end();
+ * }
+ * clock.stop();
+ * </pre>
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class StageClock {
+
+    // rows in a window, also how often JMX sees the numbers move
+    private static final int WINDOW_ROWS = 1 << 14;
+
+    private final ImportStats stats;
+    private final int sampleMask;
+    private final List<Lap> laps = new ArrayList<Lap>();
+
+    private long rows;
+    private boolean timing;
+    private long last;
+    private long windowStart;
+
+    StageClock(ImportStats stats, int sampleEvery) {
+        this.stats = stats;
+        this.sampleMask = Integer.highestOneBit(Math.max(1, sampleEvery) * 2 - 1) - 1;
+    }
+
+    /**
+     * Add a lap for a stage
+     *
+     * @param stageName the stage
+     * @return the lap
+     */
+    public Lap lap(String stageName) {
+        return lap(stageName, null);
+    }
+
+    /**
+     * Add a lap for a stage that leaves out the time of a nested one
+     *
+     * @param stageName  the stage
+     * @param nestedName stage that's timed on its own while this one is running
+     * @return the lap
+     */
+    public Lap lap(String stageName, String nestedName) {
+        Lap lap = new Lap(stats.stage(stageName), nestedName == null ? null : stats.stage(nestedName), laps.isEmpty());
+        laps.add(lap);
+        return lap;
+    }
+
+    /**
+     * Start the clock, just before the first lap of the first row
+     */
+    public void start() {
+        startWindow(System.nanoTime());
+    }
+
+    /**
+     * Stop the clock and hand everything over to the stages
+     */
+    public void stop() {
+        timing = false;
+        endWindow(System.nanoTime());
+    }
+
+    private void startWindow(long now) {
+        windowStart = now;
+        for (Lap lap : laps) {
+            if (lap.nested != null) {
+                lap.nestedAtWindow = lap.nested.getNanos();
+            }
+        }
+    }
+
+    /**
+     * Split the time since the window started between the laps and hand it over
+     */
+    private void endWindow(long now) {
+        long elapsed = now - windowStart;
+        double estimated = 0;
+        long calls = 0;
+        for (Lap lap : laps) {
+            if (lap.nested != null) {
+                elapsed -= lap.nested.getNanos() - lap.nestedAtWindow;
+            }
+            estimated += lap.estimate();
+            calls += lap.calls;
+        }
+        elapsed = Math.max(elapsed, 0);
+
+        for (Lap lap : laps) {
+            long nanos;
+            if (estimated > 0) {
+                nanos = Math.round(elapsed * (lap.estimate() / estimated));
+            } else {
+                // nothing got sampled (a very short file), go by calls
+                nanos = (calls == 0) ? 0 : elapsed * lap.calls / calls;
+            }
+            if (lap.calls > 0) {
+                lap.stage.add(nanos, lap.calls, 0);
+            }
+            lap.nanos = 0;
+            lap.samples = 0;
+            lap.calls = 0;
+        }
+        startWindow(now);
+    }
+
+    private void mark(long now) {
+        last = now;
+        for (Lap lap : laps) {
+            if (lap.nested != null) {
+                lap.nestedAt = lap.nested.getNanos();
+            }
+        }
+    }
+
+    private void nextRow() {
+        // not the first row, which tends to include class loading
+        if ((++rows & sampleMask) == 0) {
+            timing = true;
+            mark(System.nanoTime());
+        } else {
+            timing = false;
+        }
+        if ((rows & (WINDOW_ROWS - 1)) == 0) {
+            endWindow(System.nanoTime());
+        }
+    }
+
+    /**
+     * One stage of the loop
+     */
+    public final class Lap {
+
+        private final StageStats stage;
+        private final StageStats nested;
+        private final boolean first;
+
+        private long nestedAt;
+        private long nestedAtWindow;
+        private long nanos;
+        private long samples;
+        private long calls;
+
+        private Lap(StageStats stage, StageStats nested, boolean first) {
+            this.stage = stage;
+            this.nested = nested;
+            this.first = first;
+        }
+
+        /**
+         * This stage is done with the current row
+         */
+        public void end() {
+            calls++;
+            if (timing) {
+                long now = System.nanoTime();
+                long elapsed = now - last;
+                if (nested != null) {
+                    elapsed -= nested.getNanos() - nestedAt;
+                }
+                nanos += elapsed;
+                samples++;
+                mark(now);
+            }
+            if (first) {
+                nextRow();
+            }
+        }
+
+        private double estimate() {
+            return samples == 0 ? 0 : (double) nanos / samples * calls;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time, calls and bytes for one stage of an import (downloading, inflating, parsing, writing...). Anything
+ * can add to it from any thread.
+ * <p/>
+ * Each stage is either waiting on input, using the CPU or waiting on output, which is what the summary
+ * adds up to say what an import was bound by. A stage that runs on a thread of its own (the gzip fetch and
+ * inflate threads, say) is "overlapping": its time is shown, but it isn't counted against the caller's.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class StageStats implements StageStatsMBean {
+
+    public enum Kind {
+        INPUT, CPU, OUTPUT
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final boolean overlapping;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public StageStats(String name, Kind kind, boolean overlapping) {
+        this.name = name;
+        this.kind = kind;
+        this.overlapping = overlapping;
+    }
+
+    /**
+     * @param nanos time spent in the stage, one call
+     */
+    public void add(long nanos) {
+        add(nanos, 1, 0);
+    }
+
+    /**
+     * @param nanos time spent in the stage, one call
+     * @param bytes bytes that went through the stage in that time
+     */
+    public void add(long nanos, long bytes) {
+        add(nanos, 1, bytes);
+    }
+
+    public void add(long nanos, long calls, long bytes) {
+        this.nanos.addAndGet(nanos);
+        this.calls.addAndGet(calls);
+        if (bytes != 0) {
+            this.bytes.addAndGet(bytes);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getKind() {
+        return kind.name();
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    public boolean isOverlapping() {
+        return overlapping;
+    }
+
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    public long getMillis() {
+        return nanos.get() / 1000000;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+}
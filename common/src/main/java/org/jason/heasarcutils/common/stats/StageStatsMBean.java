@@ -0,0 +1,45 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.stats;
+
+/**
+ * What jconsole and friends get to see of a StageStats
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public interface StageStatsMBean {
+
+    public String getName();
+
+    /**
+     * @return INPUT, CPU or OUTPUT
+     */
+    public String getKind();
+
+    /**
+     * @return true if the stage runs on a thread of its own, alongside the others
+     */
+    public boolean isOverlapping();
+
+    public long getNanos();
+
+    public long getMillis();
+
+    public long getCalls();
+
+    public long getBytes();
+}
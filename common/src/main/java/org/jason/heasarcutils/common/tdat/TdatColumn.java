@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.tdat;
+
+/**
+ * A single field[...] definition from a TDAT header, e.g.
+ * <pre>
+ * field[bii] = float4:.5f_degree [pos.galactic.lat] (index) // Galactic Latitude
+ * </pre>
+ * is a float column named bii with a width of 4 and 5 decimals. Width and decimals are null when the
+ * definition doesn't have them, and type is null if the definition isn't float, int or char.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class TdatColumn {
+
+    private final String name;
+    private final String type;
+    private final Integer width;
+    private final Integer decimals;
+    private final String definition;
+
+    public TdatColumn(String name, String type, Integer width, Integer decimals, String definition) {
+        this.name = name;
+        this.type = type;
+        this.width = width;
+        this.decimals = decimals;
+        this.definition = definition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return "float", "int", "char" or null if the type wasn't recognized
+     */
+    public String getType() {
+        return type;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public Integer getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * @return everything to the right of the equals sign, unparsed
+     */
+    public String getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public String toString() {
+        return name + " = " + definition;
+    }
+}
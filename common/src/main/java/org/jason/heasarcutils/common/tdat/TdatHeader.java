@@ -0,0 +1,228 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.tdat;
+
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.io.LineReaders;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Everything in the <HEADER> section of a TDAT file, read in a single pass: the table name, the field[...]
+ * column definitions, the field order from line[1] and where the <DATA> section starts (as a line number
+ * and, for files that can be mapped, a byte offset).
+ * <p/>
+ * The point is to read the header once and then jump straight to the data with openData(), instead of
+ * re-reading the file from the top every time something else is needed.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class TdatHeader {
+
+    private static final Pattern columnPattern = Pattern.compile("field\\[(.*)\\] = (float|int|char)([1-9][0-9]?)?(:\\.([0-9]))?");
+    private static final Pattern fieldOrderPattern = Pattern.compile("line\\[1\\] = (.*)");
+    private static final Pattern parameterPattern = Pattern.compile("^(\\w+) = (.*)$");
+
+    private final File file;
+    private final String charsetName;
+
+    private String tableName;
+    private final Map<String, TdatColumn> columns = new LinkedHashMap<String, TdatColumn>();
+    private final Map<String, String> parameters = new LinkedHashMap<String, String>();
+    private String[] fieldNames;
+
+    private int dataLine = -1;
+    private long dataOffset = -1;
+
+    private TdatHeader(File file, String charsetName) {
+        this.file = file;
+        this.charsetName = charsetName;
+    }
+
+    /**
+     * Read the header of a TDAT file, decoding with the platform default charset. That's usually UTF-8, which
+     * means the file doesn't get memory-mapped; the converters pass MappedLineReader.CHARSET instead.
+     *
+     * @param file the TDAT file (may be gzipped)
+     * @return the TdatHeader
+     * @throws IOException if the file can't be read or has no <DATA> section
+     */
+    public static TdatHeader read(File file) throws IOException {
+        return read(file, Charset.defaultCharset().name());
+    }
+
+    /**
+     * Read the header of a TDAT file
+     *
+     * @param file        the TDAT file (may be gzipped)
+     * @param charsetName charset to decode with
+     * @return the TdatHeader
+     * @throws IOException if the file can't be read or has no <DATA> section
+     */
+    public static TdatHeader read(File file, String charsetName) throws IOException {
+        TdatHeader header = new TdatHeader(file, charsetName);
+        LineReader reader = LineReaders.open(file, charsetName);
+        try {
+            header.parse(reader);
+        } finally {
+            reader.close();
+        }
+        return header;
+    }
+
+    private void parse(LineReader reader) throws IOException {
+
+        int lineNumber = 0;
+        CharSequence line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String text = line.toString();
+
+            if (text.indexOf("<DATA>") != -1) {
+                dataLine = lineNumber;
+                if (reader instanceof MappedLineReader) {
+                    dataOffset = ((MappedLineReader) reader).getPosition();
+                }
+                return;
+            }
+
+            if (text.startsWith("#")) {
+                continue;
+            }
+
+            if (text.indexOf("field[") != -1) {
+                addColumn(text);
+                continue;
+            }
+
+            Matcher fieldOrderMatcher = fieldOrderPattern.matcher(text);
+            if (fieldNames == null && fieldOrderMatcher.find()) {
+                fieldNames = fieldOrderMatcher.group(1).split("\\s");
+                continue;
+            }
+
+            Matcher parameterMatcher = parameterPattern.matcher(text);
+            if (parameterMatcher.find()) {
+                parameters.put(parameterMatcher.group(1), parameterMatcher.group(2));
+                if (tableName == null && parameterMatcher.group(1).equals("table_name")) {
+                    tableName = parameterMatcher.group(2).trim();
+                }
+            }
+        }
+
+        throw new IOException("No <DATA> section found in " + file);
+    }
+
+    private void addColumn(String line) {
+        Matcher columnMatcher = columnPattern.matcher(line);
+        if (columnMatcher.lookingAt()) {
+            String width = columnMatcher.group(3);
+            String decimals = columnMatcher.group(5);
+            columns.put(columnMatcher.group(1), new TdatColumn(columnMatcher.group(1), columnMatcher.group(2),
+                    (width == null) ? null : Integer.valueOf(width),
+                    (decimals == null) ? null : Integer.valueOf(decimals),
+                    line.substring(line.indexOf("] = ") + 4)));
+        } else {
+            // not a type we know about, but hang on to the name
+            int open = line.indexOf('[');
+            int close = line.lastIndexOf("] = ");
+            if (open != -1 && close > open) {
+                String name = line.substring(open + 1, close);
+                columns.put(name, new TdatColumn(name, null, null, null, line.substring(close + 4)));
+            }
+        }
+    }
+
+    /**
+     * Open the file again, positioned at the first line after <DATA>. Mapped files seek straight to the
+     * recorded byte offset, anything else skips the header lines.
+     *
+     * @return a LineReader whose next line is the first line of data
+     * @throws IOException if the file can't be opened
+     */
+    public LineReader openData() throws IOException {
+        LineReader reader = LineReaders.open(file, charsetName);
+        if (reader instanceof MappedLineReader && dataOffset != -1) {
+            ((MappedLineReader) reader).seek(dataOffset);
+        } else {
+            for (int i = 0; i < dataLine; i++) {
+                reader.readLine();
+            }
+        }
+        return reader;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the table_name parameter, e.g. heasarc_tycho2. Null if the header didn't have one
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the field[...] definitions, in the order they appear in the header
+     */
+    public Collection<TdatColumn> getColumns() {
+        return Collections.unmodifiableCollection(columns.values());
+    }
+
+    public TdatColumn getColumn(String name) {
+        return columns.get(name);
+    }
+
+    /**
+     * @return the field names from line[1], in the order the values appear in each row. Null if there wasn't one
+     */
+    public String[] getFieldNames() {
+        return (fieldNames == null) ? null : fieldNames.clone();
+    }
+
+    /**
+     * Get a "name = value" line from the header (table_name, table_description, etc)
+     *
+     * @param name name of the parameter
+     * @return the value, or null
+     */
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    /**
+     * @return number of lines up to and including <DATA>
+     */
+    public int getDataLine() {
+        return dataLine;
+    }
+
+    /**
+     * @return byte offset of the first line after <DATA>, or -1 if the file wasn't mapped (gzipped, or read as
+     * something other than ISO-8859-1 or US-ASCII)
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.tdat;
+
+/**
+ * Scanner for the pipe-separated rows in the <DATA> section of a TDAT file. Replaces the
+ * line.matches("^(.*?\\|)*$") / line.split("\\|") combination that used to be copied into every converter.
+ * <p/>
+ * The regex boils down to "the line is empty or ends with a pipe", so that's all that gets checked. The
+ * row is then walked once and the field boundaries are stored as offsets; nothing is copied until a caller
+ * actually asks for a String. Field counting follows String.split(): trailing empty fields are dropped, and
+ * an empty line is a single empty field.
+ * <p/>
+ * Scanners hold state between calls, so use one per thread and reuse it for every row.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class TdatRowScanner {
+
+    public static final char SEPARATOR = '|';
+
+    private CharSequence text;
+    private char[] chars;
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+
+    /**
+     * Determine if a line looks like a TDAT data row (same answer as matching ^(.*?\|)*$)
+     *
+     * @param line  CharSequence to check
+     * @return true if the line is empty or ends with a pipe
+     */
+    public static boolean isDataRow(CharSequence line) {
+        int length = line.length();
+        return length == 0 || line.charAt(length - 1) == SEPARATOR;
+    }
+
+    /**
+     * Scan a line. If the line is not a data row, the scanner is left empty.
+     *
+     * @param line  CharSequence holding a single line, without the line terminator
+     * @return true if the line was a data row
+     */
+    public boolean scan(CharSequence line) {
+        this.text = line;
+        this.chars = null;
+        count = 0;
+        if (!isDataRow(line)) {
+            return false;
+        }
+
+        int length = line.length();
+        int fieldStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) == SEPARATOR) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        finish(length == 0, 0);
+
+        return true;
+    }
+
+    /**
+     * Scan a line held in a char buffer. Offsets reported afterwards are relative to the start of the
+     * buffer, not to offset.
+     *
+     * @param buffer    char array holding the line
+     * @param offset    index of the first char of the line
+     * @param length    length of the line, without the line terminator
+     * @return true if the line was a data row
+     */
+    public boolean scan(char[] buffer, int offset, int length) {
+        this.text = null;
+        this.chars = buffer;
+        count = 0;
+        if (length != 0 && buffer[offset + length - 1] != SEPARATOR) {
+            return false;
+        }
+
+        int end = offset + length;
+        int fieldStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == SEPARATOR) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        finish(length == 0, offset);
+
+        return true;
+    }
+
+    /**
+     * Called after the last separator. Handles the split() rules: an empty line is one empty field,
+     * otherwise empty fields at the end are dropped.
+     *
+     * @param emptyLine   true if the scanned line was empty
+     * @param offset      where the (empty) line started
+     */
+    private void finish(boolean emptyLine, int offset) {
+        if (emptyLine) {
+            addField(offset, offset);
+            return;
+        }
+        while (count > 0 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (count == starts.length) {
+            int[] newStarts = new int[count * 2];
+            int[] newEnds = new int[count * 2];
+            System.arraycopy(starts, 0, newStarts, 0, count);
+            System.arraycopy(ends, 0, newEnds, 0, count);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * @return the number of fields in the last scanned row, following String.split() rules
+     */
+    public int getFieldCount() {
+        return count;
+    }
+
+    public int getStart(int field) {
+        return starts[field];
+    }
+
+    public int getEnd(int field) {
+        return ends[field];
+    }
+
+    public int getLength(int field) {
+        return ends[field] - starts[field];
+    }
+
+    public boolean isEmpty(int field) {
+        return ends[field] == starts[field];
+    }
+
+    public char charAt(int field, int index) {
+        int pos = starts[field] + index;
+        return (chars != null) ? chars[pos] : text.charAt(pos);
+    }
+
+    /**
+     * Copy a field's chars into an array, for callers that look at every char more than once (charAt() on a
+     * mapped line goes to the buffer every time)
+     *
+     * @param field     zero-based field index
+     * @param dst       where the chars go, with room for getLength(field) of them
+     * @param dstBegin  index in dst of the first char
+     * @return the number of chars copied
+     */
+    public int getChars(int field, char[] dst, int dstBegin) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (chars != null) {
+            System.arraycopy(chars, start, dst, dstBegin, length);
+        } else if (text instanceof String) {
+            ((String) text).getChars(start, ends[field], dst, dstBegin);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstBegin + i] = text.charAt(start + i);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Materialize a field as a String. Only do this for fields that are actually going to be kept.
+     *
+     * @param field zero-based field index
+     * @return String value of the field
+     */
+    public String getString(int field) {
+        if (chars != null) {
+            return new String(chars, starts[field], ends[field] - starts[field]);
+        }
+        return text.subSequence(starts[field], ends[field]).toString();
+    }
+
+    /**
+     * Append a field to a StringBuilder without creating an intermediate String
+     *
+     * @param field zero-based field index
+     * @param sb    StringBuilder to append to
+     * @return the StringBuilder
+     */
+    public StringBuilder appendTo(int field, StringBuilder sb) {
+        if (chars != null) {
+            return sb.append(chars, starts[field], ends[field] - starts[field]);
+        }
+        return sb.append(text, starts[field], ends[field]);
+    }
+}
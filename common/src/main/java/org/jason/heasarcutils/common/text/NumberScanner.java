@@ -0,0 +1,404 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.text;
+
+import java.math.RoundingMode;
+
+/**
+ * Works out what a value looks like (integer, decimal, not a number) in one pass over the chars, and writes
+ * numbers straight into a StringBuilder, so the converters don't need a regex and a BigDecimal for every
+ * RA/Dec/magnitude in a catalog.
+ * <p/>
+ * A scan splits the value up into
+ * <pre>
+ *   (whitespace)(sign chars)(integer digits)(dots)(fraction digits)(exponent)
+ * </pre>
+ * where every part can be empty and sign chars are any of '+', '-' and ','. scan() returns false if there's
+ * anything left over. Each converter grew its own idea of what counts as a number, so rather than picking
+ * one, the parts are available and the callers decide (see isSimpleNumber() for the common case).
+ * <p/>
+ * The append methods write the same text the old BigDecimal/Double code did. When a value is outside what
+ * they handle (too many digits, would come out in E notation, etc.) they append nothing and return false,
+ * and the caller falls back to the BigDecimal way. That doesn't happen with real catalog data.
+ * <p/>
+ * Like TdatRowScanner, one instance gets reused for every value and isn't thread safe.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class NumberScanner {
+
+    // digits that still fit in a long once they're scaled
+    private static final int MAX_DIGITS = 17;
+
+    // 10^15, the first scaled value with more significant digits than a double is sure to keep
+    private static final long MAX_DOUBLE_DIGITS = 1000000000000000L;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private CharSequence value;
+    private int length;
+
+    private int signStart;
+    private int intStart;
+    private int dotStart;
+    private int fracStart;
+    private int expStart;
+    private boolean negative;
+
+    /**
+     * Scan a value
+     *
+     * @param value the value to look at
+     * @return true if the whole value fits the (whitespace)(signs)(digits)(dots)(digits)(exponent) shape. Empty
+     *         values and lone signs fit it too, so check the digit counts.
+     */
+    public boolean scan(CharSequence value) {
+
+        this.value = value;
+        this.length = value.length();
+        this.negative = false;
+
+        int i = 0;
+        while (i < length && isWhitespace(value.charAt(i))) {
+            i++;
+        }
+        signStart = i;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == '-') {
+                negative = !negative;
+            } else if (c != '+' && c != ',') {
+                break;
+            }
+            i++;
+        }
+        intStart = i;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+        }
+        dotStart = i;
+        while (i < length && value.charAt(i) == '.') {
+            i++;
+        }
+        fracStart = i;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+        }
+        expStart = i;
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < length && (value.charAt(j) == '+' || value.charAt(j) == '-')) {
+                j++;
+            }
+            int digits = j;
+            while (j < length && isDigit(value.charAt(j))) {
+                j++;
+            }
+            if (j == digits) {
+                return false;
+            }
+            i = j;
+        }
+
+        return i == length;
+    }
+
+    public int getWhitespaceCount() {
+        return signStart;
+    }
+
+    public int getSignCount() {
+        return intStart - signStart;
+    }
+
+    /**
+     * @return true if the sign chars were (or included) a single '-'
+     */
+    public boolean isNegative() {
+        return negative;
+    }
+
+    /**
+     * @return true if the only sign char (if any) is '+' or '-'
+     */
+    public boolean hasPlainSign() {
+        return getSignCount() == 0 || (getSignCount() == 1 && value.charAt(signStart) != ',');
+    }
+
+    public int getIntegerDigits() {
+        return dotStart - intStart;
+    }
+
+    public int getDotCount() {
+        return fracStart - dotStart;
+    }
+
+    public int getFractionDigits() {
+        return expStart - fracStart;
+    }
+
+    public boolean hasExponent() {
+        return expStart < length;
+    }
+
+    /**
+     * The usual idea of a number: no whitespace, at most one + or -, at least one digit, at most one dot and
+     * an optional exponent. Same as ^[+-]?([0-9]*\.?[0-9]+|[0-9]+\.?[0-9]*)([eE][+-]?[0-9]+)?$
+     *
+     * @return true if the last value scanned was a simple number
+     */
+    public boolean isSimpleNumber() {
+        return getWhitespaceCount() == 0 && hasPlainSign() && getDotCount() <= 1
+                && getIntegerDigits() + getFractionDigits() > 0;
+    }
+
+    /**
+     * Append an integer the way Integer.parseInt() then append(int) would (so "+007" comes out as 7)
+     *
+     * @param sb where to put it
+     * @return false if it didn't fit in an int or isn't a plain integer, and nothing was appended
+     */
+    public boolean appendInt(StringBuilder sb) {
+
+        if (!hasPlainSign() || getIntegerDigits() == 0 || getDotCount() != 0 || getFractionDigits() != 0
+                || hasExponent()) {
+            return false;
+        }
+
+        int start = skipZeros(intStart, dotStart);
+        if (dotStart - start > 10) {
+            return false;
+        }
+        long result = digitsToLong(start, dotStart);
+        if (negative ? -result < Integer.MIN_VALUE : result > Integer.MAX_VALUE) {
+            return false;
+        }
+        sb.append(negative ? -result : result);
+        return true;
+    }
+
+    /**
+     * Append the value rounded to a fixed number of decimal places, the way new BigDecimal(value.trim())
+     * .setScale(scale, mode).toString() would: always plain notation, exactly scale decimals, no "-0.0000".
+     *
+     * @param sb    where to put it
+     * @param scale number of decimal places, 1 to 9
+     * @param mode  HALF_UP or HALF_EVEN
+     * @return false if the value is too long, not something BigDecimal would take or would come out in E notation
+     *         (below 10^-6 with more than 6 decimals, zero included), and nothing was appended
+     */
+    public boolean appendScaled(StringBuilder sb, int scale, RoundingMode mode) {
+
+        long scaled = getScaled(scale, mode);
+        if (scaled == Long.MIN_VALUE) {
+            return false;
+        }
+        if (scale > 6 && Math.abs(scaled) < POWERS_OF_TEN[scale - 6]) {
+            return false;
+        }
+
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+        long divisor = POWERS_OF_TEN[scale];
+        sb.append(scaled / divisor).append('.');
+        appendPadded(sb, scaled % divisor, scale);
+        return true;
+    }
+
+    /**
+     * Append the value rounded to a fixed number of decimal places and turned into a double, the way
+     * append(new BigDecimal(value).setScale(scale, mode).doubleValue()) would. Only handles values that
+     * Double.toString() writes in plain notation (0 and 0.001 up to 10,000,000), with at most 15 significant
+     * digits once they're rounded.
+     *
+     * @param sb    where to put it
+     * @param scale number of decimal places, 1 to 9
+     * @param mode  HALF_UP or HALF_EVEN
+     * @return false if the value is out of range, too long or not something BigDecimal would take, and
+     *         nothing was appended
+     */
+    public boolean appendScaledDouble(StringBuilder sb, int scale, RoundingMode mode) {
+
+        long scaled = getScaled(scale, mode);
+        if (scaled == Long.MIN_VALUE) {
+            return false;
+        }
+
+        long divisor = POWERS_OF_TEN[scale];
+        long magnitude = Math.abs(scaled);
+        if (magnitude == 0) {
+            sb.append("0.0");
+            return true;
+        }
+        // Double.toString() switches to E notation outside [10^-3, 10^7). Only up to 15 significant digits are
+        // sure to come back out of a double the same; past that it can write a neighbouring value's digits.
+        if (magnitude < divisor / 1000 || magnitude >= 10000000L * divisor || magnitude >= MAX_DOUBLE_DIGITS) {
+            return false;
+        }
+
+        if (scaled < 0) {
+            sb.append('-');
+        }
+        sb.append(magnitude / divisor).append('.');
+        long fraction = magnitude % divisor;
+        if (fraction == 0) {
+            sb.append('0');
+            return true;
+        }
+        // shortest digits that get back to the same double, which for this few decimals is just the
+        // decimals without the trailing zeros
+        int digits = scale;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        appendPadded(sb, fraction, digits);
+        return true;
+    }
+
+    /**
+     * Append the value the way new BigDecimal(value.trim()).toString() would: no rounding, trailing zeros
+     * kept, leading zeros and '+' dropped.
+     *
+     * @param sb where to put it
+     * @return false if it isn't something BigDecimal would take or BigDecimal would use E notation, and nothing
+     *         was appended
+     */
+    public boolean appendPlain(StringBuilder sb) {
+
+        if (!hasPlainSign() || getDotCount() > 1 || hasExponent() || getIntegerDigits() + getFractionDigits() == 0) {
+            return false;
+        }
+
+        int start = skipZeros(intStart, dotStart);
+        int fracDigits = getFractionDigits();
+        int significant;
+        if (start < dotStart) {
+            significant = dotStart - start + fracDigits;
+        } else {
+            significant = fracDigits - (skipZeros(fracStart, expStart) - fracStart);
+        }
+        // BigDecimal goes to E notation once the exponent drops below -6 (0.0000001, and zeros like 0.0000000)
+        int precision = Math.max(significant, 1);
+        if (precision - 1 - fracDigits < -6) {
+            return false;
+        }
+
+        if (negative && significant > 0) {
+            sb.append('-');
+        }
+        if (start < dotStart) {
+            append(sb, start, dotStart);
+        } else {
+            sb.append('0');
+        }
+        if (fracDigits > 0) {
+            sb.append('.');
+            append(sb, fracStart, expStart);
+        }
+        return true;
+    }
+
+    /**
+     * Round the value to a fixed number of decimals
+     *
+     * @return the value times 10^scale, or Long.MIN_VALUE if it can't be done here
+     */
+    private long getScaled(int scale, RoundingMode mode) {
+
+        if (scale < 1 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Scale must be between 1 and " + (POWERS_OF_TEN.length - 1));
+        }
+        if (mode != RoundingMode.HALF_UP && mode != RoundingMode.HALF_EVEN) {
+            throw new IllegalArgumentException("Only HALF_UP and HALF_EVEN are supported");
+        }
+        if (!hasPlainSign() || getDotCount() > 1 || hasExponent() || getIntegerDigits() + getFractionDigits() == 0) {
+            return Long.MIN_VALUE;
+        }
+
+        int start = skipZeros(intStart, dotStart);
+        if (dotStart - start + scale > MAX_DIGITS) {
+            return Long.MIN_VALUE;
+        }
+
+        long scaled = digitsToLong(start, dotStart);
+        int kept = Math.min(scale, getFractionDigits());
+        for (int i = 0; i < scale; i++) {
+            scaled = scaled * 10 + (i < kept ? value.charAt(fracStart + i) - '0' : 0);
+        }
+
+        // look at what got cut off to decide which way to round
+        int cut = fracStart + kept;
+        if (cut < expStart) {
+            int first = value.charAt(cut) - '0';
+            boolean roundUp;
+            if (first != 5) {
+                roundUp = first > 5;
+            } else if (mode == RoundingMode.HALF_UP || skipZeros(cut + 1, expStart) < expStart) {
+                roundUp = true;
+            } else {
+                roundUp = (scaled & 1) == 1;
+            }
+            if (roundUp) {
+                scaled++;
+            }
+        }
+
+        return negative ? -scaled : scaled;
+    }
+
+    private int skipZeros(int from, int to) {
+        while (from < to && value.charAt(from) == '0') {
+            from++;
+        }
+        return from;
+    }
+
+    private long digitsToLong(int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private void append(StringBuilder sb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sb.append(value.charAt(i));
+        }
+    }
+
+    private static void appendPadded(StringBuilder sb, long number, int digits) {
+        for (long p = POWERS_OF_TEN[digits - 1]; p > 1 && number < p; p /= 10) {
+            sb.append('0');
+        }
+        sb.append(number);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // same as \s in a regex
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
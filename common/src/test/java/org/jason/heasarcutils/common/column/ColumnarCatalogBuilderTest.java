@@ -0,0 +1,235 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the builder keeps every value and null it's given, widens columns instead of losing values, and that a
+ * catalog built in parts and put back together with addAll() is the same as one built a row at a time.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCatalogBuilderTest {
+
+    private static final String[] NAMES = {"id", "big", "ra", "dec", "name", "guess"};
+    private static final ColumnType[] TYPES = {
+            ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.DOUBLE, ColumnType.STRING, null
+    };
+
+    @Test
+    public void typedColumnsKeepValuesAndNulls() {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", NAMES, TYPES);
+        builder.addRow(new String[]{"1", "10000000000", "10.5", "-20.25", "one", "1"});
+        builder.addRow(new String[]{" 2 ", "", "  ", null, "", "2"});
+        // cut short
+        builder.addRow(new String[]{"-3", "+4"});
+        ColumnarCatalog catalog = builder.build();
+
+        assertEquals(3, catalog.getRowCount());
+        assertEquals(1, catalog.getIntColumn("id").getInt(0));
+        assertEquals(2, catalog.getIntColumn("id").getInt(1));
+        assertEquals(-3, catalog.getIntColumn("id").getInt(2));
+        assertEquals(10000000000L, catalog.getLongColumn("big").getLong(0));
+        assertTrue(catalog.getColumn("big").isNull(1));
+        assertEquals(4L, catalog.getLongColumn("big").getLong(2));
+        assertEquals(10.5, catalog.getDoubleColumn("ra").getDouble(0), 0);
+        assertTrue(catalog.getColumn("ra").isNull(1));
+        assertTrue(catalog.getColumn("dec").isNull(1));
+        assertEquals("one", catalog.getStringColumn("name").getString(0));
+        assertNull(catalog.getColumn("name").getString(1));
+        assertTrue(catalog.getColumn("name").isNull(2));
+        assertTrue(catalog.getColumn("guess").isNull(2));
+        assertFalse(catalog.getColumn("id").isNull(2));
+
+        // the columns come out in line[1] order, and one with only plain integers in it turns into an int column
+        List<String> names = new ArrayList<String>();
+        for (Column column : catalog.getColumns()) {
+            names.add(column.getName());
+        }
+        assertEquals(Arrays.asList(NAMES), names);
+        assertEquals(ColumnType.INT, catalog.getColumn("guess").getType());
+
+        // ra and dec are doubles, so it gets an index
+        assertNotNull(catalog.getZoneIndex());
+        assertEquals(1, catalog.getZoneIndex().size());
+    }
+
+    @Test
+    public void columnsWidenInsteadOfLosingValues() {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", new String[]{"a", "b", "c"},
+                new ColumnType[]{ColumnType.INT, ColumnType.INT, ColumnType.DOUBLE});
+        builder.addRow(new String[]{"1", "1", "1.5"});
+        builder.addRow(new String[]{"3000000000", "x", ""});
+        builder.addRow(new String[]{"-7", "", "1e3"});
+        builder.addRow(new String[]{"", "2", "abc"});
+        ColumnarCatalog catalog = builder.build();
+
+        assertEquals(ColumnType.LONG, catalog.getColumn("a").getType());
+        assertEquals(3000000000L, catalog.getLongColumn("a").getLong(1));
+        assertEquals(-7L, catalog.getLongColumn("a").getLong(2));
+        assertTrue(catalog.getColumn("a").isNull(3));
+
+        // straight from int to String, without going through long
+        assertEquals(ColumnType.STRING, catalog.getColumn("b").getType());
+        assertEquals("1", catalog.getColumn("b").getString(0));
+        assertEquals("x", catalog.getColumn("b").getString(1));
+        assertNull(catalog.getColumn("b").getString(2));
+        assertEquals("2", catalog.getColumn("b").getString(3));
+
+        // exponents are still numbers, junk isn't. The doubles come out the way Double.toString() writes them.
+        assertEquals(ColumnType.STRING, catalog.getColumn("c").getType());
+        assertEquals("1.5", catalog.getColumn("c").getString(0));
+        assertNull(catalog.getColumn("c").getString(1));
+        assertEquals("1000.0", catalog.getColumn("c").getString(2));
+        assertEquals("abc", catalog.getColumn("c").getString(3));
+    }
+
+    @Test
+    public void inferredColumnsNarrow() {
+        String[] names = {"ints", "longs", "doubles", "exponents", "words", "empty"};
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", names, (ColumnType[]) null);
+        builder.addRow(new String[]{"007", "-12345678901", "1.25", "1e5", "a", ""});
+        builder.addRow(new String[]{"+2", "3", "-4", "2", "", ""});
+        builder.addRow(new String[]{"", "", "", "", "12", null});
+        ColumnarCatalog catalog = builder.build();
+
+        assertEquals(ColumnType.INT, catalog.getColumn("ints").getType());
+        assertEquals(7, catalog.getIntColumn("ints").getInt(0));
+        assertEquals(2, catalog.getIntColumn("ints").getInt(1));
+        assertTrue(catalog.getColumn("ints").isNull(2));
+        assertEquals(ColumnType.LONG, catalog.getColumn("longs").getType());
+        assertEquals(-12345678901L, catalog.getLongColumn("longs").getLong(0));
+        assertEquals(ColumnType.DOUBLE, catalog.getColumn("doubles").getType());
+        assertEquals(-4, catalog.getDoubleColumn("doubles").getDouble(1), 0);
+        assertEquals(ColumnType.STRING, catalog.getColumn("exponents").getType());
+        assertEquals(ColumnType.STRING, catalog.getColumn("words").getType());
+        assertEquals(ColumnType.STRING, catalog.getColumn("empty").getType());
+        assertTrue(catalog.getColumn("empty").isNull(0));
+
+        // no double ra and dec, no index
+        assertNull(catalog.getZoneIndex());
+    }
+
+    @Test
+    public void repeatedFieldKeepsTheLastOne() {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", new String[]{"a", "b", "a"},
+                new ColumnType[]{ColumnType.STRING, ColumnType.STRING, ColumnType.STRING});
+        builder.addRow(new String[]{"first", "b", "last"});
+        ColumnarCatalog catalog = builder.build();
+
+        assertEquals(2, catalog.getColumns().size());
+        assertEquals("last", catalog.getColumn("a").getString(0));
+    }
+
+    @Test
+    public void scannedRowsMatchStringRows() {
+        Random random = new Random(22);
+        ColumnarCatalogBuilder fromStrings = new ColumnarCatalogBuilder("test", NAMES, TYPES);
+        ColumnarCatalogBuilder fromScanner = new ColumnarCatalogBuilder("test", NAMES, TYPES);
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (int row = 0; row < 2000; row++) {
+            String[] values = makeRow(random, row);
+            StringBuilder line = new StringBuilder();
+            for (String value : values) {
+                line.append(value).append('|');
+            }
+            assertTrue(scanner.scan(line));
+            fromScanner.addRow(scanner);
+            fromStrings.addRow(values);
+        }
+        assertSameCatalog(fromStrings.build(), fromScanner.build());
+    }
+
+    @Test
+    public void partsMatchOneBuilder() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            ColumnarCatalogBuilder whole = new ColumnarCatalogBuilder("test", NAMES, TYPES);
+            ColumnarCatalogBuilder parts = new ColumnarCatalogBuilder("test", NAMES, TYPES);
+            List<ColumnarCatalogBuilder> partList = new ArrayList<ColumnarCatalogBuilder>();
+            ColumnarCatalogBuilder part = parts.newPart();
+            partList.add(part);
+
+            int rows = random.nextInt(5000);
+            for (int row = 0; row < rows; row++) {
+                if (random.nextInt(500) == 0) {
+                    part = parts.newPart();
+                    partList.add(part);
+                }
+                String[] values = makeRow(random, row);
+                whole.addRow(values);
+                part.addRow(values);
+            }
+            // sometimes the first part goes into the builder the parts came from, sometimes not
+            Iterator<ColumnarCatalogBuilder> iterator = partList.iterator();
+            ColumnarCatalogBuilder target = (seed % 2 == 0) ? parts : iterator.next();
+            while (iterator.hasNext()) {
+                target.addAll(iterator.next());
+            }
+
+            assertEquals(rows, whole.getRowCount());
+            assertEquals(rows, target.getRowCount());
+            assertSameCatalog(whole.build(), target.build());
+        }
+    }
+
+    /**
+     * A row with a few empty fields, and now and then a value that makes a column widen
+     */
+    private static String[] makeRow(Random random, int row) {
+        String[] values = new String[NAMES.length];
+        values[0] = (random.nextInt(1000) == 0) ? "9999999999" : Integer.toString(row);
+        values[1] = (random.nextInt(2000) == 0) ? "n/a" : Long.toString(random.nextLong() >> random.nextInt(64));
+        values[2] = Double.toString(random.nextDouble() * 360);
+        values[3] = Double.toString(random.nextDouble() * 180 - 90);
+        values[4] = "star " + random.nextInt(100);
+        values[5] = (random.nextInt(3000) == 0) ? "x" : Integer.toString(random.nextInt(50));
+        for (int i = 0; i < values.length; i++) {
+            if (random.nextInt(10) == 0) {
+                values[i] = "";
+            }
+        }
+        return values;
+    }
+
+    private static void assertSameCatalog(ColumnarCatalog expected, ColumnarCatalog actual) {
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getColumns().size(), actual.getColumns().size());
+        Iterator<Column> actualColumns = actual.getColumns().iterator();
+        for (Column column : expected.getColumns()) {
+            Column other = actualColumns.next();
+            assertEquals(column.getName(), other.getName());
+            assertEquals(column.getName(), column.getType(), other.getType());
+            assertEquals(column.getName(), expected.getRowCount(), other.size());
+            for (int row = 0; row < expected.getRowCount(); row++) {
+                assertEquals(column.getName() + " " + row, column.isNull(row), other.isNull(row));
+                assertEquals(column.getName() + " " + row, column.getString(row), other.getString(row));
+            }
+        }
+        assertEquals(expected.getZoneIndex() == null, actual.getZoneIndex() == null);
+    }
+}
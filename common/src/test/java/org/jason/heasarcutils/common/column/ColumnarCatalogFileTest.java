@@ -0,0 +1,284 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes catalogs out, maps them back in and checks every column and the zone index come back the same, and
+ * that ColumnarCache only hands an entry back while it's readable and the file it came from hasn't changed.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ColumnarCatalogFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mappedCatalogMatchesWrittenOne() throws IOException {
+        for (int rows : new int[]{0, 1, 63, 64, 65, 3000}) {
+            ColumnarCatalog catalog = makeCatalog("cat é " + rows, rows, new Random(rows));
+            File file = folder.newFile("catalog" + rows + ".columns");
+            ColumnarCatalogFile.write(catalog, file, 12345L + rows, 67890L);
+
+            ColumnarCatalogFile entry = ColumnarCatalogFile.open(file);
+            assertEquals(file, entry.getFile());
+            assertEquals(catalog.getName(), entry.getName());
+            assertEquals(rows, entry.getRowCount());
+            assertEquals(12345L + rows, entry.getSourceLength());
+            assertEquals(67890L, entry.getSourceModified());
+
+            ColumnarCatalog mapped = entry.map();
+            assertSameCatalog(catalog, mapped);
+            if (rows > 0) {
+                assertArrayEquals(catalog.coneSearch(10, 0, 20), mapped.coneSearch(10, 0, 20));
+            }
+        }
+    }
+
+    @Test
+    public void catalogWithoutPositionsHasNoIndex() throws IOException {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("plain", new String[]{"name"},
+                new ColumnType[]{ColumnType.STRING});
+        builder.addRow(new String[]{"one"});
+        builder.addRow(new String[]{""});
+        ColumnarCatalog catalog = builder.build();
+        File file = folder.newFile("plain.columns");
+        ColumnarCatalogFile.write(catalog, file, 1, 2);
+
+        ColumnarCatalog mapped = ColumnarCatalogFile.open(file).map();
+        assertNull(mapped.getZoneIndex());
+        assertSameCatalog(catalog, mapped);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        File file = folder.newFile("truncated.columns");
+        ColumnarCatalogFile.write(makeCatalog("truncated", 100, new Random(1)), file, 1, 2);
+        byte[] bytes = readFile(file);
+
+        for (int length = 0; length < bytes.length; length++) {
+            writeFile(file, bytes, length);
+            try {
+                ColumnarCatalogFile.open(file);
+                fail("Opened a file cut short at " + length + " of " + bytes.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void otherVersionIsRejected() throws IOException {
+        File file = folder.newFile("version.columns");
+        ColumnarCatalogFile.write(makeCatalog("version", 10, new Random(2)), file, 1, 2);
+        byte[] bytes = readFile(file);
+
+        for (int version : new int[]{1, 3}) {
+            // the version is the little-endian int after the 8 byte magic
+            bytes[8] = (byte) version;
+            writeFile(file, bytes, bytes.length);
+            try {
+                ColumnarCatalogFile.open(file);
+                fail("Opened version " + version);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("version " + version));
+            }
+        }
+
+        bytes[8] = 2;
+        bytes[0] = 'X';
+        writeFile(file, bytes, bytes.length);
+        try {
+            ColumnarCatalogFile.open(file);
+            fail("Opened a file without the magic");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cacheHitsUntilTheSourceChanges() throws IOException {
+        ColumnarCache cache = new ColumnarCache(new File(folder.getRoot(), "cache"));
+        File source = folder.newFile("heasarc_test.tdat");
+        writeFile(source, new byte[100], 100);
+        assertTrue(source.setLastModified(1000000000000L));
+        ColumnarCatalog catalog = makeCatalog("test", 500, new Random(3));
+
+        assertNull(cache.get("test", source));
+        File file = cache.put(catalog, source);
+        assertEquals(cache.getFile("test"), file);
+        assertSameCatalog(catalog, cache.get("test", source));
+        // nothing left behind from writing it
+        assertEquals(1, cache.getDirectory().list().length);
+
+        // another name, or a source that's gone, is a miss
+        assertNull(cache.get("other", source));
+        assertNull(cache.get("test", new File(folder.getRoot(), "missing.tdat")));
+
+        // a newer download
+        assertTrue(source.setLastModified(1000000002000L));
+        assertNull(cache.get("test", source));
+        assertTrue(source.setLastModified(1000000000000L));
+        assertNotNull(cache.get("test", source));
+
+        // same time, different length
+        writeFile(source, new byte[101], 101);
+        assertTrue(source.setLastModified(1000000000000L));
+        assertNull(cache.get("test", source));
+
+        // putting it again replaces the old entry
+        cache.put(catalog, source);
+        assertSameCatalog(catalog, cache.get("test", source));
+        assertEquals(1, cache.getDirectory().list().length);
+    }
+
+    @Test
+    public void unreadableCacheEntryIsAMiss() throws IOException {
+        ColumnarCache cache = new ColumnarCache(new File(folder.getRoot(), "cache"));
+        File source = folder.newFile("heasarc_test.tdat");
+        File file = cache.put(makeCatalog("test", 200, new Random(4)), source);
+        byte[] bytes = readFile(file);
+
+        writeFile(file, bytes, bytes.length / 2);
+        assertNull(cache.get("test", source));
+
+        bytes[8] = 1;
+        writeFile(file, bytes, bytes.length);
+        assertNull(cache.get("test", source));
+    }
+
+    /**
+     * A catalog with a column of each type, nulls in all of them and positions all over the sky
+     */
+    private static ColumnarCatalog makeCatalog(String name, int rows, Random random) {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder(name,
+                new String[]{"id", "big", "ra", "dec", "name", "flag"},
+                new ColumnType[]{ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.DOUBLE,
+                        ColumnType.STRING, ColumnType.STRING});
+        for (int row = 0; row < rows; row++) {
+            String[] values = {
+                    Integer.toString(row),
+                    Long.toString(random.nextLong()),
+                    Double.toString(random.nextDouble() * 360),
+                    Double.toString(random.nextDouble() * 180 - 90),
+                    "star é " + random.nextInt(rows),
+                    (row % 2 == 0) ? "" : "Y"
+            };
+            for (int i = 0; i < 5; i++) {
+                if (random.nextInt(7) == 0) {
+                    values[i] = "";
+                }
+            }
+            builder.addRow(values);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameCatalog(ColumnarCatalog expected, ColumnarCatalog actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getColumns().size(), actual.getColumns().size());
+        Iterator<Column> actualColumns = actual.getColumns().iterator();
+        for (Column column : expected.getColumns()) {
+            Column other = actualColumns.next();
+            assertEquals(column.getName(), other.getName());
+            assertEquals(column.getName(), column.getType(), other.getType());
+            assertEquals(column.getName(), expected.getRowCount(), other.size());
+            for (int row = 0; row < expected.getRowCount(); row++) {
+                assertEquals(column.getName() + " " + row, column.isNull(row), other.isNull(row));
+                assertEquals(column.getName() + " " + row, column.getString(row), other.getString(row));
+            }
+            if (column instanceof StringColumn) {
+                StringColumn strings = (StringColumn) column;
+                StringColumn otherStrings = (StringColumn) other;
+                assertEquals(strings.getDictionarySize(), otherStrings.getDictionarySize());
+                for (int code = 0; code < strings.getDictionarySize(); code++) {
+                    String value = strings.getValue(code);
+                    assertEquals(value, otherStrings.getValue(code));
+                    assertEquals(code, otherStrings.getCode(value));
+                }
+                assertEquals(-1, otherStrings.getCode("not in the dictionary"));
+            }
+        }
+
+        ZoneIndex index = expected.getZoneIndex();
+        ZoneIndex otherIndex = actual.getZoneIndex();
+        if (index == null) {
+            assertNull(otherIndex);
+            return;
+        }
+        assertEquals(index.getRaColumn(), otherIndex.getRaColumn());
+        assertEquals(index.getDecColumn(), otherIndex.getDecColumn());
+        assertEquals(index.getZoneHeight(), otherIndex.getZoneHeight(), 0);
+        assertEquals(index.getZoneCount(), otherIndex.getZoneCount());
+        assertEquals(index.size(), otherIndex.size());
+        assertSameInts(index.getZoneStarts(), otherIndex.getZoneStarts());
+        assertSameInts(index.getRows(), otherIndex.getRows());
+        assertSameDoubles(index.getRas(), otherIndex.getRas());
+        assertSameDoubles(index.getDecs(), otherIndex.getDecs());
+    }
+
+    private static void assertSameInts(IntBuffer expected, IntBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameDoubles(DoubleBuffer expected, DoubleBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(Double.doubleToLongBits(expected.get(i)), Double.doubleToLongBits(actual.get(i)));
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks a match comes out the same on any number of threads, finds the nearest row the way testing every pair
+ * would, and settles ties on the lowest row.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class CrossMatcherTest {
+
+    private static final double RADIUS = 0.05;
+
+    @Test
+    public void threadsDontChangeTheResult() {
+        Random random = new Random(25);
+        // enough rows for several partitions
+        double[][] positions = makePositions(random, 8000);
+        ColumnarCatalog to = makeCatalog("to", positions, positions);
+        ColumnarCatalog from = makeCatalog("from", jitter(random, positions, 15000), null);
+
+        CrossMatcher.Matches expected = new CrossMatcher(1).match(from, to, RADIUS);
+        assertTrue(expected.size() > 10000);
+        for (int threads : new int[]{2, 3, 8}) {
+            CrossMatcher.Matches actual = new CrossMatcher(threads).match(from, to, RADIUS);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(threads + " threads, pair " + i, expected.getFromRow(i), actual.getFromRow(i));
+                assertEquals(threads + " threads, pair " + i, expected.getToRow(i), actual.getToRow(i));
+                assertEquals(expected.getDistance(i), actual.getDistance(i), 0);
+            }
+        }
+
+        // every position is in to twice, and the match always lands on the first copy
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("pair " + i + " matched " + expected.getToRow(i), expected.getToRow(i) < positions.length);
+        }
+        assertSame(from, expected.getFrom());
+        assertSame(to, expected.getTo());
+        assertEquals(RADIUS, expected.getRadius(), 0);
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(250);
+        double[][] positions = makePositions(random, 1000);
+        double[][] fromPositions = jitter(random, positions, 1500);
+        ColumnarCatalog to = makeCatalog("to", positions, positions);
+        ColumnarCatalog from = makeCatalog("from", fromPositions, null);
+
+        CrossMatcher.Matches matches = new CrossMatcher(4).match(from, to, RADIUS);
+        int[] matched = new int[fromPositions.length];
+        Arrays.fill(matched, -1);
+        for (int i = 0; i < matches.size(); i++) {
+            assertEquals(-1, matched[matches.getFromRow(i)]);
+            matched[matches.getFromRow(i)] = i;
+        }
+
+        for (int row = 0; row < fromPositions.length; row++) {
+            // the lowest of the nearest rows, or -1
+            int nearest = -1;
+            double nearestDistance = 0;
+            for (int toRow = 0; toRow < positions.length * 2; toRow++) {
+                double[] position = positions[toRow % positions.length];
+                double distance = ZoneIndex.distance(fromPositions[row][0], fromPositions[row][1], position[0],
+                        position[1]);
+                if (distance <= RADIUS && (nearest == -1 || distance < nearestDistance)) {
+                    nearest = toRow;
+                    nearestDistance = distance;
+                }
+            }
+            if (nearest == -1) {
+                assertEquals("row " + row, -1, matched[row]);
+            } else {
+                assertTrue("row " + row + " should have matched " + nearest, matched[row] != -1);
+                assertEquals("row " + row, nearest, matches.getToRow(matched[row]));
+                assertEquals(nearestDistance, matches.getDistance(matched[row]), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void tiesGoToTheLowerRow() {
+        // two rows the same distance either side, the lower one in the zone that's searched last
+        double[][] toPositions = {{10, 0.01}, {10, -0.01}, {50, 20}, {50, 20}, {50, 20}};
+        ColumnarCatalog to = makeCatalog("to", toPositions, null);
+        ColumnarCatalog from = makeCatalog("from", new double[][]{{10, 0}, {50, 20}, {200, -45}}, null);
+
+        CrossMatcher.Matches matches = new CrossMatcher(2).match(from, to, RADIUS);
+        assertEquals(2, matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.getFromRow(i) == 0) {
+                assertEquals(0, matches.getToRow(i));
+                assertEquals(0.01, matches.getDistance(i), 1e-12);
+            } else {
+                assertEquals(1, matches.getFromRow(i));
+                assertEquals(2, matches.getToRow(i));
+                assertEquals(0, matches.getDistance(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void catalogWithoutPositionsIsRejected() {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("names", new String[]{"name"},
+                new ColumnType[]{ColumnType.STRING});
+        builder.addRow(new String[]{"one"});
+        ColumnarCatalog names = builder.build();
+        ColumnarCatalog positions = makeCatalog("positions", new double[][]{{1, 1}}, null);
+        try {
+            new CrossMatcher(1).match(names, positions, RADIUS);
+            fail("Matched a catalog without an index");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("names"));
+        }
+        try {
+            new CrossMatcher(0);
+            fail("Made a matcher with no threads");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Positions all over the sky, with some piled up around ra 0/360 and the poles
+     */
+    private static double[][] makePositions(Random random, int count) {
+        double[][] positions = new double[count][];
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    positions[i] = new double[]{(random.nextDouble() * 0.4 + 359.8) % 360,
+                            random.nextDouble() * 2 - 1};
+                    break;
+                case 1:
+                    positions[i] = new double[]{random.nextDouble() * 360,
+                            (89.8 + random.nextDouble() * 0.2) * (random.nextBoolean() ? 1 : -1)};
+                    break;
+                default:
+                    positions[i] = new double[]{random.nextDouble() * 360, random.nextDouble() * 180 - 90};
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Nudge randomly chosen positions by up to a couple of match radii, so some pairs are in range and some
+     * aren't, and now and then the nearest one is a different position
+     */
+    private static double[][] jitter(Random random, double[][] positions, int count) {
+        double[][] jittered = new double[count][];
+        for (int i = 0; i < count; i++) {
+            double[] position = positions[random.nextInt(positions.length)];
+            double dec = Math.max(-90, Math.min(90, position[1] + random.nextGaussian() * RADIUS));
+            jittered[i] = new double[]{(position[0] + random.nextGaussian() * RADIUS + 360) % 360, dec};
+        }
+        return jittered;
+    }
+
+    /**
+     * A catalog of ra and dec columns, followed by a second copy of more positions if there are any
+     */
+    private static ColumnarCatalog makeCatalog(String name, double[][] positions, double[][] more) {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder(name, new String[]{"ra", "dec"},
+                new ColumnType[]{ColumnType.DOUBLE, ColumnType.DOUBLE});
+        for (double[] position : positions) {
+            builder.addRow(new String[]{Double.toString(position[0]), Double.toString(position[1])});
+        }
+        if (more != null) {
+            for (double[] position : more) {
+                builder.addRow(new String[]{Double.toString(position[0]), Double.toString(position[1])});
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.column;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks coneSearch() against testing the distance to every row, with the cones and rows piled up where the
+ * index has to get it right: either side of ra 0/360, at and around the poles, and cones of 180 degrees or more.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ZoneIndexTest {
+
+    // rows closer to the edge of a cone than this can go either way, the index and the brute force round
+    // differently
+    private static final double SLACK = 1e-9;
+
+    private static final double[] CENTRE_RAS = {0, 0.01, 359.99, 360, -0.01, 180, 90.5, 720.25};
+    private static final double[] CENTRE_DECS = {0, 89.95, -89.95, 90, -90, 45, -30, 89.5, 0.05};
+    private static final double[] RADII = {0, 0.01, 0.1, 0.5, 2, 10, 45, 89.9, 90, 135, 179.9, 180, 200};
+
+    @Test
+    public void coneSearchMatchesBruteForce() {
+        ColumnarCatalog catalog = makeCatalog(new Random(24), 3000);
+        double[] ras = getValues(catalog, "ra");
+        double[] decs = getValues(catalog, "dec");
+
+        for (double zoneHeight : new double[]{ZoneIndex.DEFAULT_ZONE_HEIGHT, 7, 180}) {
+            ZoneIndex index = ZoneIndex.build(catalog, zoneHeight);
+            for (double ra : CENTRE_RAS) {
+                for (double dec : CENTRE_DECS) {
+                    for (double radius : RADII) {
+                        check(index, ras, decs, ra, dec, radius);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomConesMatchBruteForce() {
+        Random random = new Random(240);
+        ColumnarCatalog catalog = makeCatalog(random, 3000);
+        double[] ras = getValues(catalog, "ra");
+        double[] decs = getValues(catalog, "dec");
+        ZoneIndex index = catalog.getZoneIndex();
+
+        for (int i = 0; i < 1000; i++) {
+            double radius = (random.nextBoolean()) ? random.nextDouble() : random.nextDouble() * 200;
+            check(index, ras, decs, random.nextDouble() * 720 - 360, random.nextDouble() * 180 - 90, radius);
+        }
+    }
+
+    @Test
+    public void rowsWithoutPositionsAreLeftOut() {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", new String[]{"radeg", "decdeg"},
+                new ColumnType[]{ColumnType.DOUBLE, ColumnType.DOUBLE});
+        builder.addRow(new String[]{"10", "10"});
+        builder.addRow(new String[]{"", "10"});
+        builder.addRow(new String[]{"10", ""});
+        builder.addRow(new String[]{"10", "91"});
+        builder.addRow(new String[]{"NaN", "10"});
+        builder.addRow(new String[]{"370", "10"});
+        ColumnarCatalog catalog = builder.build();
+        ZoneIndex index = catalog.getZoneIndex();
+
+        assertEquals("radeg", index.getRaColumn());
+        assertEquals("decdeg", index.getDecColumn());
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[]{0, 5}, index.coneSearch(10, 10, 180));
+        assertArrayEquals(new int[0], index.coneSearch(10, 10, -1));
+        assertArrayEquals(new int[0], index.coneSearch(Double.NaN, 10, 1));
+    }
+
+    @Test
+    public void visitorGetsTheDistance() {
+        ColumnarCatalog catalog = makeCatalog(new Random(2400), 2000);
+        final double[] ras = getValues(catalog, "ra");
+        final double[] decs = getValues(catalog, "dec");
+        final int[] visits = new int[1];
+
+        int found = catalog.getZoneIndex().coneSearch(359.5, 1, 5, new ZoneIndex.Visitor() {
+            public void visit(int row, double distance) {
+                assertEquals(ZoneIndex.distance(359.5, 1, ras[row], decs[row]), distance, SLACK);
+                visits[0]++;
+            }
+        });
+        assertEquals(visits[0], found);
+        assertEquals(catalog.coneSearch(359.5, 1, 5).length, found);
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void distanceHoldsUpAtTheEdges() {
+        assertEquals(0, ZoneIndex.distance(0, 0, 360, 0), SLACK);
+        assertEquals(0.02, ZoneIndex.distance(359.99, 0, 0.01, 0), SLACK);
+        assertEquals(0, ZoneIndex.distance(12, 90, 250, 90), SLACK);
+        assertEquals(180, ZoneIndex.distance(0, 90, 77, -90), SLACK);
+        assertEquals(180, ZoneIndex.distance(0, 0, 180, 0), SLACK);
+        assertEquals(1e-6, ZoneIndex.distance(10, 0, 10, 1e-6), 1e-15);
+        // across ra 0, 1e-6 degrees of ra at dec 20
+        double cosDec = Math.cos(Math.toRadians(20));
+        assertEquals(1e-6 * cosDec, ZoneIndex.distance(359.9999995, 20, 0.0000005, 20), 1e-12);
+    }
+
+    private static void check(ZoneIndex index, double[] ras, double[] decs, double ra, double dec, double radius) {
+        int[] found = index.coneSearch(ra, dec, radius);
+        String cone = "cone at " + ra + ", " + dec + " radius " + radius + " zones " + index.getZoneHeight();
+        for (int i = 1; i < found.length; i++) {
+            assertTrue(cone + " isn't in ascending order", found[i - 1] < found[i]);
+        }
+
+        int matched = 0;
+        for (int row = 0; row < ras.length; row++) {
+            boolean inside = Arrays.binarySearch(found, row) >= 0;
+            if (Double.isNaN(ras[row]) || Double.isNaN(decs[row])) {
+                if (inside) {
+                    fail(cone + " found row " + row + " without a position");
+                }
+                continue;
+            }
+            double distance = ZoneIndex.distance(ra, dec, ras[row], decs[row]);
+            if (inside) {
+                matched++;
+            }
+            // only build the message when it's needed, there are a lot of rows
+            if (distance <= radius - SLACK && !inside) {
+                fail(cone + " missed row " + row + " at " + ras[row] + ", " + decs[row] + ", " + distance + " away");
+            } else if (distance > radius + SLACK && inside) {
+                fail(cone + " found row " + row + " at " + ras[row] + ", " + decs[row] + ", " + distance + " away");
+            }
+        }
+        assertEquals(cone, found.length, matched);
+    }
+
+    /**
+     * Rows spread over the sky, with most of them crowded around ra 0/360 and the poles. Some sit exactly on
+     * ra 0, ra 360 and the poles, and a few have no position at all.
+     */
+    private static ColumnarCatalog makeCatalog(Random random, int rows) {
+        ColumnarCatalogBuilder builder = new ColumnarCatalogBuilder("test", new String[]{"ra", "dec"},
+                new ColumnType[]{ColumnType.DOUBLE, ColumnType.DOUBLE});
+        for (int row = 0; row < rows; row++) {
+            double ra;
+            double dec;
+            switch (random.nextInt(6)) {
+                case 0:
+                    ra = random.nextDouble() * 360;
+                    dec = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+                    break;
+                case 1:
+                    // either side of ra 0
+                    ra = (random.nextDouble() - 0.5) * 2;
+                    ra = (ra < 0) ? ra + 360 : ra;
+                    dec = random.nextDouble() * 20 - 10;
+                    break;
+                case 2:
+                    // near a pole
+                    ra = random.nextDouble() * 360;
+                    dec = (90 - random.nextDouble() * 0.5) * (random.nextBoolean() ? 1 : -1);
+                    break;
+                case 3:
+                    ra = new double[]{0, 360, 359.99, 0.01}[random.nextInt(4)];
+                    dec = new double[]{90, -90, 0, 89.95, -89.95}[random.nextInt(5)];
+                    break;
+                case 4:
+                    // near the centres the tests search around
+                    ra = CENTRE_RAS[random.nextInt(CENTRE_RAS.length)] + random.nextGaussian() * 0.05;
+                    dec = Math.max(-90, Math.min(90,
+                            CENTRE_DECS[random.nextInt(CENTRE_DECS.length)] + random.nextGaussian() * 0.05));
+                    break;
+                default:
+                    if (random.nextInt(20) == 0) {
+                        builder.addRow(new String[]{"", ""});
+                        continue;
+                    }
+                    ra = random.nextDouble() * 360;
+                    dec = random.nextDouble() * 180 - 90;
+            }
+            builder.addRow(new String[]{Double.toString(ra), Double.toString(dec)});
+        }
+        return builder.build();
+    }
+
+    private static double[] getValues(ColumnarCatalog catalog, String name) {
+        DoubleColumn column = catalog.getDoubleColumn(name);
+        double[] values = new double[catalog.getRowCount()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = column.isNull(row) ? Double.NaN : column.getDouble(row);
+        }
+        return values;
+    }
+}
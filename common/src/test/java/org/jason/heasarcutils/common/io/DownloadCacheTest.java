@@ -0,0 +1,205 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the DownloadCache against a little HttpServer on localhost that serves one file with an ETag and a
+ * Last-Modified, and answers conditional GETs with a 304 when they match.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class DownloadCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Tue, 15 Nov 2011 12:45:26 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String location;
+    private byte[] body;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private DownloadCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        body = new byte[100000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i * 31 + i / 7);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/catalog.tdat.gz", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                downloads.incrementAndGet();
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.start();
+        location = "http://127.0.0.1:" + server.getAddress().getPort() + "/catalog.tdat.gz";
+
+        cache = new DownloadCache(folder.newFolder("cache"));
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void firstFetchStoresBodyAndValidators() throws IOException {
+        File file = cache.get(location);
+
+        assertEquals(1, downloads.get());
+        assertArrayEquals(body, read(file));
+        assertTrue(file.getName().endsWith("-catalog.tdat.gz"));
+
+        Properties entry = readEntry(file);
+        assertEquals(location, entry.getProperty("url"));
+        assertEquals(ETAG, entry.getProperty("etag"));
+        assertEquals(String.valueOf(body.length), entry.getProperty("size"));
+        assertNotNull(entry.getProperty("sha1"));
+        assertTrue(Long.parseLong(entry.getProperty("lastModified")) > 0);
+    }
+
+    @Test
+    public void notModifiedServesCachedCopy() throws IOException {
+        File first = cache.get(location);
+        long fileTime = first.lastModified();
+
+        File second = cache.get(location);
+
+        assertEquals(first, second);
+        assertEquals(1, downloads.get());
+        assertEquals(1, notModified.get());
+        assertEquals(fileTime, second.lastModified());
+        assertArrayEquals(body, read(second));
+    }
+
+    @Test
+    public void truncatedEntryIsDownloadedAgain() throws IOException {
+        File file = cache.get(location);
+        write(file, Arrays.copyOf(body, body.length / 2));
+
+        File again = cache.get(location);
+
+        assertEquals(2, downloads.get());
+        assertEquals(0, notModified.get());
+        assertArrayEquals(body, read(again));
+    }
+
+    @Test
+    public void corruptEntryIsDownloadedAgain() throws IOException {
+        File file = cache.get(location);
+        // same size, different bytes, and the file time moves so the checksum gets looked at
+        byte[] corrupt = body.clone();
+        corrupt[1234] ^= 0x55;
+        write(file, corrupt);
+        file.setLastModified(file.lastModified() - 60000);
+
+        File again = cache.get(location);
+
+        assertEquals(2, downloads.get());
+        assertArrayEquals(body, read(again));
+    }
+
+    @Test
+    public void unreachableServerFallsBackToCachedCopy() throws IOException {
+        File file = cache.get(location);
+        server.stop(0);
+        server = null;
+
+        assertEquals(file, cache.get(location));
+        assertArrayEquals(body, read(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void unreachableServerWithoutCachedCopyFails() throws IOException {
+        server.stop(0);
+        server = null;
+
+        cache.get(location);
+    }
+
+    private static Properties readEntry(File data) throws IOException {
+        Properties entry = new Properties();
+        InputStream is = new FileInputStream(new File(data.getPath() + ".properties"));
+        try {
+            entry.load(is);
+        } finally {
+            is.close();
+        }
+        return entry;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, len);
+            }
+        } finally {
+            is.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks a file comes back decoded with the charset that was asked for, whichever kind of reader it gets.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class LineReadersTest {
+
+    private static final String FIRST = "{\"name\":\"M 1 Néb Ω\",\"vmag\":8.4}";
+    private static final String SECOND = "{\"name\":\"M 2\"}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void utf8FileIsDecodedAsUtf8() throws IOException {
+        File file = folder.newFile("messier.json");
+        write(new FileOutputStream(file), "UTF-8");
+
+        LineReader reader = LineReaders.open(file, "UTF-8");
+        assertFalse(reader instanceof MappedLineReader);
+        assertLines(reader);
+    }
+
+    @Test
+    public void gzippedUtf8FileIsDecodedAsUtf8() throws IOException {
+        File file = folder.newFile("messier.json.gz");
+        write(new GZIPOutputStream(new FileOutputStream(file)), "UTF-8");
+
+        assertLines(LineReaders.open(file, "UTF-8"));
+    }
+
+    @Test
+    public void latin1FileIsMapped() throws IOException {
+        File file = folder.newFile("messier.tdat");
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(("M 1 Néb\r\nM 2\n").getBytes("ISO-8859-1"));
+        } finally {
+            os.close();
+        }
+
+        LineReader reader = LineReaders.open(file, "latin1");
+        try {
+            assertTrue(reader instanceof MappedLineReader);
+            assertEquals("M 1 Néb", reader.readLine().toString());
+            assertEquals("M 2", reader.readLine().toString());
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void mappableCharsets() {
+        assertTrue(LineReaders.isMappable("ISO-8859-1"));
+        assertTrue(LineReaders.isMappable("latin1"));
+        assertTrue(LineReaders.isMappable("US-ASCII"));
+        assertFalse(LineReaders.isMappable("UTF-8"));
+        assertFalse(LineReaders.isMappable("windows-1252"));
+        assertFalse(LineReaders.isMappable("no such charset"));
+    }
+
+    @Test(expected = UnsupportedEncodingException.class)
+    public void unknownCharsetFails() throws IOException {
+        LineReaders.open(folder.newFile("messier.json"), "no-such-charset");
+    }
+
+    private static void write(OutputStream os, String charsetName) throws IOException {
+        Writer writer = new OutputStreamWriter(os, charsetName);
+        try {
+            writer.write(FIRST + "\r\n" + SECOND + "\r\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void assertLines(LineReader reader) throws IOException {
+        try {
+            assertEquals(FIRST, reader.readLine().toString());
+            assertEquals(SECOND, reader.readLine().toString());
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks what the channel writes is one gzip member per block, and reads back through GZIPInputStream as the
+ * bytes that went in, whatever the block sizes and number of threads.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ParallelGzipChannelTest {
+
+    private static final int BLOCK = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blocksRoundTrip() throws IOException {
+        Random random = new Random(15);
+        int[] lengths = {0, 1, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK, 5 * BLOCK + 17, 100000};
+        for (int threads : new int[]{1, 3}) {
+            for (int length : lengths) {
+                byte[] data = makeData(random, length);
+                ByteArrayOutputStream gz = new ByteArrayOutputStream();
+                ParallelGzipChannel channel = new ParallelGzipChannel(Channels.newChannel(gz), threads,
+                        Deflater.DEFAULT_COMPRESSION);
+                int blocks = 0;
+                for (int start = 0; start < length; start += BLOCK) {
+                    ByteBuffer block = ByteBuffer.wrap(data, start, Math.min(BLOCK, length - start));
+                    assertEquals(block.remaining(), channel.write(block));
+                    assertFalse(block.hasRemaining());
+                    blocks++;
+                }
+                // an empty write doesn't make a member
+                assertEquals(0, channel.write(ByteBuffer.allocate(0)));
+                channel.close();
+
+                // with nothing written there's still one empty member, an empty file isn't gzip
+                String label = threads + " threads, " + length + " bytes";
+                assertArrayEquals(label, data, gunzip(gz.toByteArray()));
+                assertEquals(label, Math.max(blocks, 1), countMembers(gz.toByteArray(), data));
+            }
+        }
+    }
+
+    @Test
+    public void blockCanBeReusedRightAway() throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        ParallelGzipChannel channel = new ParallelGzipChannel(Channels.newChannel(gz), 2, 1);
+        byte[] block = new byte[BLOCK];
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            Arrays.fill(block, (byte) ('a' + i % 26));
+            expected.write(block);
+            channel.write(ByteBuffer.wrap(block));
+        }
+        channel.close();
+
+        assertArrayEquals(expected.toByteArray(), gunzip(gz.toByteArray()));
+    }
+
+    @Test
+    public void recordsAcrossBufferBoundariesRoundTrip() throws IOException {
+        File file = folder.newFile("messier.json.gz");
+        JsonRecordWriter gzipped = new JsonRecordWriter(new ParallelGzipChannel(
+                new FileOutputStream(file).getChannel(), 4, Deflater.DEFAULT_COMPRESSION), 256);
+        JsonRecordWriter plain = JsonRecordWriter.inMemory(256);
+        for (int i = 0; i < 5000; i++) {
+            for (JsonRecordWriter writer : new JsonRecordWriter[]{gzipped, plain}) {
+                writer.beginRecord();
+                writer.name("name");
+                writer.string("M " + i + " Néb Ω");
+                writer.name("vmag");
+                writer.number(Integer.toString(i % 17));
+                writer.endRecord();
+            }
+        }
+        gzipped.close();
+
+        ByteBuffer expected = plain.toByteBuffer();
+        byte[] bytes = new byte[expected.remaining()];
+        expected.get(bytes);
+        assertArrayEquals(bytes, gunzip(readFile(file)));
+    }
+
+    @Test
+    public void closedChannelRefusesWrites() throws IOException {
+        final boolean[] closed = new boolean[1];
+        ParallelGzipChannel channel = new ParallelGzipChannel(new WritableByteChannel() {
+            public int write(ByteBuffer src) {
+                int length = src.remaining();
+                src.position(src.limit());
+                return length;
+            }
+
+            public boolean isOpen() {
+                return !closed[0];
+            }
+
+            public void close() {
+                closed[0] = true;
+            }
+        }, 1, 1);
+        channel.write(ByteBuffer.wrap(new byte[10]));
+        assertTrue(channel.isOpen());
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertTrue(closed[0]);
+        // closing again does nothing
+        channel.close();
+
+        try {
+            channel.write(ByteBuffer.wrap(new byte[10]));
+            fail("Wrote to a closed channel");
+        } catch (ClosedChannelException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void failedWriteIsThrownAndStillCloses() {
+        final boolean[] closed = new boolean[1];
+        ParallelGzipChannel channel = new ParallelGzipChannel(new WritableByteChannel() {
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            public boolean isOpen() {
+                return !closed[0];
+            }
+
+            public void close() {
+                closed[0] = true;
+            }
+        }, 2, 1);
+        try {
+            // more blocks than can be pending, so write() has to write the first ones out
+            for (int i = 0; i < 10; i++) {
+                channel.write(ByteBuffer.wrap(new byte[BLOCK]));
+            }
+            channel.close();
+            fail("The write error went missing");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already failed
+            }
+        }
+        assertTrue(closed[0]);
+    }
+
+    /**
+     * Text-like bytes: compressible, but not so much that a block deflates to nothing
+     */
+    private static byte[] makeData(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((random.nextInt(4) == 0) ? random.nextInt(256) : 'a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] gunzip(byte[] gz) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz));
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Walk the gzip members one at a time, checking each is a complete member whose trailer matches what it
+     * inflates to, and that between them they hold the data
+     *
+     * @return number of members
+     */
+    private static int countMembers(byte[] gz, byte[] data) {
+        int members = 0;
+        int offset = 0;
+        int dataOffset = 0;
+        while (offset < gz.length) {
+            assertEquals(0x1f, gz[offset] & 0xff);
+            assertEquals(0x8b, gz[offset + 1] & 0xff);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(gz, offset + 10, gz.length - offset - 10);
+                byte[] block = new byte[BLOCK];
+                int length = inflater.inflate(block);
+                assertTrue(inflater.finished());
+                assertArrayEquals(Arrays.copyOfRange(data, dataOffset, dataOffset + length),
+                        Arrays.copyOf(block, length));
+                offset = gz.length - inflater.getRemaining();
+                CRC32 crc = new CRC32();
+                crc.update(block, 0, length);
+                assertEquals((int) crc.getValue(), getIntLE(gz, offset));
+                assertEquals(length, getIntLE(gz, offset + 4));
+                offset += 8;
+                dataOffset += length;
+                members++;
+            } catch (DataFormatException e) {
+                throw new AssertionError(e);
+            } finally {
+                inflater.end();
+            }
+        }
+        assertEquals(data.length, dataOffset);
+        return members;
+    }
+
+    private static int getIntLE(byte[] b, int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16
+                | (b[offset + 3] & 0xff) << 24;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
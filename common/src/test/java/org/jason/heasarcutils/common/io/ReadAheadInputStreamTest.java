@@ -0,0 +1,328 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.io;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the stream hands back exactly what the source holds whatever the buffer sizes, that gunzip() reads
+ * multi-member files with a member starting right on a buffer boundary, and that errors and early closes reach
+ * the caller and the source instead of leaving a thread behind.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void readsWhatTheSourceHolds() throws IOException {
+        Random random = new Random(16);
+        byte[] data = makeData(random, 50000);
+        for (int bufferSize : new int[]{1, 7, 4096, 50000, 65536}) {
+            for (int queueDepth : new int[]{1, 4}) {
+                InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), bufferSize, queueDepth,
+                        "test");
+                try {
+                    assertArrayEquals(bufferSize + "/" + queueDepth, data, readMixed(in, random));
+                    // the end stays the end
+                    assertEquals(-1, in.read());
+                    assertEquals(-1, in.read(new byte[10], 0, 10));
+                    assertEquals(0, in.available());
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        InputStream empty = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 16, 1, "test");
+        assertEquals(-1, empty.read());
+        empty.close();
+    }
+
+    @Test
+    public void gunzipReadsEveryMember() throws IOException {
+        Random random = new Random(160);
+        byte[] data = makeData(random, 8000);
+        byte[] gz = parallelGzip(data, 1000);
+
+        // members end all over the place, so some fetch sizes put a member's first byte at the start of a buffer
+        for (int fetchSize = 1; fetchSize < 1200; fetchSize += (fetchSize < 40) ? 1 : 97) {
+            for (int inflateSize : new int[]{7, 1000, 4096}) {
+                InputStream in = ReadAheadInputStream.gunzip(new ByteArrayInputStream(gz), fetchSize, inflateSize, 2);
+                try {
+                    assertArrayEquals(fetchSize + "/" + inflateSize, data, readMixed(in, random));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        // one member ending exactly where a fetch buffer does, then another
+        byte[] first = gzip(makeData(random, 1000));
+        byte[] second = makeData(random, 1000);
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        both.write(first);
+        both.write(gzip(second));
+        for (int fetchSize : new int[]{first.length, first.length / 2, first.length - 1, first.length + 1}) {
+            InputStream in = ReadAheadInputStream.gunzip(new ByteArrayInputStream(both.toByteArray()), fetchSize,
+                    512, 1);
+            try {
+                byte[] read = readMixed(in, random);
+                assertEquals("fetch size " + fetchSize, 2000, read.length);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void sourceErrorReachesRead() throws IOException {
+        byte[] data = makeData(new Random(1600), 10000);
+        for (final Exception error : new Exception[]{new IOException("disk gone"), new IllegalStateException("bug")}) {
+            CountingSource source = new CountingSource(data, 5000) {
+                @Override
+                void fail() throws IOException {
+                    if (error instanceof IOException) {
+                        throw (IOException) error;
+                    }
+                    throw (RuntimeException) error;
+                }
+            };
+            InputStream in = new ReadAheadInputStream(source, 1024, 2, "test");
+            byte[] buffer = new byte[data.length];
+            int length = 0;
+            try {
+                while (true) {
+                    int count = in.read(buffer, length, buffer.length - length);
+                    assertTrue(count != -1);
+                    length += count;
+                }
+            } catch (IOException e) {
+                assertSame(error, e.getCause());
+            }
+            // everything before the error got through
+            assertEquals(5000, length);
+            // and it keeps failing
+            try {
+                in.read();
+                fail("Read past an error");
+            } catch (IOException e) {
+                assertSame(error, e.getCause());
+            }
+            in.close();
+            assertTrue(source.awaitClose());
+        }
+    }
+
+    @Test
+    public void earlyCloseStopsReading() throws IOException {
+        // never ends, so the reading thread is stuck waiting for the caller when it gets closed
+        CountingSource source = new CountingSource(null, -1);
+        InputStream in = new ReadAheadInputStream(source, 1024, 2, "test");
+        assertTrue(in.read(new byte[100]) > 0);
+        in.close();
+        assertTrue(source.awaitClose());
+
+        try {
+            in.read();
+            fail("Read from a closed stream");
+        } catch (IOException e) {
+            // expected
+        }
+        // closing again does nothing
+        in.close();
+
+        // the same through both stages of a gunzip, closed before anything was read
+        CountingSource gzipped = new CountingSource(parallelGzip(makeData(new Random(16000), 100000), 4096), -1);
+        InputStream gunzip = ReadAheadInputStream.gunzip(gzipped, 512, 512, 1);
+        gunzip.close();
+        assertTrue(gzipped.awaitClose());
+    }
+
+    @Test
+    public void corruptGzipIsAnError() throws IOException {
+        Random random = new Random(160000);
+        byte[] gz = parallelGzip(makeData(random, 20000), 4096);
+
+        byte[] flipped = gz.clone();
+        for (int i = 20; i < flipped.length - 20; i += 50) {
+            flipped[i] ^= 0x55;
+        }
+        assertGunzipFails(flipped);
+
+        byte[] truncated = new byte[gz.length / 2];
+        System.arraycopy(gz, 0, truncated, 0, truncated.length);
+        assertGunzipFails(truncated);
+
+        assertGunzipFails("not gzipped at all".getBytes("US-ASCII"));
+    }
+
+    private static void assertGunzipFails(byte[] gz) {
+        InputStream in = ReadAheadInputStream.gunzip(new ByteArrayInputStream(gz), 256, 256, 2);
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // keep going until it notices
+            }
+            fail("Read a corrupt gzip to the end");
+        } catch (IOException e) {
+            // expected, whether it's a ZipException or running out of bytes
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // only failing the test
+            }
+        }
+    }
+
+    /**
+     * Read a stream to the end, switching between read(), read(byte[]), skip() and available() as it goes
+     */
+    private static byte[] readMixed(InputStream in, Random random) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5000];
+        while (true) {
+            int choice = random.nextInt(4);
+            if (choice == 0) {
+                int b = in.read();
+                if (b == -1) {
+                    break;
+                }
+                out.write(b);
+            } else if (choice == 1) {
+                int count = in.read(buffer, 0, 1 + random.nextInt(buffer.length));
+                if (count == -1) {
+                    break;
+                }
+                assertTrue(count > 0);
+                out.write(buffer, 0, count);
+            } else if (choice == 2) {
+                // exactly what available() says is there
+                int available = in.available();
+                if (available > 0) {
+                    int count = in.read(buffer, 0, Math.min(available, buffer.length));
+                    assertTrue(count > 0);
+                    out.write(buffer, 0, count);
+                }
+            } else {
+                assertEquals(0, in.skip(0));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] makeData(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((random.nextInt(4) == 0) ? random.nextInt(256) : 'a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    /**
+     * Gzip with ParallelGzipChannel, one member per block
+     */
+    private static byte[] parallelGzip(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        ParallelGzipChannel channel = new ParallelGzipChannel(Channels.newChannel(gz), 2,
+                Deflater.DEFAULT_COMPRESSION);
+        for (int start = 0; start < data.length; start += blockSize) {
+            channel.write(ByteBuffer.wrap(data, start, Math.min(blockSize, data.length - start)));
+        }
+        channel.close();
+        return gz.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(gz);
+        out.write(data);
+        out.close();
+        return gz.toByteArray();
+    }
+
+    /**
+     * Source that hands out some data (or zeros for ever), fails after a given number of bytes if asked to,
+     * and notices being closed
+     */
+    private static class CountingSource extends InputStream {
+
+        private final byte[] data;
+        private final int failAt;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private int position;
+
+        CountingSource(byte[] data, int failAt) {
+            this.data = data;
+            this.failAt = failAt;
+        }
+
+        void fail() throws IOException {
+            throw new IOException("failed");
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position == failAt) {
+                fail();
+            }
+            if (failAt != -1) {
+                len = Math.min(len, failAt - position);
+            }
+            if (data != null) {
+                if (position == data.length) {
+                    return -1;
+                }
+                len = Math.min(len, data.length - position);
+                System.arraycopy(data, position, b, off, len);
+            }
+            position += len;
+            return len;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        boolean awaitClose() {
+            try {
+                return closed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.tdat;
+
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks a plain TDAT file read as MappedLineReader.CHARSET gets mapped, so openData() can seek straight to the
+ * rows, and that everything else still finds them the slow way.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class TdatHeaderTest {
+
+    private static final String HEADER = "<HEADER>\n"
+            + "table_name = heasarc_messier\n"
+            + "field[name] = char8  [meta.id;meta.main] (index) // Name\n"
+            + "field[vmag] = float4:4.1f  [phot.mag] // V Magnitude\n"
+            + "line[1] = name vmag\n"
+            + "<DATA>\n";
+    private static final String DATA = "M 1 Néb|8.4|\nM 2|6.5|\n<END>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void plainFileIsMappedAndSeeksToData() throws IOException {
+        File file = folder.newFile("messier.tdat");
+        write(new FileOutputStream(file));
+
+        TdatHeader header = TdatHeader.read(file, MappedLineReader.CHARSET);
+        assertEquals("heasarc_messier", header.getParameter("table_name"));
+        assertArrayEquals(new String[]{"name", "vmag"}, header.getFieldNames());
+        assertEquals(6, header.getDataLine());
+        assertTrue(header.getDataOffset() != -1);
+        assertEquals(HEADER.length(), header.getDataOffset());
+
+        LineReader reader = header.openData();
+        assertTrue(reader instanceof MappedLineReader);
+        assertData(reader);
+    }
+
+    @Test
+    public void gzippedFileSkipsToData() throws IOException {
+        File file = folder.newFile("messier.tdat.gz");
+        write(new GZIPOutputStream(new FileOutputStream(file)));
+
+        TdatHeader header = TdatHeader.read(file, MappedLineReader.CHARSET);
+        assertEquals(-1, header.getDataOffset());
+
+        LineReader reader = header.openData();
+        assertFalse(reader instanceof MappedLineReader);
+        assertData(reader);
+    }
+
+    @Test
+    public void otherCharsetSkipsToData() throws IOException {
+        File file = folder.newFile("messier.tdat");
+        write(new FileOutputStream(file));
+
+        TdatHeader header = TdatHeader.read(file, "UTF-8");
+        assertEquals(-1, header.getDataOffset());
+        assertArrayEquals(new String[]{"name", "vmag"}, header.getFieldNames());
+        assertEquals("M 2|6.5|", readSecond(header.openData()));
+    }
+
+    private static void write(OutputStream os) throws IOException {
+        try {
+            os.write((HEADER + DATA).getBytes(MappedLineReader.CHARSET));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void assertData(LineReader reader) throws IOException {
+        try {
+            assertEquals("M 1 Néb|8.4|", reader.readLine().toString());
+            assertEquals("M 2|6.5|", reader.readLine().toString());
+            assertEquals("<END>", reader.readLine().toString());
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String readSecond(LineReader reader) throws IOException {
+        try {
+            reader.readLine();
+            return reader.readLine().toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.tdat;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the scanner picks out the same rows as line.matches("^(.*?\\|)*$") and the same fields as
+ * line.split("\\|"), for Strings, other CharSequences and char buffers.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class TdatRowScannerTest {
+
+    private static final String ROW_REGEX = "^(.*?\\|)*$";
+
+    private static final String[] LINES = {
+            "",
+            "|",
+            "||",
+            "|||",
+            "a|",
+            "|a|",
+            "a||",
+            "a|||",
+            "||a|",
+            "a|b|c|",
+            "a| |c|",
+            "a|b||||",
+            " | |",
+            "M 31|10.6847|41.2690|Galaxy|3.4||",
+            "no pipes at all",
+            "a|b",
+            "a|b|c",
+            "|a",
+            "Néb Ω|é|"
+    };
+
+    @Test
+    public void fixedLinesMatchSplit() {
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (String line : LINES) {
+            check(scanner, line);
+        }
+    }
+
+    @Test
+    public void randomLinesMatchSplit() {
+        Random random = new Random(2);
+        char[] alphabet = {'|', '|', 'a', 'b', ' ', 'é'};
+        TdatRowScanner scanner = new TdatRowScanner();
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(14)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            check(scanner, new String(chars));
+        }
+    }
+
+    @Test
+    public void wideRowGrowsTheArrays() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            line.append(i % 3 == 0 ? "" : Integer.toString(i)).append('|');
+        }
+        check(new TdatRowScanner(), line.toString());
+    }
+
+    @Test
+    public void lineThatIsntARowLeavesTheScannerEmpty() {
+        TdatRowScanner scanner = new TdatRowScanner();
+        assertTrue(scanner.scan("a|b|c|"));
+        assertEquals(3, scanner.getFieldCount());
+        assertFalse(scanner.scan("a|b|c"));
+        assertEquals(0, scanner.getFieldCount());
+    }
+
+    private static void check(TdatRowScanner scanner, String line) {
+        boolean row = line.matches(ROW_REGEX);
+        assertEquals(line, row, TdatRowScanner.isDataRow(line));
+
+        assertEquals(line, row, scanner.scan(line));
+        checkFields(scanner, line, 0);
+
+        assertEquals(line, row, scanner.scan(new StringBuilder(line)));
+        checkFields(scanner, line, 0);
+
+        // in the middle of a buffer, with junk either side
+        char[] buffer = ("x|" + line + "|y").toCharArray();
+        assertEquals(line, row, scanner.scan(buffer, 2, line.length()));
+        checkFields(scanner, line, 2);
+    }
+
+    private static void checkFields(TdatRowScanner scanner, String line, int offset) {
+        if (!line.matches(ROW_REGEX)) {
+            assertEquals(line, 0, scanner.getFieldCount());
+            return;
+        }
+        String[] fields = line.split("\\|");
+        assertEquals(line, fields.length, scanner.getFieldCount());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            String label = line + " field " + i;
+            assertEquals(label, field, scanner.getString(i));
+            assertEquals(label, field.isEmpty(), scanner.isEmpty(i));
+            assertEquals(label, field.length(), scanner.getLength(i));
+            assertEquals(label, field, line.substring(scanner.getStart(i) - offset, scanner.getEnd(i) - offset));
+
+            sb.setLength(0);
+            sb.append('>');
+            assertEquals(label, ">" + field, scanner.appendTo(i, sb).toString());
+
+            char[] dst = new char[field.length() + 1];
+            assertEquals(label, field.length(), scanner.getChars(i, dst, 1));
+            assertEquals(label, field, new String(dst, 1, field.length()));
+
+            for (int j = 0; j < field.length(); j++) {
+                assertEquals(label, field.charAt(j), scanner.charAt(i, j));
+            }
+        }
+    }
+}
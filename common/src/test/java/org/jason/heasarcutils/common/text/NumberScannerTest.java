@@ -0,0 +1,248 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.common.text;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the append methods write exactly what the Integer/BigDecimal/Double code they replaced did, or
+ * append nothing and return false so the caller falls back to it.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class NumberScannerTest {
+
+    private static final RoundingMode[] MODES = {RoundingMode.HALF_UP, RoundingMode.HALF_EVEN};
+
+    // the odd ones: ties, signs, leading zeros, long values, values that would come out in E notation
+    private static final String[] VALUES = {
+            "0", "-0", "+0", "00", "7", "+7", "-7", "007", "+007", "-007", "2147483647", "2147483648", "-2147483648",
+            "-2147483649", "99999999999", "0.5", "1.5", "2.5", "-2.5", "0.00005", "0.00015", "0.00025", "-0.00025",
+            "0.000050", "0.000051", "1.23455", "1.23465", "1.234550000", "1.234650001", "-1.23455", "-0.00001",
+            "-0.00005", "-0.00004999", "0.99995", "9.99995", "-9.99995", "123.", ".5", "-.5", "+.5", "0.0",
+            "0.0000", "0.000", "00012.3400", "-00012.3400", "0.0000001", "0.00000001", "0.000001", "0.0000000",
+            "1e7", "1E7", "1.5e-3", "10000000", "10000000.0", "9999999.9999", "9999999.99995", "0.001", "0.0009999",
+            "0.00095", "12345678901234567", "1234567890123456.7", "123456789012345678", "12345678901234567890.5",
+            "0.12345678901234567890", "-0.12345678901234567890", "9007199254740993", "900719925474.0993",
+            ",1", ",1.5", "+-1", "-+1.5", "--1", "1..5", ".", "-", "+", "", "  1.5", "\t-2.25", "5.", "-5."
+    };
+
+    @Test
+    public void oddValuesMatchOracles() {
+        for (String value : VALUES) {
+            check(value);
+        }
+    }
+
+    @Test
+    public void everyFourDecimalValueMatches() {
+        // what the converters actually ask for: 4 decimals, HALF_EVEN for catalogparser's appendScaled() and
+        // HALF_UP for tdat2json's appendScaledDouble(). Every 4 decimal value below 100, and the same negated
+        // with a 5 on the end so it's a tie.
+        NumberScanner scanner = new NumberScanner();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            String value = (i / 10000) + "." + pad(i % 10000, 4);
+            for (String v : new String[]{value, "-" + value + "5"}) {
+                BigDecimal number = new BigDecimal(v);
+                assertTrue(scanner.scan(v));
+
+                sb.setLength(0);
+                assertTrue(v, scanner.appendScaled(sb, 4, RoundingMode.HALF_EVEN));
+                assertEquals(v, number.setScale(4, RoundingMode.HALF_EVEN).toString(), sb.toString());
+
+                // tiny values come out of Double.toString() in E notation, and get left to it
+                sb.setLength(0);
+                String expected = String.valueOf(number.setScale(4, RoundingMode.HALF_UP).doubleValue());
+                assertEquals(v, expected.indexOf('E') == -1, scanner.appendScaledDouble(sb, 4, RoundingMode.HALF_UP));
+                assertEquals(v, expected.indexOf('E') == -1 ? expected : "", sb.toString());
+            }
+        }
+    }
+
+    @Test
+    public void randomValuesMatch() {
+        Random random = new Random(20111115L);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder value = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                value.append('-');
+            }
+            value.append((long) (random.nextDouble() * Math.pow(10, random.nextInt(12))));
+            int decimals = random.nextInt(12);
+            if (decimals > 0) {
+                value.append('.');
+                for (int j = 0; j < decimals; j++) {
+                    value.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            check(value.toString());
+        }
+    }
+
+    @Test
+    public void knownAnswers() {
+        assertEquals("0.0000", scaled("-0.00001", RoundingMode.HALF_UP));
+        assertEquals("0.0000", scaled("-0.00001", RoundingMode.HALF_EVEN));
+        assertEquals("1.2346", scaled("1.23455", RoundingMode.HALF_UP));
+        assertEquals("1.2346", scaled("1.23455", RoundingMode.HALF_EVEN));
+        assertEquals("1.2346", scaled("1.23465", RoundingMode.HALF_EVEN));
+        assertEquals("1.2347", scaled("1.23465", RoundingMode.HALF_UP));
+        assertEquals("1.2347", scaled("1.234650001", RoundingMode.HALF_EVEN));
+        assertEquals("-12.3400", scaled("-00012.34", RoundingMode.HALF_UP));
+        assertNull(scaled("123456789012345678", RoundingMode.HALF_UP));
+        assertNull(scaled(",1.5", RoundingMode.HALF_UP));
+        assertNull(scaled("+-1.5", RoundingMode.HALF_UP));
+        assertNull(scaled("1e7", RoundingMode.HALF_UP));
+
+        NumberScanner scanner = new NumberScanner();
+        StringBuilder sb = new StringBuilder();
+        assertTrue(scanner.scan("0.0000001"));
+        assertFalse(scanner.appendPlain(sb));
+        assertFalse(scanner.appendScaledDouble(sb, 9, RoundingMode.HALF_UP));
+        assertTrue(scanner.scan("10000000"));
+        assertFalse(scanner.appendScaledDouble(sb, 4, RoundingMode.HALF_UP));
+        assertTrue(scanner.appendPlain(sb));
+        assertEquals("10000000", sb.toString());
+        sb.setLength(0);
+        assertTrue(scanner.scan("+007"));
+        assertTrue(scanner.appendInt(sb));
+        assertEquals("7", sb.toString());
+    }
+
+    @Test
+    public void scanSplitsTheParts() {
+        NumberScanner scanner = new NumberScanner();
+        assertTrue(scanner.scan(" +-,12.345e-6"));
+        assertEquals(1, scanner.getWhitespaceCount());
+        assertEquals(3, scanner.getSignCount());
+        assertTrue(scanner.isNegative());
+        assertFalse(scanner.hasPlainSign());
+        assertEquals(2, scanner.getIntegerDigits());
+        assertEquals(1, scanner.getDotCount());
+        assertEquals(3, scanner.getFractionDigits());
+        assertTrue(scanner.hasExponent());
+        assertFalse(scanner.isSimpleNumber());
+
+        assertTrue(scanner.scan("-12.5E3"));
+        assertTrue(scanner.isSimpleNumber());
+        assertTrue(scanner.scan(".5"));
+        assertTrue(scanner.isSimpleNumber());
+        assertTrue(scanner.scan("-"));
+        assertFalse(scanner.isSimpleNumber());
+
+        assertFalse(scanner.scan("12a"));
+        assertFalse(scanner.scan("1.5 "));
+        assertFalse(scanner.scan("1e"));
+        assertFalse(scanner.scan("1e+"));
+    }
+
+    private static void check(String value) {
+        NumberScanner scanner = new NumberScanner();
+        if (!scanner.scan(value)) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("x");
+        String expected;
+        try {
+            expected = String.valueOf(Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            expected = null;
+        }
+        check(value, "appendInt", expected, scanner.appendInt(sb), sb);
+
+        sb.setLength(1);
+        expected = null;
+        try {
+            BigDecimal number = new BigDecimal(value.trim());
+            String plain = number.toString();
+            if (plain.indexOf('E') == -1) {
+                expected = plain;
+            }
+        } catch (NumberFormatException e) {
+            // no oracle value, so the scanner has to say no as well
+        }
+        boolean appended = scanner.appendPlain(sb);
+        if (expected == null) {
+            assertFalse(value + ": appendPlain", appended);
+            assertEquals("x", sb.toString());
+        } else if (appended) {
+            assertEquals(value + ": appendPlain", "x" + expected, sb.toString());
+        }
+
+        for (int scale = 1; scale <= 9; scale++) {
+            checkScaled(value, scale);
+        }
+    }
+
+    private static void checkScaled(String value, int scale) {
+        NumberScanner scanner = new NumberScanner();
+        assertTrue(value, scanner.scan(value));
+        for (RoundingMode mode : MODES) {
+            String scaled = null;
+            String scaledDouble = null;
+            try {
+                BigDecimal number = new BigDecimal(value.trim()).setScale(scale, mode);
+                scaled = number.toString();
+                scaledDouble = String.valueOf(number.doubleValue());
+            } catch (NumberFormatException e) {
+                // no oracle value
+            }
+
+            StringBuilder sb = new StringBuilder("x");
+            check(value + " scale " + scale + " " + mode, "appendScaled", scaled,
+                    scanner.appendScaled(sb, scale, mode), sb);
+            sb.setLength(1);
+            check(value + " scale " + scale + " " + mode, "appendScaledDouble", scaledDouble,
+                    scanner.appendScaledDouble(sb, scale, mode), sb);
+        }
+    }
+
+    /**
+     * The scanner either appended what the oracle makes of the value, or nothing at all
+     */
+    private static void check(String value, String method, String expected, boolean appended, StringBuilder sb) {
+        if (appended) {
+            assertNotNull(value + ": " + method + " took a value the old code doesn't", expected);
+            assertEquals(value + ": " + method, "x" + expected, sb.toString());
+        } else {
+            assertEquals(value + ": " + method + " appended and returned false", "x", sb.toString());
+        }
+    }
+
+    private static String scaled(String value, RoundingMode mode) {
+        NumberScanner scanner = new NumberScanner();
+        StringBuilder sb = new StringBuilder();
+        assertTrue(value, scanner.scan(value));
+        return scanner.appendScaled(sb, 4, mode) ? sb.toString() : null;
+    }
+
+    private static String pad(int number, int digits) {
+        String s = String.valueOf(number);
+        while (s.length() < digits) {
+            s = "0" + s;
+        }
+        return s;
+    }
+}
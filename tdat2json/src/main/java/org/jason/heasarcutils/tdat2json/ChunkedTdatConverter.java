@@ -0,0 +1,360 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2json;
+
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.ColumnarCatalogBuilder;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageStats;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-threaded version of Tdat2Json.processTdatFile(). Everything after the header of an already downloaded
+ * .tdat file is cut into chunks on newline boundaries, the chunks are converted on a thread pool, and the results
+ * are written out in the order the chunks were read, so the output is the same as the single-threaded
+ * conversion.
+ * <p/>
+ * Only a limited number of chunks are in flight at once (two per thread), so memory use doesn't depend on the
+ * size of the catalog.
+ * <p/>
+ * I would have used a ForkJoinPool for this, but that's Java 7 and this project still builds for 6.
+ * A fixed thread pool and an ordered queue of Futures does the same job here anyway.
+ * <p/>
+ * Timed a chunk at a time rather than per row: reading, converting (on the workers), waiting for the workers
+ * and writing.
+ * <p/>
+ * When asked for a ColumnarCatalog, each chunk fills in a part of it on its worker, and the parts get added
+ * to the catalog in order along with the JSON.
+ *
+ * @author Jason Ferguson
+ * @since 0.3.2
+ */
+public class ChunkedTdatConverter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final Map<String, Object> config;
+    private final int threads;
+    private final int chunkSize;
+
+    // TDAT is ASCII, but decode the same way the MappedLineReader in processTdatFile does
+    private final Charset charset = Charset.forName(MappedLineReader.CHARSET);
+
+    public ChunkedTdatConverter(Map<String, Object> config, int threads) {
+        this(config, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedTdatConverter(Map<String, Object> config, int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+        this.config = config;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Convert a TDAT file to <catalogName>.json
+     *
+     * @param tdatFile    the (uncompressed) TDAT file
+     * @param catalogName name of the catalog, used for the output filename
+     * @throws IOException if something goes wrong reading or writing
+     */
+    public void convert(File tdatFile, String catalogName) throws IOException {
+        convert(tdatFile, catalogName, false);
+    }
+
+    /**
+     * Convert a TDAT file to <catalogName>.json, or <catalogName>.json.gz
+     *
+     * @param tdatFile    the (uncompressed) TDAT file
+     * @param catalogName name of the catalog, used for the output filename
+     * @param gzip        true to gzip the output
+     * @throws IOException if something goes wrong reading or writing
+     */
+    public void convert(File tdatFile, String catalogName, boolean gzip) throws IOException {
+        convert(tdatFile, catalogName, gzip, new ImportStats(catalogName));
+    }
+
+    /**
+     * Convert a TDAT file to <catalogName>.json, or <catalogName>.json.gz, timing each stage
+     *
+     * @param tdatFile    the (uncompressed) TDAT file
+     * @param catalogName name of the catalog, used for the output filename
+     * @param gzip        true to gzip the output
+     * @param stats       where the timings and counts go
+     * @throws IOException if something goes wrong reading or writing
+     */
+    public void convert(File tdatFile, String catalogName, boolean gzip, ImportStats stats) throws IOException {
+        convert(tdatFile, catalogName, gzip, stats, false);
+    }
+
+    /**
+     * Convert a TDAT file to <catalogName>.json, or <catalogName>.json.gz, and build a ColumnarCatalog from
+     * the same rows if asked to
+     *
+     * @param tdatFile    the (uncompressed) TDAT file
+     * @param catalogName name of the catalog, used for the output filename
+     * @param gzip        true to gzip the output
+     * @param stats       where the timings and counts go
+     * @param columns     true to build the ColumnarCatalog
+     * @return the ColumnarCatalog, or null if columns was false
+     * @throws IOException if something goes wrong reading or writing
+     */
+    public ColumnarCatalog convert(File tdatFile, String catalogName, boolean gzip, ImportStats stats,
+                                   boolean columns) throws IOException {
+
+        Header header = readHeader(tdatFile);
+        ExclusionPlan plan = ExclusionPlan.compile(header.fieldNames, config);
+        ColumnarCatalogBuilder builder = null;
+        if (columns) {
+            builder = new ColumnarCatalogBuilder(catalogName, header.fieldNames,
+                    TdatHeader.read(tdatFile, MappedLineReader.CHARSET));
+        }
+        stats.addBytesIn(tdatFile.length());
+        StageStats readStage = stats.stage(ImportStats.READ);
+        StageStats convertStage = stats.stage(ImportStats.CONVERT);
+        StageStats waitStage = stats.stage(ImportStats.CONVERT_WAIT);
+        StageStats columnsStage = (builder == null) ? null : stats.stage(ImportStats.COLUMNS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        JsonRecordWriter writer = Tdat2Json.getWriter(catalogName, gzip);
+        writer.setWriteStage(stats.stage(ImportStats.WRITE));
+        FileInputStream fis = new FileInputStream(tdatFile);
+        try {
+            FileChannel channel = fis.getChannel();
+            channel.position(header.dataOffset);
+
+            LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            int lineCounter = 0;
+            int dropped = 0;
+
+            while (true) {
+                long start = System.nanoTime();
+                int read = channel.read(buffer);
+                readStage.add(System.nanoTime() - start, Math.max(read, 0));
+                boolean eof = (read == -1);
+
+                // cut the chunk after the last newline, anything after that waits for the next read
+                int limit = buffer.position();
+                int cut = limit;
+                if (!eof) {
+                    while (cut > 0 && buffer.get(cut - 1) != '\n') {
+                        cut--;
+                    }
+                    if (cut == 0 && limit < buffer.capacity()) {
+                        // no newline yet, but there's still room. Keep reading.
+                        continue;
+                    }
+                    if (cut == 0) {
+                        // a single line longer than the buffer. Just grow it.
+                        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                        buffer.flip();
+                        bigger.put(buffer);
+                        buffer = bigger;
+                        continue;
+                    }
+                }
+
+                if (cut > 0) {
+                    byte[] bytes = new byte[cut];
+                    buffer.flip();
+                    buffer.get(bytes);
+                    buffer.compact();
+                    pending.add(executor.submit(new ChunkTask(bytes, plan, builder, convertStage)));
+                }
+
+                // keep the pool busy, but don't read the whole file into memory
+                while (pending.size() >= threads * 2 || (eof && !pending.isEmpty())) {
+                    Chunk chunk = get(pending.removeFirst(), waitStage);
+                    writer.write(chunk.json);
+                    if (builder != null) {
+                        long merge = System.nanoTime();
+                        builder.addAll(chunk.columns);
+                        columnsStage.add(System.nanoTime() - merge);
+                    }
+                    lineCounter += chunk.rows;
+                    dropped += chunk.dropped;
+                    stats.setRows(lineCounter, dropped);
+                    System.out.println("Wrote " + lineCounter + " lines");
+                }
+
+                if (eof) {
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            fis.close();
+            writer.close();
+        }
+        stats.addBytesOut(JsonRecordWriter.getFile(catalogName, gzip).length());
+        return (builder == null) ? null : builder.build();
+    }
+
+    private Chunk get(Future<Chunk> future, StageStats waitStage) throws IOException {
+        try {
+            long start = System.nanoTime();
+            Chunk chunk = future.get();
+            waitStage.add(System.nanoTime() - start);
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a chunk");
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Unable to convert chunk: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+
+    /**
+     * Read the header, getting the field names from line[1] and the byte offset of the line after it
+     *
+     * @param tdatFile the TDAT file
+     * @return Header holding the field names and data offset
+     * @throws IOException if the file can't be read
+     */
+    private Header readHeader(File tdatFile) throws IOException {
+
+        Pattern fieldNameRegexPattern = Pattern.compile("line\\[1\\] = (.*)");
+
+        InputStream is = new BufferedInputStream(new FileInputStream(tdatFile));
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long offset = 0;
+            int b;
+            while ((b = is.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = new String(line.toByteArray(), charset.name()).trim();
+                line.reset();
+
+                // processTdatFile() starts looking for rows right after line[1], so do the same here. The
+                // rest of the header never looks like a row anyway.
+                Matcher fieldNameMatcher = fieldNameRegexPattern.matcher(text);
+                if (fieldNameMatcher.find()) {
+                    return new Header(fieldNameMatcher.group(1).split("\\s"), offset);
+                }
+            }
+        } finally {
+            is.close();
+        }
+
+        throw new IllegalStateException("Field Names cannot be null");
+    }
+
+    private static class Header {
+
+        private final String[] fieldNames;
+        private final long dataOffset;
+
+        private Header(String[] fieldNames, long dataOffset) {
+            this.fieldNames = fieldNames;
+            this.dataOffset = dataOffset;
+        }
+    }
+
+    /**
+     * Converted output for one chunk, already encoded
+     */
+    private static class Chunk {
+
+        private final ByteBuffer json;
+        private final int rows;
+        private final int dropped;
+        private final ColumnarCatalogBuilder columns;
+
+        private Chunk(ByteBuffer json, int rows, int dropped, ColumnarCatalogBuilder columns) {
+            this.json = json;
+            this.rows = rows;
+            this.dropped = dropped;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Converts one chunk of lines. Everything mutable (scanners, builder, writer, plan copy, columns part)
+     * belongs to the task.
+     */
+    private class ChunkTask implements Callable<Chunk> {
+
+        private final byte[] bytes;
+        private final ExclusionPlan plan;
+        private final ColumnarCatalogBuilder columns;
+        private final StageStats stage;
+
+        private ChunkTask(byte[] bytes, ExclusionPlan plan, ColumnarCatalogBuilder columns, StageStats stage) {
+            this.bytes = bytes;
+            this.plan = plan.copy();
+            this.columns = (columns == null) ? null : columns.newPart();
+            this.stage = stage;
+        }
+
+        public Chunk call() throws Exception {
+            long startTime = System.nanoTime();
+            String text = new String(bytes, charset.name());
+            TdatRowScanner rowScanner = new TdatRowScanner();
+            NumberScanner numberScanner = new NumberScanner();
+            StringBuilder numberText = new StringBuilder(32);
+            JsonRecordWriter writer = JsonRecordWriter.inMemory(bytes.length * 2);
+
+            int rows = 0;
+            int dropped = 0;
+            int start = 0;
+            int length = text.length();
+            while (start < length) {
+                int newline = text.indexOf('\n', start);
+                int end = (newline == -1) ? length : newline;
+                int next = end + 1;
+                if (end > start && text.charAt(end - 1) == '\r') {
+                    end--;
+                }
+                if (Tdat2Json.convertRow(text.substring(start, end), plan, rowScanner, numberScanner, numberText,
+                        writer, null, null)) {
+                    if (columns != null) {
+                        columns.addRow(rowScanner);
+                    }
+                    rows++;
+                } else {
+                    dropped++;
+                }
+                start = next;
+            }
+
+            stage.add(System.nanoTime() - startTime, bytes.length);
+            return new Chunk(writer.toByteBuffer(), rows, dropped, columns);
+        }
+    }
+}
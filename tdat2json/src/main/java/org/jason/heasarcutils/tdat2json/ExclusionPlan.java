@@ -0,0 +1,308 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2json;
+
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * A catalog's exclusion configuration (what CatalogHandler read out of (catalog).xml) resolved once against
+ * the field names from line[1], so that processPerCatalogExclusions() doesn't have to run on every row. That
+ * copied the row into a new map and then, for every field, ran every exclusion pattern over its name and
+ * looped over every field to drop and every field to prefix.
+ * <p/>
+ * Here every column gets its actions worked out up front: dropped if empty, excluded by a pattern, copied to
+ * another name, prefixed. The patterns are only ever run once per column, when the plan is compiled. For the
+ * usual configuration (no duplicate names in line[1], no copies onto a name that's already taken) the
+ * result is one fixed list of Steps, one per field that survives, and a row just skips the steps whose
+ * field it has empty (or doesn't have at all).
+ * <p/>
+ * Anything odder than that (a copy landing on another column's name, say) depends on the order the old loop
+ * did things in. For those the plan does what catalogparser's RecordPlan does: it replays the old map
+ * operations once per distinct "which fields are empty" pattern and caches the list of Steps that comes out.
+ * Either way the output is byte for byte what processPerCatalogExclusions() made of the row.
+ * <p/>
+ * Compiled plans can be shared between threads as long as each thread has its own copy(), since that's
+ * where the per-row scratch space lives.
+ *
+ * @author Jason Ferguson
+ * @since 0.3.2
+ */
+public class ExclusionPlan {
+
+    // field names from line[1]
+    private final String[] names;
+
+    // the action table, per column
+    private final boolean dropEmpty;
+    private final boolean[] excluded;
+    private final String[] copyTo;
+
+    private final String[] fieldsToDrop;
+    private final Map<String, String> prefixes;
+
+    // the steps for a full row with nothing empty, or null if the configuration needs the replay
+    private final Step[] fixedSteps;
+
+    private final ConcurrentMap<ShapeKey, Step[]> stepCache;
+    private final ShapeKey probe;
+
+    @SuppressWarnings("unchecked")
+    private ExclusionPlan(String[] fieldNames, Map<String, Object> configuration) {
+        List<Pattern> exclusionPatterns = (List<Pattern>) configuration.get("exclusionPatterns");
+        List<String> drop = (List<String>) configuration.get("fieldsToDrop");
+        Map<String, String> fieldsToCopy = (Map<String, String>) configuration.get("fieldsToCopy");
+
+        names = fieldNames.clone();
+        dropEmpty = (Boolean) configuration.get("dropEmpty");
+        fieldsToDrop = drop.toArray(new String[drop.size()]);
+        prefixes = new HashMap<String, String>((Map<String, String>) configuration.get("fieldPrefixes"));
+
+        excluded = new boolean[names.length];
+        copyTo = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            for (Pattern pattern : exclusionPatterns) {
+                if (pattern.matcher(names[i]).find()) {
+                    excluded[i] = true;
+                }
+            }
+            copyTo[i] = fieldsToCopy.get(names[i]);
+        }
+
+        stepCache = new ConcurrentHashMap<ShapeKey, Step[]>();
+        probe = new ShapeKey(names.length);
+
+        // no duplicate names and every copy lands on a name of its own: a field being empty (or missing) only
+        // takes out its own steps and moves nothing else around
+        Set<String> taken = new HashSet<String>(Arrays.asList(names));
+        boolean fixed = taken.size() == names.length;
+        for (int i = 0; i < names.length && fixed; i++) {
+            fixed = copyTo[i] == null || taken.add(copyTo[i]);
+        }
+        ShapeKey full = new ShapeKey(names.length);
+        full.count = names.length;
+        fixedSteps = fixed ? replay(full) : null;
+    }
+
+    private ExclusionPlan(ExclusionPlan plan) {
+        names = plan.names;
+        dropEmpty = plan.dropEmpty;
+        excluded = plan.excluded;
+        copyTo = plan.copyTo;
+        fieldsToDrop = plan.fieldsToDrop;
+        prefixes = plan.prefixes;
+        fixedSteps = plan.fixedSteps;
+        stepCache = plan.stepCache;
+        probe = new ShapeKey(names.length);
+    }
+
+    /**
+     * Compile a catalog's configuration against its field names
+     *
+     * @param fieldNames    field names from line[1] of the header
+     * @param configuration Configuration Map containing data parsed from the XML
+     * @return the plan
+     */
+    public static ExclusionPlan compile(String[] fieldNames, Map<String, Object> configuration) {
+        return new ExclusionPlan(fieldNames, configuration);
+    }
+
+    /**
+     * @return a plan for another thread, sharing the compiled actions and the Steps worked out so far
+     */
+    public ExclusionPlan copy() {
+        return new ExclusionPlan(this);
+    }
+
+    /**
+     * Get the output steps for the row the scanner just scanned. Steps for fields the row has empty or
+     * doesn't have can be in there, so skip the ones that aren't isPresent().
+     *
+     * @param scanner scanner holding the row
+     * @return Steps to write, in output order. Use Step.getValue() for the values.
+     * @throws ArrayIndexOutOfBoundsException if the row has more fields than line[1] has names
+     */
+    public Step[] getSteps(TdatRowScanner scanner) {
+        int count = scanner.getFieldCount();
+        if (count > names.length) {
+            throw new ArrayIndexOutOfBoundsException(names.length);
+        }
+        if (fixedSteps != null) {
+            return fixedSteps;
+        }
+
+        probe.clear();
+        probe.count = count;
+        if (dropEmpty) {
+            for (int i = 0; i < count; i++) {
+                if (scanner.isEmpty(i)) {
+                    probe.set(i);
+                }
+            }
+        }
+
+        Step[] steps = stepCache.get(probe);
+        if (steps == null) {
+            ShapeKey key = probe.copy();
+            steps = replay(key);
+            Step[] existing = stepCache.putIfAbsent(key, steps);
+            if (existing != null) {
+                steps = existing;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Replay what convertRow() and processPerCatalogExclusions() did to the row's map, with columns instead of
+     * values. The prefixes are left to Step.getValue(), since whether one gets added depends on the value.
+     *
+     * @param shape how many fields the row has and which of them are empty
+     * @return Steps in output order
+     */
+    private Step[] replay(ShapeKey shape) {
+        // name -> column, the same keys in the same order as the row's map
+        Map<String, Integer> row = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < shape.count; i++) {
+            row.put(names[i], i);
+        }
+
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>(row);
+        for (Map.Entry<String, Integer> entry : row.entrySet()) {
+            String key = entry.getKey();
+            int column = entry.getValue();
+            if (dropEmpty && shape.get(column)) {
+                result.remove(key);
+                continue;
+            }
+            if (excluded[column]) {
+                result.remove(key);
+            }
+            if (copyTo[column] != null) {
+                result.put(copyTo[column], column);
+            }
+            for (String field : fieldsToDrop) {
+                result.remove(field);
+            }
+        }
+
+        Step[] steps = new Step[result.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : result.entrySet()) {
+            steps[i++] = new Step(entry.getKey(), entry.getValue(), prefixes.get(entry.getKey()), dropEmpty);
+        }
+        return steps;
+    }
+
+    /**
+     * A single key/value to write for a row
+     */
+    public static class Step {
+
+        private final String key;
+        private final int column;
+        private final String prefix;
+        private final boolean dropEmpty;
+
+        private Step(String key, int column, String prefix, boolean dropEmpty) {
+            this.key = key;
+            this.column = column;
+            this.prefix = prefix;
+            this.dropEmpty = dropEmpty;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * @param scanner scanner holding the row
+         * @return false if the row doesn't have this step's field, or has it empty and empty fields get dropped
+         */
+        public boolean isPresent(TdatRowScanner scanner) {
+            return column < scanner.getFieldCount() && !(dropEmpty && scanner.isEmpty(column));
+        }
+
+        /**
+         * Get the value for this step, with the prefix added the way processPerCatalogExclusions() did it (only
+         * if the value doesn't already have it somewhere)
+         *
+         * @param scanner scanner holding the row
+         * @return the value to write
+         */
+        public String getValue(TdatRowScanner scanner) {
+            String value = scanner.getString(column);
+            if (prefix != null && value.indexOf(prefix) == -1) {
+                return prefix + value;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Field count plus a bitmask of empty fields, used as the key of the step cache
+     */
+    private static class ShapeKey {
+
+        private final long[] words;
+        private int count;
+
+        private ShapeKey(int size) {
+            words = new long[(size + 63) / 64];
+        }
+
+        private ShapeKey(long[] words, int count) {
+            this.words = words;
+            this.count = count;
+        }
+
+        void clear() {
+            Arrays.fill(words, 0L);
+            count = 0;
+        }
+
+        void set(int i) {
+            words[i >> 6] |= 1L << i;
+        }
+
+        boolean get(int i) {
+            return (words[i >> 6] & (1L << i)) != 0;
+        }
+
+        ShapeKey copy() {
+            return new ShapeKey(words.clone(), count);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ShapeKey && count == ((ShapeKey) o).count
+                    && Arrays.equals(words, ((ShapeKey) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(words) + count;
+        }
+    }
+}
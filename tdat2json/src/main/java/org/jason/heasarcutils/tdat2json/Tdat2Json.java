@@ -15,6 +15,21 @@
  */
 package org.jason.heasarcutils.tdat2json;
 
+import org.jason.heasarcutils.common.column.ColumnarCache;
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.ColumnarCatalogBuilder;
+import org.jason.heasarcutils.common.column.CrossMatcher;
+import org.jason.heasarcutils.common.io.DownloadCache;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.io.LineReaders;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.io.ReadAheadInputStream;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageClock;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.jason.heasarcutils.common.text.NumberScanner;
 import org.jason.heasarcutils.tdat2json.CatalogHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -24,12 +39,11 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.math.BigDecimal;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Replacement for original Tdat2Json, which eventually turned into a steaming pile of gabage full of
@@ -68,11 +82,14 @@ public class Tdat2Json {
     /**
      * Get the catalog from the remote location and write it to the local file system
      * <p/>
-     * (So far, I don't know how to use NIO with a GZIS, that would make this less ugly)
+     * The gzip comes out of the download cache, which checks with the server whether it has changed. The
+     * local .tdat only gets unzipped again when it's missing or older than the cached gzip. If the server
+     * can't be reached and there's no cached copy, whatever .tdat is already there gets used.
      *
      * @param catalogName
+     * @param stats       where the download and unpack times go
      */
-    private static void getRemoteCatalog(String catalogName) {
+    private static void getRemoteCatalog(String catalogName, ImportStats stats) {
 
         String strUrl = catalogLocations.get(catalogName);
 
@@ -83,30 +100,59 @@ public class Tdat2Json {
             filename = new File("./" + catalogName + ".tdat");
         }
 
-        if (!filename.exists()) {
+        if (strUrl == null) {
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            File gzipFile = DownloadCache.getDefault().get(strUrl);
+            stats.stage(ImportStats.DOWNLOAD).add(System.nanoTime() - start, gzipFile.length());
+            if (filename.exists() && filename.lastModified() >= gzipFile.lastModified()) {
+                return;
+            }
+
+            // unzip to a temp file first so a failed unzip doesn't leave half a catalog lying around
+            File tempFile = new File(filename.getPath() + ".part");
+            // the gzip is read and inflated on threads of their own while this one writes
+            InputStream gzipInputStream = ReadAheadInputStream.gunzip(new FileInputStream(gzipFile), stats);
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            long unpacked = 0;
+            long waited = stats.stage(ImportStats.INPUT_WAIT).getNanos();
+            start = System.nanoTime();
             try {
-                URL catalogURL = new URL(strUrl);
-                GZIPInputStream gzipInputStream = new GZIPInputStream(new BufferedInputStream(catalogURL.openStream()));
-                FileOutputStream fos = new FileOutputStream(catalogName + ".tdat");
-                byte[] buffer = new byte[1024];
+                byte[] buffer = new byte[1 << 20];
                 int len;
                 while ((len = gzipInputStream.read(buffer)) > 0) {
                     fos.write(buffer, 0, len);
+                    unpacked += len;
                 }
+            } finally {
                 gzipInputStream.close();
                 fos.close();
-            } catch (MalformedURLException e) {
-
-            } catch (IOException e) {
-
-            } finally {
-                System.out.println("Completed writing " + catalogName + ".tdat");
             }
+            // the waits for the gzip threads are already in input-wait
+            stats.stage(ImportStats.UNPACK).add(System.nanoTime() - start
+                    - (stats.stage(ImportStats.INPUT_WAIT).getNanos() - waited), unpacked);
+            filename.delete();
+            if (!tempFile.renameTo(filename)) {
+                tempFile.delete();
+                throw new IOException("Unable to rename " + tempFile + " to " + filename);
+            }
+            System.out.println("Completed writing " + catalogName + ".tdat");
+        } catch (IOException e) {
+            System.out.println("Unable to get " + strUrl + ": " + e.getMessage());
         }
 
     }
 
-    private static Map<String, Object> parseCatalogXml(String catalogName) {
+    /**
+     * Read a catalog's configuration (what to drop, copy and prefix) out of (catalogName).xml on the classpath
+     *
+     * @param catalogName name of the catalog
+     * @return the configuration Map, as handed to processCatalog()
+     */
+    static Map<String, Object> parseCatalogXml(String catalogName) {
 
         SAXParserFactory factory = SAXParserFactory.newInstance();
 
@@ -150,8 +196,16 @@ public class Tdat2Json {
         return true;
     }
 
+    /**
+     * Apply a catalog's exclusions, copies and prefixes to one row. The conversions use an ExclusionPlan
+     * instead, which works all of this out once per catalog; this is what the plan has to come out the same as.
+     *
+     * @param map           the row, field name to value, in header order
+     * @param configuration Configuration Map containing data parsed from the XML
+     * @return a new Map with what's left of the row
+     */
     @SuppressWarnings("unchecked")
-    private static Map<String, String> processPerCatalogExclusions(Map<String, String> map, Map<String, Object> configuration) {
+    static Map<String, String> processPerCatalogExclusions(Map<String, String> map, Map<String, Object> configuration) {
 
         //Map<String, Object> configuration = parseCatalogXml(catalogName);
         Map<String, String> resultMap = new LinkedHashMap<String, String>(map);
@@ -215,24 +269,31 @@ public class Tdat2Json {
      *
      * @param catalogName name of the catalog being dealt with
      * @param config      Configuration Map containing data parsed from the XML
+     * @param gzip        true to write a gzipped .json.gz
+     * @param stats       where the timings and counts go
+     * @param columns     true to build a ColumnarCatalog from the rows as well
+     * @return the ColumnarCatalog, or null if columns was false or the file couldn't be converted
      */
-    @SuppressWarnings("unchecked")
-    private static void processTdatFile(String catalogName, Map<String, Object> config) {
+    static ColumnarCatalog processTdatFile(String catalogName, Map<String, Object> config, boolean gzip,
+                                           ImportStats stats, boolean columns) {
 
         // regex to find the field names
         Pattern fieldNameRegexPattern = Pattern.compile("line\\[1\\] = (.*)");
 
-        // regex to find the bang-separated values
-        Pattern bsvValuesPattern = Pattern.compile("^(.*?\\|)*$");
+        // finds the bang-separated values
+        TdatRowScanner rowScanner = new TdatRowScanner();
 
         String[] fieldNames = null;
+        LineReader reader = null;
+        JsonRecordWriter writer = null;
         try {
-            Scanner scanner = new Scanner(new FileInputStream(catalogName + ".tdat"));
+            // the .tdat is local and uncompressed by now, so it gets memory-mapped instead of decoded line by line
+            reader = LineReaders.open(new File(catalogName + ".tdat"), MappedLineReader.CHARSET, stats);
 
             // two loops, first is to find the field names, then we'll break out and go to the next to find
             // the values for those names
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
                 Matcher fieldNameMatcher = fieldNameRegexPattern.matcher(line);
                 if (fieldNameMatcher.find()) {
                     fieldNames = fieldNameMatcher.group(1).split("\\s");
@@ -244,65 +305,159 @@ public class Tdat2Json {
                 throw new IllegalStateException("Field Names cannot be null");
             }
 
-            Writer writer;
-            if (System.getProperty("os.name").contains("Windows")) {
-                writer = new FileWriter(".\\" + catalogName + ".json");
-            } else {
-                writer = new FileWriter("./" + catalogName + ".json");
-            }
+            writer = getWriter(catalogName, gzip);
+            writer.setWriteStage(stats.stage(ImportStats.WRITE));
 
-            Pattern isNumericPattern = Pattern.compile("^[+-]?([0-9]*\\.?[0-9]+|[0-9]+\\.?[0-9]*)([eE][+-]?[0-9]+)?$");
+            // the exclusions only get worked out once, not per row
+            ExclusionPlan plan = ExclusionPlan.compile(fieldNames, config);
 
-            int lineCounter = 0;
-            Map<String, String> fieldPrefixes = (Map<String, String>) config.get("fieldPrefixes");
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
+            // the column types come from the field[...] definitions, which line[1] doesn't have
+            ColumnarCatalogBuilder builder = null;
+            if (columns) {
+                builder = new ColumnarCatalogBuilder(catalogName, fieldNames,
+                        TdatHeader.read(new File(catalogName + ".tdat"), MappedLineReader.CHARSET));
+            }
 
-                // check to see if the line is a PSV (pipe separated value)
-                Matcher matcher = bsvValuesPattern.matcher(line);
-                if (matcher.find()) {
-                    // split into an array
-                    String[] columnValues = line.split("\\|");
-                    Map<String, String> valueMap = new LinkedHashMap<String, String>();
-                    for (int i = 0; i < columnValues.length; i++) {
-                        valueMap.put(fieldNames[i], columnValues[i]);
-                    }
+            // decides which values get written as JSON numbers
+            NumberScanner numberScanner = new NumberScanner();
 
-                    valueMap = processPerCatalogExclusions(valueMap, config);
-
-                    StringBuffer sb = new StringBuffer();
-                    sb.append("{");
-
-                    for (String key : valueMap.keySet()) {
-                        String value = valueMap.get(key);
-                        Matcher numberMatcher = isNumericPattern.matcher(value);
-                        if (numberMatcher.find()) {
-                            // use a big hammer approach to NOT set the scale of an integer value
-                            if (value.indexOf(".") != -1) {
-                                sb.append("\"").append(key).append("\":").append(resetScale(value)).append(",");
-                            } else {
-                                sb.append("\"").append(key).append("\":").append(value).append(",");
-                            }
-                        } else {
-                            sb.append("\"").append(key).append("\":\"").append(valueMap.get(key)).append("\",");
-                        }
-                    }
+            StageClock clock = stats.newClock();
+            StageClock.Lap read = clock.lap(ImportStats.READ);
+            StageClock.Lap parse = clock.lap(ImportStats.PARSE);
+            StageClock.Lap filter = clock.lap(ImportStats.FILTER);
+            StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+            StageClock.Lap store = (builder == null) ? null : clock.lap(ImportStats.COLUMNS);
+            clock.start();
 
-                    sb = new StringBuffer(sb.substring(0, sb.length() - 1));
-                    sb.append("}\r\n");
-                    writer.write(sb.toString());
+            int lineCounter = 0;
+            int dropped = 0;
+            StringBuilder numberText = new StringBuilder(32);
+            while ((line = reader.readLine()) != null) {
+                read.end();
+                if (convertRow(line, plan, rowScanner, numberScanner, numberText, writer, parse, filter)) {
+                    format.end();
+                    if (builder != null) {
+                        // the scanner still has the row
+                        builder.addRow(rowScanner);
+                        store.end();
+                    }
                     lineCounter++;
+                } else {
+                    dropped++;
                 }
                 if (lineCounter % 5000 == 0) {
                     System.out.println("Wrote " + lineCounter + " lines");
+                    stats.setRows(lineCounter, dropped);
                 }
             }
+            clock.stop();
+            stats.setRows(lineCounter, dropped);
+            reader.close();
+            reader = null;
             writer.close();
+            writer = null;
+            stats.addBytesOut(JsonRecordWriter.getFile(catalogName, gzip).length());
+            return (builder == null) ? null : builder.build();
         } catch (FileNotFoundException e) {
-
+            System.out.println("Unable to convert " + catalogName + ": " + e.getMessage());
         } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // only still open if the conversion failed. Closing the writer stops its gzip threads.
+            closeQuietly(reader);
+            closeQuietly(writer);
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // already failing
+            }
+        }
+    }
+
+    /**
+     * Create the writer for the .json (or .json.gz) output file, in the current directory
+     *
+     * @param catalogName name of the catalog being dealt with
+     * @param gzip        true to gzip the output
+     * @return a JsonRecordWriter writing UTF-8
+     * @throws IOException if the file can't be opened
+     */
+    static JsonRecordWriter getWriter(String catalogName, boolean gzip) throws IOException {
+        return JsonRecordWriter.open(catalogName, gzip);
+    }
 
+    /**
+     * Convert a single line of a TDAT file to a line of JSON. Shared by the single-threaded and the
+     * chunked conversion, so everything passed in must belong to the calling thread.
+     *
+     * @param line             the line from the TDAT file
+     * @param plan             the catalog's exclusions, compiled against line[1] of the header. Owned by the
+     *                         calling thread (see ExclusionPlan.copy()).
+     * @param rowScanner       TdatRowScanner owned by the calling thread
+     * @param numberScanner    NumberScanner owned by the calling thread, to determine if a value is a number
+     * @param numberText       StringBuilder owned by the calling thread, to format rounded numbers in
+     * @param writer           JsonRecordWriter to write the record (including the line terminator) to
+     * @param parse            lap to end once the line's been cut up, or null
+     * @param filter           lap to end once the exclusions are done, or null
+     * @return true if the line was a data row and a record was written
+     * @throws IOException if the writer couldn't write
+     */
+    static boolean convertRow(CharSequence line, ExclusionPlan plan, TdatRowScanner rowScanner,
+                              NumberScanner numberScanner, StringBuilder numberText, JsonRecordWriter writer,
+                              StageClock.Lap parse, StageClock.Lap filter)
+            throws IOException {
+
+        // check to see if the line is a PSV (pipe separated value)
+        if (!rowScanner.scan(line)) {
+            if (parse != null) {
+                parse.end();
+            }
+            return false;
+        }
+        if (parse != null) {
+            parse.end();
+        }
+
+        // only the fields that survive the exclusions get turned into Strings
+        ExclusionPlan.Step[] steps = plan.getSteps(rowScanner);
+        if (filter != null) {
+            filter.end();
+        }
+
+        writer.beginRecord();
+
+        for (ExclusionPlan.Step step : steps) {
+            if (!step.isPresent(rowScanner)) {
+                continue;
+            }
+            String value = step.getValue(rowScanner);
+            writer.name(step.getKey());
+            if (numberScanner.scan(value) && numberScanner.isSimpleNumber()) {
+                // use a big hammer approach to NOT set the scale of an integer value
+                if (numberScanner.getDotCount() != 0) {
+                    numberText.setLength(0);
+                    // exponents and very big/small values still go the BigDecimal way
+                    if (!numberScanner.appendScaledDouble(numberText, 4, RoundingMode.HALF_UP)) {
+                        numberText.append(resetScale(value));
+                    }
+                    writer.number(numberText);
+                } else {
+                    writer.number(value);
+                }
+            } else {
+                writer.string(value);
+            }
         }
+
+        writer.endRecord();
+
+        return true;
     }
 
 
@@ -313,13 +468,168 @@ public class Tdat2Json {
      *                    map
      */
     public static void processCatalog(String catalogName, Map<String, Object> config) {
+        processCatalog(catalogName, config, 1);
+    }
+
+    /**
+     * Process a catalog from an internet location into a JSON formatted file, splitting the conversion across
+     * several threads if asked to. The output is identical either way.
+     *
+     * @param catalogName name of catalog to turn into JSON output, must correspond to a key in the catalogLocations
+     *                    map
+     * @param config      Configuration Map containing data parsed from the XML
+     * @param threads     number of threads to convert with, 1 for the plain single-threaded conversion
+     */
+    public static void processCatalog(String catalogName, Map<String, Object> config, int threads) {
+        processCatalog(catalogName, config, threads, false);
+    }
+
+    /**
+     * Process a catalog from an internet location into a JSON formatted file, optionally gzipped. The gzipped
+     * output is compressed in blocks on several threads and reads back with zcat/gunzip like any other .gz.
+     *
+     * @param catalogName name of catalog to turn into JSON output, must correspond to a key in the catalogLocations
+     *                    map
+     * @param config      Configuration Map containing data parsed from the XML
+     * @param threads     number of threads to convert with, 1 for the plain single-threaded conversion
+     * @param gzip        true to write (catalogName).json.gz instead of (catalogName).json
+     */
+    public static void processCatalog(String catalogName, Map<String, Object> config, int threads, boolean gzip) {
+        processCatalog(catalogName, config, threads, gzip, new ImportStats(catalogName));
+    }
+
+    /**
+     * Process a catalog from an internet location into a JSON formatted file, timing each stage of it
+     *
+     * @param catalogName name of catalog to turn into JSON output, must correspond to a key in the catalogLocations
+     *                    map
+     * @param config      Configuration Map containing data parsed from the XML
+     * @param threads     number of threads to convert with, 1 for the plain single-threaded conversion
+     * @param gzip        true to write (catalogName).json.gz instead of (catalogName).json
+     * @param stats       where the timings and counts go. Finished when this returns.
+     */
+    public static void processCatalog(String catalogName, Map<String, Object> config, int threads, boolean gzip,
+                                      ImportStats stats) {
+        importCatalog(catalogName, config, threads, gzip, stats, false);
+    }
+
+    /**
+     * Process a catalog into a JSON formatted file like processCatalog() does, and build a ColumnarCatalog of it
+     * from the same rows on the way, so everything else can work on the catalog without reading the JSON back in
+     *
+     * @param catalogName name of catalog to import, must correspond to a key in the catalogLocations map
+     * @param config      Configuration Map containing data parsed from the XML
+     * @param threads     number of threads to convert with, 1 for the plain single-threaded conversion
+     * @param gzip        true to write (catalogName).json.gz instead of (catalogName).json
+     * @param stats       where the timings and counts go. Finished when this returns.
+     * @return every column of the catalog (not just the ones that went into the JSON), or null if the catalog
+     *         couldn't be converted. It's also saved in the ColumnarCache for loadCatalog().
+     */
+    public static ColumnarCatalog importCatalog(String catalogName, Map<String, Object> config, int threads,
+                                                boolean gzip, ImportStats stats) {
+        return importCatalog(catalogName, config, threads, gzip, stats, true);
+    }
+
+    private static ColumnarCatalog importCatalog(String catalogName, Map<String, Object> config, int threads,
+                                                 boolean gzip, ImportStats stats, boolean columns) {
 
         if (!catalogLocations.containsKey(catalogName)) {
             throw new IllegalArgumentException("Catalog name not found in location map");
         }
 
-        getRemoteCatalog(catalogName);
-        processTdatFile(catalogName, config);
+        getRemoteCatalog(catalogName, stats);
+        ColumnarCatalog catalog = null;
+        if (threads > 1) {
+            try {
+                catalog = new ChunkedTdatConverter(config, threads).convert(new File(catalogName + ".tdat"),
+                        catalogName, gzip, stats, columns);
+            } catch (IOException e) {
+                System.out.println("Unable to convert " + catalogName + ": " + e.getMessage());
+            }
+        } else {
+            catalog = processTdatFile(catalogName, config, gzip, stats, columns);
+        }
+        if (catalog != null) {
+            try {
+                long start = System.nanoTime();
+                File cached = ColumnarCache.getDefault().put(catalog, new File(catalogName + ".tdat"));
+                stats.stage(ImportStats.CACHE_WRITE).add(System.nanoTime() - start, cached.length());
+            } catch (IOException e) {
+                System.out.println("Unable to cache the columns of " + catalogName + ": " + e.getMessage());
+            }
+        }
+        stats.finish();
+        return catalog;
+    }
+
+    /**
+     * Get a catalog's columns, mapped in from the ColumnarCache if an earlier import left them there and the
+     * local .tdat hasn't changed since. Otherwise the catalog is imported (JSON and all) like importCatalog()
+     * does, which caches it for next time. A cached catalog is used as-is, without asking the server whether
+     * there's a newer one; any plain conversion that downloads a new one makes the cached copy stale.
+     *
+     * @param catalogName name of catalog to load, must correspond to a key in the catalogLocations map
+     * @param config      Configuration Map containing data parsed from the XML, for when it has to be imported
+     * @param threads     number of threads to import with
+     * @param gzip        true to write (catalogName).json.gz if it has to be imported
+     * @param stats       where the timings and counts go. Finished when this returns.
+     * @return every column of the catalog, or null if the catalog couldn't be converted
+     */
+    public static ColumnarCatalog loadCatalog(String catalogName, Map<String, Object> config, int threads,
+                                              boolean gzip, ImportStats stats) {
+
+        long start = System.nanoTime();
+        File tdatFile = new File(catalogName + ".tdat");
+        ColumnarCatalog catalog = ColumnarCache.getDefault().get(catalogName, tdatFile);
+        if (catalog == null) {
+            return importCatalog(catalogName, config, threads, gzip, stats, true);
+        }
+        stats.stage(ImportStats.CACHE_MAP).add(System.nanoTime() - start,
+                ColumnarCache.getDefault().getFile(catalogName).length());
+        stats.setRows(catalog.getRowCount(), 0);
+        stats.finish();
+        return catalog;
+    }
+
+    /**
+     * Cross-match two catalogs by position: for every row of the first, the nearest row of the second within
+     * the radius. Both get loaded with loadCatalog(), so they're imported first if they aren't cached. The pairs
+     * go to (catalogName)-(otherName).json, or .json.gz.
+     *
+     * @param catalogName  the catalog to find matches for
+     * @param otherName    the catalog to find them in
+     * @param radiusArcsec how far apart a match can be, in arcseconds
+     * @param threads      number of threads to import and match with
+     * @param gzip         true to gzip the output
+     * @return the matches, or null if either catalog couldn't be loaded
+     * @throws IOException if the output can't be written
+     */
+    public static CrossMatcher.Matches crossMatch(String catalogName, String otherName, double radiusArcsec,
+                                                  int threads, boolean gzip) throws IOException {
+
+        ColumnarCatalog catalog = loadCatalog(catalogName, parseCatalogXml(catalogName), threads, gzip,
+                new ImportStats(catalogName));
+        ColumnarCatalog other = loadCatalog(otherName, parseCatalogXml(otherName), threads, gzip,
+                new ImportStats(otherName));
+        if (catalog == null || other == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        CrossMatcher.Matches matches = new CrossMatcher(threads).match(catalog, other, radiusArcsec / 3600);
+        System.out.println("Matched " + matches.size() + " of " + catalog.getRowCount() + " " + catalogName
+                + " rows to " + otherName + " within " + radiusArcsec + "\" in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        String baseName = catalogName + "-" + otherName;
+        JsonRecordWriter writer = JsonRecordWriter.open(baseName, gzip);
+        try {
+            matches.writeJson(writer);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Wrote " + JsonRecordWriter.getFile(baseName, gzip));
+        return matches;
     }
 
     public static void main(String[] args) {
@@ -335,9 +645,120 @@ public class Tdat2Json {
 
         String catalogName = args[0];
 
+        // optional arguments: number of threads to convert with, --gzip to compress the output, --columns to
+        // build the columnar catalog as well, --preview[=rows] to print the first rows of the columnar
+        // catalog (mapped from the cache if it's there) and --cone=ra,dec,radius to print the rows within radius
+        // degrees of a position, and --match=other,radius to cross-match with another catalog (radius in
+        // arcseconds)
+        int threads = 1;
+        boolean gzip = false;
+        boolean columns = false;
+        int preview = 0;
+        double[] cone = null;
+        String matchCatalog = null;
+        double matchRadius = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--gzip") || args[i].equals("-z")) {
+                gzip = true;
+                continue;
+            }
+            if (args[i].equals("--columns") || args[i].equals("-c")) {
+                columns = true;
+                continue;
+            }
+            if (args[i].startsWith("--preview") || args[i].startsWith("-p")) {
+                int equals = args[i].indexOf('=');
+                try {
+                    preview = (equals == -1) ? 10 : Integer.parseInt(args[i].substring(equals + 1));
+                } catch (NumberFormatException e) {
+                    System.out.println("Number of rows to preview must be a number, not " + args[i]);
+                    System.exit(0);
+                }
+                continue;
+            }
+            if (args[i].startsWith("--cone=")) {
+                String[] values = args[i].substring("--cone=".length()).split(",");
+                try {
+                    cone = new double[]{Double.parseDouble(values[0]), Double.parseDouble(values[1]),
+                            Double.parseDouble(values[2])};
+                } catch (RuntimeException e) {
+                    System.out.println("Cone must be --cone=ra,dec,radius in degrees, not " + args[i]);
+                    System.exit(0);
+                }
+                continue;
+            }
+            if (args[i].startsWith("--match=")) {
+                String[] values = args[i].substring("--match=".length()).split(",");
+                try {
+                    matchCatalog = values[0];
+                    matchRadius = Double.parseDouble(values[1]);
+                } catch (RuntimeException e) {
+                    System.out.println("Match must be --match=catalog,radius in arcseconds, not " + args[i]);
+                    System.exit(0);
+                }
+                continue;
+            }
+            try {
+                threads = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                System.out.println("Number of threads must be a number, not " + args[i]);
+                System.exit(0);
+            }
+        }
+
+        if (matchCatalog != null) {
+            if (!catalogLocations.containsKey(matchCatalog)) {
+                System.out.println("Unknown catalog to match with: " + matchCatalog);
+                System.exit(0);
+            }
+            try {
+                crossMatch(catalogName, matchCatalog, matchRadius, threads, gzip);
+            } catch (IOException e) {
+                System.out.println("Unable to match " + catalogName + " to " + matchCatalog + ": " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                // no positions to match on
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
         Map<String, Object> configuration = parseCatalogXml(catalogName);
 
-        processCatalog(catalogName, configuration);
+        // visible over JMX while it runs, and summed up at the end
+        ImportStats stats = new ImportStats(catalogName).register();
+        ColumnarCatalog catalog;
+        if (preview > 0 || cone != null) {
+            catalog = loadCatalog(catalogName, configuration, threads, gzip, stats);
+        } else {
+            catalog = importCatalog(catalogName, configuration, threads, gzip, stats, columns);
+        }
+        stats.printSummary(System.out);
+        if (catalog != null && (columns || preview > 0 || cone != null)) {
+            catalog.printSummary(System.out);
+        }
+        if (catalog != null && (preview > 0 || cone != null)) {
+            try {
+                JsonRecordWriter writer = new JsonRecordWriter(Channels.newChannel(System.out), 1 << 16);
+                catalog.writeJson(writer, 0, Math.min(preview, catalog.getRowCount()));
+                if (cone != null) {
+                    long start = System.nanoTime();
+                    int[] rows = catalog.coneSearch(cone[0], cone[1], cone[2]);
+                    long searched = System.nanoTime() - start;
+                    for (int row : rows) {
+                        catalog.writeJson(writer, row, row + 1);
+                    }
+                    writer.flush();
+                    System.out.println(rows.length + " rows within " + cone[2] + " degrees of " + cone[0] + ", "
+                            + cone[1] + " (" + (searched / 1000) + " us)");
+                }
+                writer.flush();
+            } catch (IOException e) {
+                System.out.println("Unable to preview " + catalogName + ": " + e.getMessage());
+            } catch (IllegalStateException e) {
+                // no ra and dec to search
+                System.out.println(e.getMessage());
+            }
+        }
 
         File file1 = new File("heasarc_" + catalogName + "tdat.gz");
         file1.delete();
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2json;
+
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the chunked conversion writes exactly what the single-threaded one does, including for rows that
+ * aren't plain ASCII.
+ *
+ * @author Jason Ferguson
+ * @since 0.3.2
+ */
+public class ChunkedTdatConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nonAsciiRowsComeOutTheSameOnBothPaths() throws IOException {
+        File dir = folder.getRoot();
+        File tdat = new File(dir, "messier.tdat");
+        writeTdat(tdat, 200);
+
+        Map<String, Object> config = Tdat2Json.parseCatalogXml("messier");
+
+        String sequential = new File(dir, "messier").getPath();
+        Tdat2Json.processTdatFile(sequential, config, false, new ImportStats("messier"), false);
+
+        // small chunks, so the rows get spread over lots of them
+        String chunked = new File(dir, "messier-chunked").getPath();
+        new ChunkedTdatConverter(config, 3, 512).convert(tdat, chunked);
+
+        byte[] expected = read(new File(sequential + ".json"));
+        byte[] actual = read(new File(chunked + ".json"));
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Write a small Messier-like TDAT file. Some names have Latin-1 accented chars in them, and some have the
+     * bytes of a UTF-8 encoded char.
+     */
+    private static void writeTdat(File file, int rows) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            out.write(ascii("<HEADER>\n"));
+            out.write(ascii("table_name = heasarc_messier\n"));
+            out.write(ascii("line[1] = name ra dec notes vmag object_type\n"));
+            out.write(ascii("<DATA>\n"));
+            for (int i = 0; i < rows; i++) {
+                ByteArrayOutputStream row = new ByteArrayOutputStream();
+                row.write(ascii("M " + i));
+                if (i % 3 == 0) {
+                    // e-acute, in Latin-1
+                    row.write(new byte[]{' ', 'N', (byte) 0xe9, 'b'});
+                } else if (i % 3 == 1) {
+                    // Greek capital omega, in UTF-8
+                    row.write(new byte[]{' ', (byte) 0xce, (byte) 0xa9});
+                }
+                row.write(ascii("|" + (i * 1.5) + "|" + (i - 90) + ".25|"));
+                row.write(i % 2 == 0 ? ascii("") : new byte[]{'n', (byte) 0xfc});
+                row.write(ascii("|" + (i % 10) + "." + i + "|galaxy|\n"));
+                out.write(row.toByteArray());
+            }
+            out.write(ascii("<END>\n"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] ascii(String s) throws UnsupportedEncodingException {
+        return s.getBytes("US-ASCII");
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count == -1) {
+                    return Arrays.copyOf(bytes, offset);
+                }
+                offset += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
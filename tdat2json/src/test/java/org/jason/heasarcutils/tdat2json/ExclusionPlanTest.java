@@ -0,0 +1,245 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2json;
+
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs every catalog's (catalog).xml through both the compiled ExclusionPlan and the old
+ * processPerCatalogExclusions() on the same rows, and checks they come out with the same keys and values in
+ * the same order. The rows are split into a map the way the old converter did it (line.split("\\|")), so the
+ * TdatRowScanner is checked along the way.
+ *
+ * @author Jason Ferguson
+ * @since 0.3.2
+ */
+public class ExclusionPlanTest {
+
+    private static final int ROWS = 500;
+
+    // line[1] from the headers catalogparser ships with. class doesn't have one, so it gets the fields its
+    // copies name.
+    private static final String[][] CATALOGS = {
+            {"bsc", "ads ads_comp alt_name bii bv_color bv_uncert cdec cdec_1950 class cra cra_1950 dec dec_1900 "
+                    + "dec_1950 dm_cat dm_num fk5 glat glon hd hr ir_flag lii m_cnt m_id m_mdiff m_sep multiple name "
+                    + "note par_code parallax pmdec pmra ra ra_1900 ra_1950 radvel radvel_comm ri_code ri_color rotvel "
+                    + "rotvel_comm rotvel_uncert sao spect_code spect_type ub_color ub_uncert var_id vmag vmag_code "
+                    + "vmag_uncert"},
+            {"class", "class_id class_name class"},
+            {"cns3", "name component distance_code ra dec lii bii tot_proper_motion flag_proper_motion "
+                    + "dir_proper_motion radial_velocity radial_velocity_code spect_type ref_spect_type app_mag "
+                    + "app_mag_code app_mag_joint bv_color bv_color_code bv_color_joint ub_color ub_color_code "
+                    + "ub_color_joint ri_color ri_color_code ri_color_joint trig_parallax trig_parallax_error "
+                    + "result_parallax result_parallax_error result_parallax_code abs_vmag abs_vmag_code uvel vvel "
+                    + "wvel hd_number dm_number giclas_number lhs_number other_name remarks class"},
+            {"hd", "bii class dec dircos1 dircos2 dircos3 hd_number lii multiplicity_flag name pgmag ra "
+                    + "spectral_type variability_flag vmag"},
+            {"hipparcos", "name ra dec lii bii hip_number prox_10asec vmag var_flag vmag_source ra_deg dec_deg "
+                    + "astrom_ref_dbl parallax pm_ra pm_dec ra_error dec_error parallax_error pm_ra_error "
+                    + "pm_dec_error crl_dec_ra crl_plx_ra crl_plx_dec crl_pmra_ra crl_pmra_dec crl_pmra_plx "
+                    + "crl_pmdec_ra crl_pmdec_dec crl_pmdec_plx crl_pmdec_pmra reject_percent quality_fit bt_mag "
+                    + "bt_mag_error vt_mag vt_mag_error bt_mag_ref_dbl bv_color bv_color_error bv_mag_source "
+                    + "vi_color vi_color_error vi_color_source mag_ref_dbl hip_mag hip_mag_error scat_hip_mag "
+                    + "n_obs_hip_mag hip_mag_ref_dbl hip_mag_max hip_mag_min var_period hip_var_type var_data_annex "
+                    + "var_curv_annex ccdm_id ccdm_history ccdm_n_entries ccdm_n_comp dbl_mult_annex "
+                    + "astrom_mult_source dbl_soln_qual dbl_ref_id dbl_theta dbl_rho rho_error diff_hip_mag "
+                    + "dhip_mag_error survey_star id_chart notes hd_id bd_id cod_id cpd_id vi_color_reduct spect_type "
+                    + "spect_type_source class"},
+            {"messier", "alt_name bii class constell dec dimension lii name notes object_type ra vmag vmag_uncert"},
+            {"ngc2000", "name source_type ra dec lii bii ref_revision constellation limit_ang_diameter "
+                    + "ang_diameter app_mag app_mag_flag description class"},
+            {"ppm", "name dm_number vmag spect_type ra dec lii bii ra_cat dec_cat ra_prop dec_prop n_pub "
+                    + "ra_mean_err dec_mean_err pm_ra_mean_err pm_dec_mean_err epa epd sao hd agk3 cpd notes class"},
+            {"sao", "name ra proper_motion_ra proper_motion_ra_error ra_epoch dec proper_motion_dec "
+                    + "proper_motion_dec_error dec_epoch position_error lii bii pg_mag vmag spect_type ref_vmag "
+                    + "ref_star_number ref_pg_mag ref_proper_motion ref_spect_type remarks ref_source_cat "
+                    + "num_source_cat dm hd hd_component gc proper_motion_ra_fk5 proper_motion_dec_fk5 class"},
+            {"tycho2", "name position_flag mean_ra mean_dec pm_ra pm_dec mean_ra_error mean_dec_error pm_ra_error "
+                    + "pm_dec_error mean_ra_epoch mean_dec_epoch num_positions gof_mean_ra gof_mean_dec gof_pm_ra "
+                    + "gof_pm_dec bt_mag bt_mag_error vt_mag vt_mag_error proximity tycho1_star hip_number "
+                    + "ccdm_components ra dec lii bii observed_ra observed_dec observed_ra_epoch observed_dec_epoch "
+                    + "observed_ra_error observed_dec_error solution_type ra_dec_corr"},
+            {"ugc", "name ugc_number ra dec lii bii mcg poss_field blue_major_axis blue_minor_axis position_angle "
+                    + "hubble_type phot_mag radial_velocity red_major_axis red_minor_axis inclination_code class"}
+    };
+
+    // how often each of the actions came up, over all the catalogs
+    private int emptiesDropped;
+    private int emptiesKept;
+    private int excluded;
+    private int copied;
+    private int dropped;
+    private int prefixed;
+    private int alreadyPrefixed;
+
+    @Test
+    public void planMatchesOldExclusions() {
+        for (String[] catalog : CATALOGS) {
+            String catalogName = catalog[0];
+            String[] names = catalog[1].split(" ");
+            Map<String, Object> config = Tdat2Json.parseCatalogXml(catalogName);
+            Random random = new Random(catalogName.hashCode());
+
+            check(catalogName, names, config, random);
+
+            // empty fields kept rather than dropped
+            Map<String, Object> keepEmpty = new HashMap<String, Object>(config);
+            keepEmpty.put("dropEmpty", false);
+            check(catalogName + " (empty fields kept)", names, keepEmpty, random);
+
+            // a copy onto a name the row already has, and a name in line[1] twice, which make the plan replay
+            // the old map operations instead of using its fixed steps
+            @SuppressWarnings("unchecked")
+            Map<String, String> copies = (Map<String, String>) config.get("fieldsToCopy");
+            List<String> odd = new ArrayList<String>(Arrays.asList(names));
+            if (!copies.isEmpty()) {
+                odd.add(random.nextInt(odd.size()), copies.values().iterator().next());
+            }
+            odd.add(names[random.nextInt(names.length)]);
+            check(catalogName + " (odd names)", odd.toArray(new String[odd.size()]), config, random);
+        }
+
+        assertTrue(emptiesDropped > 0);
+        assertTrue(emptiesKept > 0);
+        assertTrue(excluded > 0);
+        assertTrue(copied > 0);
+        assertTrue(dropped > 0);
+        assertTrue(prefixed > 0);
+        assertTrue(alreadyPrefixed > 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void check(String label, String[] names, Map<String, Object> config, Random random) {
+        ExclusionPlan plan = ExclusionPlan.compile(names, config);
+        TdatRowScanner scanner = new TdatRowScanner();
+        Collection<String> prefixes = ((Map<String, String>) config.get("fieldPrefixes")).values();
+
+        for (int row = 0; row < ROWS; row++) {
+            // every so often a thread of its own, sharing what's been worked out so far
+            if (row % 100 == 99) {
+                plan = plan.copy();
+            }
+            String line = makeLine(names, row, prefixes, random);
+
+            // the old way: split, into a map in line[1] order, through processPerCatalogExclusions()
+            Map<String, String> map = new LinkedHashMap<String, String>();
+            String[] values = line.split("\\|");
+            for (int i = 0; i < values.length; i++) {
+                map.put(names[i], values[i]);
+            }
+            List<String> expected = new ArrayList<String>();
+            for (Map.Entry<String, String> entry : Tdat2Json.processPerCatalogExclusions(map, config).entrySet()) {
+                expected.add(entry.getKey() + "=" + entry.getValue());
+            }
+
+            assertTrue(label + ": " + line, scanner.scan(line));
+            List<String> actual = new ArrayList<String>();
+            for (ExclusionPlan.Step step : plan.getSteps(scanner)) {
+                if (step.isPresent(scanner)) {
+                    actual.add(step.getKey() + "=" + step.getValue(scanner));
+                }
+            }
+
+            assertEquals(label + ": " + line, expected, actual);
+            count(map, config);
+        }
+    }
+
+    /**
+     * Make a row for line[1]. Fields come out empty, plain, numeric or holding one of the prefixes already, and
+     * some rows are cut short (including a completely empty line).
+     */
+    private static String makeLine(String[] names, int row, Collection<String> prefixes, Random random) {
+        if (row == 0) {
+            return "";
+        }
+        int count = (random.nextInt(5) == 0) ? random.nextInt(names.length) + 1 : names.length;
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    break;
+                case 1:
+                    line.append(random.nextInt(100000));
+                    break;
+                case 2:
+                    line.append(random.nextInt(360)).append('.').append(random.nextInt(10000));
+                    break;
+                case 3:
+                    if (!prefixes.isEmpty()) {
+                        line.append(new ArrayList<String>(prefixes).get(random.nextInt(prefixes.size())));
+                    }
+                    line.append(random.nextInt(1000));
+                    break;
+                default:
+                    line.append(names[i]).append(' ').append(row);
+            }
+            line.append('|');
+        }
+        return line.toString();
+    }
+
+    /**
+     * Keep count of which actions the old code took on a row, so the test can tell it hasn't only been
+     * comparing the easy cases
+     */
+    @SuppressWarnings("unchecked")
+    private void count(Map<String, String> map, Map<String, Object> config) {
+        boolean dropEmpty = (Boolean) config.get("dropEmpty");
+        List<Pattern> patterns = (List<Pattern>) config.get("exclusionPatterns");
+        List<String> fieldsToDrop = (List<String>) config.get("fieldsToDrop");
+        Map<String, String> fieldsToCopy = (Map<String, String>) config.get("fieldsToCopy");
+        Map<String, String> prefixes = (Map<String, String>) config.get("fieldPrefixes");
+
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (value.length() == 0) {
+                if (dropEmpty) {
+                    emptiesDropped++;
+                    continue;
+                }
+                emptiesKept++;
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(key).find()) {
+                    excluded++;
+                }
+            }
+            if (fieldsToDrop.contains(key)) {
+                dropped++;
+            }
+            String copy = fieldsToCopy.get(key);
+            if (copy != null) {
+                copied++;
+                String prefix = prefixes.get(copy);
+                if (prefix != null) {
+                    if (value.indexOf(prefix) == -1) {
+                        prefixed++;
+                    } else {
+                        alreadyPrefixed++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2mysql;
+
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Non-interactive version of TdatProcessor, for when there's no one around to answer questions (nightly
+ * jobs, etc). Everything the interactive version asks about comes from the command line or a properties
+ * file instead, and any number of TDAT files can be converted at once on a thread pool.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp tdat2mysql.jar org.jason.heasarcutils.tdat2mysql.BatchConverter [options] (tdat file) [(tdat file)...]
+ *
+ *   -p, --properties (file)   read settings from a properties file (command line options win)
+ *   -o, --output (dir)        directory to write the .sql files to (default: current directory)
+ *   -t, --threads (n)         number of files to convert at once (default: number of processors)
+ *   -x, --exclusions (path)   catalog XML with the columns to drop, same format as tdat2json. If it's a
+ *                             directory, (table name).xml in that directory is used for each file
+ *   -g, --generic             no MySQL-specific syntax (always generates INSERT statements)
+ *   -i, --inserts             generate INSERT statements instead of LOAD DATA INFILE
+ *   -b, --batch-size (n)      rows per INSERT statement (default 100)
+ * </pre>
+ * The properties file keys are output.dir, threads, exclusions, mysql (true/false), inserts (true/false),
+ * batch.size and files (separated by commas or whitespace).
+ *
+ * @author Jason Ferguson
+ * @since 0.4.1
+ */
+public class BatchConverter {
+
+    private String outputDir = "." + File.separator;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String exclusions;
+    private boolean mysqlSpecific = true;
+    private boolean generateInserts = false;
+    private int batchSize = TdatProcessor.DEFAULT_BATCH_SIZE;
+    private final List<String> files = new ArrayList<String>();
+
+    /**
+     * Set up a BatchConverter from command line arguments
+     *
+     * @param args command line arguments
+     * @return the BatchConverter
+     * @throws IllegalArgumentException if an option is missing its value or has a bad one
+     */
+    public static BatchConverter fromArgs(String[] args) {
+
+        BatchConverter converter = new BatchConverter();
+
+        // properties first, so the command line can override them
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("-p") || args[i].equals("--properties")) {
+                converter.loadProperties(args[i + 1]);
+            }
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-p") || arg.equals("--properties")) {
+                i++;
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                converter.setOutputDir(getValue(args, ++i, arg));
+            } else if (arg.equals("-t") || arg.equals("--threads")) {
+                converter.threads = parseInt(getValue(args, ++i, arg), arg);
+            } else if (arg.equals("-x") || arg.equals("--exclusions")) {
+                converter.exclusions = getValue(args, ++i, arg);
+            } else if (arg.equals("-g") || arg.equals("--generic")) {
+                converter.mysqlSpecific = false;
+            } else if (arg.equals("-i") || arg.equals("--inserts")) {
+                converter.generateInserts = true;
+            } else if (arg.equals("-b") || arg.equals("--batch-size")) {
+                converter.batchSize = parseInt(getValue(args, ++i, arg), arg);
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                converter.files.add(arg);
+            }
+        }
+
+        return converter;
+    }
+
+    private void loadProperties(String filename) {
+
+        Properties props = new Properties();
+        try {
+            InputStream is = new FileInputStream(filename);
+            try {
+                props.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read properties file " + filename + ": " + e.getMessage());
+        }
+
+        if (props.getProperty("output.dir") != null) {
+            setOutputDir(props.getProperty("output.dir").trim());
+        }
+        if (props.getProperty("threads") != null) {
+            threads = parseInt(props.getProperty("threads").trim(), "threads");
+        }
+        if (props.getProperty("exclusions") != null) {
+            exclusions = props.getProperty("exclusions").trim();
+        }
+        if (props.getProperty("mysql") != null) {
+            mysqlSpecific = Boolean.valueOf(props.getProperty("mysql").trim());
+        }
+        if (props.getProperty("inserts") != null) {
+            generateInserts = Boolean.valueOf(props.getProperty("inserts").trim());
+        }
+        if (props.getProperty("batch.size") != null) {
+            batchSize = parseInt(props.getProperty("batch.size").trim(), "batch.size");
+        }
+        if (props.getProperty("files") != null) {
+            for (String file : props.getProperty("files").split("[,\\s]+")) {
+                if (file.length() > 0) {
+                    files.add(file);
+                }
+            }
+        }
+    }
+
+    private void setOutputDir(String dir) {
+        // TdatProcessor just sticks the file name on the end, so make sure there's a separator
+        if (!dir.endsWith("/") && !dir.endsWith("\\")) {
+            dir = dir + File.separator;
+        }
+        outputDir = dir;
+    }
+
+    private static String getValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " must be a number, not " + value);
+        }
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * Convert all the files
+     *
+     * @return true if every file was converted
+     */
+    public boolean run() {
+
+        if (files.isEmpty()) {
+            System.out.println("No TDAT files to convert");
+            return false;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        Map<String, Future<String>> results = new LinkedHashMap<String, Future<String>>();
+        for (final String file : files) {
+            results.put(file, executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return convert(file);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int failures = 0;
+        for (Map.Entry<String, Future<String>> entry : results.entrySet()) {
+            try {
+                System.out.println(entry.getKey() + " -> " + entry.getValue().get());
+            } catch (ExecutionException e) {
+                failures++;
+                System.out.println(entry.getKey() + " FAILED: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures++;
+                System.out.println(entry.getKey() + " interrupted");
+            }
+        }
+
+        System.out.println("Converted " + (files.size() - failures) + " of " + files.size() + " files");
+
+        return failures == 0;
+    }
+
+    /**
+     * Convert a single file
+     *
+     * @param filename the TDAT file
+     * @return name of the .sql file written
+     * @throws IOException if something couldn't be read or written
+     */
+    private String convert(String filename) throws IOException {
+
+        // mysql gets grouchy about the windows file separator, so replace a single slash with a double
+        String sqlFilename = filename;
+        if (System.getProperty("os.name").indexOf("Windows") != -1) {
+            sqlFilename = filename.replace("\\", "\\\\");
+        }
+
+        TdatHeader header = TdatHeader.read(new File(filename), MappedLineReader.CHARSET);
+        String tableName = TdatProcessor.getTableName(header);
+        if (tableName == null) {
+            throw new IOException("No heasarc_ table_name in " + filename);
+        }
+
+        List<String> columnsToDrop = getExclusions(tableName).getColumnsToDrop(TdatProcessor.createColumnMap(header).keySet());
+
+        return TdatProcessor.writeScript(header, sqlFilename, outputDir, mysqlSpecific, generateInserts, batchSize, columnsToDrop);
+    }
+
+    private ExclusionConfig getExclusions(String tableName) throws IOException {
+        if (exclusions == null) {
+            return ExclusionConfig.none();
+        }
+        File file = new File(exclusions);
+        if (file.isDirectory()) {
+            file = new File(file, tableName + ".xml");
+            if (!file.isFile()) {
+                return ExclusionConfig.none();
+            }
+        }
+        return ExclusionConfig.parse(file);
+    }
+
+    public static void main(String[] args) {
+
+        BatchConverter converter;
+        try {
+            converter = fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (converter.getFiles().isEmpty()) {
+            System.out.println("Usage: BatchConverter [-p properties] [-o outputdir] [-t threads] [-x exclusions] "
+                    + "[-g] [-i] [-b batchsize] (tdat file) [(tdat file)...]");
+            System.exit(1);
+        }
+
+        System.exit(converter.run() ? 0 : 1);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2mysql;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Which columns to drop, read from the same catalog XML files tdat2json uses:
+ * <pre>
+ * &lt;catalog name="tycho2"&gt;
+ *     &lt;exclusions&gt;
+ *         &lt;exclude pattern="^gof_"/&gt;
+ *         &lt;exclude name="proximity"/&gt;
+ *     &lt;/exclusions&gt;
+ * &lt;/catalog&gt;
+ * </pre>
+ * Only the exclusions matter here. Copies, prefixes and dropEmptyFields are JSON things and get ignored, so
+ * the tdat2json files can be used as-is.
+ *
+ * @author Jason Ferguson
+ * @since 0.4.1
+ */
+public class ExclusionConfig {
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final Set<String> names = new HashSet<String>();
+
+    /**
+     * @return an ExclusionConfig that doesn't drop anything
+     */
+    public static ExclusionConfig none() {
+        return new ExclusionConfig();
+    }
+
+    /**
+     * Read the exclusions from a catalog XML file
+     *
+     * @param file the XML file
+     * @return the ExclusionConfig
+     * @throws IOException if the file can't be read or parsed
+     */
+    public static ExclusionConfig parse(File file) throws IOException {
+
+        final ExclusionConfig config = new ExclusionConfig();
+
+        InputStream is = new FileInputStream(file);
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(is), new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    if (qName.equalsIgnoreCase("exclude")) {
+                        String pattern = attributes.getValue("pattern");
+                        String name = attributes.getValue("name");
+                        if (pattern != null && pattern.length() > 0) {
+                            config.patterns.add(Pattern.compile(pattern));
+                        } else if (name != null && name.length() > 0) {
+                            config.names.add(name);
+                        }
+                    }
+                }
+            });
+        } catch (SAXException e) {
+            throw new IOException("Unable to parse " + file + ": " + e.getMessage(), e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to parse " + file + ": " + e.getMessage(), e);
+        } finally {
+            is.close();
+        }
+
+        return config;
+    }
+
+    /**
+     * Determine if a column should be dropped. Patterns are matched with find(), same as tdat2json.
+     *
+     * @param column TDAT field name
+     * @return true if the column is excluded
+     */
+    public boolean isExcluded(String column) {
+        if (names.contains(column)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(column).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the columns to drop out of a list of columns
+     *
+     * @param columns TDAT field names, in table order
+     * @return the excluded ones, in the same order
+     */
+    public List<String> getColumnsToDrop(Collection<String> columns) {
+        List<String> result = new ArrayList<String>();
+        for (String column : columns) {
+            if (isExcluded(column)) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2mysql;
+
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Map;
+
+/**
+ * Loads a TDAT file straight into a database over JDBC, instead of writing a .sql script that somebody has to
+ * run by hand. Creates the table from the same column map TdatProcessor uses, then pushes the rows through a
+ * PreparedStatement with addBatch()/executeBatch(), committing every so often so the transaction log doesn't
+ * explode on the big catalogs.
+ * <p/>
+ * There's no driver bundled. Put whatever driver you need on the classpath:
+ * <pre>
+ * java -cp tdat2mysql-0.1.jar:mysql-connector-java.jar org.jason.heasarcutils.tdat2mysql.JdbcLoader \
+ *     heasarc_tycho2.tdat jdbc:mysql://localhost/catalogs user password
+ * </pre>
+ * Anything with a JDBC 4 driver should work (MySQL, MariaDB, PostgreSQL, H2, Derby...). Use an in-memory
+ * URL like jdbc:h2:mem:test to try it out without a server.
+ *
+ * @author Jason Ferguson
+ * @since 0.4.1
+ */
+public class JdbcLoader {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_INTERVAL = 50000;
+
+    private final Connection connection;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private boolean dropExisting = true;
+
+    public JdbcLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @param batchSize number of rows sent to the database per executeBatch()
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param commitInterval number of rows per transaction. Rounded up to a whole number of batches.
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be at least 1");
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * @param dropExisting whether to drop the table first if it's already there (default true)
+     */
+    public void setDropExisting(boolean dropExisting) {
+        this.dropExisting = dropExisting;
+    }
+
+    /**
+     * Create the table and load the rows of a TDAT file into it. Rows are committed every commitInterval rows, so
+     * rolling back can't undo a failed load; the table gets dropped instead rather than left half loaded.
+     *
+     * @param header     TdatHeader of the TDAT file
+     * @param tableName  name of the table to create
+     * @param columnDefs column names and SQL types, from TdatProcessor.createColumnMap()
+     * @return number of rows loaded
+     * @throws SQLException if the database doesn't like something
+     * @throws IOException  if the TDAT file can't be read
+     */
+    public long load(TdatHeader header, String tableName, Map<String, String> columnDefs) throws SQLException, IOException {
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        boolean created = false;
+        try {
+            createTable(tableName, columnDefs);
+            created = true;
+            return insertRows(header, tableName, columnDefs);
+        } catch (SQLException e) {
+            connection.rollback();
+            if (created) {
+                dropPartialTable(tableName);
+            }
+            throw e;
+        } catch (IOException e) {
+            connection.rollback();
+            if (created) {
+                dropPartialTable(tableName);
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Drop a table a failed load has already committed some rows to. Only complains if it can't, so the error that
+     * stopped the load is the one that gets thrown.
+     */
+    private void dropPartialTable(String tableName) {
+        try {
+            Statement stmt = connection.createStatement();
+            try {
+                stmt.execute("DROP TABLE " + tableName);
+                connection.commit();
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Unable to drop the partly loaded table " + tableName + ": " + e.getMessage());
+        }
+    }
+
+    private void createTable(String tableName, Map<String, String> columnDefs) throws SQLException {
+
+        Statement stmt = connection.createStatement();
+        try {
+            if (dropExisting) {
+                // no portable DROP TABLE IF EXISTS, so just try it and ignore the error if it isn't there
+                try {
+                    stmt.execute("DROP TABLE " + tableName);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                }
+            }
+
+            // JDBC doesn't want the trailing semicolon
+            String ddl = TdatProcessor.createTableDefinition(tableName, columnDefs, false).trim();
+            if (ddl.endsWith(";")) {
+                ddl = ddl.substring(0, ddl.length() - 1);
+            }
+            stmt.execute(ddl);
+            connection.commit();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private long insertRows(TdatHeader header, String tableName, Map<String, String> columnDefs) throws SQLException, IOException {
+
+        // work out the parameter types once instead of looking at the type string for every value
+        int columnCount = columnDefs.size();
+        int[] types = new int[columnCount];
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append("(");
+        StringBuilder params = new StringBuilder();
+        int i = 0;
+        for (Map.Entry<String, String> entry : columnDefs.entrySet()) {
+            types[i++] = getSqlType(entry.getValue());
+            sql.append(TdatProcessor.getColumnName(entry.getKey())).append(",");
+            params.append("?,");
+        }
+        sql.setLength(sql.length() - 1);
+        params.setLength(params.length() - 1);
+        sql.append(") VALUES (").append(params).append(")");
+
+        TdatRowScanner scanner = new TdatRowScanner();
+        PreparedStatement ps = connection.prepareStatement(sql.toString());
+        LineReader reader = header.openData();
+
+        long rows = 0;
+        int rowsInBatch = 0;
+        long rowsSinceCommit = 0;
+        long start = System.currentTimeMillis();
+        try {
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
+                if (!scanner.scan(line)) {
+                    continue;
+                }
+
+                int fieldCount = Math.min(scanner.getFieldCount(), columnCount);
+                for (int col = 0; col < columnCount; col++) {
+                    if (col >= fieldCount || scanner.isEmpty(col)) {
+                        ps.setNull(col + 1, types[col]);
+                    } else {
+                        setParameter(ps, col + 1, types[col], scanner.getString(col));
+                    }
+                }
+                ps.addBatch();
+                rows++;
+                rowsInBatch++;
+                rowsSinceCommit++;
+
+                if (rowsInBatch == batchSize) {
+                    ps.executeBatch();
+                    rowsInBatch = 0;
+                    if (rowsSinceCommit >= commitInterval) {
+                        connection.commit();
+                        rowsSinceCommit = 0;
+                        System.out.println("Loaded " + rows + " rows (" + getRowsPerSecond(rows, start) + " rows/sec)");
+                    }
+                }
+            }
+
+            if (rowsInBatch > 0) {
+                ps.executeBatch();
+            }
+            connection.commit();
+        } finally {
+            reader.close();
+            ps.close();
+        }
+
+        System.out.println("Loaded " + rows + " rows into " + tableName + " in "
+                + (System.currentTimeMillis() - start) + "ms (" + getRowsPerSecond(rows, start) + " rows/sec)");
+
+        return rows;
+    }
+
+    private static long getRowsPerSecond(long rows, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        return rows * 1000 / elapsed;
+    }
+
+    /**
+     * Map the column types TdatProcessor generates to java.sql.Types
+     *
+     * @param columnType INTEGER, BIGINT, DECIMAL(p,s) or VARCHAR(n)
+     * @return the matching java.sql.Types constant
+     */
+    private static int getSqlType(String columnType) {
+        if (columnType.equals("INTEGER")) {
+            return Types.INTEGER;
+        } else if (columnType.equals("BIGINT")) {
+            return Types.BIGINT;
+        } else if (columnType.startsWith("DECIMAL")) {
+            return Types.DECIMAL;
+        }
+        return Types.VARCHAR;
+    }
+
+    /**
+     * Set a parameter, converting the value to the column type. Values that don't convert (the odd non-number in
+     * a numeric column) go in as strings and the driver gets to decide what to do with them.
+     */
+    private static void setParameter(PreparedStatement ps, int index, int type, String value) throws SQLException {
+        try {
+            switch (type) {
+                case Types.INTEGER:
+                    ps.setInt(index, Integer.parseInt(value.trim()));
+                    return;
+                case Types.BIGINT:
+                    ps.setLong(index, Long.parseLong(value.trim()));
+                    return;
+                case Types.DECIMAL:
+                    ps.setBigDecimal(index, new BigDecimal(value.trim()));
+                    return;
+                default:
+                    ps.setString(index, value);
+            }
+        } catch (NumberFormatException e) {
+            ps.setString(index, value);
+        }
+    }
+
+    public static void main(String[] args) {
+
+        if (args.length < 2) {
+            System.out.println("Usage: JdbcLoader (heasarc_filename) (jdbc url) [user] [password] [batch size] [commit interval]");
+            System.exit(0);
+        }
+
+        // a failed load has to show up in the exit status, or scripts carry on as if the table was there
+        if (!run(args)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Do what main() says, without exiting
+     *
+     * @param args the command line arguments, at least the filename and the JDBC url
+     * @return true if the file was loaded, false if anything went wrong
+     */
+    static boolean run(String[] args) {
+
+        String filename = args[0];
+        String url = args[1];
+        String user = (args.length > 2) ? args[2] : null;
+        String password = (args.length > 3) ? args[3] : null;
+
+        TdatHeader header = TdatProcessor.readHeader(filename);
+        if (header == null) {
+            return false;
+        }
+        String tableName = TdatProcessor.getTableName(header);
+        if (tableName == null) {
+            System.out.println("No heasarc_ table_name in " + filename);
+            return false;
+        }
+        Map<String, String> columnMap = TdatProcessor.createColumnMap(header);
+
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(url, user, password);
+            JdbcLoader loader = new JdbcLoader(connection);
+            if (args.length > 4) {
+                loader.setBatchSize(Integer.parseInt(args[4]));
+            }
+            if (args.length > 5) {
+                loader.setCommitInterval(Integer.parseInt(args[5]));
+            }
+            loader.load(header, tableName, columnMap);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Database error: " + e.getMessage());
+            return false;
+        } catch (IOException e) {
+            System.out.println("Unable to read " + filename + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    System.out.println("Unable to close the connection to " + url + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
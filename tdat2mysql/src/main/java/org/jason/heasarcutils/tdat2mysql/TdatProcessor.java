@@ -15,6 +15,12 @@
  */
 package org.jason.heasarcutils.tdat2mysql;
 
+import org.jason.heasarcutils.common.io.LineReader;
+import org.jason.heasarcutils.common.io.MappedLineReader;
+import org.jason.heasarcutils.common.tdat.TdatColumn;
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.jason.heasarcutils.common.tdat.TdatRowScanner;
+
 import java.io.*;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -46,87 +52,67 @@ public class TdatProcessor {
     // find the name of the table in the file
     private static final String tableNameRegexPattern = "heasarc_(.+)$";
 
+    // digits allowed in front of the decimal point for float columns
+    private static final int FLOAT_INTEGER_DIGITS = 10;
+
+    // rows per INSERT statement, unless the user says otherwise
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Read the header of a TDAT file. Everything the processor needs to know about the file (table name, columns,
+     * where the data starts) comes out of this, so the file only gets read from the top once.
+     *
+     * @param filename String representing the name of the heasarc tdat file to process
+     * @return the TdatHeader, or null if the file couldn't be read
+     */
+    public static TdatHeader readHeader(String filename) {
+        try {
+            return TdatHeader.read(new File(filename), MappedLineReader.CHARSET);
+        } catch (IOException e) {
+            System.out.println("Unable to read TDAT header: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Convert an HEASARC file to SQL format. I'm sure I could be much more efficient, but hey, this is NASA data
      * so I need to get in the proper spirit
      *
-     * @param filename String representing the name of the heasarc tdat file to process
+     * @param header TdatHeader of the heasarc tdat file to process
      * @return a Map<String, String>
      */
-    @SuppressWarnings({"EmptyCatchBlock"})
-    private static Map<String, String> createColumnMap(String filename) {
+    public static Map<String, String> createColumnMap(TdatHeader header) {
 
         // create a linked hashmap mapping field names to their column types. Use LHM because I'm picky and
         // would prefer to preserve the order
         Map<String, String> columnMap = new LinkedHashMap<String, String>();
 
-        // define the regex patterns
-        // one regex to bind them, one regex to find them, one regex to bring them all and in the darkness bind them
-        Pattern columnTypePattern = Pattern.compile("field\\[(.*)\\] = (float|int|char)([1-9][0-9]?)?(:\\.([0-9]))?");
-
-        try {
-            Scanner scanner = new Scanner(new FileInputStream(filename));
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-
-                if (line.indexOf("field[") != -1) {
-
-                    String columnName = null;
-                    String columnType = null;
-                    String columnPrecision = null;
-                    String columnScale = null;
-                    Matcher columnTypeMatcher = columnTypePattern.matcher(line);
-
-                    if (columnTypeMatcher.lookingAt()) {
-                        int count = columnTypeMatcher.groupCount();
-                        if (count > 1) {
-                            columnName = columnTypeMatcher.group(1);
-                            columnType = columnTypeMatcher.group(2);
-                        }
-                        if (count > 2) {
-                            columnPrecision = columnTypeMatcher.group(3);
-                        }
-                        if (count >= 5) {
-                            columnScale = columnTypeMatcher.group(5);
-                        }
-                    }
+        for (TdatColumn column : header.getColumns()) {
 
-                    if (columnPrecision == null || columnPrecision.isEmpty()) {
-                        columnPrecision = "8";
-                    }
+            String columnName = column.getName();
+            String columnType = column.getType();
+            String columnPrecision = (column.getWidth() == null) ? "8" : column.getWidth().toString();
+            String columnScale = (column.getDecimals() == null) ? "4" : column.getDecimals().toString();
 
-                    if (columnScale == null || columnScale.isEmpty()) {
-                        columnScale = "4";
-                    }
-
-                    if (columnType.equals("int")) {
-                        int precision = Integer.parseInt(columnPrecision);
-                        if (precision <= 4) {
-                            columnMap.put(columnName, "INTEGER");
-                        } else {
-                            columnMap.put(columnName, "BIGINT");
-                        }
-                    } else if (columnType.equals("float")) {
-                        if (columnPrecision.equals("8") && columnPrecision.equals("8")) {
-                            columnScale = "4";
-                        }
-                        columnMap.put(columnName, "DECIMAL(" + columnPrecision + "," + columnScale + ")");
-                    } else {
-                        // for some reason I have to use column scale here, not column precision, probably because of
-                        // the order of the regex groups
-                        columnMap.put(columnName, "VARCHAR(" + columnPrecision + ")");
-                    }
+            if ("int".equals(columnType)) {
+                int precision = Integer.parseInt(columnPrecision);
+                if (precision <= 4) {
+                    columnMap.put(columnName, "INTEGER");
+                } else {
+                    columnMap.put(columnName, "BIGINT");
                 }
-
-                if (line.indexOf("<DATA>") != -1) {
-                    scanner.close();
-                    break;
+            } else if ("float".equals(columnType)) {
+                if (columnPrecision.equals("8")) {
+                    columnScale = "4";
                 }
+                // the number after float is the size in bytes, not the number of digits, so DECIMAL(4,2) for a
+                // float4:.2f can't even hold 1991.25. Leave room for 10 digits in front of the decimal point.
+                int scale = Integer.parseInt(columnScale);
+                columnMap.put(columnName, "DECIMAL(" + (scale + FLOAT_INTEGER_DIGITS) + "," + columnScale + ")");
+            } else {
+                // char, or something the header parser didn't recognize. Text is the safe bet
+                columnMap.put(columnName, "VARCHAR(" + columnPrecision + ")");
             }
-
-            scanner.close();
-        } catch (FileNotFoundException e) {
-
         }
 
         return columnMap;
@@ -138,35 +124,31 @@ public class TdatProcessor {
      * @param filename String representing the filename
      * @return String representing the table name from the TDAT file
      */
-    @SuppressWarnings({"EmptyCatchBlock"})
     public static String getTableName(String filename) {
+        TdatHeader header = readHeader(filename);
+        return (header == null) ? null : getTableName(header);
+    }
 
-        String tableName = null;
-        Pattern tableNamePattern = Pattern.compile(tableNameRegexPattern);
-
-        try {
-            Scanner scanner = new Scanner(new FileInputStream(filename));
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (line.indexOf("table_name = ") != -1) {
-                    Matcher tableNameMatcher = tableNamePattern.matcher(line);
-                    if (tableNameMatcher.find()) {
-                        tableName = tableNameMatcher.group(1);
-                        break;
-                    } else {
-                        System.out.println("Table name pattern not found");
-                        scanner.close();
-                        System.exit(0);
-                    }
+    /**
+     * Get the table name from the header, without the heasarc_ prefix. Doesn't exit on a header it doesn't like,
+     * since the BatchConverter calls this on its pool threads; it's up to the caller to decide what to do.
+     *
+     * @param header TdatHeader of the TDAT file
+     * @return String representing the table name from the TDAT file, or null if there's no table_name or it
+     *         doesn't look like heasarc_(name)
+     */
+    public static String getTableName(TdatHeader header) {
 
-                }
-            }
-            scanner.close();
-        } catch (FileNotFoundException e) {
+        if (header.getTableName() == null) {
+            return null;
+        }
 
+        Matcher tableNameMatcher = Pattern.compile(tableNameRegexPattern).matcher(header.getTableName());
+        if (!tableNameMatcher.find()) {
+            return null;
         }
 
-        return tableName;
+        return tableNameMatcher.group(1);
     }
 
     /**
@@ -185,14 +167,7 @@ public class TdatProcessor {
         sb.append("CREATE TABLE ").append(tablename).append("(\r\n");
         StringBuilder columns = new StringBuilder();
         for (String fieldname : columnDefinitions.keySet()) {
-            // dec is a reserved word in mysql, change name. Do it for ra to be consistent
-            if (fieldname.equalsIgnoreCase("dec")) {
-                columns.append("decdeg").append(" ").append(columnDefinitions.get(fieldname)).append(",\r\n");
-            } else if (fieldname.equalsIgnoreCase("ra")) {
-                columns.append("radec").append(" ").append(columnDefinitions.get(fieldname)).append(",\r\n");
-            } else {
-                columns.append(fieldname).append(" ").append(columnDefinitions.get(fieldname)).append(",\r\n");
-            }
+            columns.append(getColumnName(fieldname)).append(" ").append(columnDefinitions.get(fieldname)).append(",\r\n");
         }
         String strColumns = columns.toString();
         sb.append(strColumns.substring(0, strColumns.lastIndexOf(",")));
@@ -205,6 +180,22 @@ public class TdatProcessor {
         return sb.toString();
     }
 
+    /**
+     * Get the name of the database column for a TDAT field
+     *
+     * @param fieldname name of the field in the TDAT
+     * @return the column name to use in the table
+     */
+    public static String getColumnName(String fieldname) {
+        // dec is a reserved word in mysql, change name. Do it for ra to be consistent
+        if (fieldname.equalsIgnoreCase("dec")) {
+            return "decdeg";
+        } else if (fieldname.equalsIgnoreCase("ra")) {
+            return "radec";
+        }
+        return fieldname;
+    }
+
     // stolen from apache commons
 
     // Empty checks
@@ -251,25 +242,41 @@ public class TdatProcessor {
         if (isEmpty(str)) {
             return false;
         }
-        char[] chars = str.toCharArray();
-        int sz = chars.length;
+        return isNumber(str, 0, str.length());
+    }
+
+    /**
+     * Same as isNumber(String), but checks a region of a CharSequence so the TDAT values can be checked
+     * in place without cutting them out of the line first.
+     *
+     * @param str   the CharSequence holding the value
+     * @param from  index of the first char of the value
+     * @param to    index after the last char of the value
+     * @return <code>true</code> if the region is a correctly formatted number
+     */
+    public static boolean isNumber(CharSequence str, int from, int to) {
+        if (to <= from) {
+            return false;
+        }
+        int sz = to;
         boolean hasExp = false;
         boolean hasDecPoint = false;
         boolean allowSigns = false;
         boolean foundDigit = false;
         // deal with any possible sign up front
-        int start = (chars[0] == '-') ? 1 : 0;
+        int start = (str.charAt(from) == '-') ? from + 1 : from;
         if (sz > start + 1) {
-            if (chars[start] == '0' && chars[start + 1] == 'x') {
+            if (str.charAt(start) == '0' && str.charAt(start + 1) == 'x') {
                 int i = start + 2;
                 if (i == sz) {
                     return false; // str == "0x"
                 }
                 // checking hex (it can't be anything else)
-                for (; i < chars.length; i++) {
-                    if ((chars[i] < '0' || chars[i] > '9')
-                            && (chars[i] < 'a' || chars[i] > 'f')
-                            && (chars[i] < 'A' || chars[i] > 'F')) {
+                for (; i < to; i++) {
+                    char c = str.charAt(i);
+                    if ((c < '0' || c > '9')
+                            && (c < 'a' || c > 'f')
+                            && (c < 'A' || c > 'F')) {
                         return false;
                     }
                 }
@@ -282,17 +289,18 @@ public class TdatProcessor {
         // loop to the next to last char or to the last char if we need another digit to
         // make a valid number (e.g. chars[0..5] = "1234E")
         while (i < sz || (i < sz + 1 && allowSigns && !foundDigit)) {
-            if (chars[i] >= '0' && chars[i] <= '9') {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
                 foundDigit = true;
                 allowSigns = false;
 
-            } else if (chars[i] == '.') {
+            } else if (c == '.') {
                 if (hasDecPoint || hasExp) {
                     // two decimal points or dec in exponent
                     return false;
                 }
                 hasDecPoint = true;
-            } else if (chars[i] == 'e' || chars[i] == 'E') {
+            } else if (c == 'e' || c == 'E') {
                 // we've already taken care of hex.
                 if (hasExp) {
                     // two E's
@@ -303,7 +311,7 @@ public class TdatProcessor {
                 }
                 hasExp = true;
                 allowSigns = true;
-            } else if (chars[i] == '+' || chars[i] == '-') {
+            } else if (c == '+' || c == '-') {
                 if (!allowSigns) {
                     return false;
                 }
@@ -314,21 +322,22 @@ public class TdatProcessor {
             }
             i++;
         }
-        if (i < chars.length) {
-            if (chars[i] >= '0' && chars[i] <= '9') {
+        if (i < to) {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
                 // no type qualifier, OK
                 return true;
             }
-            if (chars[i] == 'e' || chars[i] == 'E') {
+            if (c == 'e' || c == 'E') {
                 // can't have an E at the last byte
                 return false;
             }
             if (!allowSigns
-                    && (chars[i] == 'd' || chars[i] == 'D'
-                    || chars[i] == 'f' || chars[i] == 'F')) {
+                    && (c == 'd' || c == 'D'
+                    || c == 'f' || c == 'F')) {
                 return foundDigit;
             }
-            if (chars[i] == 'l' || chars[i] == 'L') {
+            if (c == 'l' || c == 'L') {
                 // not allowing L with an exponent
                 return foundDigit && !hasExp;
             }
@@ -348,55 +357,47 @@ public class TdatProcessor {
      * @param tableName  String representing the name of the table
      * @param columnDefs Map<String, String> with the column names and data types
      * @return a List<String> containing the SQL insert statements
+     * @deprecated holds every statement in memory, which runs out of heap on the big catalogs. Use
+     *             writeInsertStatements() instead
      */
-    @SuppressWarnings({"UnusedAssignment", "EmptyCatchBlock"})
+    @Deprecated
     public static List<String> createInsertStatements2(String filename, String tableName, Map<String, String> columnDefs) {
+        TdatHeader header = readHeader(filename);
+        return (header == null) ? new ArrayList<String>() : createInsertStatements2(header, tableName, columnDefs);
+    }
 
-        List<String> results = new ArrayList<String>();
-
-        // build the beginning of the insert statement
-        StringBuilder insertStatement = new StringBuilder("INSERT INTO " + tableName + "(");
-        StringBuilder columnList = new StringBuilder();
-        for (String fieldname : columnDefs.keySet()) {
-            columnList.append(fieldname).append(",");
-        }
+    /**
+     * Same as createInsertStatements2(String, String, Map), but starts reading right at the <DATA> section
+     * instead of working through the header again.
+     *
+     * @param header     TdatHeader of the TDAT file
+     * @param tableName  String representing the name of the table
+     * @param columnDefs Map<String, String> with the column names and data types
+     * @return a List<String> containing the SQL insert statements
+     * @deprecated holds every statement in memory, use writeInsertStatements() instead
+     */
+    @Deprecated
+    @SuppressWarnings({"UnusedAssignment", "EmptyCatchBlock"})
+    public static List<String> createInsertStatements2(TdatHeader header, String tableName, Map<String, String> columnDefs) {
 
-        String columns1 = columnList.toString();
-        insertStatement.append(columns1.substring(0, columns1.length() - 1));   // append the column list to the INSERT
-        insertStatement.append(") VALUES ("); // append the close PAREN, VALUES, and open paren
+        List<String> results = new ArrayList<String>();
 
-        //Pattern dataPattern = Pattern.compile("(.+)\\|^");
-        Pattern dataPattern = Pattern.compile("^(.*?\\|)*$");
+        String insertStatement = createInsertPrefix(tableName, columnDefs);
+        TdatRowScanner scanner = new TdatRowScanner();
 
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(filename));
-            String line;
+            LineReader reader = header.openData();
+            CharSequence line;
             while ((line = reader.readLine()) != null) {
-                Matcher dataMatcher = dataPattern.matcher(line);
-                if (dataMatcher.lookingAt()) {
+                if (scanner.scan(line)) {
                     StringBuilder newInsert = new StringBuilder(insertStatement);
-                    String[] parts = line.split("\\|");
-                    StringBuilder values = new StringBuilder();
-                    for (String part : parts) {
-                        if (isNumber(part)) {
-                            values.append(part);
-                        } else if (part.length() == 0) {
-                            values.append("NULL");
-                        } else {
-                            values.append("'").append(part).append("'");
-                        }
-                        values.append(",");
-
-                    }
-                    newInsert.append(values.substring(0, values.length() -1));
-                    newInsert.append(");");
+                    appendValues(scanner, line, newInsert);
+                    newInsert.append(";");
                     results.add(newInsert.toString());
                 }
             }
 
             reader.close();
-        } catch (FileNotFoundException e) {
-
         } catch (IOException ex) {
 
         }
@@ -404,25 +405,139 @@ public class TdatProcessor {
         return results;
     }
 
-    @SuppressWarnings({"UnusedAssignment", "EmptyCatchBlock"})
-    public static int getDataStartLine(String filename) {
+    /**
+     * Convert the PSV (pipe-separated values) from the TDAT <DATA> section into insert statements, writing each
+     * statement out as soon as it's built instead of keeping them all in memory.
+     * <p/>
+     * With a batchSize greater than 1, rows are grouped into multi-row INSERT ... VALUES (...),(...) statements.
+     * MySQL (and just about everything else these days) imports those a lot faster than one statement per row.
+     * Keep an eye on max_allowed_packet if you go crazy with the batch size. A batchSize of 1 gives the same
+     * output as createInsertStatements2().
+     *
+     * @param header     TdatHeader of the TDAT file
+     * @param tableName  String representing the name of the table
+     * @param columnDefs Map<String, String> with the column names and data types
+     * @param writer     Writer to send the statements to
+     * @param batchSize  number of rows per INSERT statement
+     * @return the number of rows written
+     * @throws IOException if the TDAT file can't be read or the statements can't be written
+     */
+    public static int writeInsertStatements(TdatHeader header, String tableName, Map<String, String> columnDefs,
+                                            Writer writer, int batchSize) throws IOException {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+
+        String insertStatement = createInsertPrefix(tableName, columnDefs);
+        TdatRowScanner scanner = new TdatRowScanner();
+        StringBuilder sb = new StringBuilder(1024);
 
-        int counter = 0;
+        int rows = 0;
+        int rowsInBatch = 0;
+        LineReader reader = header.openData();
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(filename));
-            String line = null;
-            while (!((line = reader.readLine()).equals("<DATA>"))) {
-                counter++;
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
+                if (!scanner.scan(line)) {
+                    continue;
+                }
+                if (rowsInBatch == 0) {
+                    sb.append(insertStatement);
+                } else {
+                    sb.append(",\r\n");
+                }
+                appendValues(scanner, line, sb);
+                rows++;
+                rowsInBatch++;
+
+                if (rowsInBatch == batchSize) {
+                    sb.append(";\r\n");
+                    writer.append(sb);
+                    sb.setLength(0);
+                    rowsInBatch = 0;
+                }
+            }
+
+            // whatever is left over from the last batch
+            if (rowsInBatch > 0) {
+                sb.append(";\r\n");
+                writer.append(sb);
             }
+        } finally {
             reader.close();
+        }
 
-        } catch (FileNotFoundException e) {
+        return rows;
+    }
 
-        } catch (IOException ex) {
+    /**
+     * Build the INSERT INTO table(columns) VALUES part of the insert statement
+     *
+     * @param tableName  String representing the name of the table
+     * @param columnDefs Map<String, String> with the column names and data types
+     * @return the start of an insert statement
+     */
+    private static String createInsertPrefix(String tableName, Map<String, String> columnDefs) {
+        StringBuilder insertStatement = new StringBuilder("INSERT INTO " + tableName + "(");
+        StringBuilder columnList = new StringBuilder();
+        for (String fieldname : columnDefs.keySet()) {
+            // has to match the (renamed) columns in the CREATE TABLE
+            columnList.append(getColumnName(fieldname)).append(",");
+        }
+
+        String columns1 = columnList.toString();
+        insertStatement.append(columns1.substring(0, columns1.length() - 1));   // append the column list to the INSERT
+        insertStatement.append(") VALUES "); // append the close PAREN and VALUES
 
+        return insertStatement.toString();
+    }
+
+    /**
+     * Append the values of a row, in parens. Numbers go in as-is, empty values become NULL and anything else is
+     * quoted (with any single quotes doubled up, or the statement breaks).
+     *
+     * @param scanner TdatRowScanner that just scanned the line
+     * @param line    the line
+     * @param sb      StringBuilder to append to
+     */
+    private static void appendValues(TdatRowScanner scanner, CharSequence line, StringBuilder sb) {
+        sb.append("(");
+        for (int i = 0; i < scanner.getFieldCount(); i++) {
+            int start = scanner.getStart(i);
+            int end = scanner.getEnd(i);
+            if (isNumber(line, start, end)) {
+                sb.append(line, start, end);
+            } else if (start == end) {
+                sb.append("NULL");
+            } else {
+                sb.append("'");
+                for (int j = start; j < end; j++) {
+                    char c = line.charAt(j);
+                    if (c == '\'') {
+                        sb.append('\'');
+                    }
+                    sb.append(c);
+                }
+                sb.append("'");
+            }
+            sb.append(",");
         }
+        if (scanner.getFieldCount() > 0) {
+            sb.setLength(sb.length() - 1);
+        }
+        sb.append(")");
+    }
 
-        return ++counter;
+    /**
+     * Get the number of lines to skip to get past the header, i.e. the line number of <DATA>
+     *
+     * @param filename String representing the filename of the TDAT file
+     * @return number of lines up to and including <DATA>
+     */
+    public static int getDataStartLine(String filename) {
+        TdatHeader header = readHeader(filename);
+        return (header == null) ? 1 : header.getDataLine();
     }
 
     /**
@@ -435,8 +550,19 @@ public class TdatProcessor {
      * @return a String representing the LOAD DATA INFILE statement
      */
     public static String createLoadInfileStatement(String filename, String tableName, Map<String, String> columnDefs) {
+        return createLoadInfileStatement(filename, getDataStartLine(filename), tableName, columnDefs);
+    }
 
-        int startLine = getDataStartLine(filename);
+    /**
+     * Create the LOAD DATA INFILE statement, when the number of header lines is already known (from a TdatHeader)
+     *
+     * @param filename   String representing the filename of the HEASARC file
+     * @param startLine  number of lines to skip
+     * @param tableName  String representing the name of the table
+     * @param columnDefs Map<String, String> containing the column names and data types
+     * @return a String representing the LOAD DATA INFILE statement
+     */
+    public static String createLoadInfileStatement(String filename, int startLine, String tableName, Map<String, String> columnDefs) {
 
         StringBuilder stmt = new StringBuilder();
         stmt.append("LOAD DATA LOCAL INFILE '").append(filename).append("' INTO TABLE ").append(tableName).append("\r\n");
@@ -500,66 +626,133 @@ public class TdatProcessor {
         }
 
         Console console = System.console();
+        if (console == null) {
+            // no terminal (cron, CI, etc), so there's nobody to ask. Go with the defaults instead of blowing up
+            System.out.println("No console available, converting with the default settings. See BatchConverter for options.");
+            System.exit(BatchConverter.fromArgs(new String[]{"-o", outputdir, args[0]}).run() ? 0 : 1);
+        }
 
-        String tableName = getTableName(filename1);
-        Map<String, String> columnMap = createColumnMap(filename1);
+        // read the header once, everything else works from it
+        TdatHeader header = readHeader(filename1);
+        if (header == null) {
+            System.exit(0);
+        }
+        if (getTableName(header) == null) {
+            System.out.println("Table name pattern not found");
+            System.exit(0);
+        }
+        Map<String, String> columnMap = createColumnMap(header);
 
         String mysqlSpecific = console.readLine("Do you wish to generate MySQL-Specific extensions? (Y/N, Default Y) ");
-        String tableDef;
-        List<String> insertStatements = new ArrayList<String>();
-        String loadStatement = "";
-        if (mysqlSpecific.isEmpty() || mysqlSpecific.substring(0, 1).equalsIgnoreCase("N")) {
-            tableDef = createTableDefinition(tableName, columnMap, false);
-            insertStatements = createInsertStatements2(filename1, tableName, columnMap);
-        } else {
-            tableDef = createTableDefinition(tableName, columnMap, true);
+        boolean useMysql = !(mysqlSpecific.isEmpty() || mysqlSpecific.substring(0, 1).equalsIgnoreCase("N"));
+        boolean generateInserts = true;
+        if (useMysql) {
             // offer user the option to generate SQL statements even in mysql (SLOW AS HELL FOR LARGE TDATS)
             String slowWay = console.readLine("Do you wish to generate insert statements (not recommended, LOAD DATA INFILE is faster) (Y/N)? ");
-            if (slowWay.isEmpty() || !slowWay.substring(0, 1).equalsIgnoreCase("Y")) {
-                loadStatement = createLoadInfileStatement(filename1, tableName, columnMap);
-            } else {
-                insertStatements = createInsertStatements2(filename1, tableName, columnMap);
-            }
+            generateInserts = !(slowWay.isEmpty() || !slowWay.substring(0, 1).equalsIgnoreCase("Y"));
         }
 
-        String alterStatement = createAlterStatement(tableName);
-        String firstColumn = (String) columnMap.keySet().toArray()[0];
-        String deleteEnd = "DELETE FROM " + tableName + " WHERE " + firstColumn + "='<END>';";
+        int batchSize = DEFAULT_BATCH_SIZE;
+        if (generateInserts) {
+            String batch = console.readLine("How many rows per INSERT statement? (Default " + DEFAULT_BATCH_SIZE + ") ");
+            if (!batch.trim().isEmpty()) {
+                try {
+                    batchSize = Math.max(1, Integer.parseInt(batch.trim()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Not a number, using " + DEFAULT_BATCH_SIZE);
+                }
+            }
+        }
 
         String dropColumns = console.readLine("Do you wish to drop columns from the generated table (Y/N)? ");
-        StringBuilder dropStatement = new StringBuilder();
+        List<String> columnsToDrop = new ArrayList<String>();
         if (dropColumns.substring(0, 1).equalsIgnoreCase("Y")) {
-            dropStatement.append("ALTER TABLE ").append(tableName).append(" ");
             for (String column : columnMap.keySet()) {
                 // make sure they don't get to drop the ID column
                 if (!column.equalsIgnoreCase("ID")) {
                     String query = console.readLine("Drop column " + column + " (Y/N)? ");
                     if (query.substring(0, 1).equalsIgnoreCase("Y")) {
-                        dropStatement.append("DROP COLUMN ").append(column).append(", ");
+                        columnsToDrop.add(column);
                     }
                 }
             }
         }
 
+        try {
+            String output = writeScript(header, filename1, outputdir, useMysql, generateInserts, batchSize, columnsToDrop);
+            System.out.println("File output to " + output);
+        } catch (IOException e) {
+            System.out.println("IOException: Program terminated.");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Write the .sql script for a TDAT file: the table definition, then either a LOAD DATA INFILE or the INSERT
+     * statements, then the statements to clean up afterwards. Used by both the interactive main() and the
+     * BatchConverter, so once the questions are answered there's no more user interaction.
+     *
+     * @param header          TdatHeader of the TDAT file
+     * @param filename        String representing the filename of the TDAT file (for LOAD DATA INFILE)
+     * @param outputdir       directory to write to, including the trailing separator
+     * @param mysqlSpecific   whether to use MySQL-specific syntax. If not, INSERT statements are always generated
+     * @param generateInserts whether to generate INSERT statements instead of LOAD DATA INFILE
+     * @param batchSize       rows per INSERT statement
+     * @param columnsToDrop   TDAT field names of the columns to drop after loading, may be empty
+     * @return the name of the file written
+     * @throws IOException if the TDAT can't be read or the script can't be written, or the header has no
+     *                     heasarc_ table name. Nothing is left behind if the script couldn't be finished.
+     */
+    public static String writeScript(TdatHeader header, String filename, String outputdir, boolean mysqlSpecific,
+                                     boolean generateInserts, int batchSize, Collection<String> columnsToDrop) throws IOException {
+
+        String tableName = getTableName(header);
+        if (tableName == null) {
+            throw new IOException("Table name pattern not found in " + header.getFile());
+        }
+        Map<String, String> columnMap = createColumnMap(header);
+
+        String tableDef = createTableDefinition(tableName, columnMap, mysqlSpecific);
+        String loadStatement = "";
+        if (!mysqlSpecific) {
+            generateInserts = true;
+        } else if (!generateInserts) {
+            loadStatement = createLoadInfileStatement(filename, header.getDataLine(), tableName, columnMap);
+        }
+
+        String alterStatement = createAlterStatement(tableName);
+        String firstColumn = (String) columnMap.keySet().toArray()[0];
+        String deleteEnd = "DELETE FROM " + tableName + " WHERE " + getColumnName(firstColumn) + "='<END>';";
+
+        StringBuilder dropStatement = new StringBuilder();
+        for (String column : columnsToDrop) {
+            // make sure nobody gets to drop the ID column
+            if (!column.equalsIgnoreCase("ID")) {
+                if (dropStatement.length() == 0) {
+                    dropStatement.append("ALTER TABLE ").append(tableName).append(" ");
+                }
+                dropStatement.append("DROP COLUMN ").append(getColumnName(column)).append(", ");
+            }
+        }
+
         // kill the trailing comma
         String dropColumnStatement = null;
         if (dropStatement.length() > 0) {
             dropColumnStatement = dropStatement.substring(0, dropStatement.lastIndexOf(",")) + ";";
         }
 
+        String output = outputdir + tableName + ".sql";
+        Writer writer = new BufferedWriter(new FileWriter(output), 1 << 16);
+        boolean finished = false;
         try {
-            Writer writer = new BufferedWriter(new FileWriter(outputdir + tableName + ".sql"));
             writer.write(tableDef);
             writer.write("\r\n");
             if (!loadStatement.isEmpty()) {
                 writer.write(loadStatement);
             } else {
-                if (!insertStatements.isEmpty()) {
-                    for (String stmt : insertStatements) {
-                        writer.write(stmt);
-                        writer.write("\r\n");
-                    }
-                }
+                // statements go straight to the file as the rows are read
+                int rows = writeInsertStatements(header, tableName, columnMap, writer, batchSize);
+                System.out.println("Wrote " + rows + " rows for " + tableName);
             }
             writer.write("\r\n");
             writer.write(alterStatement);
@@ -572,14 +765,15 @@ public class TdatProcessor {
                 writer.write(dropColumnStatement);
                 writer.write("\r\n");
             }
+            finished = true;
+        } finally {
             writer.close();
-        } catch (IOException e) {
-            System.out.println("IOException: Program terminated.");
-            System.exit(0);
+            // half a script is worse than none, somebody might run it
+            if (!finished) {
+                new File(output).delete();
+            }
         }
 
-        System.out.println("File output to " + outputdir + tableName + ".sql");
-
-
+        return output;
     }
 }
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2mysql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks one bad file in a batch is reported as failed without taking the rest of the batch down with it.
+ *
+ * @author Jason Ferguson
+ * @since 0.4.1
+ */
+public class BatchConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void oddTableNameFailsOnlyThatFile() throws IOException {
+        File first = writeTdat("first.tdat", "heasarc_first");
+        File odd = writeTdat("odd.tdat", "odd_table");
+        File last = writeTdat("last.tdat", "heasarc_last");
+        File outputDir = folder.newFolder("sql");
+
+        BatchConverter converter = BatchConverter.fromArgs(new String[]{"-o", outputDir.getPath(), "-t", "2", "-g",
+                first.getPath(), odd.getPath(), last.getPath()});
+
+        String output;
+        boolean converted;
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            converted = converter.run();
+        } finally {
+            System.setOut(out);
+            output = captured.toString();
+        }
+
+        assertFalse(converted);
+        assertTrue(output, output.contains(odd.getPath() + " FAILED: "));
+        assertTrue(output, output.contains("Converted 2 of 3 files"));
+
+        assertTrue(new File(outputDir, "first.sql").isFile());
+        assertTrue(new File(outputDir, "last.sql").isFile());
+        String[] written = outputDir.list();
+        assertEquals(2, written.length);
+    }
+
+    @Test
+    public void goodFilesSucceed() throws IOException {
+        File first = writeTdat("first.tdat", "heasarc_first");
+        File outputDir = folder.newFolder("sql");
+
+        assertTrue(BatchConverter.fromArgs(new String[]{"-o", outputDir.getPath(), "-g", first.getPath()}).run());
+        assertTrue(new File(outputDir, "first.sql").isFile());
+    }
+
+    private File writeTdat(String name, String tableName) throws IOException {
+        File file = folder.newFile(name);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+        try {
+            writer.print("<HEADER>\n");
+            writer.print("table_name = " + tableName + "\n");
+            writer.print("field[id] = int4  [meta.id] (index) // Id\n");
+            writer.print("field[name] = char10  [meta.id;meta.main] (index) // Name\n");
+            writer.print("line[1] = id name\n");
+            writer.print("<DATA>\n");
+            for (int i = 0; i < 10; i++) {
+                writer.print(i + "|star " + i + "|\n");
+            }
+            writer.print("<END>\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
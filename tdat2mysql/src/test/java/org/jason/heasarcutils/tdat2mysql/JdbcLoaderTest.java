@@ -0,0 +1,256 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.tdat2mysql;
+
+import org.jason.heasarcutils.common.tdat.TdatHeader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads a generated TDAT file into an in-memory H2 database, using the DDL TdatProcessor generates, and checks
+ * what ended up in the table.
+ *
+ * @author Jason Ferguson
+ * @since 0.4.1
+ */
+public class JdbcLoaderTest {
+
+    private static final int ROWS = 1234;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File tdat;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        tdat = folder.newFile("heasarc_loadtest.tdat");
+        writeTdat(tdat);
+        connection = DriverManager.getConnection("jdbc:h2:mem:loadtest", "sa", "");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void loadsEveryRowOverSeveralBatchesAndCommits() throws Exception {
+        TdatHeader header = TdatHeader.read(tdat);
+        String tableName = TdatProcessor.getTableName(header);
+        Map<String, String> columnMap = TdatProcessor.createColumnMap(header);
+
+        JdbcLoader loader = new JdbcLoader(connection);
+        // 13 batches, and a commit every 3 of them
+        loader.setBatchSize(100);
+        loader.setCommitInterval(250);
+
+        String output;
+        long rows;
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            rows = loader.load(header, tableName, columnMap);
+        } finally {
+            System.setOut(out);
+            output = captured.toString();
+        }
+
+        assertEquals("loadtest", tableName);
+        assertEquals(ROWS, rows);
+        assertEquals(ROWS, queryLong("SELECT COUNT(*) FROM loadtest"));
+
+        // progress after each commit, then the total
+        assertTrue(output, output.contains("Loaded 300 rows ("));
+        assertTrue(output, output.contains("Loaded 1200 rows ("));
+        assertTrue(output, output.contains("Loaded " + ROWS + " rows into loadtest in "));
+        assertTrue(output, output.contains(" rows/sec)"));
+
+        long idSum = 0;
+        long seqSum = 0;
+        BigDecimal decSum = BigDecimal.ZERO;
+        BigDecimal raSum = BigDecimal.ZERO;
+        int emptyDecs = 0;
+        int emptyNames = 0;
+        for (int i = 0; i < ROWS; i++) {
+            idSum += getId(i);
+            if (i < ROWS - 1) {
+                seqSum += getSeq(i);
+                raSum = raSum.add(new BigDecimal(getRa(i)));
+            }
+            if (getDec(i).length() == 0) {
+                emptyDecs++;
+            } else {
+                decSum = decSum.add(new BigDecimal(getDec(i)));
+            }
+            if (i == ROWS - 1 || getName(i).length() == 0) {
+                emptyNames++;
+            }
+        }
+
+        assertEquals(idSum, queryLong("SELECT SUM(id) FROM loadtest"));
+        assertEquals(seqSum, queryLong("SELECT SUM(seq) FROM loadtest"));
+        assertEquals(0, decSum.compareTo(queryDecimal("SELECT SUM(decdeg) FROM loadtest")));
+        assertEquals(0, raSum.compareTo(queryDecimal("SELECT SUM(radec) FROM loadtest")));
+
+        // empty fields, and the ones missing off the end of the short last row, go in as NULL
+        assertEquals(emptyDecs, queryLong("SELECT COUNT(*) FROM loadtest WHERE decdeg IS NULL"));
+        assertEquals(emptyNames, queryLong("SELECT COUNT(*) FROM loadtest WHERE name IS NULL"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM loadtest WHERE radec IS NULL AND seq IS NULL"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM loadtest WHERE name = ''"));
+    }
+
+    @Test
+    public void loadingAgainReplacesTheTable() throws Exception {
+        TdatHeader header = TdatHeader.read(tdat);
+        JdbcLoader loader = new JdbcLoader(connection);
+        loader.load(header, "loadtest", TdatProcessor.createColumnMap(header));
+        loader.load(header, "loadtest", TdatProcessor.createColumnMap(header));
+
+        assertEquals(ROWS, queryLong("SELECT COUNT(*) FROM loadtest"));
+    }
+
+    @Test
+    public void failedLoadDropsTheTable() throws Exception {
+        // a name too long for its column, well after the first commit
+        File bad = folder.newFile("heasarc_badload.tdat");
+        writeTdat(bad, 1000);
+        TdatHeader header = TdatHeader.read(bad);
+        JdbcLoader loader = new JdbcLoader(connection);
+        loader.setBatchSize(100);
+        loader.setCommitInterval(250);
+        try {
+            loader.load(header, "loadtest", TdatProcessor.createColumnMap(header));
+            fail("Loaded a value too long for its column");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'LOADTEST'"));
+        assertTrue(connection.getAutoCommit());
+
+        // a table that was already there and couldn't be replaced is left alone
+        loader.load(TdatHeader.read(tdat), "loadtest", TdatProcessor.createColumnMap(header));
+        loader.setDropExisting(false);
+        try {
+            loader.load(header, "loadtest", TdatProcessor.createColumnMap(header));
+            fail("Created a table that was already there");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(ROWS, queryLong("SELECT COUNT(*) FROM loadtest"));
+    }
+
+    @Test
+    public void runReportsFailure() {
+        assertTrue(JdbcLoader.run(new String[]{tdat.getPath(), "jdbc:h2:mem:runtest", "sa", "", "50", "100"}));
+        assertFalse(JdbcLoader.run(new String[]{tdat.getPath(), "jdbc:nosuchdatabase:test"}));
+        assertFalse(JdbcLoader.run(new String[]{new File(folder.getRoot(), "missing.tdat").getPath(),
+                "jdbc:h2:mem:runtest"}));
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private BigDecimal queryDecimal(String sql) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            assertTrue(rs.next());
+            return rs.getBigDecimal(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static void writeTdat(File file) throws IOException {
+        writeTdat(file, -1);
+    }
+
+    /**
+     * @param badRow row to give a name too long for the column, or -1 for none
+     */
+    private static void writeTdat(File file, int badRow) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+        try {
+            writer.print("<HEADER>\n");
+            writer.print("#\n");
+            writer.print("table_name = heasarc_loadtest\n");
+            writer.print("table_description = \"JdbcLoader test\"\n");
+            writer.print("field[dec] = float8:.4f_degree [pos.eq.dec;meta.main] (index) // Declination\n");
+            writer.print("field[id] = int2  [meta.id] (index) // Small id\n");
+            writer.print("field[name] = char10  [meta.id;meta.main] (index) // Source designation\n");
+            writer.print("field[ra] = float8:.4f_degree [pos.eq.ra;meta.main] (index) // Right Ascension\n");
+            writer.print("field[seq] = int8  [meta.id] // Big id\n");
+            writer.print("#\n");
+            writer.print("line[1] = dec id name ra seq\n");
+            writer.print("<DATA>\n");
+            for (int i = 0; i < ROWS - 1; i++) {
+                String name = (i == badRow) ? "far too long for ten characters" : getName(i);
+                writer.print(getDec(i) + "|" + getId(i) + "|" + name + "|" + getRa(i) + "|" + getSeq(i) + "|\n");
+            }
+            // a short row, everything after id is missing
+            writer.print(getDec(ROWS - 1) + "|" + getId(ROWS - 1) + "|\n");
+            writer.print("<END>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String getDec(int i) {
+        return (i % 7 == 0) ? "" : (i % 180 - 90) + "." + (i % 10000);
+    }
+
+    private static int getId(int i) {
+        return i % 1000;
+    }
+
+    private static String getName(int i) {
+        return (i % 5 == 0) ? "" : "star " + i;
+    }
+
+    private static String getRa(int i) {
+        return (i % 360) + "." + (i % 4 * 25);
+    }
+
+    private static long getSeq(int i) {
+        return 10000000000L + i;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2011 Jason Ferguson.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jason.heasarcutils.vizier2json;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A catalog's field layout from vizier.xml, compiled into int arrays once so that each line can be cut up in a
+ * single left-to-right pass. parseCatalog() used to look every field up in the HashMap, substring() and trim()
+ * it, and run a regex over the prefixed ones, for every line of the file.
+ * <p/>
+ * cut() only works out where each value starts and ends on the line (already trimmed, and with the leading
+ * zeroes stripped for prefixed fields), nothing gets copied until appendTo(). The fields come back in the same
+ * order the old code wrote them in (the iteration order of the catalog's field map), so the JSON doesn't change.
+ * <p/>
+ * Keeps the offsets of the last line cut, so one instance per thread.
+ *
+ * @author Jason Ferguson
+ * @since 0.1
+ */
+public class FieldSlices {
+
+    private final String[] names;
+    private final String[] prefixes;
+
+    // in cut order, sorted by start column. starts are 0-based, ends exclusive, same as substring()
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] fields;
+
+    // offsets of each field on the last line cut, -1 if the line ended before the field did start
+    private final int[] valueStarts;
+    private final int[] valueEnds;
+
+    /**
+     * Compile a catalog's layout
+     *
+     * @param catalog the catalog from vizier.xml
+     * @throws IllegalArgumentException if a field starts before column 1, or starts after it ends
+     */
+    public FieldSlices(Catalog catalog) {
+        Map<String, FieldData> fieldData = catalog.getFieldData();
+        int count = fieldData.size();
+        names = new String[count];
+        prefixes = new String[count];
+        final int[] fieldStarts = new int[count];
+        int[] fieldEnds = new int[count];
+
+        int field = 0;
+        for (Map.Entry<String, FieldData> entry : fieldData.entrySet()) {
+            FieldData data = entry.getValue();
+            if (data.getStart() < 1 || data.getStart() - 1 > data.getEnd()) {
+                throw new IllegalArgumentException("Field " + entry.getKey() + " in catalog " + catalog.getName()
+                        + " has a bad start/end: " + data.getStart() + "/" + data.getEnd());
+            }
+            names[field] = entry.getKey();
+            prefixes[field] = catalog.getPrefixes().get(entry.getKey());
+            fieldStarts[field] = data.getStart() - 1;
+            fieldEnds[field] = data.getEnd();
+            field++;
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return fieldStarts[a] < fieldStarts[b] ? -1 : (fieldStarts[a] == fieldStarts[b] ? 0 : 1);
+            }
+        });
+
+        starts = new int[count];
+        ends = new int[count];
+        fields = new int[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = order[i];
+            starts[i] = fieldStarts[order[i]];
+            ends[i] = fieldEnds[order[i]];
+        }
+
+        valueStarts = new int[count];
+        valueEnds = new int[count];
+    }
+
+    /**
+     * Cut a line up. A field the line ends before doesn't show up at all, one the line ends in the middle of
+     * gets whatever is there.
+     *
+     * @param line the line, without the line terminator
+     */
+    public void cut(CharSequence line) {
+        int length = line.length();
+        for (int i = 0; i < starts.length; i++) {
+            int field = fields[i];
+            int start = starts[i];
+            if (start > length) {
+                valueStarts[field] = -1;
+                continue;
+            }
+            int end = Math.min(ends[i], length);
+
+            // same as trim()
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (prefixes[field] != null) {
+                // what replaceFirst("^0+", "") and another trim() did
+                while (start < end && line.charAt(start) == '0') {
+                    start++;
+                }
+                while (start < end && line.charAt(start) <= ' ') {
+                    start++;
+                }
+            }
+            valueStarts[field] = start;
+            valueEnds[field] = end;
+        }
+    }
+
+    /**
+     * @return number of fields, present on the last line or not
+     */
+    public int getFieldCount() {
+        return names.length;
+    }
+
+    public String getName(int field) {
+        return names[field];
+    }
+
+    /**
+     * @param field the field
+     * @return false if the last line cut ended before the field started
+     */
+    public boolean isPresent(int field) {
+        return valueStarts[field] != -1;
+    }
+
+    /**
+     * Append a field's value from the last line cut, with its prefix if it has one
+     *
+     * @param line  the line that was cut
+     * @param field the field
+     * @param sb    where the value goes
+     * @return sb
+     */
+    public StringBuilder appendTo(CharSequence line, int field, StringBuilder sb) {
+        if (prefixes[field] != null) {
+            sb.append(prefixes[field]);
+        }
+        return sb.append(line, valueStarts[field], valueEnds[field]);
+    }
+}
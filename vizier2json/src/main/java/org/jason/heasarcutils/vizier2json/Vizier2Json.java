@@ -15,6 +15,16 @@
  */
 package org.jason.heasarcutils.vizier2json;
 
+import org.jason.heasarcutils.common.column.ColumnarCache;
+import org.jason.heasarcutils.common.column.ColumnarCatalog;
+import org.jason.heasarcutils.common.column.ColumnarCatalogBuilder;
+import org.jason.heasarcutils.common.column.ColumnType;
+import org.jason.heasarcutils.common.io.DownloadCache;
+import org.jason.heasarcutils.common.io.JsonRecordWriter;
+import org.jason.heasarcutils.common.io.ReadAheadInputStream;
+import org.jason.heasarcutils.common.stats.ImportStats;
+import org.jason.heasarcutils.common.stats.StageClock;
+import org.jason.heasarcutils.common.text.NumberScanner;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -25,13 +35,11 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
 import java.math.BigDecimal;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Utility to convert Vizier catalog data to JSON format for use with MongoDB/Other JSON utilities
@@ -45,6 +53,15 @@ public class Vizier2Json {
     private static Document dom;
     private static Map<String, Catalog> catalogMap = new HashMap<String, Catalog>();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // vizier2json has always put an empty line after each record in the .json file
+    private static final byte[] RECORD_SEPARATOR = {'\r', '\n'};
+
+    private final NumberScanner numberScanner = new NumberScanner();
+    private final StringBuilder numberText = new StringBuilder(32);
+    private final StringBuilder value = new StringBuilder(64);
+
     public Vizier2Json() {
 
 
@@ -63,52 +80,13 @@ public class Vizier2Json {
 
     public static Map<String, Catalog> parseConfig() {
 
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try {
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            dom = db.parse(new File(config));
-            Element document = dom.getDocumentElement();
-            // get the <catalog> tags
-            NodeList catalogNodes = document.getElementsByTagName("catalog");
-            if (catalogNodes != null && catalogNodes.getLength() > 0) {
-                // for every catalog element...
-                for (int i = 0; i < catalogNodes.getLength(); i++) {
-                    // get the <catalog> at position i
-                    Element catalogNode = (Element) catalogNodes.item(i);
-                    Catalog catalog = new Catalog();
-
-                    // set the easy stuff
-                    catalog.setName(getTextValue(catalogNode, "name"));
-                    catalog.setUrl(getTextValue(catalogNode, "url"));
-
-                    // get the <fieldsNode> tag for this catalog
-                    Element fieldsNode = (Element) catalogNode.getElementsByTagName("fields").item(0);
-
-                    // get a nodelist of all of the <field> tags within the <fieldsNode> parent tag
-                    NodeList individualFieldNodes = fieldsNode.getElementsByTagName("field");
-                    // for each field within fieldsNode...
-                    for (int j = 0; j < individualFieldNodes.getLength(); j++) {
-                        // get the <field> tag
-                        Element individualFieldNode = (Element) individualFieldNodes.item(j);
-                        // process the name, start, and end attributes
-                        String ifName = individualFieldNode.getAttribute("name");
-                        Integer ifStart = new Integer(individualFieldNode.getAttribute("start"));
-                        Integer ifEnd = new Integer(individualFieldNode.getAttribute("end"));
-                        String ifPrefix = individualFieldNode.getAttribute("prefix");
-
-                        // add a new entry to the Catalog's field map
-                        catalog.getFieldData().put(ifName, new FieldData(ifStart, ifEnd));
-
-                        // add the name and prefix to the catalog's prefix map
-                        if (ifPrefix != null && !ifPrefix.isEmpty()) {
-                            catalog.getPrefixes().put(ifName, ifPrefix);
-                        }
-                    }
-
-                    catalogMap.put(catalog.getName(), catalog);
-                }
+            InputStream in = new FileInputStream(config);
+            try {
+                catalogMap.putAll(parseConfig(in));
+            } finally {
+                in.close();
             }
-
         } catch (ParserConfigurationException e) {
             e.printStackTrace();
         } catch (SAXException ex) {
@@ -120,72 +98,253 @@ public class Vizier2Json {
 
     }
 
+    /**
+     * Read the catalog definitions out of a vizier.xml
+     *
+     * @param in the xml
+     * @return the catalogs, by name
+     */
+    public static Map<String, Catalog> parseConfig(InputStream in) throws ParserConfigurationException, SAXException,
+            IOException {
+
+        Map<String, Catalog> catalogs = new HashMap<String, Catalog>();
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        dom = db.parse(in);
+        Element document = dom.getDocumentElement();
+        // get the <catalog> tags
+        NodeList catalogNodes = document.getElementsByTagName("catalog");
+        if (catalogNodes != null && catalogNodes.getLength() > 0) {
+            // for every catalog element...
+            for (int i = 0; i < catalogNodes.getLength(); i++) {
+                // get the <catalog> at position i
+                Element catalogNode = (Element) catalogNodes.item(i);
+                Catalog catalog = new Catalog();
+
+                // set the easy stuff
+                catalog.setName(getTextValue(catalogNode, "name"));
+                catalog.setUrl(getTextValue(catalogNode, "url"));
+
+                // get the <fieldsNode> tag for this catalog
+                Element fieldsNode = (Element) catalogNode.getElementsByTagName("fields").item(0);
+
+                // get a nodelist of all of the <field> tags within the <fieldsNode> parent tag
+                NodeList individualFieldNodes = fieldsNode.getElementsByTagName("field");
+                // for each field within fieldsNode...
+                for (int j = 0; j < individualFieldNodes.getLength(); j++) {
+                    // get the <field> tag
+                    Element individualFieldNode = (Element) individualFieldNodes.item(j);
+                    // process the name, start, and end attributes
+                    String ifName = individualFieldNode.getAttribute("name");
+                    Integer ifStart = new Integer(individualFieldNode.getAttribute("start"));
+                    Integer ifEnd = new Integer(individualFieldNode.getAttribute("end"));
+                    String ifPrefix = individualFieldNode.getAttribute("prefix");
+
+                    // add a new entry to the Catalog's field map
+                    catalog.getFieldData().put(ifName, new FieldData(ifStart, ifEnd));
+
+                    // add the name and prefix to the catalog's prefix map
+                    if (ifPrefix != null && !ifPrefix.isEmpty()) {
+                        catalog.getPrefixes().put(ifName, ifPrefix);
+                    }
+                }
+
+                catalogs.put(catalog.getName(), catalog);
+            }
+        }
+        return catalogs;
+    }
+
     public void parseCatalog(String catalogName) {
+        parseCatalog(catalogName, false);
+    }
+
+    /**
+     * Convert a catalog to (catalogName).json, or a gzipped (catalogName).json.gz
+     *
+     * @param catalogName name of the catalog in vizier.xml
+     * @param gzip        true to gzip the output
+     */
+    public void parseCatalog(String catalogName, boolean gzip) {
+        parseCatalog(catalogName, gzip, new ImportStats(catalogName));
+    }
+
+    /**
+     * Convert a catalog to (catalogName).json, or a gzipped (catalogName).json.gz, timing each stage
+     *
+     * @param catalogName name of the catalog in vizier.xml
+     * @param gzip        true to gzip the output
+     * @param stats       where the timings and counts go. Finished when this returns.
+     */
+    public void parseCatalog(String catalogName, boolean gzip, ImportStats stats) {
 
         Catalog catalog = catalogMap.get(catalogName);
         if (catalog == null) {
             throw new IllegalArgumentException("Catalog Not Found in Configuration: " + catalogName);
         }
+        parseCatalog(catalog, gzip, stats);
+    }
+
+    /**
+     * Convert a catalog that doesn't have to be in the configuration (one out of parseConfig(InputStream), say)
+     * to (name).json, or a gzipped (name).json.gz, timing each stage
+     *
+     * @param catalog the catalog. Its url can be a file: URL or a plain file name as well.
+     * @param gzip    true to gzip the output
+     * @param stats   where the timings and counts go. Finished when this returns.
+     */
+    public void parseCatalog(Catalog catalog, boolean gzip, ImportStats stats) {
+        convert(catalog, gzip, stats, false);
+    }
+
+    /**
+     * Convert a catalog to JSON like parseCatalog() does, and build a ColumnarCatalog of it from the same rows on
+     * the way. vizier.xml doesn't say what type anything is, so a column comes out as numbers if every value in
+     * it is one, and Strings otherwise. The catalog is saved in the ColumnarCache for loadCatalog().
+     *
+     * @param catalog the catalog
+     * @param gzip    true to gzip the output
+     * @param stats   where the timings and counts go. Finished when this returns.
+     * @return the catalog's columns, or null if it couldn't be converted
+     */
+    public ColumnarCatalog importCatalog(Catalog catalog, boolean gzip, ImportStats stats) {
+        return convert(catalog, gzip, stats, true);
+    }
+
+    /**
+     * Get a catalog's columns, mapped in from the ColumnarCache if an earlier import left them there and the
+     * download they came from is still current. Otherwise the catalog is imported (JSON and all) like
+     * importCatalog() does, which caches it for next time.
+     *
+     * @param catalog the catalog
+     * @param gzip    true to gzip the output if it has to be imported
+     * @param stats   where the timings and counts go. Finished when this returns.
+     * @return the catalog's columns, or null if it couldn't be converted
+     */
+    public ColumnarCatalog loadCatalog(Catalog catalog, boolean gzip, ImportStats stats) {
+        try {
+            // the download cache checks with Vizier, and falls back on the copy it has if Vizier can't be reached
+            long start = System.nanoTime();
+            File file = DownloadCache.getDefault().get(catalog.getUrl());
+            stats.stage(ImportStats.DOWNLOAD).add(System.nanoTime() - start, file.length());
+
+            start = System.nanoTime();
+            ColumnarCatalog columns = ColumnarCache.getDefault().get(catalog.getName(), file);
+            if (columns != null) {
+                stats.stage(ImportStats.CACHE_MAP).add(System.nanoTime() - start,
+                        ColumnarCache.getDefault().getFile(catalog.getName()).length());
+                stats.setRows(columns.getRowCount(), 0);
+                stats.finish();
+                return columns;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return importCatalog(catalog, gzip, stats);
+    }
+
+    private ColumnarCatalog convert(Catalog catalog, boolean gzip, ImportStats stats, boolean columns) {
+
+        String catalogName = catalog.getName();
         String fileurl = catalog.getUrl();
-        Map<String, FieldData> fieldMap = catalog.getFieldData();
+        FieldSlices slices = new FieldSlices(catalog);
+        ColumnarCatalog result = null;
+        BufferedReader isReader = null;
+        JsonRecordWriter writer = null;
 
         try {
-            URL url = new URL(fileurl);
-            URLConnection conn = url.openConnection();
-            InputStream is = conn.getInputStream();
-            GZIPInputStream gzis = new GZIPInputStream(is);
-            BufferedReader isReader = new BufferedReader(new InputStreamReader(gzis));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(catalogName + ".json"));
+            // the download cache only fetches the file again if Vizier has a newer one. Reading and inflating
+            // it happen on threads of their own, this one just parses.
+            long start = System.nanoTime();
+            File file = DownloadCache.getDefault().get(fileurl);
+            stats.stage(ImportStats.DOWNLOAD).add(System.nanoTime() - start, file.length());
+            stats.addBytesIn(file.length());
+            InputStream gzis = ReadAheadInputStream.gunzip(new FileInputStream(file), stats);
+            isReader = new BufferedReader(new InputStreamReader(gzis), 1 << 16);
+            writer = JsonRecordWriter.open(catalogName, gzip);
+            writer.setWriteStage(stats.stage(ImportStats.WRITE));
+
+            ColumnarCatalogBuilder builder = null;
+            String[] values = null;
+            if (columns) {
+                String[] names = new String[slices.getFieldCount()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = slices.getName(i);
+                }
+                builder = new ColumnarCatalogBuilder(catalogName, names, (ColumnType[]) null);
+                values = new String[names.length];
+            }
+
+            // cutting the line up happens in writeRecord() too, so it all counts as format
+            StageClock clock = stats.newClock();
+            StageClock.Lap read = clock.lap(ImportStats.READ, ImportStats.INPUT_WAIT);
+            StageClock.Lap format = clock.lap(ImportStats.FORMAT, ImportStats.WRITE);
+            StageClock.Lap store = (builder == null) ? null : clock.lap(ImportStats.COLUMNS);
+            clock.start();
+
+            long rows = 0;
             String line;
             while ((line = isReader.readLine()) != null) {
-                Map<String, String> resultMap = new LinkedHashMap<String, String>();
-
-                int lineLength = line.length();
-                // dump the raw values into the result map based on the configuration data
-                for (String fieldKey : fieldMap.keySet()) {
-                    FieldData fieldData = fieldMap.get(fieldKey);
-                    int start = fieldData.getStart() - 1;
-                    int end = fieldData.getEnd();
-                    // the record may end before the definition in the xml
-                    if (lineLength >= start) {
-                        if (lineLength <= end) {
-                            String value = line.substring(start);
-                            resultMap.put(fieldKey, value.trim());
-                        } else {
-                            String value = line.substring(start, end);
-                            resultMap.put(fieldKey, value.trim());
-                        }
+                read.end();
+                writeRecord(slices, line, writer);
+                writer.write(ByteBuffer.wrap(RECORD_SEPARATOR));
+                format.end();
+                if (builder != null) {
+                    // the slices are still cut at this line
+                    for (int i = 0; i < values.length; i++) {
+                        value.setLength(0);
+                        values[i] = slices.isPresent(i) ? slices.appendTo(line, i, value).toString() : null;
                     }
+                    builder.addRow(values);
+                    store.end();
                 }
-                // process the values in the result map before we put them into the json output
-                // deal with the prefixes
-                Map<String, String> prefixMap = catalog.getPrefixes();
-                for (String key : prefixMap.keySet()) {
-                    String value = resultMap.get(key);
-                    if (value != null) {
-                        value = value.replaceFirst("^0+", "");
-                        value = prefixMap.get(key) + value.trim();
-                        resultMap.put(key, value);
-                    }
+                if (++rows % 10000 == 0) {
+                    stats.setRows(rows, 0);
                 }
-                String jsonLine = convertToJson(resultMap);
-                writer.write(jsonLine);
-                writer.write("\r\n");
             }
+            clock.stop();
+            stats.setRows(rows, 0);
 
             writer.close();
+            writer = null;
             isReader.close();
-            gzis.close();
-            is.close();
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+            isReader = null;
+            stats.addBytesOut(JsonRecordWriter.getFile(catalogName, gzip).length());
+
+            if (builder != null) {
+                start = System.nanoTime();
+                result = builder.build();
+                stats.stage(ImportStats.COLUMNS).add(System.nanoTime() - start);
+                try {
+                    start = System.nanoTime();
+                    File cached = ColumnarCache.getDefault().put(result, file);
+                    stats.stage(ImportStats.CACHE_WRITE).add(System.nanoTime() - start, cached.length());
+                } catch (IOException e) {
+                    System.out.println("Unable to cache the columns of " + catalogName + ": " + e.getMessage());
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
         } catch (StringIndexOutOfBoundsException e) {
             // I want this swallowed, even if it is a RuntimeException
             e.printStackTrace();
+        } finally {
+            // only still open if the conversion failed. Closing stops the reading threads (and the gzip ones).
+            closeQuietly(isReader);
+            closeQuietly(writer);
         }
+        stats.finish();
+        return result;
+    }
 
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // already failing
+            }
+        }
     }
 
     public static boolean isNumeric(String value) {
@@ -199,27 +358,80 @@ public class Vizier2Json {
     }
 
 
+    /**
+     * Convert a record to a line of JSON
+     *
+     * @param map the record's values, in output order
+     * @return the JSON, including the line terminator
+     */
     public String convertToJson(Map<String, String> map) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("{");
+        JsonRecordWriter writer = JsonRecordWriter.inMemory(256);
+        try {
+            writeRecord(map, writer);
+        } catch (IOException e) {
+            // can't happen, an in-memory writer never does any I/O
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer bytes = writer.toByteBuffer();
+        return new String(bytes.array(), 0, bytes.limit(), UTF_8);
+    }
+
+    /**
+     * Write a record as a line of JSON
+     *
+     * @param map    the record's values, in output order
+     * @param writer where the line goes
+     * @throws IOException if the writer couldn't write
+     */
+    public void writeRecord(Map<String, String> map, JsonRecordWriter writer) throws IOException {
+        writer.beginRecord();
         for (String key : map.keySet()) {
-            sb.append("\"").append(key).append("\":");
-            if (isNumeric(map.get(key))) {
-                if (isInteger(map.get(key))) {
-                    int number = new Integer(map.get(key).trim());
-                    sb.append(number).append(",");
-                } else {
-                    BigDecimal number = new BigDecimal(map.get(key).trim());
-                    sb.append(number).append(",");
+            writer.name(key);
+            writeValue(map.get(key), writer);
+        }
+        writer.endRecord();
+    }
+
+    /**
+     * Cut a line of a catalog up and write it as a line of JSON. Does the same as filling a map with the
+     * trimmed (and prefixed) fields and handing it to writeRecord(Map, JsonRecordWriter).
+     *
+     * @param slices the catalog's compiled field layout
+     * @param line   the line
+     * @param writer where the JSON goes
+     * @throws IOException if the writer couldn't write
+     */
+    public void writeRecord(FieldSlices slices, String line, JsonRecordWriter writer) throws IOException {
+        slices.cut(line);
+        writer.beginRecord();
+        for (int i = 0; i < slices.getFieldCount(); i++) {
+            if (slices.isPresent(i)) {
+                writer.name(slices.getName(i));
+                value.setLength(0);
+                writeValue(slices.appendTo(line, i, value), writer);
+            }
+        }
+        writer.endRecord();
+    }
+
+    private void writeValue(CharSequence value, JsonRecordWriter writer) throws IOException {
+        // same as isNumeric() and isInteger(), without a regex per value
+        if (numberScanner.scan(value) && numberScanner.getWhitespaceCount() == 0
+                && numberScanner.getIntegerDigits() > 0 && !numberScanner.hasExponent()) {
+            numberText.setLength(0);
+            if (numberScanner.getDotCount() == 0 && numberScanner.getFractionDigits() == 0) {
+                if (!numberScanner.appendInt(numberText)) {
+                    int number = new Integer(value.toString().trim());
+                    numberText.append(number);
                 }
-            } else {
-                sb.append("\"").append(map.get(key)).append("\",");
+            } else if (!numberScanner.appendPlain(numberText)) {
+                BigDecimal number = new BigDecimal(value.toString().trim());
+                numberText.append(number);
             }
+            writer.number(numberText);
+        } else {
+            writer.string(value);
         }
-        // strip the trailing comma
-        sb = new StringBuffer(sb.substring(0, sb.length() - 1));
-        sb.append("}\r\n");
-        return sb.toString();
     }
 
     public static void main(String[] args) {
@@ -231,7 +443,46 @@ public class Vizier2Json {
             }
         }
         catalogMap = parseConfig();
-        v2j.parseCatalog(args[0]);
+        // --gzip after the catalog name writes a .json.gz instead, --columns builds the columnar catalog as well
+        // and --preview[=rows] prints the first rows of it, mapped from the cache if it's there
+        boolean gzip = false;
+        boolean columns = false;
+        int preview = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--gzip") || args[i].equals("-z")) {
+                gzip = true;
+            } else if (args[i].equals("--columns") || args[i].equals("-c")) {
+                columns = true;
+            } else if (args[i].startsWith("--preview") || args[i].startsWith("-p")) {
+                int equals = args[i].indexOf('=');
+                preview = (equals == -1) ? 10 : Integer.parseInt(args[i].substring(equals + 1));
+            }
+        }
+        Catalog catalog = catalogMap.get(args[0]);
+        if (catalog == null) {
+            throw new IllegalArgumentException("Catalog Not Found in Configuration: " + args[0]);
+        }
+        // visible over JMX while it runs, and summed up at the end
+        ImportStats stats = new ImportStats(args[0]).register();
+        ColumnarCatalog columnarCatalog;
+        if (preview > 0) {
+            columnarCatalog = v2j.loadCatalog(catalog, gzip, stats);
+        } else {
+            columnarCatalog = v2j.convert(catalog, gzip, stats, columns);
+        }
+        stats.printSummary(System.out);
+        if (columnarCatalog != null) {
+            columnarCatalog.printSummary(System.out);
+        }
+        if (columnarCatalog != null && preview > 0) {
+            try {
+                JsonRecordWriter writer = new JsonRecordWriter(Channels.newChannel(System.out), 1 << 16);
+                columnarCatalog.writeJson(writer, 0, Math.min(preview, columnarCatalog.getRowCount()));
+                writer.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
     }
 }